@@ -19,14 +19,19 @@
 
 package org.kiji.schema;
 
+import java.util.Arrays;
+
 import com.google.common.base.Preconditions;
 import org.apache.hadoop.hbase.util.Bytes;
 
 import org.kiji.schema.avro.RowKeyEncoding;
 import org.kiji.schema.avro.RowKeyFormat;
+import org.kiji.schema.impl.FormattedEntityId;
 import org.kiji.schema.impl.HashPrefixedEntityId;
 import org.kiji.schema.impl.HashedEntityId;
 import org.kiji.schema.impl.RawEntityId;
+import org.kiji.schema.impl.RowKeyHasher;
+import org.kiji.schema.impl.SaltedEntityId;
 
 
 /**
@@ -51,6 +56,10 @@ public abstract class EntityIdFactory {
       return new HashedEntityIdFactory(format);
     case HASH_PREFIX:
       return new HashPrefixedEntityIdFactory(format);
+    case FORMATTED:
+      return new FormattedEntityIdFactory(format);
+    case SALTED:
+      return new SaltedEntityIdFactory(format);
     default:
       throw new RuntimeException(String.format("Unknown row key format: '%s'.", format));
     }
@@ -79,6 +88,12 @@ public abstract class EntityIdFactory {
     public EntityId fromHBaseRowKey(byte[] hbaseRowKey) {
       return RawEntityId.fromHBaseRowKey(hbaseRowKey);
     }
+
+    /** {@inheritDoc} */
+    @Override
+    public EntityId fromComponents(Object... components) {
+      return fromKijiRowKey(getSingleComponent(getFormat(), components));
+    }
   }
 
   /** Factory for hashed entity IDs. */
@@ -91,6 +106,8 @@ public abstract class EntityIdFactory {
     private HashedEntityIdFactory(RowKeyFormat format) {
       super(format);
       Preconditions.checkArgument(format.getEncoding() == RowKeyEncoding.HASH);
+      Preconditions.checkArgument(null != format.getHashType(),
+          "Hashed row key format requires a hash type: '%s'.", format);
     }
 
     /** {@inheritDoc} */
@@ -104,6 +121,12 @@ public abstract class EntityIdFactory {
     public EntityId fromHBaseRowKey(byte[] hbaseRowKey) {
       return HashedEntityId.fromHBaseRowKey(hbaseRowKey, getFormat());
     }
+
+    /** {@inheritDoc} */
+    @Override
+    public EntityId fromComponents(Object... components) {
+      return fromKijiRowKey(getSingleComponent(getFormat(), components));
+    }
   }
 
   /** Factory for hash-prefixed entity IDs. */
@@ -116,6 +139,11 @@ public abstract class EntityIdFactory {
     private HashPrefixedEntityIdFactory(RowKeyFormat format) {
       super(format);
       Preconditions.checkArgument(format.getEncoding() == RowKeyEncoding.HASH_PREFIX);
+      Preconditions.checkArgument(null != format.getHashType(),
+          "Hash-prefixed row key format requires a hash type: '%s'.", format);
+      Preconditions.checkArgument(
+          format.getHashSize() <= RowKeyHasher.getHashSize(format.getHashType()),
+          "Hash prefix size is larger than the %s hash: '%s'.", format.getHashType(), format);
     }
 
     /** {@inheritDoc} */
@@ -129,6 +157,86 @@ public abstract class EntityIdFactory {
     public EntityId fromHBaseRowKey(byte[] hbaseRowKey) {
       return HashPrefixedEntityId.fromHBaseRowKey(hbaseRowKey, getFormat());
     }
+
+    /** {@inheritDoc} */
+    @Override
+    public EntityId fromComponents(Object... components) {
+      return fromKijiRowKey(getSingleComponent(getFormat(), components));
+    }
+  }
+
+  /** Factory for formatted entity IDs. */
+  private static final class FormattedEntityIdFactory extends EntityIdFactory {
+    /**
+     * Creates a FormattedEntityIdFactory.
+     *
+     * @param format Row key format.
+     */
+    private FormattedEntityIdFactory(RowKeyFormat format) {
+      super(format);
+      FormattedEntityId.checkFormat(format);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public EntityId fromKijiRowKey(byte[] kijiRowKey) {
+      return FormattedEntityId.fromKijiRowKey(kijiRowKey, getFormat());
+    }
+
+    /**
+     * Creates an entity ID from the text form of a row key: its components separated by
+     * commas, as parsed by {@link FormattedEntityId#fromText(String, RowKeyFormat)}.
+     *
+     * @param text The text form of the row key.
+     * @return a new EntityId with the parsed components.
+     */
+    @Override
+    public EntityId fromKijiRowKey(String text) {
+      return FormattedEntityId.fromText(text, getFormat());
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public EntityId fromHBaseRowKey(byte[] hbaseRowKey) {
+      return FormattedEntityId.fromHBaseRowKey(hbaseRowKey, getFormat());
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public EntityId fromComponents(Object... components) {
+      return FormattedEntityId.fromComponents(Arrays.asList(components), getFormat());
+    }
+  }
+
+  /** Factory for salted entity IDs. */
+  private static final class SaltedEntityIdFactory extends EntityIdFactory {
+    /**
+     * Creates a SaltedEntityIdFactory.
+     *
+     * @param format Row key format.
+     */
+    private SaltedEntityIdFactory(RowKeyFormat format) {
+      super(format);
+      SaltedEntityId.checkFormat(format);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public EntityId fromKijiRowKey(byte[] kijiRowKey) {
+      return SaltedEntityId.fromKijiRowKey(kijiRowKey, getFormat());
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public EntityId fromHBaseRowKey(byte[] hbaseRowKey) {
+      return SaltedEntityId.fromHBaseRowKey(hbaseRowKey, getFormat());
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public EntityId fromComponents(Object... components) {
+      return fromKijiRowKey(getSingleComponent(getFormat(), components));
+    }
   }
 
   /** Format of the row keys. */
@@ -173,4 +281,35 @@ public abstract class EntityIdFactory {
    * @return a new EntityId with the specified HBase row key.
    */
   public abstract EntityId fromHBaseRowKey(byte[] hbaseRowKey);
+
+  /**
+   * Creates an entity ID from the components of a row key.
+   * FORMATTED row keys have the components of their format. Other row keys have a single
+   * component, the Kiji row key itself, as a byte array or as a UTF8 string.
+   *
+   * @param components The components of the row key, in order.
+   * @return a new EntityId with the specified components.
+   */
+  public abstract EntityId fromComponents(Object... components);
+
+  /**
+   * Gets the Kiji row key of a format whose row keys have a single component.
+   *
+   * @param format Row key format.
+   * @param components The components of the row key.
+   * @return the Kiji row key, the only component.
+   * @throws IllegalArgumentException If there is not exactly one byte array or string component.
+   */
+  private static byte[] getSingleComponent(RowKeyFormat format, Object... components) {
+    Preconditions.checkArgument(components.length == 1,
+        "Expecting a single row key component in format '%s', got %s.",
+        format, Arrays.toString(components));
+    final Object component = components[0];
+    if (component instanceof byte[]) {
+      return (byte[]) component;
+    }
+    Preconditions.checkArgument(component instanceof CharSequence,
+        "Row key component must be a byte array or a string: %s.", component);
+    return Bytes.toBytes(component.toString());
+  }
 }
@@ -0,0 +1,115 @@
+/**
+ * (c) Copyright 2012 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.kiji.schema;
+
+/**
+ * A range of rows of a Kiji table, delimited by entity IDs, or the rows whose row keys start
+ * with the row key of an entity ID.
+ *
+ * <p>Used to scan many ranges of rows with a single scanner, see
+ * {@link KijiTableReader#getMultiRangeScanner(KijiDataRequest, java.util.List)}.</p>
+ */
+public final class EntityIdRange {
+  /** Start of the range, inclusive, or null for the first row of the table. */
+  private final EntityId mStart;
+
+  /** Stop of the range, exclusive, or null for the end of the table. */
+  private final EntityId mStop;
+
+  /** Whether this range contains the rows whose row keys start with the start entity ID. */
+  private final boolean mIsPrefix;
+
+  /**
+   * Creates a range.
+   *
+   * @param start Start of the range, inclusive, or null for the first row of the table.
+   * @param stop Stop of the range, exclusive, or null for the end of the table.
+   * @param isPrefix Whether this range contains the rows starting with the start entity ID.
+   */
+  private EntityIdRange(EntityId start, EntityId stop, boolean isPrefix) {
+    mStart = start;
+    mStop = stop;
+    mIsPrefix = isPrefix;
+  }
+
+  /**
+   * Creates a range of rows.
+   *
+   * @param start The entity ID of the row to start the range from, inclusive.  If null, the
+   *     range starts with the first row of the table.
+   * @param stop The entity ID of the row to end the range at, exclusive.  If null, the range
+   *     ends with the last row of the table.
+   * @return the range of rows.
+   */
+  public static EntityIdRange between(EntityId start, EntityId stop) {
+    return new EntityIdRange(start, stop, false);
+  }
+
+  /**
+   * Creates the range of rows whose row keys start with the row key of an entity ID.
+   *
+   * <p>This is only meaningful on tables whose row keys are not hashed.</p>
+   *
+   * @param prefix The entity ID whose row key is the prefix of the rows in the range.
+   * @return the range of rows.
+   */
+  public static EntityIdRange withPrefix(EntityId prefix) {
+    if (null == prefix) {
+      throw new IllegalArgumentException("prefix is required");
+    }
+    return new EntityIdRange(prefix, null, true);
+  }
+
+  /**
+   * Gets the start of the range, or the prefix of the rows in the range.
+   *
+   * @return the start entity ID, inclusive, or null for the first row of the table.
+   */
+  public EntityId getStart() {
+    return mStart;
+  }
+
+  /**
+   * Gets the stop of the range.
+   *
+   * @return the stop entity ID, exclusive, or null for the end of the table or prefix ranges.
+   */
+  public EntityId getStop() {
+    return mStop;
+  }
+
+  /**
+   * Reports whether this range contains the rows whose row keys start with the start entity ID.
+   *
+   * @return whether this is a prefix range.
+   */
+  public boolean isPrefix() {
+    return mIsPrefix;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String toString() {
+    return mIsPrefix
+        ? String.format("prefix %s", mStart)
+        : String.format("[%s, %s)", mStart, mStop);
+  }
+}
@@ -25,6 +25,7 @@ import org.apache.avro.Schema;
 import org.apache.hadoop.hbase.KeyValue;
 
 import org.kiji.schema.impl.KijiDataBuffer;
+import org.kiji.schema.impl.WriteBufferBudget;
 import org.kiji.schema.layout.ColumnNameTranslator;
 
 /**
@@ -40,7 +41,7 @@ public abstract class KeyValueBackedWrapper<T> extends KijiDataWrapper<T> {
   private KijiDataBuffer<KeyValue> mBuffer;
 
   /**
-   * Constructs an instance.
+   * Constructs an instance whose buffer is accounted against the JVM-wide write buffer budget.
    *
    * @param cellEncoder The cell encoder to use while wrapping data.
    * @param columnNameTranslator The translator to use to convert Kiji column names to HBase column
@@ -48,15 +49,30 @@ public abstract class KeyValueBackedWrapper<T> extends KijiDataWrapper<T> {
    */
   public KeyValueBackedWrapper(KijiCellEncoder cellEncoder,
       ColumnNameTranslator columnNameTranslator) {
+    this(cellEncoder, columnNameTranslator, WriteBufferBudget.getShared());
+  }
+
+  /**
+   * Constructs an instance.
+   *
+   * @param cellEncoder The cell encoder to use while wrapping data.
+   * @param columnNameTranslator The translator to use to convert Kiji column names to HBase column
+   * names.
+   * @param budget The memory budget the encoded size of the buffered {@link KeyValue}s is
+   * accounted against.
+   */
+  public KeyValueBackedWrapper(KijiCellEncoder cellEncoder,
+      ColumnNameTranslator columnNameTranslator, WriteBufferBudget budget) {
     super(cellEncoder, columnNameTranslator);
-    mBuffer = new KijiDataBuffer<KeyValue>();
+    mBuffer = new KijiDataBuffer<KeyValue>(budget);
   }
 
   /** {@inheritDoc} */
   @Override
   public void add(EntityId id, String family, String qualifier, Schema schema, long timestamp,
       Object value) throws IOException {
-    getBuffer().add(id, wrapInKeyValue(id, family, qualifier, schema, timestamp, value));
+    final KeyValue keyValue = wrapInKeyValue(id, family, qualifier, schema, timestamp, value);
+    getBuffer().add(id, keyValue, keyValue.getLength());
   }
 
   /** {@inheritDoc} */
@@ -65,12 +81,36 @@ public abstract class KeyValueBackedWrapper<T> extends KijiDataWrapper<T> {
     return getBuffer().size();
   }
 
+  /** {@inheritDoc} */
+  @Override
+  public long getBufferedBytes() {
+    return getBuffer().getSizeInBytes();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean isOverBudget() {
+    return getBuffer().isOverBudget();
+  }
+
   /** {@inheritDoc} */
   @Override
   public void clear() {
     getBuffer().clear();
   }
 
+  /** {@inheritDoc} */
+  @Override
+  public long clearRetainingBudget() {
+    return getBuffer().clearRetainingBudget();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void releaseRetained(long retainedBytes) {
+    getBuffer().releaseRetained(retainedBytes);
+  }
+
   /**
    * @return The buffer used to store {@link KeyValue}s before writing.
    */
@@ -21,8 +21,13 @@ package org.kiji.schema;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.commons.io.IOUtils;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.util.StringUtils;
@@ -35,6 +40,8 @@ import org.kiji.schema.impl.HBaseMetaTable;
 import org.kiji.schema.impl.HBaseSchemaTable;
 import org.kiji.schema.impl.HBaseSystemTable;
 import org.kiji.schema.impl.HTableInterfaceFactory;
+import org.kiji.schema.impl.KijiTableResourceRegistry;
+import org.kiji.schema.impl.ZooKeeperLayoutTracker;
 import org.kiji.schema.util.VersionInfo;
 
 /**
@@ -56,6 +63,18 @@ import org.kiji.schema.util.VersionInfo;
 public class Kiji implements KijiTableFactory, Closeable {
   private static final Logger LOG = LoggerFactory.getLogger(Kiji.class);
 
+  /**
+   * Configuration key for the maximum number of threads scanning the tables of a Kiji instance
+   * in parallel, eg. the salt buckets of a table or the regions of a row count.
+   */
+  public static final String SCAN_THREADS_CONF_NAME = "kiji.scan.threads";
+
+  /** Default maximum number of threads scanning the tables of a Kiji instance in parallel. */
+  public static final int DEFAULT_SCAN_THREADS = 16;
+
+  /** Seconds a scan thread may stay idle before it is stopped. */
+  private static final long SCAN_THREAD_KEEP_ALIVE_SECONDS = 60L;
+
   /** The kiji configuration. */
   private final KijiConfiguration mKijiConf;
 
@@ -71,6 +90,15 @@ public class Kiji implements KijiTableFactory, Closeable {
   /** The meta table for this kiji instance, or null if it has not been opened yet. */
   private KijiMetaTable mMetaTable;
 
+  /** The resources shared by the tables opened through this kiji instance. */
+  private KijiTableResourceRegistry mTableResources;
+
+  /** The tracker of the table layout updates, or null if it has not been created yet. */
+  private ZooKeeperLayoutTracker mLayoutTracker;
+
+  /** The executor of the parallel scans, or null if it has not been created yet. */
+  private ExecutorService mScanExecutor;
+
   /** Whether the kiji instance is open. */
   private boolean mIsOpen;
 
@@ -232,6 +260,60 @@ public class Kiji implements KijiTableFactory, Closeable {
     return mMetaTable;
   }
 
+  /**
+   * Gets the registry of the resources shared by the tables opened through this kiji instance.
+   *
+   * @return The registry of the shared table resources.
+   * @throws IOException If there is an error.
+   */
+  public synchronized KijiTableResourceRegistry getTableResourceRegistry() throws IOException {
+    if (null == mTableResources) {
+      final ZooKeeperLayoutTracker tracker = getLayoutTracker();
+      mTableResources = new KijiTableResourceRegistry(this, mHTableFactory, tracker);
+      if (null != tracker) {
+        tracker.addListener(mTableResources);
+      }
+    }
+    return mTableResources;
+  }
+
+  /**
+   * Gets the tracker of the table layout updates of this Kiji instance.
+   *
+   * @return The layout tracker, or null if the tracking of the table layouts is not enabled.
+   * @throws IOException If there is an error.
+   * @see ZooKeeperLayoutTracker#ENABLED_CONF_NAME
+   */
+  public synchronized ZooKeeperLayoutTracker getLayoutTracker() throws IOException {
+    if ((null == mLayoutTracker) && ZooKeeperLayoutTracker.isEnabled(getConf())) {
+      mLayoutTracker = new ZooKeeperLayoutTracker(getConf(), getName());
+    }
+    return mLayoutTracker;
+  }
+
+  /**
+   * Gets the executor shared by the parallel scans of the tables of this Kiji instance. It
+   * runs at most {@value #SCAN_THREADS_CONF_NAME} threads, and queues the tasks submitted
+   * beyond that, so tasks submitted to it must not block waiting for one another.
+   *
+   * @return The executor of the parallel scans.
+   */
+  public synchronized ExecutorService getScanExecutor() {
+    if (null == mScanExecutor) {
+      final int nthreads = Math.max(1, getConf().getInt(SCAN_THREADS_CONF_NAME,
+          DEFAULT_SCAN_THREADS));
+      final ThreadPoolExecutor executor = new ThreadPoolExecutor(nthreads, nthreads,
+          SCAN_THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+          new ThreadFactoryBuilder()
+              .setNameFormat("kiji-scan-" + getName() + "-%d")
+              .setDaemon(true)
+              .build());
+      executor.allowCoreThreadTimeOut(true);
+      mScanExecutor = executor;
+    }
+    return mScanExecutor;
+  }
+
   /** {@inheritDoc} */
   @Override
   public void close() throws IOException {
@@ -242,6 +324,13 @@ public class Kiji implements KijiTableFactory, Closeable {
     mIsOpen = false;
 
     LOG.debug("Closing kiji...");
+    synchronized (this) {
+      if (null != mScanExecutor) {
+        mScanExecutor.shutdownNow();
+      }
+    }
+    IOUtils.closeQuietly(mTableResources);
+    IOUtils.closeQuietly(mLayoutTracker);
     IOUtils.closeQuietly(mMetaTable);
     IOUtils.closeQuietly(mSystemTable);
     IOUtils.closeQuietly(mSchemaTable);
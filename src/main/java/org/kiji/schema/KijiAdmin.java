@@ -34,8 +34,13 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import org.kiji.schema.avro.RowKeyEncoding;
+import org.kiji.schema.avro.RowKeyFormat;
 import org.kiji.schema.avro.TableLayoutDesc;
+import org.kiji.schema.impl.HBaseColumnIndex;
+import org.kiji.schema.impl.HBaseCounterStripes;
 import org.kiji.schema.impl.HTableDescriptorComparator;
+import org.kiji.schema.impl.RowKeyHasher;
+import org.kiji.schema.impl.ZooKeeperLayoutTracker;
 import org.kiji.schema.layout.InvalidLayoutException;
 import org.kiji.schema.layout.KijiTableLayout;
 import org.kiji.schema.layout.impl.ColumnId;
@@ -97,11 +102,18 @@ public class KijiAdmin {
       int numRegions) throws IOException {
     Preconditions.checkArgument((numRegions >= 1), "numRegions must be positive: " + numRegions);
     if (numRegions > 1) {
-      if (tableLayout.getDesc().getKeysFormat().getEncoding() == RowKeyEncoding.RAW) {
+      final RowKeyFormat keysFormat = tableLayout.getDesc().getKeysFormat();
+      if (keysFormat.getEncoding() == RowKeyEncoding.SALTED) {
+        // Pre-split along salt bucket boundaries:
+        createTable(tableName, tableLayout, isRestore,
+            KijiRowKeySplitter.getBucketSplitKeys(keysFormat.getNumBuckets(), numRegions));
+      } else if (RowKeyHasher.isHashed(keysFormat)) {
+        createTable(tableName, tableLayout, isRestore,
+            KijiRowKeySplitter.getSplitKeys(numRegions));
+      } else {
         throw new IllegalArgumentException(
             "May not use numRegions > 1 if row key hashing is disabled in the layout");
       }
-      createTable(tableName, tableLayout, isRestore, KijiRowKeySplitter.getSplitKeys(numRegions));
     } else {
       createTable(tableName, tableLayout, isRestore, null);
     }
@@ -151,6 +163,57 @@ public class KijiAdmin {
         throw tee;
       }
     }
+
+    if (HBaseColumnIndex.hasIndexedColumns(tableLayout)) {
+      createIndexTable(tableName);
+    }
+    if (HBaseCounterStripes.hasStripedCounters(tableLayout)) {
+      createCounterStripesTable(tableName, tableLayout);
+    }
+  }
+
+  /**
+   * Creates the HBase table storing the secondary index of a Kiji table, unless it exists.
+   *
+   * @param tableName The name of the Kiji table.
+   * @return whether the index table was created.
+   * @throws IOException If there is an error.
+   */
+  private boolean createIndexTable(String tableName) throws IOException {
+    final HTableDescriptor desc =
+        HBaseColumnIndex.getIndexTableDescriptor(mKiji.getName(), tableName);
+    if (mHbaseAdmin.tableExists(desc.getName())) {
+      return false;
+    }
+    LOG.debug("Creating index table in HBase");
+    mHbaseAdmin.createTable(desc);
+    return true;
+  }
+
+  /**
+   * Creates the HBase table storing the stripes of the striped counters of a Kiji table,
+   * unless it exists. The table is pre-split so that each stripe lives in a region of its own.
+   *
+   * @param tableName The name of the Kiji table.
+   * @param tableLayout The layout of the Kiji table.
+   * @return whether the counter stripes table was created.
+   * @throws IOException If there is an error.
+   */
+  private boolean createCounterStripesTable(String tableName, KijiTableLayout tableLayout)
+      throws IOException {
+    final HTableDescriptor desc =
+        HBaseCounterStripes.getStripesTableDescriptor(mKiji.getName(), tableName);
+    if (mHbaseAdmin.tableExists(desc.getName())) {
+      return false;
+    }
+    LOG.debug("Creating counter stripes table in HBase");
+    final byte[][] splitKeys = HBaseCounterStripes.getStripesTableSplitKeys(tableLayout);
+    if (null != splitKeys) {
+      mHbaseAdmin.createTable(desc, splitKeys);
+    } else {
+      mHbaseAdmin.createTable(desc);
+    }
+    return true;
   }
 
   /**
@@ -298,24 +361,84 @@ public class KijiAdmin {
       }
     }
 
+    if (HBaseColumnIndex.hasIndexedColumns(newLayout)) {
+      if (dryRun) {
+        if (!mHbaseAdmin.tableExists(KijiManagedHBaseTableName
+            .getKijiIndexTableName(mKiji.getName(), tableName).toBytes())) {
+          printStream.println("Would create the index table of: " + tableName);
+        }
+      } else if (createIndexTable(tableName)) {
+        LOG.info("Created the index table of {}: run the rebuild-index tool to index the "
+            + "existing rows.", tableName);
+      }
+    }
+
+    if (HBaseCounterStripes.hasStripedCounters(newLayout)) {
+      if (dryRun) {
+        if (!mHbaseAdmin.tableExists(KijiManagedHBaseTableName
+            .getKijiCounterStripesTableName(mKiji.getName(), tableName).toBytes())) {
+          printStream.println("Would create the counter stripes table of: " + tableName);
+        }
+      } else if (createCounterStripesTable(tableName, newLayout)) {
+        LOG.info("Created the counter stripes table of {}.", tableName);
+      }
+    }
+
+    if (!dryRun) {
+      // Refresh the opened tables once the HBase schema matches the new layout.
+      mKiji.getTableResourceRegistry().invalidate(tableName);
+      final ZooKeeperLayoutTracker tracker = mKiji.getLayoutTracker();
+      if (null != tracker) {
+        tracker.notifyLayoutChanged(tableName, newLayout.getDesc().getLayoutId());
+      }
+    }
+
     return newLayout;
   }
 
   /**
-   * Deletes a Kiji table.  Removes it from HBase.
+   * Deletes a Kiji table.  Removes it, and its index and counter stripes tables if any, from
+   * HBase.
    *
    * @param tableName The name of the Kiji table to delete.
    * @throws IOException If there is an error.
    */
   public void deleteTable(String tableName) throws IOException {
+    boolean isIndexed = false;
+    boolean hasStripedCounters = false;
+    try {
+      final KijiTableLayout layout = mKiji.getMetaTable().getTableLayout(tableName);
+      isIndexed = HBaseColumnIndex.hasIndexedColumns(layout);
+      hasStripedCounters = HBaseCounterStripes.hasStripedCounters(layout);
+    } catch (KijiTableNotFoundException ktnfe) {
+      // No layout: the HBase table is deleted anyway.
+    }
+
     // Delete from HBase.
     String hbaseTable = KijiManagedHBaseTableName.getKijiTableName(mKiji.getName(),
         tableName).toString();
     mHbaseAdmin.disableTable(hbaseTable);
     mHbaseAdmin.deleteTable(hbaseTable);
+    if (isIndexed) {
+      final String hbaseIndexTable =
+          KijiManagedHBaseTableName.getKijiIndexTableName(mKiji.getName(), tableName).toString();
+      mHbaseAdmin.disableTable(hbaseIndexTable);
+      mHbaseAdmin.deleteTable(hbaseIndexTable);
+    }
+    if (hasStripedCounters) {
+      final String hbaseStripesTable = KijiManagedHBaseTableName
+          .getKijiCounterStripesTableName(mKiji.getName(), tableName).toString();
+      mHbaseAdmin.disableTable(hbaseStripesTable);
+      mHbaseAdmin.deleteTable(hbaseStripesTable);
+    }
 
     // Delete from the meta table.
     mKiji.getMetaTable().deleteTable(tableName);
+    mKiji.getTableResourceRegistry().invalidate(tableName);
+    final ZooKeeperLayoutTracker tracker = mKiji.getLayoutTracker();
+    if (null != tracker) {
+      tracker.notifyLayoutRemoved(tableName);
+    }
 
     // HBaseAdmin lies about deleteTable being a synchronous operation.  Let's wait until
     // the table is actually gone.
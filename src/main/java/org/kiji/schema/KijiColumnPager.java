@@ -33,6 +33,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import org.kiji.schema.impl.HBaseDataRequestAdapter;
+import org.kiji.schema.impl.KijiTableResources;
 import org.kiji.schema.layout.ColumnNameTranslator;
 import org.kiji.schema.layout.KijiTableLayout;
 
@@ -52,6 +53,9 @@ public class KijiColumnPager {
   /** The layout of the table being read from. */
   private final KijiTableLayout mTableLayout;
 
+  /** The translators and column metadata derived from the table layout. */
+  private final KijiTableResources mResources;
+
   /** The HTable being read from. */
   private final HTableInterface mHTable;
 
@@ -76,6 +80,7 @@ public class KijiColumnPager {
     mEntityId = entityId;
     mDataRequest = dataRequest;
     mTableLayout = tableLayout;
+    mResources = KijiTableResources.forLayout(tableLayout);
     mHTable = htable;
     mPageIndices = Collections.synchronizedMap(new HashMap<KijiColumnName, Integer>());
   }
@@ -101,7 +106,7 @@ public class KijiColumnPager {
     }
 
     // Figure out the HBase column name.
-    final ColumnNameTranslator translator = new ColumnNameTranslator(mTableLayout);
+    final ColumnNameTranslator translator = mResources.getColumnNameTranslator();
     HBaseColumnName hbaseColumnName = translator.toHBaseColumnName(kijiColumnName);
 
     final NavigableMap<byte[], NavigableMap<Long, byte[]>> familyMap =
@@ -145,7 +150,7 @@ public class KijiColumnPager {
     }
 
     // Figure out the HBase column name.
-    final ColumnNameTranslator translator = new ColumnNameTranslator(mTableLayout);
+    final ColumnNameTranslator translator = mResources.getColumnNameTranslator();
     HBaseColumnName hbaseColumnName = translator.toHBaseColumnName(kijiFamily);
 
     final NavigableMap<byte[], NavigableMap<Long, byte[]>> familyMap =
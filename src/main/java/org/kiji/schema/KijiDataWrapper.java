@@ -99,11 +99,47 @@ public abstract class KijiDataWrapper<T> {
    */
   public abstract int size();
 
+  /**
+   * @return The approximate number of encoded bytes held in the buffer.
+   */
+  public abstract long getBufferedBytes();
+
+  /**
+   * @return Whether the memory budget shared with other buffers is exhausted and this buffer
+   * holds at least its share of it, in which case the buffer should be flushed.
+   */
+  public abstract boolean isOverBudget();
+
   /**
    * Clears any data stored in the buffer.
    */
   public abstract void clear();
 
+  /**
+   * Clears any data stored in the buffer, but keeps its size accounted against the memory budget
+   * shared with other buffers until {@link #releaseRetained(long)} is called, eg. once the
+   * cleared data is written by a background thread.
+   *
+   * <p>The default implementation clears the buffer and retains nothing.</p>
+   *
+   * @return The number of bytes still accounted against the memory budget.
+   */
+  public long clearRetainingBudget() {
+    clear();
+    return 0L;
+  }
+
+  /**
+   * Releases the bytes retained by {@link #clearRetainingBudget()}.
+   *
+   * <p>The default implementation does nothing.</p>
+   *
+   * @param retainedBytes The number of bytes to release from the memory budget.
+   */
+  public void releaseRetained(long retainedBytes) {
+    // Nothing is retained by default.
+  }
+
   /**
    * A Kiji cell encoder to use when writing cells.
    *
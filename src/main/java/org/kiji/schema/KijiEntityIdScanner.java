@@ -0,0 +1,49 @@
+/**
+ * (c) Copyright 2012 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.kiji.schema;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Interface for scanning over the entity IDs of the rows of a Kiji table, without reading
+ * their cells.
+ *
+ * <pre>
+ *   KijiEntityIdScanner scanner = tableReader.scanEntityIds(range);
+ *   try {
+ *     for (EntityId entityId : scanner) {
+ *       process(entityId);
+ *     }
+ *   } finally {
+ *     scanner.close();
+ *   }
+ * </pre>
+ */
+public interface KijiEntityIdScanner extends Closeable, Iterable<EntityId> {
+  /**
+   * Closes this scanner and releases any system resources associated with it.
+   *
+   * @throws IOException If an I/O error occurs.
+   */
+  @Override
+  void close() throws IOException;
+}
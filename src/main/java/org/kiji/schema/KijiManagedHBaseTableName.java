@@ -46,12 +46,15 @@ import org.apache.hadoop.hbase.util.Bytes;
  *     KijiInstance: the name of kiji instance managing this table.
  *   </li>
  *   <li>
- *     Type: the type of table (system, schema, meta, table).
+ *     Type: the type of table (system, schema, meta, table, index, counters).
  *   </li>
  * </ol>
  *
  * If the type of the table is "table", then it's name (the name users
  * of Kiji would use to refer to it) is the fourth and final component.
+ * The secondary index of a user-space table, if any, is stored in a
+ * table of type "index" named after the user-space table, and the
+ * stripes of its striped counters, if any, in a table of type "counters".
  * </p>
  *
  * <p>
@@ -65,6 +68,8 @@ import org.apache.hadoop.hbase.util.Bytes;
  * kiji.default.system
  * kiji.default.table.foo
  * kiji.default.table.bar
+ * kiji.default.index.bar
+ * kiji.default.counters.foo
  * kiji.experimental.meta
  * kiji.experimental.schema
  * kiji.experimental.schema_hash
@@ -77,8 +82,9 @@ import org.apache.hadoop.hbase.util.Bytes;
  * kiji called "devices."  There are two kiji installations, once
  * called "default" and another called "experimental."  Within the
  * "default" installation, there are two Kiji tables, "foo" and
- * "bar."  Within the "experimental" installation, there is a single
- * Kiji table "baz."
+ * "bar," "bar" has indexed columns, and "foo" has striped counters.
+ * Within the "experimental" installation, there is a single Kiji
+ * table "baz."
  * </p>
  */
 public final class KijiManagedHBaseTableName {
@@ -112,6 +118,12 @@ public final class KijiManagedHBaseTableName {
   /** The name component used for all user-space Kiji tables. */
   private static final String KIJI_TABLE_COMPONENT = "table";
 
+  /** The name component used for the secondary indexes of user-space Kiji tables. */
+  private static final String KIJI_INDEX_COMPONENT = "index";
+
+  /** The name component used for the counter stripes of user-space Kiji tables. */
+  private static final String KIJI_COUNTERS_COMPONENT = "counters";
+
   /** The HBase table name. */
   private final String mHBaseTableName;
 
@@ -240,6 +252,33 @@ public final class KijiManagedHBaseTableName {
     return new KijiManagedHBaseTableName(kijiInstanceName, KIJI_TABLE_COMPONENT, kijiTableName);
   }
 
+  /**
+   * Gets a new instance of a Kiji-managed HBase table that holds the secondary index of a
+   * user-space Kiji table.
+   *
+   * @param kijiInstanceName The name of the Kiji instance.
+   * @param kijiTableName The name of the user-space Kiji table.
+   * @return The name of the HBase table used to store the index of the user-space Kiji table.
+   */
+  public static KijiManagedHBaseTableName getKijiIndexTableName(
+      String kijiInstanceName, String kijiTableName) {
+    return new KijiManagedHBaseTableName(kijiInstanceName, KIJI_INDEX_COMPONENT, kijiTableName);
+  }
+
+  /**
+   * Gets a new instance of a Kiji-managed HBase table that holds the stripes of the striped
+   * counters of a user-space Kiji table.
+   *
+   * @param kijiInstanceName The name of the Kiji instance.
+   * @param kijiTableName The name of the user-space Kiji table.
+   * @return The name of the HBase table used to store the counter stripes of the Kiji table.
+   */
+  public static KijiManagedHBaseTableName getKijiCounterStripesTableName(
+      String kijiInstanceName, String kijiTableName) {
+    return new KijiManagedHBaseTableName(
+        kijiInstanceName, KIJI_COUNTERS_COMPONENT, kijiTableName);
+  }
+
   /**
    * Gets the name of the Kiji instance this named table belongs to.
    *
@@ -71,4 +71,33 @@ public final class KijiRowKeySplitter {
     // Remove the startKey from the beginning and the limitKey from the end.
     return Arrays.copyOfRange(ends, 1, ends.length - 1);
   }
+
+  /**
+   * Returns the split keys for a table with salted row keys, so that each region holds whole
+   * salt buckets.  Buckets are spread as evenly as possible over the regions.
+   *
+   * @param numBuckets The number of salt buckets of the row key format.
+   * @param numRegions The number of desired regions, at most the number of buckets.
+   * @return The row keys that serve as the boundaries between the regions.
+   */
+  public static byte[][] getBucketSplitKeys(int numBuckets, int numRegions) {
+    if (numRegions < 2) {
+      throw new IllegalArgumentException("numRegions must be at least 2, but was " + numRegions);
+    }
+    if (numRegions > numBuckets) {
+      throw new IllegalArgumentException(String.format(
+          "numRegions must be at most the number of salt buckets %d, but was %d",
+          numBuckets, numRegions));
+    }
+
+    final byte[][] splitKeys = new byte[numRegions - 1][];
+    for (int i = 1; i < numRegions; i++) {
+      // Region i starts with the first row of bucket floor(i * numBuckets / numRegions):
+      splitKeys[i - 1] = new byte[] {(byte) ((i * numBuckets) / numRegions)};
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("Generated bucket split key: " + ByteArrayFormatter.toHex(splitKeys[i - 1], ':'));
+      }
+    }
+    return splitKeys;
+  }
 }
@@ -0,0 +1,56 @@
+/**
+ * (c) Copyright 2012 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.kiji.schema;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * A {@link KijiTableKeyValueDatabase} that reads or writes several keys of a table in a single
+ * operation.
+ *
+ * @see KijiTableKeyValueDatabase
+ */
+public interface KijiTableKeyValueBatchDatabase extends KijiTableKeyValueDatabase {
+
+  /**
+   * Associates several values with keys of the specified table, in a single operation.
+   *
+   * @param table The kiji table that these key-value pairs will be set with.
+   * @param values Map from the keys to the values to associate with them.
+   * @return The same KijiTableKeyValueDatabase.
+   * @throws IOException If there is an error.
+   */
+  KijiTableKeyValueDatabase putValues(String table, Map<String, byte[]> values)
+      throws IOException;
+
+  /**
+   * Returns the most recent values associated with several keys of the specified table, in a
+   * single operation.
+   *
+   * @param table The kiji table.
+   * @param keys The keys to look up the associated values for.
+   * @return Map from the keys to their values. Keys that don't exist are not in the map.
+   * @throws IOException If there is an error.
+   */
+  Map<String, byte[]> getValues(String table, Collection<String> keys) throws IOException;
+}
@@ -21,12 +21,19 @@ package org.kiji.schema;
 
 import java.io.Closeable;
 import java.io.IOException;
-import java.util.ArrayDeque;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.Map;
+import java.io.InterruptedIOException;
+import java.util.Collections;
 import java.util.Queue;
-
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.collect.Sets;
 import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -45,7 +52,13 @@ import org.kiji.schema.util.DefaultClock;
  * opened and returned. When the client is finished, it should call release() to allow
  * other clients or threads the option to reuse the opened table.</p>
  *
- * <p>This class is thread-safe.</p>
+ * <p>When a table reaches the maximum pool size, clients may wait for another client to
+ * release the table, up to a configurable timeout. Waiting clients are served in order.
+ * The pool may also be warmed up with {@link #warmUp(String)} to open a minimum number of
+ * connections to a table ahead of time.</p>
+ *
+ * <p>This class is thread-safe. Each table has its own pool, and getting or releasing a table
+ * does not lock the other tables.</p>
  */
 public class KijiTablePool implements Closeable {
   private static final Logger LOG = LoggerFactory.getLogger(KijiTablePool.class);
@@ -59,6 +72,12 @@ public class KijiTablePool implements Closeable {
   /** The maximum number of connections to keep per table. */
   private final int mMaxSize;
 
+  /** The number of connections to open per table when warming up, and to keep when idle. */
+  private final int mMinSize;
+
+  /** Milliseconds to wait for a table when the pool is at capacity. */
+  private final long mAcquireTimeout;
+
   /** Milliseconds before an idle table will be eligible for cleanup. */
   private final long mIdleTimeout;
 
@@ -66,19 +85,21 @@ public class KijiTablePool implements Closeable {
   private final long mIdlePollPeriod;
 
   /** A map from table names to their connection pools. */
-  private final Map<String, Pool> mTableCache;
+  private final ConcurrentMap<String, Pool> mTableCache;
 
   /** A cleanup thread for idle connections. */
-  private IdleTimeoutThread mCleanupThread;
+  private volatile IdleTimeoutThread mCleanupThread;
 
   /** Whether the table pool is open. */
-  private boolean mIsOpen;
+  private volatile boolean mIsOpen;
 
   /**
    * Describes the options that can be configured on the KijiTablePool.
    */
   public static class Options {
     private int mMaxSize;
+    private int mMinSize;
+    private long mAcquireTimeout;
     private long mIdleTimeout;
     private long mIdlePollPeriod;
     private Clock mClock;
@@ -88,6 +109,8 @@ public class KijiTablePool implements Closeable {
      */
     public Options() {
       mMaxSize = 0;
+      mMinSize = 0;
+      mAcquireTimeout = 0L;
       mIdleTimeout = 0L;
       mIdlePollPeriod = 10000L; // 10 seconds.
       mClock = new DefaultClock();
@@ -115,6 +138,50 @@ public class KijiTablePool implements Closeable {
       return mMaxSize;
     }
 
+    /**
+     * Sets the number of connections to open per table when warming up the pool. Idle
+     * connections are not removed from the pool below this number.
+     *
+     * @param minSize The min number of connections to keep per table.
+     * @return This options object for method chaining.
+     */
+    public Options withMinSize(int minSize) {
+      mMinSize = minSize;
+      return this;
+    }
+
+    /**
+     * Gets the number of connections to open per table when warming up the pool.
+     *
+     * @return The min number of connections to keep per table.
+     */
+    public int getMinSize() {
+      return mMinSize;
+    }
+
+    /**
+     * Sets the amount of time to wait for a table to be released when the pool is at capacity,
+     * before failing with a {@link NoCapacityException}.
+     *
+     * <p>Use zero (0) to fail immediately when the pool is at capacity.</p>
+     *
+     * @param timeoutMillis Timeout in milliseconds.
+     * @return This options object for method chaining.
+     */
+    public Options withAcquireTimeout(long timeoutMillis) {
+      mAcquireTimeout = timeoutMillis;
+      return this;
+    }
+
+    /**
+     * Gets the amount of time to wait for a table to be released when the pool is at capacity.
+     *
+     * @return The timeout in milliseconds.
+     */
+    public long getAcquireTimeout() {
+      return mAcquireTimeout;
+    }
+
     /**
      * Sets the amount of time a connection may be idle before being removed from the pool.
      *
@@ -206,9 +273,11 @@ public class KijiTablePool implements Closeable {
     mTableFactory = tableFactory;
     mClock = options.getClock();
     mMaxSize = (0 == options.getMaxSize()) ? Integer.MAX_VALUE : options.getMaxSize();
+    mMinSize = Math.min(options.getMinSize(), mMaxSize);
+    mAcquireTimeout = options.getAcquireTimeout();
     mIdleTimeout = options.getIdleTimeout();
     mIdlePollPeriod = options.getIdlePollPeriod();
-    mTableCache = new HashMap<String, Pool>();
+    mTableCache = new ConcurrentHashMap<String, Pool>();
     mIsOpen = true;
   }
 
@@ -225,27 +294,125 @@ public class KijiTablePool implements Closeable {
     }
   }
 
+  /**
+   * Statistics about the pool of connections to a table.
+   */
+  public static final class Stats {
+    private final int mNumInUse;
+    private final int mNumIdle;
+    private final long mNumHits;
+    private final long mNumMisses;
+    private final long mNumTimeouts;
+    private final long mTotalWaitTime;
+
+    /**
+     * Creates a snapshot of the statistics of a pool.
+     *
+     * @param numInUse Number of connections in use.
+     * @param numIdle Number of idle connections.
+     * @param numHits Number of gets served by an idle connection.
+     * @param numMisses Number of gets that opened a new connection.
+     * @param numTimeouts Number of gets that failed because the pool was at capacity.
+     * @param totalWaitTime Total milliseconds spent waiting for the pool to have capacity.
+     */
+    private Stats(int numInUse, int numIdle, long numHits, long numMisses, long numTimeouts,
+        long totalWaitTime) {
+      mNumInUse = numInUse;
+      mNumIdle = numIdle;
+      mNumHits = numHits;
+      mNumMisses = numMisses;
+      mNumTimeouts = numTimeouts;
+      mTotalWaitTime = totalWaitTime;
+    }
+
+    /** @return The number of connections in use. */
+    public int getNumInUse() {
+      return mNumInUse;
+    }
+
+    /** @return The number of idle connections. */
+    public int getNumIdle() {
+      return mNumIdle;
+    }
+
+    /** @return The number of gets served by an idle connection. */
+    public long getNumHits() {
+      return mNumHits;
+    }
+
+    /** @return The number of gets that opened a new connection. */
+    public long getNumMisses() {
+      return mNumMisses;
+    }
+
+    /** @return The number of gets that failed because the pool was at capacity. */
+    public long getNumTimeouts() {
+      return mNumTimeouts;
+    }
+
+    /** @return The total number of milliseconds spent waiting for the pool to have capacity. */
+    public long getTotalWaitTimeMillis() {
+      return mTotalWaitTime;
+    }
+  }
+
   /**
    * Gets a previously opened table from the pool, or open a new connection.
    * Clients should not call close() on the returned table. Instead, they should release the
    * table back to the pool when finished by passing it in call to release().
    *
+   * <p>If the pool is at capacity for this table, waits for another client to release the
+   * table, up to the configured acquire timeout.</p>
+   *
    * @param name The name of the Kiji table.
    * @return An opened Kiji table.
    * @throws IOException If there is an error.
    * @throws KijiTablePool.NoCapacityException If the table pool is at capacity.
    */
-  public synchronized KijiTable get(String name) throws IOException {
+  public KijiTable get(String name) throws IOException {
     LOG.debug("Retrieving a connection for " + name + " from the table pool.");
+    return getPool(name).get(name);
+  }
+
+  /**
+   * Opens connections to a table until the pool holds the configured minimum number of
+   * connections to it, so that the first clients do not pay for opening the table.
+   *
+   * @param name The name of the Kiji table.
+   * @throws IOException If there is an error opening the table.
+   */
+  public void warmUp(String name) throws IOException {
+    LOG.debug("Warming up the table pool for " + name + ".");
+    getPool(name).warmUp(name);
+  }
+
+  /**
+   * Gets statistics about the pool of connections to a table.
+   *
+   * @param name The name of the Kiji table.
+   * @return A snapshot of the statistics of the pool of connections to the table.
+   */
+  public Stats getStats(String name) {
+    return getPool(name).getStats();
+  }
+
+  /**
+   * Gets the pool of connections to a table, creating it if necessary.
+   *
+   * @param name The name of the Kiji table.
+   * @return The pool of connections to the table.
+   */
+  private Pool getPool(String name) {
     if (!mIsOpen) {
       throw new IllegalStateException("Table pool is closed.");
     }
-
-    if (!mTableCache.containsKey(name)) {
-      mTableCache.put(name, new Pool());
+    final Pool pool = mTableCache.get(name);
+    if (null != pool) {
+      return pool;
     }
-
-    return mTableCache.get(name).get(name);
+    final Pool newPool = new Pool();
+    final Pool existing = mTableCache.putIfAbsent(name, newPool);
+    return (null == existing) ? newPool : existing;
   }
 
   /**
@@ -254,8 +421,10 @@ public class KijiTablePool implements Closeable {
    * <p>Only open tables that were retrieved from this pool should be released.</p>
    *
    * @param table The table to release to the pool. If null, will be a no-op.
+   * @throws IllegalArgumentException If the table was not retrieved from this pool, or was
+   *     already released.
    */
-  public synchronized void release(KijiTable table) {
+  public void release(KijiTable table) {
     LOG.debug("Releasing a KijiTable " + table + " back to the pool.");
     if (!mIsOpen) {
       throw new IllegalStateException("Table pool is closed.");
@@ -265,14 +434,23 @@ public class KijiTablePool implements Closeable {
       return;
     }
 
-    // TODO: Check that this table came from this pool.
-    // Throw an IllegalArgumentException if not.
-    //
-    // Verify that the table is still open.  Throw an IllegalStateException if not.
-    mTableCache.get(table.getName()).release(table);
+    // TODO: Verify that the table is still open.  Throw an IllegalStateException if not.
+    final Pool pool = mTableCache.get(table.getName());
+    if (null == pool) {
+      throw new IllegalArgumentException(
+          "Table " + table.getName() + " was not retrieved from this pool.");
+    }
+    pool.release(table);
 
     // Start the cleanup thread if necessary.
     if (mIdleTimeout > 0L && null == mCleanupThread) {
+      startCleanupThread();
+    }
+  }
+
+  /** Starts the cleanup thread for idle connections, unless it is already started. */
+  private synchronized void startCleanupThread() {
+    if (null == mCleanupThread) {
       mCleanupThread = new IdleTimeoutThread();
       mCleanupThread.start();
     }
@@ -281,7 +459,7 @@ public class KijiTablePool implements Closeable {
   /**
    * Explicitly force a cleanup of table connections that have been idle too long.
    */
-  synchronized void cleanIdleConnections() {
+  void cleanIdleConnections() {
     if (mIdleTimeout > 0) {
       for (Pool pool: mTableCache.values()) {
         pool.clean(mIdleTimeout);
@@ -300,6 +478,7 @@ public class KijiTablePool implements Closeable {
       LOG.warn("Called close() on a KijiTablePool that was already closed.");
       return;
     }
+    mIsOpen = false;
     if (null != mCleanupThread) {
       mCleanupThread.interrupt();
       try {
@@ -312,7 +491,6 @@ public class KijiTablePool implements Closeable {
       IOUtils.closeQuietly(pool);
     }
     mTableCache.clear();
-    mIsOpen = false;
   }
 
   @Override
@@ -327,17 +505,36 @@ public class KijiTablePool implements Closeable {
   /**
    * A pool of connections for a single table. Maintains a number of
    * connections in use, and a queue of available ones for re-use.
+   *
+   * <p>The number of connections in use is bounded by a fair semaphore, so that clients
+   * waiting for a connection get it in order.</p>
    */
   private class Pool implements Closeable {
     private final Queue<Connection> mConnections;
-    private int mNumInUse;
+    private final Set<KijiTable> mCheckedOut;
+    private final Semaphore mPermits;
+    private final AtomicInteger mNumOpen;
+    private final AtomicInteger mNumInUse;
+    private final AtomicInteger mNumIdle;
+    private final AtomicLong mNumHits;
+    private final AtomicLong mNumMisses;
+    private final AtomicLong mNumTimeouts;
+    private final AtomicLong mTotalWaitTime;
 
     /**
      * Constructor.
      */
     public Pool() {
-      mConnections = new ArrayDeque<Connection>();
-      mNumInUse = 0;
+      mConnections = new ConcurrentLinkedQueue<Connection>();
+      mCheckedOut = Collections.synchronizedSet(Sets.<KijiTable>newIdentityHashSet());
+      mPermits = new Semaphore(mMaxSize, true);
+      mNumOpen = new AtomicInteger(0);
+      mNumInUse = new AtomicInteger(0);
+      mNumIdle = new AtomicInteger(0);
+      mNumHits = new AtomicLong(0);
+      mNumMisses = new AtomicLong(0);
+      mNumTimeouts = new AtomicLong(0);
+      mTotalWaitTime = new AtomicLong(0);
     }
 
     /**
@@ -349,55 +546,153 @@ public class KijiTablePool implements Closeable {
      * @throws KijiTablePool.NoCapacityException If there is no more room in the
      *     pool to open a new connection.
      */
-    public synchronized KijiTable get(String tableName) throws IOException {
-      Connection availableConnection = mConnections.poll();
-      if (null == availableConnection) {
-        LOG.debug("Cache miss for table " + tableName);
-        if (mNumInUse >= mMaxSize) {
-          throw new NoCapacityException("Reached max pool size for table " + tableName);
+    public KijiTable get(String tableName) throws IOException {
+      acquirePermit(tableName);
+
+      final Connection availableConnection = mConnections.poll();
+      if (null != availableConnection) {
+        LOG.debug("Cache hit for table " + tableName);
+        mNumIdle.decrementAndGet();
+        mNumHits.incrementAndGet();
+        mNumInUse.incrementAndGet();
+        mCheckedOut.add(availableConnection.getTable());
+        return availableConnection.getTable();
+      }
+
+      LOG.debug("Cache miss for table " + tableName);
+      mNumMisses.incrementAndGet();
+      final KijiTable table;
+      try {
+        table = mTableFactory.openTable(tableName);
+      } catch (IOException ioe) {
+        mPermits.release();
+        throw ioe;
+      }
+      mNumOpen.incrementAndGet();
+      mNumInUse.incrementAndGet();
+      mCheckedOut.add(table);
+      return table;
+    }
+
+    /**
+     * Acquires the permit to use a connection, waiting up to the acquire timeout.
+     *
+     * @param tableName The name of the table.
+     * @throws IOException If the thread is interrupted while waiting.
+     * @throws KijiTablePool.NoCapacityException If the pool is still at capacity after
+     *     the acquire timeout.
+     */
+    private void acquirePermit(String tableName) throws IOException {
+      // Unlike the untimed tryAcquire(), a timed tryAcquire() does not barge ahead of the
+      // clients already waiting for a permit, even with a zero timeout.
+      final boolean acquired;
+      final long startTime = mClock.getTime();
+      try {
+        acquired = mPermits.tryAcquire(Math.max(0L, mAcquireTimeout), TimeUnit.MILLISECONDS);
+      } catch (InterruptedException ie) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException(
+            "Interrupted while waiting for a connection to table " + tableName);
+      } finally {
+        mTotalWaitTime.addAndGet(mClock.getTime() - startTime);
+      }
+      if (!acquired) {
+        mNumTimeouts.incrementAndGet();
+        throw new NoCapacityException("Reached max pool size for table " + tableName);
+      }
+    }
+
+    /**
+     * Opens connections until the pool holds the minimum number of connections.
+     *
+     * @param tableName The name of the table.
+     * @throws IOException If there is an error opening the table.
+     */
+    public void warmUp(String tableName) throws IOException {
+      while (true) {
+        // Reserve the connection before opening it, so that concurrent warm ups and misses
+        // never open more than the minimum number of connections.
+        final int numOpen = mNumOpen.get();
+        if (numOpen >= mMinSize) {
+          return;
+        }
+        if (!mNumOpen.compareAndSet(numOpen, numOpen + 1)) {
+          continue;
         }
-        mNumInUse++;
-        return mTableFactory.openTable(tableName);
+        final KijiTable table;
+        try {
+          table = mTableFactory.openTable(tableName);
+        } catch (IOException ioe) {
+          mNumOpen.decrementAndGet();
+          throw ioe;
+        }
+        mConnections.add(new Connection(table, mClock));
+        mNumIdle.incrementAndGet();
       }
-      LOG.debug("Cache hit for table " + tableName);
-      mNumInUse++;
-      return availableConnection.getTable();
     }
 
     /**
      * Releases a table back to the pool so it may be reused.
      *
      * @param table The table to release.
+     * @throws IllegalArgumentException If the table was not retrieved from this pool, or was
+     *     already released.
      */
-    public synchronized void release(KijiTable table) {
-      mNumInUse--;
+    public void release(KijiTable table) {
+      if (!mCheckedOut.remove(table)) {
+        throw new IllegalArgumentException("Table " + table.getName()
+            + " was not retrieved from this pool, or was already released.");
+      }
+      // Make the connection available before handing the permit to the next waiting client.
       mConnections.add(new Connection(table, mClock));
+      mNumIdle.incrementAndGet();
+      mNumInUse.decrementAndGet();
+      mPermits.release();
     }
 
     /**
-     * Cleans any connections from the pool that have been idle.
+     * Cleans any connections from the pool that have been idle, keeping at least the minimum
+     * number of connections.
      *
      * @param idleTimeout Milliseconds idle required to be closed and
      *     removed from the pool.
      */
-    public synchronized void clean(long idleTimeout) {
+    public void clean(long idleTimeout) {
       long currentTime = mClock.getTime();
-      Iterator<Connection> iterator = mConnections.iterator();
-      while (iterator.hasNext()) {
-        Connection connection = iterator.next();
-        if (currentTime - connection.getLastAccessTime() > idleTimeout) {
+      for (Connection connection : mConnections) {
+        if (mNumIdle.get() <= mMinSize) {
+          break;
+        }
+        // Only close connections that were not concurrently taken by a client.
+        if (currentTime - connection.getLastAccessTime() > idleTimeout
+            && mConnections.remove(connection)) {
+          mNumIdle.decrementAndGet();
+          mNumOpen.decrementAndGet();
           LOG.info("Closing idle KijiTable connection to " + connection.getTable().getName());
-          iterator.remove();
           IOUtils.closeQuietly(connection.getTable());
         }
       }
     }
 
+    /**
+     * Gets a snapshot of the statistics of this pool.
+     *
+     * @return The statistics of this pool.
+     */
+    public Stats getStats() {
+      return new Stats(mNumInUse.get(), mNumIdle.get(), mNumHits.get(), mNumMisses.get(),
+          mNumTimeouts.get(), mTotalWaitTime.get());
+    }
+
     /** {@inheritDoc} */
     @Override
-    public synchronized void close() throws IOException {
-      while (!mConnections.isEmpty()) {
-        IOUtils.closeQuietly(mConnections.remove().getTable());
+    public void close() throws IOException {
+      Connection connection = mConnections.poll();
+      while (null != connection) {
+        mNumIdle.decrementAndGet();
+        mNumOpen.decrementAndGet();
+        IOUtils.closeQuietly(connection.getTable());
+        connection = mConnections.poll();
       }
     }
   }
@@ -21,13 +21,19 @@ package org.kiji.schema;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.List;
 
+import com.google.common.base.Preconditions;
 import org.apache.hadoop.util.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.kiji.schema.avro.RowKeyEncoding;
+import org.kiji.schema.avro.RowKeyFormat;
 import org.kiji.schema.filter.KijiRowFilter;
+import org.kiji.schema.impl.FormattedEntityId;
+import org.kiji.schema.impl.HBaseEntityId;
 
 /**
  * Interface for reading data from a kiji table.
@@ -155,6 +161,134 @@ public abstract class KijiTableReader implements Closeable {
       EntityId stopRow, KijiRowFilter rowFilter, HBaseScanOptions scanOptions)
       throws IOException;
 
+  /**
+   * Gets a KijiRowScanner over many ranges of rows, using default options.
+   *
+   * @param dataRequest Specifies the columns of data to retrieve.
+   * @param ranges The ranges of rows to scan, in any order.  Overlapping ranges are merged.
+   * @return The KijiRowScanner.
+   * @throws IOException If there is an IO error.
+   * @throws KijiDataRequestException If the data request is invalid.
+   */
+  public KijiRowScanner getMultiRangeScanner(KijiDataRequest dataRequest,
+      List<EntityIdRange> ranges) throws IOException {
+    return getMultiRangeScanner(dataRequest, ranges, null, new HBaseScanOptions());
+  }
+
+  /**
+   * Gets a KijiRowScanner over many ranges of rows, using a KijiRowFilter and the specified
+   * HBaseScanOptions.
+   *
+   * <p>The rows of all the ranges are read with a single scanner, in row key order: the
+   * region servers seek from the end of a range directly to the start of the next one.</p>
+   *
+   * @param dataRequest Specifies the columns of data to retrieve.
+   * @param ranges The ranges of rows to scan, in any order.  Overlapping ranges are merged.
+   * @param rowFilter The KijiRowFilter to filter these results on, or null.
+   * @param scanOptions The custom scanner configuration to use.
+   * @return The KijiRowScanner.
+   * @throws IOException If there is an IO error.
+   * @throws KijiDataRequestException If the data request is invalid.
+   */
+  public abstract KijiRowScanner getMultiRangeScanner(KijiDataRequest dataRequest,
+      List<EntityIdRange> ranges, KijiRowFilter rowFilter, HBaseScanOptions scanOptions)
+      throws IOException;
+
+  /**
+   * Gets a KijiRowScanner over the rows whose FORMATTED row keys start with the specified
+   * components, using default options. The rows are read with a single range scan.
+   *
+   * @param dataRequest Specifies the columns of data to retrieve.
+   * @param componentPrefix The leading components of the row keys to scan, in order.
+   *     When the row keys are hashed, at least the first component is required.
+   * @return The KijiRowScanner.
+   * @throws IOException If there is an IO error.
+   * @throws KijiDataRequestException If the data request is invalid.
+   */
+  public KijiRowScanner getPrefixScanner(KijiDataRequest dataRequest, Object... componentPrefix)
+      throws IOException {
+    return getPrefixScanner(
+        dataRequest, Arrays.asList(componentPrefix), null, new HBaseScanOptions());
+  }
+
+  /**
+   * Gets a KijiRowScanner over the rows whose FORMATTED row keys start with the specified
+   * components, using a KijiRowFilter and the specified HBaseScanOptions.
+   *
+   * @param dataRequest Specifies the columns of data to retrieve.
+   * @param componentPrefix The leading components of the row keys to scan, in order.
+   *     When the row keys are hashed, at least the first component is required.
+   * @param rowFilter The KijiRowFilter to filter these results on, or null.
+   * @param scanOptions The custom scanner configuration to use.
+   * @return The KijiRowScanner.
+   * @throws IOException If there is an IO error.
+   * @throws KijiDataRequestException If the data request is invalid.
+   */
+  public KijiRowScanner getPrefixScanner(KijiDataRequest dataRequest,
+      List<Object> componentPrefix, KijiRowFilter rowFilter, HBaseScanOptions scanOptions)
+      throws IOException {
+    final RowKeyFormat format = getTable().getLayout().getDesc().getKeysFormat();
+    Preconditions.checkArgument(format.getEncoding() == RowKeyEncoding.FORMATTED,
+        "Prefix scans require FORMATTED row keys, got '%s'.", format);
+    final byte[] prefix = FormattedEntityId.getHBaseRowKeyPrefix(componentPrefix, format);
+    final byte[] stop = FormattedEntityId.getStopRowKey(prefix);
+    return getScanner(dataRequest,
+        (prefix.length == 0) ? null : new HBaseEntityId(prefix),
+        (null == stop) ? null : new HBaseEntityId(stop),
+        rowFilter, scanOptions);
+  }
+
+  /**
+   * Looks up the rows whose most recent value of an indexed column equals a value.
+   *
+   * <p>The candidate rows are read from the index of the column with a single prefix scan, and
+   * are then checked against the table, so rows whose cell was since overwritten or deleted are
+   * not returned.</p>
+   *
+   * @param family The family of the indexed column.
+   * @param qualifier The qualifier of the indexed column.
+   * @param value The value to look up, as a generic or specific Avro value of the column schema.
+   * @return The entity IDs of the rows holding the value, in HBase row key order.
+   * @throws IOException If there is an IO error.
+   * @throws IllegalArgumentException If the column is not indexed.
+   */
+  public abstract List<EntityId> lookupIndex(String family, String qualifier, Object value)
+      throws IOException;
+
+  /**
+   * Counts the rows of the table.
+   *
+   * @return The number of rows in the table.
+   * @throws IOException If there is an IO error.
+   */
+  public long countRows() throws IOException {
+    return countRows(EntityIdRange.between(null, null));
+  }
+
+  /**
+   * Counts the rows in a range of rows.
+   *
+   * <p>Only the row keys are sent back by the region servers, and no cell is decoded.  The
+   * regions the range spans are counted concurrently.</p>
+   *
+   * @param range The range of rows to count.
+   * @return The number of rows in the range.
+   * @throws IOException If there is an IO error.
+   */
+  public abstract long countRows(EntityIdRange range) throws IOException;
+
+  /**
+   * Scans the entity IDs of the rows in a range of rows.
+   *
+   * <p>Only the row keys are sent back by the region servers, and no cell is decoded.</p>
+   *
+   * @param range The range of rows to scan.
+   * @return A scanner over the entity IDs of the rows in the range, in row key order.
+   * @throws IOException If there is an IO error.
+   * @throws IllegalArgumentException If the range contains no row.
+   */
+  public abstract KijiEntityIdScanner scanEntityIds(EntityIdRange range) throws IOException;
+
   /**
    * Gets the KijiCellDecoderFactory to use for decoding KijiCells.
    *
@@ -366,6 +366,26 @@ public abstract class KijiTableWriter implements Closeable {
   public abstract KijiCounter increment(EntityId entityId, String family, String qualifier,
       long amount) throws IOException;
 
+  /**
+   * Adds an amount to a counter in a kiji table, without reading back the new counter value.
+   *
+   * <p>Unlike {@link #increment(EntityId, String, String, long)}, this method does not need an
+   * answer from the table, so writers may aggregate the increments to the same counter and send
+   * them later. Buffered increments are sent no later than the next call to {@link #flush()}.</p>
+   *
+   * <p>This method will throw an exception if called on a column that isn't a counter.</p>
+   *
+   * @param entityId The entity (row) that contains the counter.
+   * @param family A column family.
+   * @param qualifier A column qualifier.
+   * @param amount The amount to increment the counter (may be negative).
+   * @throws IOException If there is an IO error.
+   */
+  public void addToCounter(EntityId entityId, String family, String qualifier, long amount)
+      throws IOException {
+    increment(entityId, family, qualifier, amount);
+  }
+
   /**
    * Sets a counter value in a kiji table.
    *
@@ -421,6 +441,36 @@ public abstract class KijiTableWriter implements Closeable {
   public abstract void deleteFamily(EntityId entityId, String family, long upToTimestamp)
       throws IOException;
 
+  /**
+   * Deletes all versions of all cells in a family, in many rows.
+   *
+   * @param entityIds The entities (rows) to delete data from.
+   * @param family A column family.
+   * @throws IOException If there is an IO error.
+   */
+  public void deleteFamily(Iterable<EntityId> entityIds, String family) throws IOException {
+    deleteFamily(entityIds, family, HConstants.LATEST_TIMESTAMP);
+  }
+
+  /**
+   * Deletes all cells from a family with a timestamp less than or equal to the specified
+   * timestamp, in many rows.
+   *
+   * <p>Writers may group the deletes of many rows into fewer requests. By default, the rows
+   * are deleted from one at a time.</p>
+   *
+   * @param entityIds The entities (rows) to delete data from.
+   * @param family A column family.
+   * @param upToTimestamp A timestamp.
+   * @throws IOException If there is an IO error.
+   */
+  public void deleteFamily(Iterable<EntityId> entityIds, String family, long upToTimestamp)
+      throws IOException {
+    for (EntityId entityId : entityIds) {
+      deleteFamily(entityId, family, upToTimestamp);
+    }
+  }
+
   /**
    * Deletes all versions of all cells in a column.
    *
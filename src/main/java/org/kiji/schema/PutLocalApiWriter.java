@@ -20,10 +20,13 @@
 package org.kiji.schema;
 
 import java.io.IOException;
+import java.util.List;
 
+import org.apache.hadoop.hbase.client.HTableInterface;
 import org.apache.hadoop.hbase.client.Put;
 
 import org.kiji.schema.impl.LocalApiWriter;
+import org.kiji.schema.impl.WriteBufferBudget;
 import org.kiji.schema.layout.ColumnNameTranslator;
 
 /**
@@ -31,12 +34,19 @@ import org.kiji.schema.layout.ColumnNameTranslator;
  */
 public class PutLocalApiWriter
     extends LocalApiWriter<PutWrapper, Put> {
+  /**
+   * In write-behind mode, the HTable of the background flusher, acquired on the first flush.
+   * Only used by the flusher thread.
+   */
+  private HTableInterface mFlusherHTable;
+
   /**
    * Describes the options that can be configured on the {@link PutLocalApiWriter}.
    */
   public static class Options extends LocalApiWriter.Options<PutWrapper> {
     private KijiCellEncoder mCellEncoder;
     private ColumnNameTranslator mColumnNameTranslator;
+    private WriteBufferBudget mBufferBudget = WriteBufferBudget.getShared();
 
     /**
      * @param cellEncoder The cell encoder to use while wrapping data.
@@ -57,6 +67,16 @@ public class PutLocalApiWriter
       return this;
     }
 
+    /**
+     * @param bufferBudget The memory budget the encoded size of the buffered puts is accounted
+     *     against. Defaults to the budget shared by all the writers in the JVM.
+     * @return This object to allow chaining of setter methods.
+     */
+    public Options withBufferBudget(WriteBufferBudget bufferBudget) {
+      mBufferBudget = bufferBudget;
+      return this;
+    }
+
     /** {@inheritDoc} */
     @Override
     public Options withKijiTable(KijiTable kijiTable) {
@@ -71,6 +91,34 @@ public class PutLocalApiWriter
       return this;
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public Options withMaxBufferedBytes(long maxBufferedBytes) {
+      super.withMaxBufferedBytes(maxBufferedBytes);
+      return this;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Options withFlushIntervalMillis(long flushIntervalMillis) {
+      super.withFlushIntervalMillis(flushIntervalMillis);
+      return this;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Options withWriteBehind(boolean writeBehind) {
+      super.withWriteBehind(writeBehind);
+      return this;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Options withMaxPendingFlushes(int maxPendingFlushes) {
+      super.withMaxPendingFlushes(maxPendingFlushes);
+      return this;
+    }
+
     /** {@inheritDoc} */
     @Override
     public Options withWrapper(PutWrapper wrapper) {
@@ -105,7 +153,7 @@ public class PutLocalApiWriter
       if (null != super.getWrapper()) {
         return super.getWrapper();
       } else {
-        return new PutWrapper(mCellEncoder, mColumnNameTranslator);
+        return new PutWrapper(mCellEncoder, mColumnNameTranslator, mBufferBudget);
       }
     }
   }
@@ -128,21 +176,66 @@ public class PutLocalApiWriter
     super(original);
   }
 
+  /**
+   * Gets the HTable the puts are sent to.
+   *
+   * <p>In write-behind mode, puts are sent from the background flusher thread while the
+   * table's HTable may be used by the caller: HTables are not thread-safe, so the flusher uses
+   * its own.</p>
+   *
+   * @return The HTable the puts are sent to.
+   * @throws IOException If there is an error creating the HTable of the flusher.
+   */
+  private HTableInterface getHTable() throws IOException {
+    if (!isWriteBehind()) {
+      return getTable().getHTable();
+    }
+    if (null == mFlusherHTable) {
+      mFlusherHTable = getTable().acquireHTable();
+    }
+    return mFlusherHTable;
+  }
+
   /**
    * {@inheritDoc}
    */
   @Override
   protected void doWrite(Put wrapped) throws IOException {
-    getTable().getHTable().put(wrapped);
+    getHTable().put(wrapped);
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>Sends all the buffered puts to the HTable at once.</p>
+   */
+  @Override
+  protected void doWriteBatch(List<Put> wrapped) throws IOException {
+    getHTable().put(wrapped);
   }
 
   /**
    * {@inheritDoc}
    */
   @Override
-  public void flush() throws InterruptedException, IOException {
-    super.flush();
-    getTable().getHTable().flushCommits();
+  protected void doFlush() throws IOException {
+    getHTable().flushCommits();
     getKiji().getSchemaTable().flush();
   }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      super.close();
+    } finally {
+      // The background flusher has stopped: its HTable is no longer in use.
+      if (null != mFlusherHTable) {
+        getTable().releaseHTable(mFlusherHTable);
+        mFlusherHTable = null;
+      }
+    }
+  }
 }
@@ -28,6 +28,7 @@ import org.apache.avro.Schema;
 import org.apache.hadoop.hbase.KeyValue;
 import org.apache.hadoop.hbase.client.Put;
 
+import org.kiji.schema.impl.WriteBufferBudget;
 import org.kiji.schema.layout.ColumnNameTranslator;
 
 /**
@@ -50,6 +51,19 @@ public class PutWrapper
     super(cellEncoder, columnNameTranslator);
   }
 
+  /**
+   * Creates an instance.
+   *
+   * @param cellEncoder The cell encoder to use when wrapping data.
+   * @param columnNameTranslator The translator used to convert from Kiji column names to HBase
+   * column names.
+   * @param budget The memory budget the encoded size of the buffered data is accounted against.
+   */
+  public PutWrapper(KijiCellEncoder cellEncoder, ColumnNameTranslator columnNameTranslator,
+      WriteBufferBudget budget) {
+    super(cellEncoder, columnNameTranslator, budget);
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -20,27 +20,68 @@
 package org.kiji.schema;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.avro.Schema;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Base class for writers of Kiji data writers that use a wrapper to aid with encapsulating and
  * buffering data.
  *
+ * <p>Buffered writes are flushed when the number of buffered cells reaches
+ * {@link #getMaxBufferedWrites()}, when their encoded size reaches
+ * {@link #getMaxBufferedBytes()}, or when the memory budget the wrapper shares with other writers
+ * is exhausted and the buffer holds its share of it (see
+ * {@link org.kiji.schema.impl.WriteBufferBudget}). By default, flushes happen
+ * synchronously on the thread that triggers them. In write-behind mode (see
+ * {@link Options#withWriteBehind(boolean)}), full buffers are instead handed over to a background
+ * flusher thread, and the writing thread only blocks when too many buffers are already waiting to
+ * be flushed. In this mode, buffers are also flushed in the background once they have been
+ * pending for about {@link #getFlushIntervalMillis()} milliseconds, and any error raised by a
+ * background flush is rethrown by the next call to {@code write()}, {@link #flush()} or
+ * {@link #close()}.</p>
+ *
  * @param <WRAPPER> The {@link KijiDataWrapper} class used to wrap data elements.
  * @param <DATUM> The type of the wrapped data elements.
  */
 public abstract class WrappedDataWriter<WRAPPER extends KijiDataWrapper<DATUM>, DATUM>
     extends KijiDataWriter {
+  private static final Logger LOG = LoggerFactory.getLogger(WrappedDataWriter.class);
+
+  /** Default maximum number of buffers waiting for the background flusher. */
+  public static final int DEFAULT_MAX_PENDING_FLUSHES = 2;
+
+  /** How often an idle background flusher wakes up when no flush interval is configured. */
+  private static final long IDLE_POLL_MILLIS = 1000L;
+
   /**
    * The maximum number of writes buffered by this data writer.
    *
    * <p>Set this to 0 to disable buffering.</p>
    */
   private final int mMaxBufferedWrites;
+  /** The maximum number of encoded bytes buffered by this data writer, or 0 for no limit. */
+  private final long mMaxBufferedBytes;
+  /** Interval after which the background flusher flushes pending writes, or 0 to disable. */
+  private final long mFlushIntervalMillis;
   /** Wrapper used to wrap datum before writing it to a table. */
   private final WRAPPER mWrapper;
+  /** Background flusher used in write-behind mode, or null when flushing synchronously. */
+  private final Flusher mFlusher;
+  /**
+   * In write-behind mode, held while draining the buffer and handing it over to the flusher,
+   * so that buffers are handed over in the order they were filled. Unlike the wrapper lock,
+   * it may be held while waiting for room in the flusher queue.
+   */
+  private final ReentrantLock mHandOverLock = new ReentrantLock();
 
   /**
    * Describes the options that can be configured on the {@link WrappedDataWriter}.
@@ -49,6 +90,10 @@ public abstract class WrappedDataWriter<WRAPPER extends KijiDataWrapper<DATUM>,
    */
   public static class Options<WRAPPER extends KijiDataWrapper<?>> extends KijiDataWriter.Options {
     private int mMaxBufferedWrites;
+    private long mMaxBufferedBytes;
+    private long mFlushIntervalMillis;
+    private boolean mWriteBehind;
+    private int mMaxPendingFlushes = DEFAULT_MAX_PENDING_FLUSHES;
     private WRAPPER mWrapper;
 
     /**
@@ -61,6 +106,46 @@ public abstract class WrappedDataWriter<WRAPPER extends KijiDataWrapper<DATUM>,
       return this;
     }
 
+    /**
+     * @param maxBufferedBytes The maximum number of encoded bytes buffered by this data writer.
+     * <p>Set this to 0 to only flush based on the number of buffered writes.</p>
+     * @return This object to allow chaining of setter methods.
+     */
+    public Options<WRAPPER> withMaxBufferedBytes(long maxBufferedBytes) {
+      mMaxBufferedBytes = maxBufferedBytes;
+      return this;
+    }
+
+    /**
+     * @param flushIntervalMillis In write-behind mode, the interval after which buffered writes
+     *     are flushed even if the buffer is not full. Set this to 0 to disable time-based flushes.
+     * @return This object to allow chaining of setter methods.
+     */
+    public Options<WRAPPER> withFlushIntervalMillis(long flushIntervalMillis) {
+      mFlushIntervalMillis = flushIntervalMillis;
+      return this;
+    }
+
+    /**
+     * @param writeBehind Whether full buffers are flushed by a background thread instead of the
+     *     thread performing the write.
+     * @return This object to allow chaining of setter methods.
+     */
+    public Options<WRAPPER> withWriteBehind(boolean writeBehind) {
+      mWriteBehind = writeBehind;
+      return this;
+    }
+
+    /**
+     * @param maxPendingFlushes In write-behind mode, the number of full buffers that may wait for
+     *     the background flusher before writes block.
+     * @return This object to allow chaining of setter methods.
+     */
+    public Options<WRAPPER> withMaxPendingFlushes(int maxPendingFlushes) {
+      mMaxPendingFlushes = maxPendingFlushes;
+      return this;
+    }
+
     /**
      * @param wrapper Wrapper used to wrap datum before writing it to a table.
      * @return This object to allow chaining of setter methods.
@@ -96,6 +181,26 @@ public abstract class WrappedDataWriter<WRAPPER extends KijiDataWrapper<DATUM>,
       return mMaxBufferedWrites;
     }
 
+    /** @return The maximum number of encoded bytes buffered by this data writer. */
+    public long getMaxBufferedBytes() {
+      return mMaxBufferedBytes;
+    }
+
+    /** @return The interval after which buffered writes are flushed in write-behind mode. */
+    public long getFlushIntervalMillis() {
+      return mFlushIntervalMillis;
+    }
+
+    /** @return Whether full buffers are flushed by a background thread. */
+    public boolean isWriteBehind() {
+      return mWriteBehind;
+    }
+
+    /** @return The number of full buffers that may wait for the background flusher. */
+    public int getMaxPendingFlushes() {
+      return mMaxPendingFlushes;
+    }
+
     /** @return The wrapper used to wrap datum before writing it to a table. */
     public WRAPPER getWrapper() {
       return mWrapper;
@@ -110,7 +215,10 @@ public abstract class WrappedDataWriter<WRAPPER extends KijiDataWrapper<DATUM>,
   protected WrappedDataWriter(Options<WRAPPER> options) {
     super(options);
     mMaxBufferedWrites = options.getMaxBufferedWrites();
+    mMaxBufferedBytes = options.getMaxBufferedBytes();
+    mFlushIntervalMillis = options.getFlushIntervalMillis();
     mWrapper = options.getWrapper();
+    mFlusher = startFlusher(options.isWriteBehind(), options.getMaxPendingFlushes());
   }
 
   /**
@@ -121,7 +229,34 @@ public abstract class WrappedDataWriter<WRAPPER extends KijiDataWrapper<DATUM>,
   protected WrappedDataWriter(WrappedDataWriter<WRAPPER, DATUM> original) {
     super(original);
     mMaxBufferedWrites = original.mMaxBufferedWrites;
+    mMaxBufferedBytes = original.mMaxBufferedBytes;
+    mFlushIntervalMillis = original.mFlushIntervalMillis;
     mWrapper = original.mWrapper;
+    if (null != original.mFlusher) {
+      mFlusher = startFlusher(true, original.mFlusher.getCapacity());
+    } else {
+      mFlusher = null;
+    }
+  }
+
+  /**
+   * Starts the background flusher if write-behind is enabled.
+   *
+   * @param writeBehind Whether write-behind is enabled.
+   * @param maxPendingFlushes The number of full buffers that may wait for the flusher.
+   * @return The started flusher, or null if write-behind is disabled.
+   */
+  private Flusher startFlusher(boolean writeBehind, int maxPendingFlushes) {
+    if (!writeBehind) {
+      return null;
+    }
+    if (maxPendingFlushes < 1) {
+      throw new IllegalArgumentException(
+          "Write-behind requires at least one pending flush, got " + maxPendingFlushes);
+    }
+    final Flusher flusher = new Flusher(maxPendingFlushes);
+    flusher.start();
+    return flusher;
   }
 
   /**
@@ -134,6 +269,28 @@ public abstract class WrappedDataWriter<WRAPPER extends KijiDataWrapper<DATUM>,
     return mMaxBufferedWrites;
   }
 
+  /**
+   * @return The maximum number of encoded bytes buffered by this data writer, or 0 for no limit.
+   */
+  protected long getMaxBufferedBytes() {
+    return mMaxBufferedBytes;
+  }
+
+  /**
+   * @return The interval after which buffered writes are flushed in write-behind mode, or 0 if
+   *     time-based flushes are disabled.
+   */
+  protected long getFlushIntervalMillis() {
+    return mFlushIntervalMillis;
+  }
+
+  /**
+   * @return Whether full buffers are flushed by a background thread.
+   */
+  public boolean isWriteBehind() {
+    return null != mFlusher;
+  }
+
   /**
    * @return The wrapper used to wrap datum before writing it to a table.
    */
@@ -145,7 +302,49 @@ public abstract class WrappedDataWriter<WRAPPER extends KijiDataWrapper<DATUM>,
    * @return The number of elements in the this writer's buffer.
    */
   public int getNumBufferedElements() {
-    return mWrapper.size();
+    synchronized (mWrapper) {
+      return mWrapper.size();
+    }
+  }
+
+  /**
+   * @return Whether writes must be buffered before being sent.
+   */
+  private boolean isBuffered() {
+    return (null != mFlusher) || (mMaxBufferedWrites > 0) || (mMaxBufferedBytes > 0);
+  }
+
+  /**
+   * Reports whether the buffer has reached one of its flush thresholds. Must be called while
+   * holding the wrapper lock.
+   *
+   * @return Whether the buffer should be flushed.
+   */
+  private boolean isBufferFull() {
+    if ((mMaxBufferedWrites > 0) && (mWrapper.size() >= mMaxBufferedWrites)) {
+      return true;
+    }
+    if ((mMaxBufferedBytes > 0) && (mWrapper.getBufferedBytes() >= mMaxBufferedBytes)) {
+      return true;
+    }
+    if ((mWrapper.size() > 0) && mWrapper.isOverBudget()) {
+      // The memory budget shared with other writers is exhausted.
+      return true;
+    }
+    // A write-behind writer without any threshold hands each write over individually.
+    return (mMaxBufferedWrites <= 0) && (mMaxBufferedBytes <= 0);
+  }
+
+  /**
+   * Removes the buffered writes from the wrapper, keeping their size accounted against the memory
+   * budget until the batch is written. Must be called while holding the wrapper lock.
+   *
+   * @return The wrapped writes that were buffered.
+   * @throws IOException If the buffered writes cannot be wrapped.
+   */
+  private Batch drainBuffer() throws IOException {
+    final List<DATUM> wrapped = mWrapper.getWrapped();
+    return new Batch(wrapped, mWrapper.clearRetainingBudget());
   }
 
   /**
@@ -156,7 +355,18 @@ public abstract class WrappedDataWriter<WRAPPER extends KijiDataWrapper<DATUM>,
       Object value) throws IOException, InterruptedException {
     checkColumn(family, qualifier);
 
-    if (0 == getMaxBufferedWrites()) {
+    if (null != mFlusher) {
+      // Write-behind: buffer, and hand full buffers over to the background flusher.
+      mFlusher.rethrowError();
+      final boolean isFull;
+      synchronized (mWrapper) {
+        mWrapper.add(id, family, qualifier, schema, timestamp, value);
+        isFull = isBufferFull();
+      }
+      if (isFull) {
+        handOverBuffer();
+      }
+    } else if (!isBuffered()) {
       // No buffering.
       doWrite(mWrapper.wrap(id, family, qualifier, schema, timestamp, value));
     } else {
@@ -164,12 +374,37 @@ public abstract class WrappedDataWriter<WRAPPER extends KijiDataWrapper<DATUM>,
       mWrapper.add(id, family, qualifier, schema, timestamp, value);
 
       // Flush buffer if reached buffer size.
-      if (mWrapper.size() >= getMaxBufferedWrites()) {
+      if (isBufferFull()) {
         flush();
       }
     }
   }
 
+  /**
+   * Drains the buffer and hands it over to the background flusher, waiting while too many
+   * buffers are pending. The wrapper lock is not held while waiting, so that the flusher and
+   * the other writing threads are never blocked by a writer waiting for room in the queue.
+   *
+   * @return The number of buffers handed over so far, including this one if any.
+   * @throws IOException If the buffered writes cannot be wrapped.
+   * @throws InterruptedException If the thread is interrupted while waiting.
+   */
+  private long handOverBuffer() throws IOException, InterruptedException {
+    mHandOverLock.lock();
+    try {
+      final Batch batch;
+      synchronized (mWrapper) {
+        batch = (mWrapper.size() > 0) ? drainBuffer() : null;
+      }
+      if (null != batch) {
+        mFlusher.enqueue(batch);
+      }
+      return mFlusher.getEnqueuedCount();
+    } finally {
+      mHandOverLock.unlock();
+    }
+  }
+
   /**
    * Writes a value at the current timestamp and reports progress.
    *
@@ -182,16 +417,56 @@ public abstract class WrappedDataWriter<WRAPPER extends KijiDataWrapper<DATUM>,
    */
   protected abstract void doWrite(DATUM wrapped) throws IOException, InterruptedException;
 
+  /**
+   * Writes a batch of wrapped data elements drained from the buffer.
+   *
+   * <p>The default implementation writes the elements one by one with
+   * {@link #doWrite(Object)}. Subclasses should override this method if their output sink
+   * supports sending multiple elements at once.</p>
+   *
+   * @param wrapped The wrapped data to write out, never empty.
+   * @throws IOException If there is a problem writing.
+   * @throws InterruptedException If the thread is interrupted while writing.
+   */
+  protected void doWriteBatch(List<DATUM> wrapped) throws IOException, InterruptedException {
+    for (DATUM data : wrapped) {
+      doWrite(data);
+    }
+  }
+
+  /**
+   * Makes the data previously written with {@link #doWrite(Object)} or
+   * {@link #doWriteBatch(List)} durable, after the buffered writes have been sent.
+   *
+   * <p>In write-behind mode, this is called from the background flusher thread.</p>
+   *
+   * @throws IOException If there is a problem flushing.
+   * @throws InterruptedException If the thread is interrupted while flushing.
+   */
+  protected void doFlush() throws IOException, InterruptedException {
+    // No-op by default.
+  }
+
   /**
    * {@inheritDoc}
+   *
+   * <p>In write-behind mode, this blocks until the background flusher has written everything that
+   * was buffered before the call.</p>
    */
   @Override
   public void flush() throws InterruptedException, IOException {
+    if (null != mFlusher) {
+      mFlusher.awaitCompletion(handOverBuffer());
+      mFlusher.rethrowError();
+      return;
+    }
+
     List<DATUM> wrapped = mWrapper.getWrapped();
-    for (DATUM data : wrapped) {
-      doWrite(data);
+    if (!wrapped.isEmpty()) {
+      doWriteBatch(wrapped);
     }
     mWrapper.clear();
+    doFlush();
   }
 
   /**
@@ -205,6 +480,218 @@ public abstract class WrappedDataWriter<WRAPPER extends KijiDataWrapper<DATUM>,
       flush();
     } catch (InterruptedException e) {
       throw new IOException(e);
+    } finally {
+      if (null != mFlusher) {
+        mFlusher.shutdown();
+      }
+    }
+  }
+
+  /** Writes drained from the buffer of a write-behind writer, waiting to be written. */
+  private final class Batch {
+    /** The wrapped writes. */
+    private final List<DATUM> mWrites;
+    /** Size of the drained writes, still accounted against the memory budget. */
+    private final long mRetainedBytes;
+
+    /**
+     * Creates a batch.
+     *
+     * @param writes The wrapped writes.
+     * @param retainedBytes Size of the drained writes, still accounted against the memory budget.
+     */
+    Batch(List<DATUM> writes, long retainedBytes) {
+      mWrites = writes;
+      mRetainedBytes = retainedBytes;
+    }
+  }
+
+  /**
+   * Background thread writing the buffers handed over by a write-behind writer, in order.
+   */
+  private final class Flusher extends Thread {
+    /** Full buffers waiting to be written, bounded to apply back-pressure on writers. */
+    private final BlockingQueue<Batch> mPending;
+    /** First error raised while flushing in the background, not yet reported to the caller. */
+    private final AtomicReference<Throwable> mError = new AtomicReference<Throwable>();
+    /** Number of buffers handed over so far. Guarded by the hand-over lock. */
+    private long mEnqueued = 0;
+    /** Number of buffers written (or failed) so far. Guarded by this flusher. */
+    private long mCompleted = 0;
+    /** Marker handed over by {@link #shutdown()} to wake up an idle flusher. */
+    private final Batch mShutdownMarker = new Batch(new ArrayList<DATUM>(0), 0L);
+    /** Set when the writer is closed. */
+    private volatile boolean mShutdown = false;
+
+    /**
+     * Creates a new flusher.
+     *
+     * @param capacity Number of full buffers that may wait to be written before writers block.
+     */
+    Flusher(int capacity) {
+      super("WrappedDataWriter-flusher");
+      setDaemon(true);
+      mPending = new ArrayBlockingQueue<Batch>(capacity);
+    }
+
+    /** @return The number of full buffers that may wait to be written. */
+    int getCapacity() {
+      return mPending.size() + mPending.remainingCapacity();
+    }
+
+    /**
+     * Hands a buffer over to this flusher, blocking while too many buffers are pending.
+     * Must be called while holding the hand-over lock, so that buffers are written in order.
+     *
+     * @param batch The wrapped writes drained from the buffer.
+     * @throws InterruptedException If the thread is interrupted while waiting.
+     */
+    void enqueue(Batch batch) throws InterruptedException {
+      if (mShutdown) {
+        throw new IllegalStateException("Cannot write to a closed WrappedDataWriter.");
+      }
+      mPending.put(batch);
+      mEnqueued += 1;
+    }
+
+    /**
+     * @return The number of buffers handed over so far. Must be called holding the hand-over
+     *     lock.
+     */
+    long getEnqueuedCount() {
+      return mEnqueued;
+    }
+
+    /**
+     * Waits until a given number of buffers has been written.
+     *
+     * @param ticket Number of buffers to wait for.
+     * @throws InterruptedException If the thread is interrupted while waiting.
+     */
+    synchronized void awaitCompletion(long ticket) throws InterruptedException {
+      while (mCompleted < ticket) {
+        wait();
+      }
+    }
+
+    /**
+     * Rethrows the error raised by a previous background flush, if any.
+     *
+     * @throws IOException If a previous background flush failed.
+     */
+    void rethrowError() throws IOException {
+      final Throwable error = mError.getAndSet(null);
+      if (null != error) {
+        throw new IOException("Error while flushing buffered writes in the background", error);
+      }
+    }
+
+    /** Writes the pending buffers, then stops this flusher. */
+    void shutdown() {
+      mHandOverLock.lock();
+      try {
+        mShutdown = true;
+      } finally {
+        mHandOverLock.unlock();
+      }
+      try {
+        mPending.put(mShutdownMarker);
+        join();
+      } catch (InterruptedException ie) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void run() {
+      long pollMillis = IDLE_POLL_MILLIS;
+      if (mFlushIntervalMillis > 0) {
+        pollMillis = mFlushIntervalMillis;
+      }
+      while (!mShutdown || !mPending.isEmpty()) {
+        final Batch batch;
+        try {
+          batch = mPending.poll(pollMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ie) {
+          LOG.debug("Background flusher interrupted while waiting for buffered writes.");
+          continue;
+        }
+        if (batch == mShutdownMarker) {
+          continue;
+        } else if (null != batch) {
+          writeBatch(batch);
+        } else if ((mFlushIntervalMillis > 0) && !mShutdown) {
+          handOverExpiredBuffer();
+        }
+      }
+    }
+
+    /**
+     * Hands the current buffer over to this flusher once the flush interval has elapsed.
+     * Nothing is done if a writer is handing a buffer over in the meantime: the flusher must
+     * not wait for a writer that may itself wait for room in the queue.
+     */
+    private void handOverExpiredBuffer() {
+      if (!mHandOverLock.tryLock()) {
+        return;
+      }
+      try {
+        final Batch batch;
+        synchronized (mWrapper) {
+          batch = (!mShutdown && mPending.isEmpty() && (mWrapper.size() > 0))
+              ? drainBuffer() : null;
+        }
+        if (null != batch) {
+          // Only writers holding the hand-over lock add to the queue, so this never blocks.
+          enqueue(batch);
+        }
+      } catch (IOException ioe) {
+        recordError(ioe);
+      } catch (InterruptedException ie) {
+        LOG.debug("Background flusher interrupted while handing over expired writes.");
+      } finally {
+        mHandOverLock.unlock();
+      }
+    }
+
+    /**
+     * Writes and flushes a buffer, recording any error for the writer threads. The size of the
+     * writes is released from the memory budget once they are written.
+     *
+     * @param batch The wrapped writes to send.
+     */
+    private void writeBatch(Batch batch) {
+      try {
+        if (!batch.mWrites.isEmpty()) {
+          doWriteBatch(batch.mWrites);
+        }
+        doFlush();
+      } catch (IOException ioe) {
+        recordError(ioe);
+      } catch (InterruptedException ie) {
+        recordError(ie);
+      } catch (RuntimeException re) {
+        recordError(re);
+      } finally {
+        synchronized (mWrapper) {
+          mWrapper.releaseRetained(batch.mRetainedBytes);
+        }
+        synchronized (this) {
+          mCompleted += 1;
+          notifyAll();
+        }
+      }
+    }
+
+    /**
+     * Records an error raised by a background flush, keeping the first one.
+     *
+     * @param error The error to report on the next write or flush.
+     */
+    private void recordError(Throwable error) {
+      LOG.error("Error while flushing buffered writes in the background: " + error.getMessage());
+      mError.compareAndSet(null, error);
     }
   }
 }
@@ -0,0 +1,590 @@
+/**
+ * (c) Copyright 2012 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.kiji.schema.filter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.base.Preconditions;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.IndexedRecord;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DatumReader;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.util.Utf8;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.filter.CompareFilter.CompareOp;
+import org.apache.hadoop.hbase.filter.FilterBase;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.io.Text;
+
+import org.kiji.schema.KijiCellFormat;
+import org.kiji.schema.KijiSchemaTable.SchemaEntry;
+import org.kiji.schema.util.ByteStreamArray;
+import org.kiji.schema.util.BytesKey;
+import org.kiji.schema.util.Hasher;
+
+/**
+ * HBase filter that decodes the Avro value of a Kiji cell on the region server, and only keeps
+ * the rows where the most recent value of the column (or of a field of it) satisfies a
+ * predicate.
+ *
+ * <p>The cell header (schema hash or schema UID) is resolved against the writer schemas
+ * shipped with the filter, and the payload is decoded with the column reader schema.  Rows
+ * missing the column are filtered out, and so are rows whose most recent cell was written
+ * with a schema unknown to the filter.</p>
+ *
+ * <p>Use the {@link AvroValueRowFilter} subclasses rather than this class directly; this class
+ * must be on the classpath of the HBase region servers.</p>
+ */
+public class AvroValuePredicateFilter extends FilterBase {
+  /** Predicate operators. */
+  public static enum Operator {
+    EQUAL,
+    NOT_EQUAL,
+    LESS,
+    LESS_OR_EQUAL,
+    GREATER,
+    GREATER_OR_EQUAL,
+    RANGE,
+    IN,
+    PREFIX
+  }
+
+  /**
+   * Predicate evaluated against an Avro value.
+   *
+   * <p>Operands are Java objects that Avro can write with the schema of the value: for example
+   * a CharSequence for a string, a Long for a long, a ByteBuffer for bytes, or a record.</p>
+   */
+  public static final class Predicate {
+    private final Operator mOperator;
+    private final List<Object> mOperands;
+    private final boolean mLowerInclusive;
+    private final boolean mUpperInclusive;
+
+    /**
+     * Creates a predicate.
+     *
+     * @param operator The operator.
+     * @param operands The operands; RANGE bounds may be null.
+     * @param lowerInclusive Whether the lower bound of a RANGE is included.
+     * @param upperInclusive Whether the upper bound of a RANGE is included.
+     */
+    private Predicate(Operator operator, List<Object> operands,
+        boolean lowerInclusive, boolean upperInclusive) {
+      mOperator = operator;
+      mOperands = operands;
+      mLowerInclusive = lowerInclusive;
+      mUpperInclusive = upperInclusive;
+    }
+
+    /**
+     * Creates a predicate comparing values to an operand.
+     *
+     * @param op The comparison operator.
+     * @param operand The value to compare to.
+     * @return a comparison predicate.
+     */
+    public static Predicate compare(CompareOp op, Object operand) {
+      Preconditions.checkNotNull(operand, "Comparison operand may not be null.");
+      final Operator operator;
+      switch (op) {
+      case EQUAL: operator = Operator.EQUAL; break;
+      case NOT_EQUAL: operator = Operator.NOT_EQUAL; break;
+      case LESS: operator = Operator.LESS; break;
+      case LESS_OR_EQUAL: operator = Operator.LESS_OR_EQUAL; break;
+      case GREATER: operator = Operator.GREATER; break;
+      case GREATER_OR_EQUAL: operator = Operator.GREATER_OR_EQUAL; break;
+      default:
+        throw new IllegalArgumentException("Unsupported comparison operator: " + op);
+      }
+      return new Predicate(operator, Collections.singletonList(operand), true, true);
+    }
+
+    /**
+     * Creates a predicate matching values within a range.
+     *
+     * @param lower The lower bound, or null for no lower bound.
+     * @param lowerInclusive Whether the lower bound is included in the range.
+     * @param upper The upper bound, or null for no upper bound.
+     * @param upperInclusive Whether the upper bound is included in the range.
+     * @return a range predicate.
+     */
+    public static Predicate range(
+        Object lower, boolean lowerInclusive, Object upper, boolean upperInclusive) {
+      return new Predicate(
+          Operator.RANGE, Arrays.asList(lower, upper), lowerInclusive, upperInclusive);
+    }
+
+    /**
+     * Creates a predicate matching values in a set.
+     *
+     * @param operands The set of values to match.
+     * @return a set membership predicate.
+     */
+    public static Predicate in(Collection<?> operands) {
+      for (Object operand : operands) {
+        Preconditions.checkNotNull(operand, "Set operands may not be null.");
+      }
+      return new Predicate(Operator.IN, new ArrayList<Object>(operands), true, true);
+    }
+
+    /**
+     * Creates a predicate matching string or bytes values starting with a prefix.
+     *
+     * @param prefix The prefix to match, a CharSequence or a ByteBuffer.
+     * @return a prefix predicate.
+     */
+    public static Predicate prefix(Object prefix) {
+      Preconditions.checkNotNull(prefix, "Prefix operand may not be null.");
+      return new Predicate(Operator.PREFIX, Collections.singletonList(prefix), true, true);
+    }
+
+    /**
+     * Gets the operator of this predicate.
+     *
+     * @return the operator of this predicate.
+     */
+    public Operator getOperator() {
+      return mOperator;
+    }
+  }
+
+  // Filter configuration, shipped to the region servers:
+
+  private byte[] mFamily;
+  private byte[] mQualifier;
+  private KijiCellFormat mFormat;
+  private Schema mReaderSchema;
+  private List<SchemaEntry> mWriterSchemas;
+  private String mFieldPath;
+  private Predicate mPredicate;
+
+  // State derived from the configuration:
+
+  /** Schema of the compared value, ie. of the field at the field path in the reader schema. */
+  private Schema mValueSchema;
+
+  /** For each field in the field path: position of the field in its record. */
+  private int[] mFieldPositions;
+
+  /** Datum readers indexed by writer schema ID. */
+  private Map<Long, DatumReader<Object>> mReadersById;
+
+  /** Datum readers indexed by writer schema hash. */
+  private Map<BytesKey, DatumReader<Object>> mReadersByHash;
+
+  /** Datum reader for cells encoded without schema header, ie. with the reader schema. */
+  private DatumReader<Object> mHeaderlessReader;
+
+  /** Operands of IN predicates, as decoded Avro values. */
+  private Set<Object> mOperandSet;
+
+  /** Decoded value of a cell written with a schema unknown to this filter. */
+  private static final Object UNKNOWN_SCHEMA = new Object();
+
+  /** Reusable decoder. */
+  private BinaryDecoder mDecoder = null;
+
+  // Per-row state:
+
+  /** Whether the column has been found in the current row. */
+  private boolean mFoundColumn = false;
+
+  /** Whether the most recent value of the column in the current row satisfies the predicate. */
+  private boolean mMatches = false;
+
+  /** Empty constructor, required for Writable deserialization on the region servers. */
+  public AvroValuePredicateFilter() {
+  }
+
+  /**
+   * Creates a filter.
+   *
+   * @param family HBase family of the column.
+   * @param qualifier HBase qualifier of the column.
+   * @param format Kiji cell format of the column.
+   * @param readerSchema Reader schema of the column.
+   * @param writerSchemas Writer schemas the cells of the column may have been written with.
+   * @param fieldPath Dot-separated path of the record field to evaluate; empty for the value.
+   * @param predicate Predicate to evaluate.
+   */
+  public AvroValuePredicateFilter(byte[] family, byte[] qualifier, KijiCellFormat format,
+      Schema readerSchema, List<SchemaEntry> writerSchemas, String fieldPath,
+      Predicate predicate) {
+    mFamily = Preconditions.checkNotNull(family);
+    mQualifier = Preconditions.checkNotNull(qualifier);
+    mFormat = Preconditions.checkNotNull(format);
+    mReaderSchema = Preconditions.checkNotNull(readerSchema);
+    mWriterSchemas = new ArrayList<SchemaEntry>(writerSchemas);
+    mFieldPath = Preconditions.checkNotNull(fieldPath);
+    initialize();
+    if (predicate.mOperator == Operator.PREFIX) {
+      Preconditions.checkArgument(null != toPrefixBytes(predicate.mOperands.get(0)),
+          "Prefix operand must be a CharSequence or a ByteBuffer.");
+    }
+    // Normalize the operands into Avro generic values, as decoded on the region servers.
+    // This also fails early if the operands do not match the value schema.
+    final List<Object> operands = new ArrayList<Object>(predicate.mOperands.size());
+    for (Object operand : predicate.mOperands) {
+      try {
+        operands.add((null == operand) ? null : decodeOperand(encodeOperand(operand)));
+      } catch (IOException ioe) {
+        throw new IllegalArgumentException(ioe);
+      }
+    }
+    setPredicate(new Predicate(
+        predicate.mOperator, operands, predicate.mLowerInclusive, predicate.mUpperInclusive));
+  }
+
+  /**
+   * Sets the predicate evaluated by this filter.
+   *
+   * @param predicate Predicate with operands normalized into Avro generic values.
+   */
+  private void setPredicate(Predicate predicate) {
+    mPredicate = predicate;
+    mOperandSet = new HashSet<Object>(predicate.mOperands);
+  }
+
+  /** Derives the filter state from the filter configuration. */
+  private void initialize() {
+    // Resolve the field path against the reader schema:
+    final List<String> fieldNames = mFieldPath.isEmpty()
+        ? Collections.<String>emptyList()
+        : Arrays.asList(mFieldPath.split("\\."));
+    mFieldPositions = new int[fieldNames.size()];
+    Schema schema = mReaderSchema;
+    for (int i = 0; i < fieldNames.size(); i++) {
+      final Schema record = getRecordSchema(schema);
+      Preconditions.checkArgument(null != record,
+          "Field path '%s' traverses non-record schema: %s", mFieldPath, schema);
+      final Schema.Field field = record.getField(fieldNames.get(i));
+      Preconditions.checkArgument(null != field,
+          "Record %s has no field '%s'.", record.getFullName(), fieldNames.get(i));
+      mFieldPositions[i] = field.pos();
+      schema = field.schema();
+    }
+    mValueSchema = schema;
+
+    mReadersById = new HashMap<Long, DatumReader<Object>>();
+    mReadersByHash = new HashMap<BytesKey, DatumReader<Object>>();
+    mHeaderlessReader = new GenericDatumReader<Object>(mReaderSchema);
+    for (SchemaEntry entry : mWriterSchemas) {
+      final DatumReader<Object> reader =
+          new GenericDatumReader<Object>(entry.getSchema(), mReaderSchema);
+      mReadersById.put(entry.getId(), reader);
+      mReadersByHash.put(entry.getHash(), reader);
+    }
+  }
+
+  /**
+   * Gets the record schema of a record or of an optional record.
+   *
+   * @param schema A schema.
+   * @return the record schema, or null if the schema is neither a record nor an optional record.
+   */
+  private static Schema getRecordSchema(Schema schema) {
+    if (schema.getType() == Schema.Type.RECORD) {
+      return schema;
+    }
+    if (schema.getType() == Schema.Type.UNION) {
+      Schema record = null;
+      for (Schema branch : schema.getTypes()) {
+        if (branch.getType() == Schema.Type.RECORD) {
+          if (null != record) {
+            return null;
+          }
+          record = branch;
+        } else if (branch.getType() != Schema.Type.NULL) {
+          return null;
+        }
+      }
+      return record;
+    }
+    return null;
+  }
+
+  /**
+   * Encodes an operand with the schema of the compared values.
+   *
+   * @param operand Operand to encode.
+   * @return the Avro binary encoding of the operand.
+   */
+  private byte[] encodeOperand(Object operand) {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final BinaryEncoder encoder = EncoderFactory.get().directBinaryEncoder(bytes, null);
+    try {
+      new GenericDatumWriter<Object>(mValueSchema).write(operand, encoder);
+      encoder.flush();
+    } catch (IOException ioe) {
+      throw new IllegalArgumentException(String.format(
+          "Operand %s cannot be encoded with schema %s.", operand, mValueSchema), ioe);
+    } catch (RuntimeException re) {
+      throw new IllegalArgumentException(String.format(
+          "Operand %s cannot be encoded with schema %s.", operand, mValueSchema), re);
+    }
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Decodes an operand encoded with the schema of the compared values.
+   *
+   * @param bytes Avro binary encoding of the operand.
+   * @return the operand, as an Avro generic value.
+   * @throws IOException on decoding error.
+   */
+  private Object decodeOperand(byte[] bytes) throws IOException {
+    return new GenericDatumReader<Object>(mValueSchema)
+        .read(null, DecoderFactory.get().binaryDecoder(bytes, null));
+  }
+
+  /**
+   * Gets the bytes of a string or bytes value, for prefix matching.
+   *
+   * @param value A string or bytes value.
+   * @return the bytes of the value, or null if the value is neither a string nor bytes.
+   */
+  private static byte[] toPrefixBytes(Object value) {
+    if (value instanceof Utf8) {
+      final Utf8 utf8 = (Utf8) value;
+      return Arrays.copyOf(utf8.getBytes(), utf8.getByteLength());
+    } else if (value instanceof CharSequence) {
+      return Bytes.toBytes(value.toString());
+    } else if (value instanceof ByteBuffer) {
+      return Bytes.getBytes((ByteBuffer) value);
+    }
+    return null;
+  }
+
+  /**
+   * Decodes the value of a cell, and extracts the value at the field path.
+   *
+   * @param kv The cell to decode.
+   * @return the value at the field path, null, or UNKNOWN_SCHEMA if the cell was written with
+   *     a schema unknown to this filter.
+   * @throws IOException on decoding error.
+   */
+  private Object decodeValue(KeyValue kv) throws IOException {
+    final byte[] bytes = kv.getBuffer();
+    final ByteStreamArray stream = new ByteStreamArray(bytes, kv.getValueOffset());
+    final DatumReader<Object> reader;
+    switch (mFormat) {
+    case HASH:
+      final BytesKey hash = new BytesKey(stream.readBytes(Hasher.HASH_SIZE_BYTES));
+      reader = mReadersByHash.get(hash);
+      if (null == reader) {
+        return UNKNOWN_SCHEMA;
+      }
+      break;
+    case UID:
+      final long id = stream.readVarInt64();
+      reader = mReadersById.get(id);
+      if (null == reader) {
+        return UNKNOWN_SCHEMA;
+      }
+      break;
+    case NONE:
+      reader = mHeaderlessReader;
+      break;
+    default:
+      throw new RuntimeException("Unhandled cell format: " + mFormat);
+    }
+    final int offset = stream.getOffset();
+    mDecoder = DecoderFactory.get().binaryDecoder(
+        bytes, offset, kv.getValueOffset() + kv.getValueLength() - offset, mDecoder);
+    Object value = reader.read(null, mDecoder);
+    for (int position : mFieldPositions) {
+      if (null == value) {
+        return null;
+      }
+      value = ((IndexedRecord) value).get(position);
+    }
+    return value;
+  }
+
+  /**
+   * Evaluates the predicate against a value.
+   *
+   * @param value The value at the field path, possibly null.
+   * @return whether the value satisfies the predicate.
+   */
+  private boolean evaluate(Object value) {
+    final List<Object> operands = mPredicate.mOperands;
+    if (null == value) {
+      return mPredicate.mOperator == Operator.NOT_EQUAL;
+    }
+    switch (mPredicate.mOperator) {
+    case EQUAL: return compare(value, operands.get(0)) == 0;
+    case NOT_EQUAL: return compare(value, operands.get(0)) != 0;
+    case LESS: return compare(value, operands.get(0)) < 0;
+    case LESS_OR_EQUAL: return compare(value, operands.get(0)) <= 0;
+    case GREATER: return compare(value, operands.get(0)) > 0;
+    case GREATER_OR_EQUAL: return compare(value, operands.get(0)) >= 0;
+    case RANGE: {
+      final Object lower = operands.get(0);
+      if (null != lower) {
+        final int cmp = compare(value, lower);
+        if ((cmp < 0) || ((cmp == 0) && !mPredicate.mLowerInclusive)) {
+          return false;
+        }
+      }
+      final Object upper = operands.get(1);
+      if (null != upper) {
+        final int cmp = compare(value, upper);
+        if ((cmp > 0) || ((cmp == 0) && !mPredicate.mUpperInclusive)) {
+          return false;
+        }
+      }
+      return true;
+    }
+    case IN: return mOperandSet.contains(value);
+    case PREFIX: {
+      final byte[] bytes = toPrefixBytes(value);
+      final byte[] prefix = toPrefixBytes(operands.get(0));
+      return (null != bytes) && (bytes.length >= prefix.length)
+          && Bytes.equals(prefix, 0, prefix.length, bytes, 0, prefix.length);
+    }
+    default:
+      throw new RuntimeException("Unhandled operator: " + mPredicate.mOperator);
+    }
+  }
+
+  /**
+   * Compares a value with an operand.
+   *
+   * @param value A value.
+   * @param operand An operand.
+   * @return the comparison of the value with the operand.
+   */
+  private int compare(Object value, Object operand) {
+    return GenericData.get().compare(value, operand, mValueSchema);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void reset() {
+    mFoundColumn = false;
+    mMatches = false;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public ReturnCode filterKeyValue(KeyValue kv) {
+    if (!mFoundColumn && kv.matchingColumn(mFamily, mQualifier)) {
+      // Cells are sorted by decreasing timestamps: the first one is the most recent.
+      mFoundColumn = true;
+      try {
+        final Object value = decodeValue(kv);
+        mMatches = (UNKNOWN_SCHEMA != value) && evaluate(value);
+      } catch (IOException ioe) {
+        throw new IllegalStateException(String.format(
+            "Unable to decode cell %s: %s", kv, ioe.getMessage()), ioe);
+      }
+    }
+    return ReturnCode.INCLUDE;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean hasFilterRow() {
+    return true;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean filterRow() {
+    return !(mFoundColumn && mMatches);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void write(DataOutput out) throws IOException {
+    Bytes.writeByteArray(out, mFamily);
+    Bytes.writeByteArray(out, mQualifier);
+    Text.writeString(out, mFormat.name());
+    Text.writeString(out, mReaderSchema.toString());
+    out.writeInt(mWriterSchemas.size());
+    for (SchemaEntry entry : mWriterSchemas) {
+      out.writeLong(entry.getId());
+      Bytes.writeByteArray(out, entry.getHash().getBytes());
+      Text.writeString(out, entry.getSchema().toString());
+    }
+    Text.writeString(out, mFieldPath);
+    Text.writeString(out, mPredicate.mOperator.name());
+    out.writeBoolean(mPredicate.mLowerInclusive);
+    out.writeBoolean(mPredicate.mUpperInclusive);
+    out.writeInt(mPredicate.mOperands.size());
+    for (Object operand : mPredicate.mOperands) {
+      out.writeBoolean(null != operand);
+      if (null != operand) {
+        Bytes.writeByteArray(out, encodeOperand(operand));
+      }
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void readFields(DataInput in) throws IOException {
+    mFamily = Bytes.readByteArray(in);
+    mQualifier = Bytes.readByteArray(in);
+    mFormat = KijiCellFormat.valueOf(Text.readString(in));
+    mReaderSchema = new Schema.Parser().parse(Text.readString(in));
+    final int nwriters = in.readInt();
+    mWriterSchemas = new ArrayList<SchemaEntry>(nwriters);
+    for (int i = 0; i < nwriters; i++) {
+      final long id = in.readLong();
+      final BytesKey hash = new BytesKey(Bytes.readByteArray(in));
+      final Schema schema = new Schema.Parser().parse(Text.readString(in));
+      mWriterSchemas.add(new SchemaEntry(id, hash, schema));
+    }
+    mFieldPath = Text.readString(in);
+    initialize();
+
+    final Operator operator = Operator.valueOf(Text.readString(in));
+    final boolean lowerInclusive = in.readBoolean();
+    final boolean upperInclusive = in.readBoolean();
+    final int noperands = in.readInt();
+    final List<Object> operands = new ArrayList<Object>(noperands);
+    for (int i = 0; i < noperands; i++) {
+      operands.add(in.readBoolean() ? decodeOperand(Bytes.readByteArray(in)) : null);
+    }
+    setPredicate(new Predicate(operator, operands, lowerInclusive, upperInclusive));
+  }
+}
@@ -0,0 +1,109 @@
+/**
+ * (c) Copyright 2012 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.kiji.schema.filter;
+
+import java.io.IOException;
+
+import org.apache.avro.Schema;
+import org.apache.hadoop.hbase.filter.Filter;
+
+import org.kiji.schema.HBaseColumnName;
+import org.kiji.schema.KijiColumnName;
+import org.kiji.schema.KijiDataRequest;
+
+/**
+ * Base class for KijiRowFilters that only include rows where the most recent value of a
+ * column satisfies a predicate.
+ *
+ * <p>The values are decoded and evaluated on the region servers, by an
+ * {@link AvroValuePredicateFilter}, so only matching rows are sent back to the client.
+ * Predicates may apply to the whole value, or to a field of a record value, designated by a
+ * dot-separated path of field names (for example "address.zip_code").  Rows where the
+ * column has no value, or where a record along the field path is null, never match, except
+ * for the <code>NOT_EQUAL</code> comparison.</p>
+ *
+ * <p>Predicate operands are Java objects Avro can write with the schema of the compared
+ * value, such as a CharSequence for a string or a Long for a long.  Values are compared
+ * according to the Avro sort order of their schema.</p>
+ */
+public abstract class AvroValueRowFilter extends KijiRowFilter {
+  /** The name of the column family to check for data in. */
+  private final String mFamily;
+
+  /** The name of the column qualifier to check for data in. */
+  private final String mQualifier;
+
+  /** Dot-separated path of the record field to evaluate, or empty for the whole value. */
+  private final String mFieldPath;
+
+  /**
+   * Initializes the filter.
+   *
+   * @param family The column family of interest.
+   * @param qualifier The column qualifier of interest.
+   * @param fieldPath Dot-separated path of the record field to evaluate; null or empty to
+   *     evaluate the whole value.
+   */
+  protected AvroValueRowFilter(String family, String qualifier, String fieldPath) {
+    if (null == family || family.isEmpty()) {
+      throw new IllegalArgumentException("family is required");
+    }
+    if (null == qualifier || qualifier.isEmpty()) {
+      throw new IllegalArgumentException("qualifier is required");
+    }
+    mFamily = family;
+    mQualifier = qualifier;
+    mFieldPath = (null == fieldPath) ? "" : fieldPath;
+  }
+
+  /**
+   * Builds the predicate the value must satisfy for the row to be included.
+   *
+   * @return the predicate the value must satisfy.
+   */
+  protected abstract AvroValuePredicateFilter.Predicate getPredicate();
+
+  /** {@inheritDoc} */
+  @Override
+  public KijiDataRequest getDataRequest() {
+    return new KijiDataRequest().addColumn(new KijiDataRequest.Column(mFamily, mQualifier));
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public Filter toHBaseFilter(Context context) throws IOException {
+    final KijiColumnName column = new KijiColumnName(mFamily, mQualifier);
+    final HBaseColumnName hbaseColumnName = context.getHBaseColumnName(column);
+    final Schema readerSchema = context.getReaderSchema(column);
+    if (null == readerSchema) {
+      throw new IllegalArgumentException(String.format(
+          "Column '%s' is a counter and has no Avro value to filter on.", column));
+    }
+    return new AvroValuePredicateFilter(
+        hbaseColumnName.getFamily(),
+        hbaseColumnName.getQualifier(),
+        context.getCellFormat(column),
+        readerSchema,
+        context.getWriterSchemas(column),
+        mFieldPath,
+        getPredicate());
+  }
+}
@@ -0,0 +1,85 @@
+/**
+ * (c) Copyright 2012 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.kiji.schema.filter;
+
+import org.apache.hadoop.hbase.filter.CompareFilter.CompareOp;
+
+/**
+ * A KijiRowFilter that only includes rows where a specific column's most recent value (or a
+ * field of it) compares to a specified value with a comparison operator.
+ *
+ * <p>For example, the following filter only includes the users older than 21:
+ * <pre>
+ * new ColumnValueCompareRowFilter("info", "age", CompareOp.GREATER, 21);</pre>
+ * </p>
+ */
+public class ColumnValueCompareRowFilter extends AvroValueRowFilter {
+  /** The comparison operator. */
+  private final CompareOp mOperator;
+
+  /** The value to compare the most recent column value with. */
+  private final Object mValue;
+
+  /**
+   * Creates a new <code>ColumnValueCompareRowFilter</code> instance that compares the whole
+   * value of the column.
+   *
+   * @param family The column family of interest.
+   * @param qualifier The column qualifier of interest.
+   * @param operator The comparison operator.
+   * @param value The value to compare the most recent cell in the column with.
+   */
+  public ColumnValueCompareRowFilter(
+      String family, String qualifier, CompareOp operator, Object value) {
+    this(family, qualifier, null, operator, value);
+  }
+
+  /**
+   * Creates a new <code>ColumnValueCompareRowFilter</code> instance that compares a field of
+   * the record value of the column.
+   *
+   * @param family The column family of interest.
+   * @param qualifier The column qualifier of interest.
+   * @param fieldPath Dot-separated path of the record field to compare.
+   * @param operator The comparison operator.
+   * @param value The value to compare the field with.
+   */
+  public ColumnValueCompareRowFilter(
+      String family, String qualifier, String fieldPath, CompareOp operator, Object value) {
+    super(family, qualifier, fieldPath);
+    if (null == operator || operator == CompareOp.NO_OP) {
+      throw new IllegalArgumentException("comparison operator is required");
+    }
+    if (null == value) {
+      throw new IllegalArgumentException(
+          "value may not be null. If you want to check for column data presence, use "
+          + HasColumnDataRowFilter.class.getName());
+    }
+    mOperator = operator;
+    mValue = value;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  protected AvroValuePredicateFilter.Predicate getPredicate() {
+    return AvroValuePredicateFilter.Predicate.compare(mOperator, mValue);
+  }
+}
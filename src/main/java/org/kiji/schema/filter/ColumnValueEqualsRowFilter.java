@@ -37,6 +37,9 @@ import org.kiji.schema.KijiDataRequest;
  *
  * <p>This filter will only pass if the data in the Kiji cell matches the specified value
  * <i>exactly</i>.  Both the data and the Avro schema must be the same.</p>
+ *
+ * <p>To compare decoded values, or fields of record values, see {@link AvroValueRowFilter}
+ * and its subclasses.</p>
  */
 public class ColumnValueEqualsRowFilter extends KijiRowFilter {
   /** The name of the column family to check for data in. */
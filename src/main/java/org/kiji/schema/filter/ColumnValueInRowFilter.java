@@ -0,0 +1,58 @@
+/**
+ * (c) Copyright 2012 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.kiji.schema.filter;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A KijiRowFilter that only includes rows where a specific column's most recent value (or a
+ * field of it) is one of a set of values.
+ */
+public class ColumnValueInRowFilter extends AvroValueRowFilter {
+  /** The values the most recent column value must be one of. */
+  private final List<Object> mValues;
+
+  /**
+   * Creates a new <code>ColumnValueInRowFilter</code> instance.
+   *
+   * @param family The column family of interest.
+   * @param qualifier The column qualifier of interest.
+   * @param fieldPath Dot-separated path of the record field to check, or null for the whole
+   *     value.
+   * @param values The values the most recent cell in the column must be one of.
+   */
+  public ColumnValueInRowFilter(
+      String family, String qualifier, String fieldPath, Collection<?> values) {
+    super(family, qualifier, fieldPath);
+    if (null == values || values.isEmpty()) {
+      throw new IllegalArgumentException("values may not be null or empty");
+    }
+    mValues = new ArrayList<Object>(values);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  protected AvroValuePredicateFilter.Predicate getPredicate() {
+    return AvroValuePredicateFilter.Predicate.in(mValues);
+  }
+}
@@ -0,0 +1,55 @@
+/**
+ * (c) Copyright 2012 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.kiji.schema.filter;
+
+/**
+ * A KijiRowFilter that only includes rows where a specific column's most recent value (or a
+ * field of it) is a string or bytes starting with a prefix.
+ */
+public class ColumnValuePrefixRowFilter extends AvroValueRowFilter {
+  /** The prefix, a CharSequence or a ByteBuffer. */
+  private final Object mPrefix;
+
+  /**
+   * Creates a new <code>ColumnValuePrefixRowFilter</code> instance.
+   *
+   * @param family The column family of interest.
+   * @param qualifier The column qualifier of interest.
+   * @param fieldPath Dot-separated path of the record field to check, or null for the whole
+   *     value.
+   * @param prefix The prefix the value must start with: a CharSequence for string values, or
+   *     a ByteBuffer for bytes values.
+   */
+  public ColumnValuePrefixRowFilter(
+      String family, String qualifier, String fieldPath, Object prefix) {
+    super(family, qualifier, fieldPath);
+    if (null == prefix) {
+      throw new IllegalArgumentException("prefix may not be null");
+    }
+    mPrefix = prefix;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  protected AvroValuePredicateFilter.Predicate getPredicate() {
+    return AvroValuePredicateFilter.Predicate.prefix(mPrefix);
+  }
+}
@@ -0,0 +1,74 @@
+/**
+ * (c) Copyright 2012 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.kiji.schema.filter;
+
+/**
+ * A KijiRowFilter that only includes rows where a specific column's most recent value (or a
+ * field of it) falls within a range.
+ *
+ * <p>Either bound may be null to leave the range open on that side.</p>
+ */
+public class ColumnValueRangeRowFilter extends AvroValueRowFilter {
+  /** The lower bound of the range, or null. */
+  private final Object mLower;
+
+  /** Whether the lower bound is included in the range. */
+  private final boolean mLowerInclusive;
+
+  /** The upper bound of the range, or null. */
+  private final Object mUpper;
+
+  /** Whether the upper bound is included in the range. */
+  private final boolean mUpperInclusive;
+
+  /**
+   * Creates a new <code>ColumnValueRangeRowFilter</code> instance.
+   *
+   * @param family The column family of interest.
+   * @param qualifier The column qualifier of interest.
+   * @param fieldPath Dot-separated path of the record field to check, or null for the whole
+   *     value.
+   * @param lower The lower bound of the range, or null for no lower bound.
+   * @param lowerInclusive Whether the lower bound is included in the range.
+   * @param upper The upper bound of the range, or null for no upper bound.
+   * @param upperInclusive Whether the upper bound is included in the range.
+   */
+  public ColumnValueRangeRowFilter(String family, String qualifier, String fieldPath,
+      Object lower, boolean lowerInclusive, Object upper, boolean upperInclusive) {
+    super(family, qualifier, fieldPath);
+    if (null == lower && null == upper) {
+      throw new IllegalArgumentException(
+          "At least one bound is required. If you want to check for column data presence, use "
+          + HasColumnDataRowFilter.class.getName());
+    }
+    mLower = lower;
+    mLowerInclusive = lowerInclusive;
+    mUpper = upper;
+    mUpperInclusive = upperInclusive;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  protected AvroValuePredicateFilter.Predicate getPredicate() {
+    return AvroValuePredicateFilter.Predicate.range(
+        mLower, mLowerInclusive, mUpper, mUpperInclusive);
+  }
+}
@@ -20,13 +20,17 @@
 package org.kiji.schema.filter;
 
 import java.io.IOException;
+import java.util.List;
 
+import org.apache.avro.Schema;
 import org.apache.hadoop.hbase.filter.Filter;
 
 import org.kiji.schema.HBaseColumnName;
 import org.kiji.schema.KijiCell;
+import org.kiji.schema.KijiCellFormat;
 import org.kiji.schema.KijiColumnName;
 import org.kiji.schema.KijiDataRequest;
+import org.kiji.schema.KijiSchemaTable.SchemaEntry;
 import org.kiji.schema.NoSuchColumnException;
 
 /**
@@ -68,6 +72,55 @@ public abstract class KijiRowFilter {
      */
     public abstract byte[] getHBaseCellValue(KijiColumnName column, KijiCell<?> kijiCell)
         throws IOException;
+
+    /**
+     * Reports the cell format of a Kiji column.
+     *
+     * <p>The default implementation throws UnsupportedOperationException; contexts that
+     * support filters decoding cells on the region servers override it.</p>
+     *
+     * @param column Name of a kiji column.
+     * @return The format of the cells of the column.
+     * @throws NoSuchColumnException If there is no such column in the kiji table.
+     */
+    public KijiCellFormat getCellFormat(KijiColumnName column)
+        throws NoSuchColumnException {
+      throw new UnsupportedOperationException(
+          getClass().getName() + " does not report cell formats.");
+    }
+
+    /**
+     * Reports the Avro schema of a Kiji column, as declared in the table layout.
+     *
+     * <p>The default implementation throws UnsupportedOperationException.</p>
+     *
+     * @param column Name of a kiji column.
+     * @return The Avro schema of the column, or null for counter columns.
+     * @throws IOException If there is no such column or if the layout is invalid.
+     */
+    public Schema getReaderSchema(KijiColumnName column) throws IOException {
+      throw new UnsupportedOperationException(
+          getClass().getName() + " does not report reader schemas.");
+    }
+
+    /**
+     * Lists the schemas the cells of a Kiji column may have been written with.
+     *
+     * <p>These are the registered entries of the schema table for the schema of the column,
+     * the branches of a union schema, and the primitive types Avro promotes to them.  Filters
+     * decoding cells on the region servers ship these entries, since the region servers cannot
+     * look up the schema table.  The default implementation throws
+     * UnsupportedOperationException.</p>
+     *
+     * @param column Name of a kiji column.
+     * @return The schema table entries the cells of the column may have been written with.
+     * @throws IOException If there is an error reading the schema table.
+     */
+    public List<SchemaEntry> getWriterSchemas(KijiColumnName column)
+        throws IOException {
+      throw new UnsupportedOperationException(
+          getClass().getName() + " does not report writer schemas.");
+    }
   }
 
   /**
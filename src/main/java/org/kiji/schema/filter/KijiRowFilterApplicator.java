@@ -20,7 +20,9 @@
 package org.kiji.schema.filter;
 
 import java.io.IOException;
+import java.util.List;
 
+import org.apache.avro.Schema;
 import org.apache.hadoop.hbase.client.Scan;
 import org.apache.hadoop.hbase.util.Bytes;
 
@@ -31,8 +33,10 @@ import org.kiji.schema.KijiCellEncoder;
 import org.kiji.schema.KijiCellFormat;
 import org.kiji.schema.KijiColumnName;
 import org.kiji.schema.KijiSchemaTable;
+import org.kiji.schema.KijiSchemaTable.SchemaEntry;
 import org.kiji.schema.NoSuchColumnException;
 import org.kiji.schema.impl.HBaseDataRequestAdapter;
+import org.kiji.schema.impl.KijiTableResources;
 import org.kiji.schema.layout.ColumnNameTranslator;
 import org.kiji.schema.layout.InvalidLayoutException;
 import org.kiji.schema.layout.KijiTableLayout;
@@ -51,6 +55,9 @@ public class KijiRowFilterApplicator {
   /** The layout of the table the row filter will be applied to. */
   private final KijiTableLayout mTableLayout;
 
+  /** The translators and column metadata derived from the table layout. */
+  private final KijiTableResources mResources;
+
   /**
    * An implementation of KijiRowFilter.Context that translates kiji entityIds, column
    * names, and cell values to their HBase counterparts.
@@ -89,8 +96,25 @@ public class KijiRowFilterApplicator {
     @Override
     public byte[] getHBaseCellValue(KijiColumnName column, KijiCell<?> kijiCell)
         throws IOException {
-      final KijiCellFormat format = mColumnNameTranslator.getTableLayout().getCellFormat(column);
-      return mCellEncoder.encode(kijiCell, format);
+      return mCellEncoder.encode(kijiCell, mResources.getColumnMetadata(column).getCellFormat());
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public KijiCellFormat getCellFormat(KijiColumnName column) throws NoSuchColumnException {
+      return mTableLayout.getCellFormat(column);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Schema getReaderSchema(KijiColumnName column) throws IOException {
+      return mResources.getColumnMetadata(column).getSchema();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public List<SchemaEntry> getWriterSchemas(KijiColumnName column) throws IOException {
+      return mResources.getColumnMetadata(column).getWriterSchemas(mSchemaTable);
     }
   }
 
@@ -106,6 +130,7 @@ public class KijiRowFilterApplicator {
     mRowFilter = rowFilter;
     mSchemaTable = schemaTable;
     mTableLayout = tableLayout;
+    mResources = KijiTableResources.forLayout(tableLayout);
   }
 
   /**
@@ -128,7 +153,7 @@ public class KijiRowFilterApplicator {
 
     // Set the filter.
     KijiRowFilter.Context context = new KijiRowFilterContext(
-        new ColumnNameTranslator(mTableLayout), new KijiCellEncoder(mSchemaTable));
+        mResources.getColumnNameTranslator(), new KijiCellEncoder(mSchemaTable));
     scan.setFilter(mRowFilter.toHBaseFilter(context));
   }
 }
@@ -0,0 +1,305 @@
+/**
+ * (c) Copyright 2012 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.kiji.schema.filter;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import com.google.common.base.Preconditions;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.filter.FilterBase;
+import org.apache.hadoop.hbase.util.Bytes;
+
+/**
+ * HBase filter that only includes the rows within a set of row key ranges, and seeks directly
+ * from the end of a range to the start of the next one.
+ *
+ * <p>The ranges are sorted, and overlapping or adjacent ranges are merged, when the filter is
+ * created.  Once the scan moves past the last range, the filter ends the scan.</p>
+ */
+public class MultiRowRangeFilter extends FilterBase {
+  /** A range of HBase row keys. */
+  public static final class RowRange {
+    /** Inclusive start row key; empty for the first row of the table. */
+    private final byte[] mStart;
+
+    /** Exclusive stop row key; empty for the end of the table. */
+    private final byte[] mStop;
+
+    /**
+     * Creates a row key range.
+     *
+     * @param start Inclusive start row key; null or empty for the first row of the table.
+     * @param stop Exclusive stop row key; null or empty for the end of the table.
+     */
+    public RowRange(byte[] start, byte[] stop) {
+      mStart = (null == start) ? HConstants.EMPTY_START_ROW : start;
+      mStop = (null == stop) ? HConstants.EMPTY_END_ROW : stop;
+    }
+
+    /**
+     * Gets the inclusive start row key.
+     *
+     * @return the inclusive start row key; empty for the first row of the table.
+     */
+    public byte[] getStart() {
+      return mStart;
+    }
+
+    /**
+     * Gets the exclusive stop row key.
+     *
+     * @return the exclusive stop row key; empty for the end of the table.
+     */
+    public byte[] getStop() {
+      return mStop;
+    }
+
+    /**
+     * Reports whether this range extends to the end of the table.
+     *
+     * @return whether this range extends to the end of the table.
+     */
+    public boolean isUnbounded() {
+      return mStop.length == 0;
+    }
+
+    /**
+     * Reports whether this range contains no row key.
+     *
+     * @return whether this range contains no row key.
+     */
+    public boolean isEmpty() {
+      return !isUnbounded() && (Bytes.compareTo(mStart, mStop) >= 0);
+    }
+
+    /**
+     * Compares a row key with the stop row key of this range.
+     *
+     * @param buffer Buffer containing the row key.
+     * @param offset Offset of the row key in the buffer.
+     * @param length Length of the row key.
+     * @return whether the row key is before the end of this range.
+     */
+    private boolean isBeforeStop(byte[] buffer, int offset, int length) {
+      return isUnbounded() || (Bytes.compareTo(buffer, offset, length, mStop, 0, mStop.length) < 0);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+      return String.format("[%s, %s)",
+          Bytes.toStringBinary(mStart), isUnbounded() ? "END" : Bytes.toStringBinary(mStop));
+    }
+  }
+
+  /** Orders row ranges by start row key. */
+  private static final Comparator<RowRange> START_COMPARATOR = new Comparator<RowRange>() {
+    /** {@inheritDoc} */
+    @Override
+    public int compare(RowRange a, RowRange b) {
+      return Bytes.compareTo(a.getStart(), b.getStart());
+    }
+  };
+
+  /** Sorted, disjoint and non-adjacent row key ranges. */
+  private List<RowRange> mRanges;
+
+  /** Index of the first range that does not end before the current row. */
+  private int mIndex = 0;
+
+  /** Whether the current row is within a range. */
+  private boolean mInRange = false;
+
+  /** Whether the scan has moved past the last range. */
+  private boolean mDone = false;
+
+  /** Empty constructor, required for Writable deserialization on the region servers. */
+  public MultiRowRangeFilter() {
+  }
+
+  /**
+   * Creates a filter over a set of row key ranges.
+   *
+   * @param ranges The row key ranges to include, in any order.  Must not be empty.
+   */
+  public MultiRowRangeFilter(List<RowRange> ranges) {
+    mRanges = sortAndMerge(ranges);
+    Preconditions.checkArgument(!mRanges.isEmpty(), "At least one non-empty range is required.");
+  }
+
+  /**
+   * Sorts row key ranges, drops the empty ones, and merges the overlapping or adjacent ones.
+   *
+   * @param ranges Row key ranges, in any order.
+   * @return the equivalent sorted list of disjoint, non-adjacent and non-empty ranges.
+   */
+  public static List<RowRange> sortAndMerge(List<RowRange> ranges) {
+    final List<RowRange> sorted = new ArrayList<RowRange>(ranges.size());
+    for (RowRange range : ranges) {
+      if (!range.isEmpty()) {
+        sorted.add(range);
+      }
+    }
+    Collections.sort(sorted, START_COMPARATOR);
+
+    final List<RowRange> merged = new ArrayList<RowRange>(sorted.size());
+    RowRange current = null;
+    for (RowRange range : sorted) {
+      if (null == current) {
+        current = range;
+      } else if (current.isUnbounded()) {
+        break;
+      } else if (Bytes.compareTo(range.getStart(), current.getStop()) <= 0) {
+        if (range.isUnbounded() || (Bytes.compareTo(range.getStop(), current.getStop()) > 0)) {
+          current = new RowRange(current.getStart(), range.getStop());
+        }
+      } else {
+        merged.add(current);
+        current = range;
+      }
+    }
+    if (null != current) {
+      merged.add(current);
+    }
+    return merged;
+  }
+
+  /**
+   * Splits sorted and disjoint row key ranges at split keys, typically the start keys of the
+   * regions of a table, so that each resulting range can be scanned independently.
+   *
+   * @param ranges Sorted, disjoint and non-empty row key ranges, as returned by sortAndMerge().
+   * @param splitKeys Row keys to split the ranges at, in any order.  Empty keys are ignored.
+   * @return the sorted ranges, none of which contains a split key other than as its start.
+   */
+  public static List<RowRange> splitAt(List<RowRange> ranges, List<byte[]> splitKeys) {
+    final List<byte[]> sortedKeys = new ArrayList<byte[]>(splitKeys);
+    Collections.sort(sortedKeys, Bytes.BYTES_COMPARATOR);
+
+    final List<RowRange> split = new ArrayList<RowRange>(ranges.size() + sortedKeys.size());
+    for (RowRange range : ranges) {
+      byte[] start = range.getStart();
+      for (byte[] key : sortedKeys) {
+        if ((key.length == 0) || (Bytes.compareTo(key, start) <= 0)) {
+          continue;
+        }
+        if (!range.isBeforeStop(key, 0, key.length)) {
+          break;
+        }
+        split.add(new RowRange(start, key));
+        start = key;
+      }
+      split.add(new RowRange(start, range.getStop()));
+    }
+    return split;
+  }
+
+  /**
+   * Gets the sorted and merged ranges of this filter.
+   *
+   * @return the sorted and merged ranges of this filter.
+   */
+  public List<RowRange> getRanges() {
+    return Collections.unmodifiableList(mRanges);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean filterRowKey(byte[] buffer, int offset, int length) {
+    // Rows are scanned in order: ranges ending before the current row are never needed again.
+    // Binary search the first range that does not end before the current row.
+    int low = mIndex;
+    int high = mRanges.size();
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+      if (mRanges.get(mid).isBeforeStop(buffer, offset, length)) {
+        high = mid;
+      } else {
+        low = mid + 1;
+      }
+    }
+    mIndex = low;
+    if (mIndex == mRanges.size()) {
+      mDone = true;
+      return true;
+    }
+    final byte[] start = mRanges.get(mIndex).getStart();
+    mInRange = Bytes.compareTo(buffer, offset, length, start, 0, start.length) >= 0;
+    // Rows before the next range are not filtered out here, so filterKeyValue() may seek.
+    return false;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public ReturnCode filterKeyValue(KeyValue kv) {
+    return mInRange ? ReturnCode.INCLUDE : ReturnCode.SEEK_NEXT_USING_HINT;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public KeyValue getNextKeyHint(KeyValue currentKV) {
+    return KeyValue.createFirstOnRow(mRanges.get(mIndex).getStart());
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean filterAllRemaining() {
+    return mDone;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void write(DataOutput out) throws IOException {
+    out.writeInt(mRanges.size());
+    for (RowRange range : mRanges) {
+      Bytes.writeByteArray(out, range.getStart());
+      Bytes.writeByteArray(out, range.getStop());
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void readFields(DataInput in) throws IOException {
+    final int nranges = in.readInt();
+    mRanges = new ArrayList<RowRange>(nranges);
+    for (int i = 0; i < nranges; i++) {
+      final byte[] start = Bytes.readByteArray(in);
+      final byte[] stop = Bytes.readByteArray(in);
+      mRanges.add(new RowRange(start, stop));
+    }
+    mIndex = 0;
+    mInRange = false;
+    mDone = false;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String toString() {
+    return String.format("%s %s", getClass().getSimpleName(), mRanges);
+  }
+}
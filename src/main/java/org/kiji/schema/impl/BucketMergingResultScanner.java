@@ -0,0 +1,339 @@
+/**
+ * (c) Copyright 2012 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.kiji.schema.impl;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+
+import com.google.common.base.Preconditions;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.util.Bytes;
+
+/**
+ * Merges the scanners of the salt buckets of a table into a single scanner over the rows in
+ * Kiji row key order.
+ *
+ * <p>The buckets are fetched from HBase in parallel by a shared executor, in chunks of up to
+ * the prefetch size.  A fetch never blocks: the next chunk of a bucket is only requested once
+ * the merge has consumed half of its prefetched rows, so that a bounded executor shared by
+ * many scans cannot deadlock.  Rows are then merge-sorted by Kiji row key,
+ * ie. by HBase row key after the salt prefix.  Since the salt is a function of the Kiji row
+ * key, a given row only ever appears in one bucket.</p>
+ */
+final class BucketMergingResultScanner implements ResultScanner {
+  /** Default maximum number of rows fetched at once from a bucket. */
+  public static final int DEFAULT_PREFETCH_SIZE = 100;
+
+  /** Marks the end of a bucket scanner in its queue. */
+  private static final Object END_OF_BUCKET = new Object();
+
+  /** Orders the heads of the buckets by Kiji row key. */
+  private static final Comparator<Head> KIJI_ROW_KEY_ORDER = new Comparator<Head>() {
+    @Override
+    public int compare(Head a, Head b) {
+      final byte[] aRow = a.mResult.getRow();
+      final byte[] bRow = b.mResult.getRow();
+      return Bytes.compareTo(
+          aRow, SaltedEntityId.SALT_SIZE, aRow.length - SaltedEntityId.SALT_SIZE,
+          bRow, SaltedEntityId.SALT_SIZE, bRow.length - SaltedEntityId.SALT_SIZE);
+    }
+  };
+
+  /** Next row of a bucket, as considered by the merge. */
+  private static final class Head {
+    private final Result mResult;
+    private final int mBucket;
+
+    /**
+     * Creates a new bucket head.
+     *
+     * @param result Next row of the bucket.
+     * @param bucket Index of the bucket.
+     */
+    private Head(Result result, int bucket) {
+      mResult = result;
+      mBucket = bucket;
+    }
+  }
+
+  /**
+   * Fetches the rows of a bucket into its queue, one chunk at a time, and closes the bucket
+   * scanner once it is exhausted or the merge is closed.  The end of the bucket and failures
+   * are forwarded through the queue to the merge.
+   */
+  private final class Bucket implements Runnable {
+    private final ResultScanner mScanner;
+    private final BlockingQueue<Object> mQueue = new LinkedBlockingQueue<Object>();
+
+    /** Whether a chunk is being fetched. Guarded by this. */
+    private boolean mFetching = false;
+
+    /** Whether the bucket is exhausted, failed or closed. Guarded by this. */
+    private boolean mDone = false;
+
+    /** Whether the bucket scanner is closed. Guarded by this. */
+    private boolean mScannerClosed = false;
+
+    /**
+     * Creates a bucket.
+     *
+     * @param scanner Scanner over the bucket.
+     */
+    private Bucket(ResultScanner scanner) {
+      mScanner = scanner;
+    }
+
+    /** Requests the next chunk of rows, unless enough rows are prefetched already. */
+    private void fetchIfNeeded() {
+      synchronized (this) {
+        if (mDone || mFetching || (mQueue.size() >= mRefetchThreshold)) {
+          return;
+        }
+        mFetching = true;
+      }
+      try {
+        mExecutor.execute(this);
+      } catch (RejectedExecutionException ree) {
+        synchronized (this) {
+          mFetching = false;
+          mDone = true;
+          closeScanner();
+        }
+        mQueue.add(new IOException("Unable to schedule the scan of a bucket.", ree));
+      }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void run() {
+      Object end = null;
+      try {
+        for (int i = 0; i < mPrefetchSize; i++) {
+          synchronized (this) {
+            if (mDone) {
+              // The merging scanner has been closed.
+              return;
+            }
+          }
+          final Result result = mScanner.next();
+          if (null == result) {
+            end = END_OF_BUCKET;
+            break;
+          }
+          mQueue.add(result);
+        }
+      } catch (IOException ioe) {
+        end = ioe;
+      } catch (RuntimeException re) {
+        end = new IOException(re);
+      } finally {
+        synchronized (this) {
+          mFetching = false;
+          if (null != end) {
+            mDone = true;
+          }
+          if (mDone) {
+            closeScanner();
+          }
+        }
+        if (null != end) {
+          mQueue.add(end);
+        }
+      }
+    }
+
+    /** Stops fetching the bucket, and closes its scanner unless a chunk is being fetched. */
+    private synchronized void close() {
+      mDone = true;
+      if (!mFetching) {
+        closeScanner();
+      }
+    }
+
+    /** Closes the bucket scanner, unless it is already closed. */
+    private synchronized void closeScanner() {
+      if (!mScannerClosed) {
+        mScannerClosed = true;
+        mScanner.close();
+      }
+    }
+  }
+
+  /** The buckets to merge. */
+  private final List<Bucket> mBuckets;
+
+  /** Runs the bucket fetches. */
+  private final Executor mExecutor;
+
+  /** Maximum number of rows fetched at once from a bucket. */
+  private final int mPrefetchSize;
+
+  /** Number of prefetched rows of a bucket below which its next chunk is fetched. */
+  private final int mRefetchThreshold;
+
+  /** Next row of each bucket that is not exhausted yet. */
+  private final PriorityQueue<Head> mHeads;
+
+  /** Whether the heads of the buckets have been fetched yet. */
+  private boolean mStarted = false;
+
+  /**
+   * Creates a scanner merging the specified bucket scanners.
+   *
+   * @param bucketScanners Scanners over the salt buckets; each one is closed once drained.
+   * @param prefetchSize Maximum number of rows fetched at once from a bucket.
+   * @param executor Executor fetching the buckets, usually shared by the scans of a Kiji
+   *     instance. It must queue the tasks it cannot run immediately.
+   */
+  public BucketMergingResultScanner(
+      List<ResultScanner> bucketScanners, int prefetchSize, Executor executor) {
+    Preconditions.checkArgument(!bucketScanners.isEmpty(), "No bucket scanner to merge.");
+    Preconditions.checkArgument(prefetchSize > 0, "Invalid prefetch size: %s.", prefetchSize);
+    mExecutor = Preconditions.checkNotNull(executor);
+    mPrefetchSize = prefetchSize;
+    mRefetchThreshold = Math.max(1, prefetchSize / 2);
+    mBuckets = new ArrayList<Bucket>(bucketScanners.size());
+    mHeads = new PriorityQueue<Head>(bucketScanners.size(), KIJI_ROW_KEY_ORDER);
+    for (ResultScanner scanner : bucketScanners) {
+      mBuckets.add(new Bucket(scanner));
+    }
+    for (Bucket bucket : mBuckets) {
+      bucket.fetchIfNeeded();
+    }
+  }
+
+  /**
+   * Takes the next row of a bucket.
+   *
+   * @param bucket Index of the bucket.
+   * @return the next row of the bucket, or null if the bucket is exhausted.
+   * @throws IOException If the bucket scanner failed.
+   */
+  private Result takeNext(int bucket) throws IOException {
+    final Bucket fetched = mBuckets.get(bucket);
+    fetched.fetchIfNeeded();
+    final Object next;
+    try {
+      next = fetched.mQueue.take();
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while scanning bucket " + bucket);
+    }
+    if (next == END_OF_BUCKET) {
+      return null;
+    } else if (next instanceof IOException) {
+      throw (IOException) next;
+    }
+    return (Result) next;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public Result next() throws IOException {
+    if (!mStarted) {
+      for (int bucket = 0; bucket < mBuckets.size(); bucket++) {
+        final Result result = takeNext(bucket);
+        if (result != null) {
+          mHeads.add(new Head(result, bucket));
+        }
+      }
+      mStarted = true;
+    }
+    final Head head = mHeads.poll();
+    if (head == null) {
+      return null;
+    }
+    final Result next = takeNext(head.mBucket);
+    if (next != null) {
+      mHeads.add(new Head(next, head.mBucket));
+    }
+    return head.mResult;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public Result[] next(int nbRows) throws IOException {
+    final List<Result> results = new ArrayList<Result>(nbRows);
+    for (int i = 0; i < nbRows; i++) {
+      final Result result = next();
+      if (result == null) {
+        break;
+      }
+      results.add(result);
+    }
+    return results.toArray(new Result[results.size()]);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void close() {
+    // Buckets being fetched close their scanner once their current chunk is fetched.
+    for (Bucket bucket : mBuckets) {
+      bucket.close();
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public Iterator<Result> iterator() {
+    return new Iterator<Result>() {
+      private Result mNext = null;
+
+      @Override
+      public boolean hasNext() {
+        if (mNext == null) {
+          try {
+            mNext = BucketMergingResultScanner.this.next();
+          } catch (IOException ioe) {
+            throw new RuntimeException(ioe);
+          }
+        }
+        return mNext != null;
+      }
+
+      @Override
+      public Result next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        final Result next = mNext;
+        mNext = null;
+        return next;
+      }
+
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    };
+  }
+}
@@ -0,0 +1,361 @@
+/**
+ * (c) Copyright 2012 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.kiji.schema.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import org.kiji.schema.EntityId;
+import org.kiji.schema.avro.RowKeyComponent;
+import org.kiji.schema.avro.RowKeyEncoding;
+import org.kiji.schema.avro.RowKeyFormat;
+
+/**
+ * Implements the formatted row key format.
+ *
+ * <p>The Kiji row key is the concatenation of the encoded components, in order:
+ *   <ul>
+ *     <li>STRING components are UTF-8 encoded and terminated by a zero byte,</li>
+ *     <li>INTEGER and LONG components are big-endian, with their sign bit flipped.</li>
+ *   </ul>
+ * The encoding preserves the order of the components, so that all the rows sharing a prefix
+ * of components are stored contiguously. The HBase row key is prefixed by the first
+ * <code>hash_size</code> bytes of the hash of the encoded first component, if any.</p>
+ */
+public final class FormattedEntityId extends EntityId {
+  /** Terminator of the STRING components. */
+  private static final byte STRING_TERMINATOR = 0;
+
+  /** Separator of the components in the text form of a row key. */
+  private static final String TEXT_SEPARATOR = ",";
+
+  private final RowKeyFormat mFormat;
+
+  /** Kiji row key bytes. */
+  private final byte[] mKijiRowKey;
+
+  /** HBase row key bytes. */
+  private final byte[] mHBaseRowKey;
+
+  /** Decoded components of the row key. */
+  private final List<Object> mComponents;
+
+  /**
+   * Creates a FormattedEntityId from the components of a row key.
+   *
+   * @param components The components of the row key, one per component of the format.
+   * @param format Row key format.
+   * @return a new FormattedEntityId with the specified components.
+   */
+  public static FormattedEntityId fromComponents(List<Object> components, RowKeyFormat format) {
+    checkFormat(format);
+    Preconditions.checkArgument(components.size() == format.getComponents().size(),
+        "Expecting %s row key components, got %s.", format.getComponents().size(), components);
+    final byte[] kijiRowKey = encodeComponents(components, format);
+    return new FormattedEntityId(kijiRowKey, toHBaseRowKey(kijiRowKey, components, format),
+        components, format);
+  }
+
+  /**
+   * Creates a FormattedEntityId from the text form of a row key.
+   *
+   * <p>The text form is made of the components, in order, separated by commas. INTEGER and LONG
+   * components are written in decimal. Only the last component may contain commas when it is
+   * a STRING. A format with a single STRING component therefore takes the text as is.</p>
+   *
+   * @param text The text form of the row key.
+   * @param format Row key format.
+   * @return a new FormattedEntityId with the parsed components.
+   * @throws IllegalArgumentException If the text does not match the format.
+   */
+  public static FormattedEntityId fromText(String text, RowKeyFormat format) {
+    checkFormat(format);
+    final List<RowKeyComponent> specs = format.getComponents();
+    final String[] fields = text.split(TEXT_SEPARATOR, specs.size());
+    Preconditions.checkArgument(fields.length == specs.size(),
+        "Expecting %s comma-separated row key components, got '%s'.", specs.size(), text);
+    final List<Object> components = Lists.newArrayList();
+    for (int i = 0; i < fields.length; i++) {
+      final RowKeyComponent spec = specs.get(i);
+      try {
+        switch (spec.getType()) {
+        case STRING:
+          components.add(fields[i]);
+          break;
+        case INTEGER:
+          components.add(Integer.parseInt(fields[i].trim()));
+          break;
+        case LONG:
+          components.add(Long.parseLong(fields[i].trim()));
+          break;
+        default:
+          throw new RuntimeException("Unexpected row key component type: " + spec.getType());
+        }
+      } catch (NumberFormatException nfe) {
+        throw new IllegalArgumentException(String.format(
+            "Row key component '%s' must be a %s: '%s'.",
+            spec.getName(), spec.getType(), fields[i]), nfe);
+      }
+    }
+    return fromComponents(components, format);
+  }
+
+  /**
+   * Creates a FormattedEntityId from the specified Kiji row key.
+   *
+   * @param kijiRowKey Kiji row key, ie. the encoded components.
+   * @param format Row key format.
+   * @return a new FormattedEntityId with the specified Kiji row key.
+   */
+  public static FormattedEntityId fromKijiRowKey(byte[] kijiRowKey, RowKeyFormat format) {
+    checkFormat(format);
+    final List<Object> components = decodeComponents(kijiRowKey, format);
+    return new FormattedEntityId(kijiRowKey, toHBaseRowKey(kijiRowKey, components, format),
+        components, format);
+  }
+
+  /**
+   * Creates a FormattedEntityId from the specified HBase row key.
+   *
+   * @param hbaseRowKey HBase row key.
+   * @param format Row key format.
+   * @return a new FormattedEntityId with the specified HBase row key.
+   */
+  public static FormattedEntityId fromHBaseRowKey(byte[] hbaseRowKey, RowKeyFormat format) {
+    checkFormat(format);
+    final byte[] kijiRowKey =
+        Arrays.copyOfRange(hbaseRowKey, format.getHashSize(), hbaseRowKey.length);
+    return new FormattedEntityId(
+        kijiRowKey, hbaseRowKey, decodeComponents(kijiRowKey, format), format);
+  }
+
+  /**
+   * Gets the prefix shared by the HBase row keys of all the rows whose leading components
+   * are the specified ones.
+   *
+   * @param prefix The leading components of the row keys; at least the first one when the
+   *     row keys are hashed.
+   * @param format Row key format.
+   * @return The HBase row key prefix of the rows.
+   */
+  public static byte[] getHBaseRowKeyPrefix(List<Object> prefix, RowKeyFormat format) {
+    checkFormat(format);
+    Preconditions.checkArgument(prefix.size() <= format.getComponents().size(),
+        "Too many row key components: %s.", prefix);
+    Preconditions.checkArgument(!prefix.isEmpty() || (0 == format.getHashSize()),
+        "The first row key component is required when it is hashed.");
+    return toHBaseRowKey(encodeComponents(prefix, format), prefix, format);
+  }
+
+  /**
+   * Gets the smallest row key larger than all the row keys starting with a prefix.
+   *
+   * @param prefix The row key prefix.
+   * @return The row key to stop a scan of the prefix at, or null if the scan must go on
+   *     until the end of the table.
+   */
+  public static byte[] getStopRowKey(byte[] prefix) {
+    for (int i = prefix.length - 1; i >= 0; i--) {
+      if (prefix[i] != (byte) 0xFF) {
+        final byte[] stop = Arrays.copyOf(prefix, i + 1);
+        stop[i]++;
+        return stop;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Checks that a row key format is a valid formatted row key format.
+   *
+   * @param format Row key format.
+   * @throws IllegalArgumentException If the format is not valid.
+   */
+  public static void checkFormat(RowKeyFormat format) {
+    Preconditions.checkNotNull(format);
+    Preconditions.checkArgument(format.getEncoding() == RowKeyEncoding.FORMATTED);
+    Preconditions.checkArgument(!format.getComponents().isEmpty(),
+        "Formatted row key format requires components: '%s'.", format);
+    if (format.getHashSize() > 0) {
+      Preconditions.checkArgument(null != format.getHashType(),
+          "Hashed row key format requires a hash type: '%s'.", format);
+      Preconditions.checkArgument(
+          format.getHashSize() <= RowKeyHasher.getHashSize(format.getHashType()),
+          "Hash prefix size is larger than the %s hash: '%s'.", format.getHashType(), format);
+    }
+  }
+
+  /**
+   * Encodes leading components of a row key.
+   *
+   * @param components The leading components of the row key.
+   * @param format Row key format.
+   * @return The encoded components.
+   */
+  private static byte[] encodeComponents(List<Object> components, RowKeyFormat format) {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    for (int i = 0; i < components.size(); i++) {
+      final RowKeyComponent spec = format.getComponents().get(i);
+      final Object component = components.get(i);
+      Preconditions.checkNotNull(component, "Row key component '%s' is null.", spec.getName());
+      final byte[] bytes;
+      switch (spec.getType()) {
+      case STRING:
+        Preconditions.checkArgument(component instanceof CharSequence,
+            "Row key component '%s' must be a string: %s.", spec.getName(), component);
+        bytes = Bytes.toBytes(component.toString());
+        for (byte b : bytes) {
+          Preconditions.checkArgument(b != STRING_TERMINATOR,
+              "Row key component '%s' contains a NUL character.", spec.getName());
+        }
+        out.write(bytes, 0, bytes.length);
+        out.write(STRING_TERMINATOR);
+        break;
+      case INTEGER:
+        Preconditions.checkArgument(component instanceof Integer,
+            "Row key component '%s' must be an integer: %s.", spec.getName(), component);
+        bytes = Bytes.toBytes((Integer) component ^ Integer.MIN_VALUE);
+        out.write(bytes, 0, bytes.length);
+        break;
+      case LONG:
+        Preconditions.checkArgument(
+            (component instanceof Long) || (component instanceof Integer),
+            "Row key component '%s' must be a long: %s.", spec.getName(), component);
+        bytes = Bytes.toBytes(((Number) component).longValue() ^ Long.MIN_VALUE);
+        out.write(bytes, 0, bytes.length);
+        break;
+      default:
+        throw new RuntimeException("Unexpected row key component type: " + spec.getType());
+      }
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * Decodes the components of a row key.
+   *
+   * @param kijiRowKey The encoded components.
+   * @param format Row key format.
+   * @return The components of the row key.
+   */
+  private static List<Object> decodeComponents(byte[] kijiRowKey, RowKeyFormat format) {
+    final List<Object> components = Lists.newArrayList();
+    int offset = 0;
+    for (RowKeyComponent spec : format.getComponents()) {
+      switch (spec.getType()) {
+      case STRING:
+        int end = offset;
+        while ((end < kijiRowKey.length) && (kijiRowKey[end] != STRING_TERMINATOR)) {
+          end++;
+        }
+        Preconditions.checkArgument(end < kijiRowKey.length,
+            "Unterminated row key component '%s'.", spec.getName());
+        components.add(Bytes.toString(kijiRowKey, offset, end - offset));
+        offset = end + 1;
+        break;
+      case INTEGER:
+        Preconditions.checkArgument(offset + Bytes.SIZEOF_INT <= kijiRowKey.length,
+            "Truncated row key component '%s'.", spec.getName());
+        components.add(Bytes.toInt(kijiRowKey, offset) ^ Integer.MIN_VALUE);
+        offset += Bytes.SIZEOF_INT;
+        break;
+      case LONG:
+        Preconditions.checkArgument(offset + Bytes.SIZEOF_LONG <= kijiRowKey.length,
+            "Truncated row key component '%s'.", spec.getName());
+        components.add(Bytes.toLong(kijiRowKey, offset) ^ Long.MIN_VALUE);
+        offset += Bytes.SIZEOF_LONG;
+        break;
+      default:
+        throw new RuntimeException("Unexpected row key component type: " + spec.getType());
+      }
+    }
+    Preconditions.checkArgument(offset == kijiRowKey.length,
+        "Unexpected trailing bytes in formatted row key.");
+    return components;
+  }
+
+  /**
+   * Prefixes encoded components with the hash of the first component, if any.
+   *
+   * @param encoded The encoded components.
+   * @param components The components.
+   * @param format Row key format.
+   * @return The HBase row key, or row key prefix.
+   */
+  private static byte[] toHBaseRowKey(
+      byte[] encoded, List<Object> components, RowKeyFormat format) {
+    final int hashSize = format.getHashSize();
+    if (0 == hashSize) {
+      return encoded;
+    }
+    final byte[] first = encodeComponents(components.subList(0, 1), format);
+    final byte[] hash = RowKeyHasher.hash(format.getHashType(), first);
+    final byte[] hbaseRowKey = new byte[hashSize + encoded.length];
+    System.arraycopy(hash, 0, hbaseRowKey, 0, hashSize);
+    System.arraycopy(encoded, 0, hbaseRowKey, hashSize, encoded.length);
+    return hbaseRowKey;
+  }
+
+  /**
+   * Creates a new FormattedEntityId.
+   *
+   * @param kijiRowKey Kiji row key.
+   * @param hbaseRowKey HBase row key.
+   * @param components Decoded components of the row key.
+   * @param format Row key format.
+   */
+  private FormattedEntityId(
+      byte[] kijiRowKey, byte[] hbaseRowKey, List<Object> components, RowKeyFormat format) {
+    mKijiRowKey = Preconditions.checkNotNull(kijiRowKey);
+    mHBaseRowKey = Preconditions.checkNotNull(hbaseRowKey);
+    mComponents = Collections.unmodifiableList(Lists.newArrayList(components));
+    mFormat = Preconditions.checkNotNull(format);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public RowKeyFormat getFormat() {
+    return mFormat;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public byte[] getKijiRowKey() {
+    return mKijiRowKey;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public byte[] getHBaseRowKey() {
+    return mHBaseRowKey;
+  }
+
+  /** @return the components of the row key, in order. */
+  public List<Object> getComponents() {
+    return mComponents;
+  }
+}
@@ -0,0 +1,323 @@
+/**
+ * (c) Copyright 2012 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.kiji.schema.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Preconditions;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.specific.SpecificDatumWriter;
+import org.apache.hadoop.hbase.HColumnDescriptor;
+import org.apache.hadoop.hbase.HTableDescriptor;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import org.kiji.schema.GenericCellDecoderFactory;
+import org.kiji.schema.HBaseColumnName;
+import org.kiji.schema.KijiCellDecoder;
+import org.kiji.schema.KijiColumnName;
+import org.kiji.schema.KijiManagedHBaseTableName;
+import org.kiji.schema.KijiSchemaTable;
+import org.kiji.schema.NoSuchColumnException;
+import org.kiji.schema.layout.ColumnNameTranslator;
+import org.kiji.schema.layout.KijiTableLayout;
+import org.kiji.schema.layout.KijiTableLayout.LocalityGroupLayout.FamilyLayout;
+import org.kiji.schema.layout.KijiTableLayout.LocalityGroupLayout.FamilyLayout.ColumnLayout;
+import org.kiji.schema.util.ByteStreamArray;
+import org.kiji.schema.util.Hasher;
+
+/**
+ * The secondary index of the indexed columns of a Kiji table.
+ *
+ * <p>The index of a Kiji table is stored in a separate HBase table, with one row per indexed
+ * cell.  The row key of an index entry is made of the HBase name of the column, of the value of
+ * the cell, and of the HBase row key of the entity the cell belongs to.  All three are length
+ * prefixed, except for the entity row key, so that the entities holding a given value are found
+ * with a single prefix scan.</p>
+ *
+ * <p>The row key is salted with the first bytes of the hash of the column and value.  Without
+ * it, the entries of a column would share a prefix and all land in the same region of the index
+ * table; with it, the entries of each value are still contiguous.</p>
+ *
+ * <p>Values are indexed in the Avro binary encoding of the column schema, regardless of the
+ * schema they were written with, so that equal values have equal index keys.</p>
+ *
+ * <p>Index entries are never removed when cells are overwritten or deleted: lookups check the
+ * candidate rows against the table, and the rebuild-index tool drops stale entries.  Cells
+ * bulk-loaded from HFiles are not indexed either, until the rebuild-index tool is run.</p>
+ */
+public final class HBaseColumnIndex {
+  /** The HBase family of the index table. */
+  public static final byte[] INDEX_FAMILY = Bytes.toBytes("i");
+
+  /** The HBase qualifier of the index entries. */
+  public static final byte[] INDEX_QUALIFIER = new byte[0];
+
+  /** The value of the index entries. */
+  private static final byte[] EMPTY_VALUE = new byte[0];
+
+  /** Number of bytes of the hash of the column and value salting the index row keys. */
+  private static final int SALT_SIZE = 2;
+
+  /** Translates between Kiji and HBase column names. */
+  private final ColumnNameTranslator mTranslator;
+
+  /** The indexed columns, keyed by their HBase column names. */
+  private final Map<HBaseColumnName, KijiColumnName> mIndexedColumns;
+
+  /** The Avro schemas of the indexed columns. */
+  private final Map<KijiColumnName, Schema> mSchemas;
+
+  /** Decodes the cells of the indexed columns into their column schema. */
+  private final Map<KijiColumnName, KijiCellDecoder<Object>> mDecoders;
+
+  /**
+   * Creates the index of a Kiji table.
+   *
+   * @param layout The layout of the Kiji table.
+   * @param schemaTable The schema table used to decode the indexed cells.
+   * @throws IOException If the layout is invalid.
+   */
+  public HBaseColumnIndex(KijiTableLayout layout, KijiSchemaTable schemaTable)
+      throws IOException {
+    mTranslator = new ColumnNameTranslator(layout);
+    mIndexedColumns = new HashMap<HBaseColumnName, KijiColumnName>();
+    mSchemas = new HashMap<KijiColumnName, Schema>();
+    mDecoders = new HashMap<KijiColumnName, KijiCellDecoder<Object>>();
+    final GenericCellDecoderFactory decoderFactory = new GenericCellDecoderFactory(schemaTable);
+    for (KijiColumnName column : getIndexedColumns(layout)) {
+      final Schema schema = layout.getSchema(column);
+      mIndexedColumns.put(mTranslator.toHBaseColumnName(column), column);
+      mSchemas.put(column, schema);
+      mDecoders.put(column,
+          decoderFactory.<Object>create(schema, layout.getCellFormat(column)));
+    }
+  }
+
+  /**
+   * Lists the indexed columns of a table layout.
+   *
+   * @param layout A table layout.
+   * @return the indexed columns of the layout.
+   */
+  public static List<KijiColumnName> getIndexedColumns(KijiTableLayout layout) {
+    final List<KijiColumnName> columns = new ArrayList<KijiColumnName>();
+    for (FamilyLayout family : layout.getFamilies()) {
+      for (ColumnLayout column : family.getColumns()) {
+        if (column.getDesc().getIndexed()) {
+          columns.add(new KijiColumnName(family.getName(), column.getName()));
+        }
+      }
+    }
+    return columns;
+  }
+
+  /**
+   * Reports whether a table layout has indexed columns, and therefore requires an index table.
+   *
+   * @param layout A table layout.
+   * @return whether the layout has indexed columns.
+   */
+  public static boolean hasIndexedColumns(KijiTableLayout layout) {
+    return !getIndexedColumns(layout).isEmpty();
+  }
+
+  /**
+   * Builds the descriptor of the HBase table storing the index of a Kiji table.
+   *
+   * @param kijiInstanceName The name of the Kiji instance.
+   * @param kijiTableName The name of the Kiji table.
+   * @return the descriptor of the index HBase table.
+   */
+  public static HTableDescriptor getIndexTableDescriptor(
+      String kijiInstanceName, String kijiTableName) {
+    final HTableDescriptor tableDescriptor = new HTableDescriptor(KijiManagedHBaseTableName
+        .getKijiIndexTableName(kijiInstanceName, kijiTableName).toString());
+    final HColumnDescriptor columnDescriptor = new HColumnDescriptor(INDEX_FAMILY);
+    columnDescriptor.setMaxVersions(1);
+    tableDescriptor.addFamily(columnDescriptor);
+    return tableDescriptor;
+  }
+
+  /**
+   * Reports whether a column is indexed.
+   *
+   * @param column A Kiji column name.
+   * @return whether the column is indexed.
+   */
+  public boolean isIndexed(KijiColumnName column) {
+    return mSchemas.containsKey(column);
+  }
+
+  /**
+   * Encodes a value into its indexed form.
+   *
+   * @param column The indexed column.
+   * @param value The value, as a generic or specific Avro value of the column schema.
+   * @return the indexed form of the value.
+   * @throws IOException If the value cannot be encoded with the column schema.
+   */
+  public byte[] encodeValue(KijiColumnName column, Object value) throws IOException {
+    final Schema schema = getSchema(column);
+    try {
+      return encode(new SpecificDatumWriter<Object>(schema), value);
+    } catch (RuntimeException re) {
+      throw new IOException(String.format(
+          "Value %s cannot be encoded with the schema %s of column '%s'.",
+          value, schema, column), re);
+    }
+  }
+
+  /**
+   * Decodes a cell of an indexed column, and encodes its value into its indexed form.
+   *
+   * @param column The indexed column.
+   * @param encodedCell The cell, encoded as stored in HBase.
+   * @return the indexed form of the value of the cell.
+   * @throws IOException If the cell cannot be decoded.
+   */
+  public byte[] encodeCell(KijiColumnName column, byte[] encodedCell) throws IOException {
+    final Object value = mDecoders.get(column).decode(encodedCell).getData();
+    return encode(new GenericDatumWriter<Object>(getSchema(column)), value);
+  }
+
+  /**
+   * Builds the prefix of the keys of the index entries of a column holding a given value,
+   * salt included.
+   *
+   * @param column The indexed column.
+   * @param indexedValue The indexed form of the value.
+   * @return the prefix of the keys of the index entries.
+   * @throws NoSuchColumnException If the column does not exist.
+   */
+  public byte[] getIndexRowKeyPrefix(KijiColumnName column, byte[] indexedValue)
+      throws NoSuchColumnException {
+    final HBaseColumnName hbaseColumn = mTranslator.toHBaseColumnName(column);
+    final byte[] unsalted = Bytes.add(
+        lengthPrefixed(hbaseColumn.getFamily()),
+        lengthPrefixed(hbaseColumn.getQualifier()),
+        lengthPrefixed(indexedValue));
+    return Bytes.add(Arrays.copyOf(Hasher.hash(unsalted), SALT_SIZE), unsalted);
+  }
+
+  /**
+   * Extracts the HBase row key of an entity from the key of one of its index entries.
+   *
+   * @param indexRowKey The key of the index entry.
+   * @param prefixLength The length of the index key prefix of the column and value.
+   * @return the HBase row key of the entity the index entry belongs to.
+   */
+  public static byte[] getEntityRowKey(byte[] indexRowKey, int prefixLength) {
+    return Arrays.copyOfRange(indexRowKey, prefixLength, indexRowKey.length);
+  }
+
+  /**
+   * Builds the index entries of the cells of indexed columns in a batch of puts.
+   *
+   * @param puts Puts to a Kiji table.
+   * @return the puts to the index table, for the cells of indexed columns.
+   * @throws IOException If an indexed cell cannot be decoded.
+   */
+  public List<Put> toIndexPuts(List<Put> puts) throws IOException {
+    if (mIndexedColumns.isEmpty()) {
+      return Collections.emptyList();
+    }
+    final List<Put> indexPuts = new ArrayList<Put>();
+    for (Put put : puts) {
+      for (List<KeyValue> kvs : put.getFamilyMap().values()) {
+        addIndexPuts(kvs, indexPuts);
+      }
+    }
+    return indexPuts;
+  }
+
+  /**
+   * Builds the index entries of the cells of indexed columns among HBase cells.
+   *
+   * @param kvs HBase cells of a Kiji table.
+   * @param indexPuts Puts to the index table, for the cells of indexed columns, are added to
+   *     this list.
+   * @throws IOException If an indexed cell cannot be decoded.
+   */
+  public void addIndexPuts(List<KeyValue> kvs, List<Put> indexPuts) throws IOException {
+    for (KeyValue kv : kvs) {
+      final KijiColumnName column =
+          mIndexedColumns.get(new HBaseColumnName(kv.getFamily(), kv.getQualifier()));
+      if (null == column) {
+        continue;
+      }
+      final byte[] prefix = getIndexRowKeyPrefix(column, encodeCell(column, kv.getValue()));
+      final Put indexPut = new Put(Bytes.add(prefix, kv.getRow()));
+      indexPut.add(INDEX_FAMILY, INDEX_QUALIFIER, kv.getTimestamp(), EMPTY_VALUE);
+      indexPuts.add(indexPut);
+    }
+  }
+
+  /**
+   * Gets the schema of an indexed column.
+   *
+   * @param column The indexed column.
+   * @return the schema of the column.
+   */
+  private Schema getSchema(KijiColumnName column) {
+    final Schema schema = mSchemas.get(column);
+    Preconditions.checkArgument(null != schema, "Column '%s' is not indexed.", column);
+    return schema;
+  }
+
+  /**
+   * Encodes a value with an Avro datum writer.
+   *
+   * @param writer The datum writer.
+   * @param value The value to encode.
+   * @return the Avro binary encoding of the value.
+   * @throws IOException On encoding error.
+   */
+  private static byte[] encode(GenericDatumWriter<Object> writer, Object value)
+      throws IOException {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final BinaryEncoder encoder = EncoderFactory.get().directBinaryEncoder(bytes, null);
+    writer.write(value, encoder);
+    encoder.flush();
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Prefixes bytes with their length.
+   *
+   * @param bytes Some bytes.
+   * @return the bytes, prefixed with their length as a variable-length integer.
+   */
+  private static byte[] lengthPrefixed(byte[] bytes) {
+    return Bytes.add(ByteStreamArray.longToVarInt64(bytes.length), bytes);
+  }
+}
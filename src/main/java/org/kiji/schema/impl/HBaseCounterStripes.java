@@ -0,0 +1,366 @@
+/**
+ * (c) Copyright 2012 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.kiji.schema.impl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.hbase.HColumnDescriptor;
+import org.apache.hadoop.hbase.HTableDescriptor;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Delete;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.HTableInterface;
+import org.apache.hadoop.hbase.client.Increment;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import org.kiji.schema.HBaseColumnName;
+import org.kiji.schema.KijiColumnName;
+import org.kiji.schema.KijiCounter;
+import org.kiji.schema.KijiManagedHBaseTableName;
+import org.kiji.schema.NoSuchColumnException;
+import org.kiji.schema.layout.ColumnNameTranslator;
+import org.kiji.schema.layout.KijiTableLayout;
+import org.kiji.schema.layout.KijiTableLayout.LocalityGroupLayout.FamilyLayout;
+import org.kiji.schema.layout.KijiTableLayout.LocalityGroupLayout.FamilyLayout.ColumnLayout;
+
+/**
+ * The stripes of the striped counters of a Kiji table.
+ *
+ * <p>A counter declared with N counter stripes is split across N cells stored in N distinct
+ * HBase rows, so that concurrent increments do not contend for the lock of a single row.
+ * Stripe 0 is the counter cell itself, in the row of its entity.  Stripe i, for i &gt; 0, is
+ * stored in the counter stripes table of the Kiji table, in the row keyed by the byte i followed
+ * by the HBase row key of the entity, under a qualifier made of the HBase family and qualifier of
+ * the counter.  A counter that becomes striped therefore keeps its value, and the stripes table
+ * is split on the stripe byte so that the stripes of a counter are served by distinct
+ * regions.</p>
+ *
+ * <p>Each writer increments one stripe of a counter, chosen by a seed drawn once per writer.
+ * The value of a counter is the sum of its stripes, read with one multi-row Get: the sum is not
+ * atomic with respect to concurrent increments.</p>
+ */
+public final class HBaseCounterStripes {
+  /** The HBase family of the counter stripes table. */
+  public static final byte[] STRIPES_FAMILY = Bytes.toBytes("c");
+
+  /** Separates the HBase family of a counter from its HBase qualifier in a stripe qualifier. */
+  private static final byte[] SEPARATOR = Bytes.toBytes(ColumnNameTranslator.SEPARATOR);
+
+  /** Translates between Kiji and HBase column names. */
+  private final ColumnNameTranslator mTranslator;
+
+  /** The number of stripes of the striped counters. */
+  private final Map<KijiColumnName, Integer> mStripes;
+
+  /** The largest number of stripes of a counter of the table. */
+  private final int mMaxStripes;
+
+  /**
+   * Creates the counter stripes of a Kiji table.
+   *
+   * @param layout The layout of the Kiji table.
+   */
+  public HBaseCounterStripes(KijiTableLayout layout) {
+    mTranslator = new ColumnNameTranslator(layout);
+    mStripes = getStripedCounters(layout);
+    mMaxStripes = getMaxStripes(mStripes);
+  }
+
+  /**
+   * Lists the striped counters of a table layout.
+   *
+   * @param layout A table layout.
+   * @return the number of stripes of the striped counters of the layout.
+   */
+  public static Map<KijiColumnName, Integer> getStripedCounters(KijiTableLayout layout) {
+    final Map<KijiColumnName, Integer> stripes = new HashMap<KijiColumnName, Integer>();
+    for (FamilyLayout family : layout.getFamilies()) {
+      for (ColumnLayout column : family.getColumns()) {
+        final int columnStripes = column.getDesc().getColumnSchema().getCounterStripes();
+        if (columnStripes > 1) {
+          stripes.put(new KijiColumnName(family.getName(), column.getName()), columnStripes);
+        }
+      }
+    }
+    return stripes;
+  }
+
+  /**
+   * Reports whether a table layout has striped counters, and therefore requires a counter
+   * stripes table.
+   *
+   * @param layout A table layout.
+   * @return whether the layout has striped counters.
+   */
+  public static boolean hasStripedCounters(KijiTableLayout layout) {
+    return !getStripedCounters(layout).isEmpty();
+  }
+
+  /**
+   * Reports the number of stripes of a column.
+   *
+   * @param layout A table layout.
+   * @param column A Kiji column name.
+   * @return the number of stripes of the column, 1 if it is not a striped counter.
+   * @throws NoSuchColumnException If the column does not exist.
+   */
+  public static int getStripes(KijiTableLayout layout, KijiColumnName column)
+      throws NoSuchColumnException {
+    if (!column.isFullyQualified()) {
+      return 1;
+    }
+    return layout.getCellSchema(column).getCounterStripes();
+  }
+
+  /**
+   * Builds the descriptor of the HBase table storing the counter stripes of a Kiji table.
+   *
+   * @param kijiInstanceName The name of the Kiji instance.
+   * @param kijiTableName The name of the Kiji table.
+   * @return the descriptor of the counter stripes HBase table.
+   */
+  public static HTableDescriptor getStripesTableDescriptor(
+      String kijiInstanceName, String kijiTableName) {
+    final HTableDescriptor tableDescriptor = new HTableDescriptor(KijiManagedHBaseTableName
+        .getKijiCounterStripesTableName(kijiInstanceName, kijiTableName).toString());
+    final HColumnDescriptor columnDescriptor = new HColumnDescriptor(STRIPES_FAMILY);
+    columnDescriptor.setMaxVersions(1);
+    tableDescriptor.addFamily(columnDescriptor);
+    return tableDescriptor;
+  }
+
+  /**
+   * Builds the keys the counter stripes table of a Kiji table is initially split on: one
+   * region per stripe.
+   *
+   * @param layout The layout of the Kiji table.
+   * @return the split keys of the counter stripes table, or null for a single region.
+   */
+  public static byte[][] getStripesTableSplitKeys(KijiTableLayout layout) {
+    final int maxStripes = getMaxStripes(getStripedCounters(layout));
+    if (maxStripes <= 2) {
+      return null;
+    }
+    final byte[][] splitKeys = new byte[maxStripes - 2][];
+    for (int stripe = 2; stripe < maxStripes; stripe++) {
+      splitKeys[stripe - 2] = new byte[] {(byte) stripe};
+    }
+    return splitKeys;
+  }
+
+  /**
+   * Computes the largest number of stripes of a set of counters.
+   *
+   * @param stripes The number of stripes of the counters.
+   * @return the largest number of stripes, 1 if there is no counter.
+   */
+  private static int getMaxStripes(Map<KijiColumnName, Integer> stripes) {
+    int maxStripes = 1;
+    for (int columnStripes : stripes.values()) {
+      maxStripes = Math.max(maxStripes, columnStripes);
+    }
+    return maxStripes;
+  }
+
+  /**
+   * Reports the number of stripes of a column.
+   *
+   * @param column A Kiji column name.
+   * @return the number of stripes of the column, 1 if it is not a striped counter.
+   */
+  public int getStripes(KijiColumnName column) {
+    final Integer stripes = mStripes.get(column);
+    return (null == stripes) ? 1 : stripes;
+  }
+
+  /** @return whether the table has striped counters. */
+  public boolean isEmpty() {
+    return mStripes.isEmpty();
+  }
+
+  /**
+   * Picks the stripe of a counter incremented by a writer.
+   *
+   * @param column A Kiji column name.
+   * @param seed The stripe seed of the writer, a non-negative integer.
+   * @return the stripe of the counter the writer increments, 0 for the counter cell.
+   */
+  public int getStripe(KijiColumnName column, int seed) {
+    return seed % getStripes(column);
+  }
+
+  /**
+   * Builds the key of the row of the counter stripes table holding a stripe of the counters of
+   * an entity.
+   *
+   * @param stripe The stripe, greater than 0.
+   * @param hbaseRowKey The HBase row key of the entity.
+   * @return the key of the row holding the stripe.
+   */
+  public static byte[] getStripeRowKey(int stripe, byte[] hbaseRowKey) {
+    return Bytes.add(new byte[] {(byte) stripe}, hbaseRowKey);
+  }
+
+  /**
+   * Builds the qualifier of the stripes of a counter in the counter stripes table.
+   *
+   * @param hbaseColumnName The HBase column name of the counter.
+   * @return the qualifier of the stripes of the counter.
+   */
+  public static byte[] getStripeQualifier(HBaseColumnName hbaseColumnName) {
+    return Bytes.add(hbaseColumnName.getFamily(), SEPARATOR, hbaseColumnName.getQualifier());
+  }
+
+  /**
+   * Builds the increment of a stripe of a counter, to send to the counter stripes table.
+   *
+   * @param stripe The stripe, greater than 0.
+   * @param hbaseRowKey The HBase row key of the entity.
+   * @param column The counter.
+   * @param amount The amount to increment the stripe by.
+   * @return the increment of the stripe.
+   * @throws NoSuchColumnException If the column does not exist.
+   */
+  public Increment toStripeIncrement(
+      int stripe, byte[] hbaseRowKey, KijiColumnName column, long amount)
+      throws NoSuchColumnException {
+    final Increment increment = new Increment(getStripeRowKey(stripe, hbaseRowKey));
+    increment.addColumn(STRIPES_FAMILY,
+        getStripeQualifier(mTranslator.toHBaseColumnName(column)), amount);
+    return increment;
+  }
+
+  /**
+   * Builds the deletes of the stripes 1 to N - 1 of counters, to send to the counter stripes
+   * table.
+   *
+   * @param hbaseRowKey The HBase row key of the entity.
+   * @param columns The counters, striped or not.
+   * @param timestamp The timestamp of the deleted cells.
+   * @param allVersions Whether to delete all the versions up to the timestamp, or only the
+   *     version at the timestamp.
+   * @return the deletes of the stripes, one per stripe row; empty if no counter is striped.
+   * @throws NoSuchColumnException If a column does not exist.
+   */
+  public List<Delete> toStripeDeletes(byte[] hbaseRowKey, List<KijiColumnName> columns,
+      long timestamp, boolean allVersions) throws NoSuchColumnException {
+    final List<Delete> deletes = new ArrayList<Delete>();
+    for (int stripe = 1; stripe < mMaxStripes; stripe++) {
+      final Delete delete = new Delete(getStripeRowKey(stripe, hbaseRowKey));
+      for (KijiColumnName column : columns) {
+        if (stripe >= getStripes(column)) {
+          continue;
+        }
+        final byte[] qualifier = getStripeQualifier(mTranslator.toHBaseColumnName(column));
+        if (allVersions) {
+          delete.deleteColumns(STRIPES_FAMILY, qualifier, timestamp);
+        } else {
+          delete.deleteColumn(STRIPES_FAMILY, qualifier, timestamp);
+        }
+      }
+      if (!delete.isEmpty()) {
+        deletes.add(delete);
+      }
+    }
+    return deletes;
+  }
+
+  /**
+   * Builds the deletes of all the stripes 1 to N - 1 of the counters of an entity, to send to
+   * the counter stripes table.
+   *
+   * @param hbaseRowKey The HBase row key of the entity.
+   * @param upToTimestamp The timestamp up to which cells are deleted.
+   * @return the deletes of the stripe rows of the entity; empty if no counter is striped.
+   */
+  public List<Delete> toRowDeletes(byte[] hbaseRowKey, long upToTimestamp) {
+    final List<Delete> deletes = new ArrayList<Delete>();
+    for (int stripe = 1; stripe < mMaxStripes; stripe++) {
+      deletes.add(new Delete(getStripeRowKey(stripe, hbaseRowKey), upToTimestamp, null));
+    }
+    return deletes;
+  }
+
+  /**
+   * Reads and sums the stripes 1 to N - 1 of a counter from the counter stripes table.
+   *
+   * @param htable The counter stripes HTable.
+   * @param hbaseRowKey The HBase row key of the entity.
+   * @param hbaseColumnName The HBase column name of the counter.
+   * @param stripes The number of stripes of the counter.
+   * @param minTimestamp The minimum timestamp of the stripe cells read (inclusive).
+   * @param maxTimestamp The maximum timestamp of the stripe cells read (exclusive).
+   * @return the sum of the latest cell of each stripe, timestamped with the latest of them, or
+   *     null if no stripe has a cell in the time range.
+   * @throws IOException If there is an error reading the stripes.
+   */
+  public static KijiCounter readStripes(HTableInterface htable, byte[] hbaseRowKey,
+      HBaseColumnName hbaseColumnName, int stripes, long minTimestamp, long maxTimestamp)
+      throws IOException {
+    final byte[] qualifier = getStripeQualifier(hbaseColumnName);
+    final List<Get> gets = new ArrayList<Get>(stripes - 1);
+    for (int stripe = 1; stripe < stripes; stripe++) {
+      final Get get = new Get(getStripeRowKey(stripe, hbaseRowKey));
+      get.addColumn(STRIPES_FAMILY, qualifier);
+      get.setTimeRange(minTimestamp, maxTimestamp);
+      gets.add(get);
+    }
+    if (gets.isEmpty()) {
+      return null;
+    }
+    boolean found = false;
+    long timestamp = Long.MIN_VALUE;
+    long value = 0L;
+    for (Result result : htable.get(gets)) {
+      final KeyValue kv =
+          (null == result) ? null : result.getColumnLatest(STRIPES_FAMILY, qualifier);
+      if (null != kv) {
+        found = true;
+        timestamp = Math.max(timestamp, kv.getTimestamp());
+        value += Bytes.toLong(kv.getValue());
+      }
+    }
+    return found ? new DefaultKijiCounter(timestamp, value) : null;
+  }
+
+  /**
+   * Adds the stripes of a counter to the value of its counter cell.
+   *
+   * @param cell The counter cell, or null if it has no value.
+   * @param stripes The sum of the other stripes of the counter, or null if they have no value.
+   * @return the value of the counter, or null if none of its stripes has a value.
+   */
+  public static KijiCounter sum(KijiCounter cell, KijiCounter stripes) {
+    if (null == stripes) {
+      return cell;
+    }
+    if (null == cell) {
+      return stripes;
+    }
+    return new DefaultKijiCounter(Math.max(cell.getTimestamp(), stripes.getTimestamp()),
+        cell.getValue() + stripes.getValue());
+  }
+}
@@ -169,7 +169,8 @@ public class HBaseDataRequestAdapter {
 
     Get get = new Get(entityId.getHBaseRowKey());
     FilterList filterList = new FilterList(FilterList.Operator.MUST_PASS_ONE);
-    ColumnNameTranslator columnTranslator = new ColumnNameTranslator(tableLayout);
+    ColumnNameTranslator columnTranslator =
+        KijiTableResources.forLayout(tableLayout).getColumnNameTranslator();
 
     // There's a shortcoming in the HBase API that doesn't allow us to specify per-column
     // filters for timestamp ranges and max versions.  We need to generate a request that
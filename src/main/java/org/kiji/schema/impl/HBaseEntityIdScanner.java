@@ -0,0 +1,89 @@
+/**
+ * (c) Copyright 2012 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.kiji.schema.impl;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+
+import org.kiji.schema.EntityId;
+import org.kiji.schema.EntityIdFactory;
+import org.kiji.schema.KijiEntityIdScanner;
+
+/**
+ * The internal implementation of KijiEntityIdScanner that reads the row keys of HTables.
+ */
+public class HBaseEntityIdScanner implements KijiEntityIdScanner {
+  /** The HBase result scanner, expected to return no more than a cell per row. */
+  private final ResultScanner mResultScanner;
+
+  /** Translates HBase row keys into entity IDs. */
+  private final EntityIdFactory mEntityIdFactory;
+
+  /**
+   * Creates a new entity ID scanner.
+   *
+   * @param resultScanner The HBase result scanner to wrap.
+   * @param entityIdFactory The entity ID factory of the scanned table.
+   */
+  public HBaseEntityIdScanner(ResultScanner resultScanner, EntityIdFactory entityIdFactory) {
+    mResultScanner = resultScanner;
+    mEntityIdFactory = entityIdFactory;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public Iterator<EntityId> iterator() {
+    final Iterator<Result> results = mResultScanner.iterator();
+    return new Iterator<EntityId>() {
+      /** {@inheritDoc} */
+      @Override
+      public boolean hasNext() {
+        return results.hasNext();
+      }
+
+      /** {@inheritDoc} */
+      @Override
+      public EntityId next() {
+        // The iterator of an HBase result scanner returns null once the scanner is exhausted.
+        final Result result = results.hasNext() ? results.next() : null;
+        if (null == result) {
+          throw new NoSuchElementException();
+        }
+        return mEntityIdFactory.fromHBaseRowKey(result.getRow());
+      }
+
+      /** {@inheritDoc} */
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException("Entity ID scanners do not support remove().");
+      }
+    };
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void close() {
+    mResultScanner.close();
+  }
+}
@@ -40,7 +40,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import org.kiji.schema.EntityId;
-import org.kiji.schema.EntityIdFactory;
 import org.kiji.schema.HBaseColumnName;
 import org.kiji.schema.KijiCell;
 import org.kiji.schema.KijiCellDecoder;
@@ -73,6 +72,9 @@ public class HBaseKijiRowData extends AbstractKijiRowData {
   /** The layout for the table this row data came from. */
   private final KijiTableLayout mTableLayout;
 
+  /** The translators, factories and column metadata derived from the table layout. */
+  private final KijiTableResources mResources;
+
   /** The HBase result providing the data of this object. */
   private Result mResult;
 
@@ -85,6 +87,9 @@ public class HBaseKijiRowData extends AbstractKijiRowData {
   /** A column pager (will only be used if paging is enabled, otherwise set to null). */
   private final KijiColumnPager mColumnPager;
 
+  /** An optional HTable instance used for reading the stripes of striped counters. */
+  private final HTableInterface mCounterStripesHTable;
+
   /** A map from kiji family to kiji qualifier to timestamp to raw encoded cell values. */
   private NavigableMap<String, NavigableMap<String, NavigableMap<Long, byte[]>>> mFilteredMap;
 
@@ -108,6 +113,9 @@ public class HBaseKijiRowData extends AbstractKijiRowData {
     /** An optional HTable instance, required for implementing nextPage() RPCs. */
     private HTableInterface mHTable;
 
+    /** An optional HTable instance, required for reading striped counters. */
+    private HTableInterface mCounterStripesHTable;
+
     /**
      * If this is not called, the EntityId is read from the HBase Result. Therefore, if
      * the HBase Result is empty you need to specify the EntityId.
@@ -176,6 +184,18 @@ public class HBaseKijiRowData extends AbstractKijiRowData {
       return this;
     }
 
+    /**
+     * Sets the counter stripes HTable of the table the data came from, used to read the
+     * stripes of the striped counters.
+     *
+     * @param htable The counter stripes HTable instance.
+     * @return This options instance.
+     */
+    public Options withCounterStripesHTable(HTableInterface htable) {
+      mCounterStripesHTable = htable;
+      return this;
+    }
+
     /**
      * Gets the entity id for the row.
      *
@@ -229,6 +249,15 @@ public class HBaseKijiRowData extends AbstractKijiRowData {
     public HTableInterface getHTable() {
       return mHTable;
     }
+
+    /**
+     * Gets the HTable to use for reading the stripes of striped counters.
+     *
+     * @return The counter stripes HTable instance.
+     */
+    public HTableInterface getCounterStripesHTable() {
+      return mCounterStripesHTable;
+    }
   }
 
   /**
@@ -237,22 +266,23 @@ public class HBaseKijiRowData extends AbstractKijiRowData {
    * @param options The options for the HBaseKijiRowData instance.
    */
   public HBaseKijiRowData(Options options) {
+    mTableLayout = options.getTableLayout();
+    mResources = KijiTableResources.forLayout(mTableLayout);
     EntityId entityId = options.getEntityId();
     if (null == entityId) {
       // Read the entity id from the HBase result if not provided.
-      final EntityIdFactory entityIdFactory =
-          EntityIdFactory.create(options.getTableLayout().getDesc().getKeysFormat());
-      entityId = entityIdFactory.fromHBaseRowKey(options.getHBaseResult().getRow());
+      entityId = mResources.getEntityIdFactory()
+          .fromHBaseRowKey(options.getHBaseResult().getRow());
     }
     mEntityId = entityId;
     mDataRequest = options.getDataRequest();
-    mTableLayout = options.getTableLayout();
     mResult = options.getHBaseResult();
     mCellDecoderFactory = options.getCellDecoderFactory();
     mHTable = options.getHTable();
     mColumnPager = (null != mHTable)
         ? new KijiColumnPager(mEntityId, mDataRequest, mTableLayout, mHTable)
         : null;
+    mCounterStripesHTable = options.getCounterStripesHTable();
 
     // Compute this lazily.
     mFilteredMap = null;
@@ -353,7 +383,7 @@ public class HBaseKijiRowData extends AbstractKijiRowData {
       return mFilteredMap;
     }
 
-    final ColumnNameTranslator columnNameTranslator = new ColumnNameTranslator(mTableLayout);
+    final ColumnNameTranslator columnNameTranslator = mResources.getColumnNameTranslator();
     // Loop over the families in the HTable.
     for (NavigableMap.Entry<byte[], NavigableMap<byte[], NavigableMap<Long, byte[]>>> familyEntry
              : map.entrySet()) {
@@ -473,7 +503,8 @@ public class HBaseKijiRowData extends AbstractKijiRowData {
   /** {@inheritDoc} */
   @Override
   public Schema getReaderSchema(String family, String qualifier) throws IOException {
-    final Schema schema = mTableLayout.getSchema(new KijiColumnName(family, qualifier));
+    final Schema schema =
+        mResources.getColumnMetadata(new KijiColumnName(family, qualifier)).getSchema();
     if (null == schema) {
       throw new NoSuchColumnException(
           "Cannot retrieve schema for non-existent column: " + family + ":" + qualifier);
@@ -593,28 +624,67 @@ public class HBaseKijiRowData extends AbstractKijiRowData {
   /** {@inheritDoc} */
   @Override
   public synchronized KijiCounter getCounter(String family, String qualifier) throws IOException {
+    KijiCounter counter;
     try {
       final Map.Entry<Long, byte[]> rawValue = getRawValues(family, qualifier).firstEntry();
-      return new DefaultKijiCounter(rawValue.getKey(), Bytes.toLong(rawValue.getValue()));
+      counter = new DefaultKijiCounter(rawValue.getKey(), Bytes.toLong(rawValue.getValue()));
     } catch (NoCellDataException e) {
-      return null;
+      counter = null;
     }
+    return sumCounterStripes(family, qualifier, counter, mDataRequest.getMaxTimestamp());
   }
 
   /** {@inheritDoc} */
   @Override
   public synchronized KijiCounter getCounter(String family, String qualifier, long timestamp)
       throws IOException {
+    KijiCounter counter = null;
     try {
       final NavigableMap<Long, byte[]> counterValues = getRawValues(family, qualifier);
       final Map.Entry<Long, byte[]> counterEntry = counterValues.floorEntry(timestamp);
-      if (null == counterEntry) {
-        return null;
+      if (null != counterEntry) {
+        counter =
+            new DefaultKijiCounter(counterEntry.getKey(), Bytes.toLong(counterEntry.getValue()));
       }
-      return new DefaultKijiCounter(counterEntry.getKey(), Bytes.toLong(counterEntry.getValue()));
     } catch (NoCellDataException e) {
-      return null;
+      counter = null;
+    }
+    final long maxTimestamp = (timestamp == Long.MAX_VALUE) ? timestamp : timestamp + 1;
+    return sumCounterStripes(family, qualifier, counter,
+        Math.min(mDataRequest.getMaxTimestamp(), maxTimestamp));
+  }
+
+  /**
+   * Adds the other stripes of a requested striped counter to the cell of its stripe 0.
+   *
+   * @param family The counter family.
+   * @param qualifier The counter qualifier.
+   * @param counter The cell of stripe 0 of the counter, or null if there is none.
+   * @param maxTimestamp The exclusive upper bound of the timestamps of the stripes to read.
+   * @return The value of the counter, or null if none of its stripes has a cell.
+   * @throws IOException If there is an error reading the stripes.
+   */
+  private KijiCounter sumCounterStripes(
+      String family, String qualifier, KijiCounter counter, long maxTimestamp)
+      throws IOException {
+    if ((null == mDataRequest.getColumn(family, qualifier))
+        && (null == mDataRequest.getColumn(family, null))) {
+      return counter;
+    }
+    final KijiColumnName column = new KijiColumnName(family, qualifier);
+    final int stripes = HBaseCounterStripes.getStripes(mTableLayout, column);
+    if (stripes <= 1) {
+      return counter;
+    }
+    if (null == mCounterStripesHTable) {
+      throw new IOException(String.format(
+          "Cannot read striped counter '%s' without the counter stripes table.", column));
     }
+    final HBaseColumnName hbaseColumnName =
+        mResources.getColumnNameTranslator().toHBaseColumnName(column);
+    return HBaseCounterStripes.sum(counter, HBaseCounterStripes.readStripes(
+        mCounterStripesHTable, mEntityId.getHBaseRowKey(), hbaseColumnName, stripes,
+        mDataRequest.getMinTimestamp(), maxTimestamp));
   }
 
   /** {@inheritDoc} */
@@ -830,11 +900,10 @@ public class HBaseKijiRowData extends AbstractKijiRowData {
    * @param family Column family name.
    * @param qualifier Column qualifier name.
    * @return the cell encoding format.
-   * @throws NoSuchColumnException if the column does not exist.
+   * @throws IOException if the column does not exist, or if its schema is invalid.
    */
-  private KijiCellFormat getCellFormat(String family, String qualifier)
-      throws NoSuchColumnException {
-    return mTableLayout.getCellFormat(new KijiColumnName(family, qualifier));
+  private KijiCellFormat getCellFormat(String family, String qualifier) throws IOException {
+    return mResources.getColumnMetadata(new KijiColumnName(family, qualifier)).getCellFormat();
   }
 
   /**
@@ -842,9 +911,9 @@ public class HBaseKijiRowData extends AbstractKijiRowData {
    *
    * @param family Column family name.
    * @return the cell encoding format.
-   * @throws NoSuchColumnException if the column does not exist.
+   * @throws IOException if the column does not exist, or if its schema is invalid.
    */
-  private KijiCellFormat getCellFormat(String family) throws NoSuchColumnException {
-    return mTableLayout.getCellFormat(new KijiColumnName(family, null));
+  private KijiCellFormat getCellFormat(String family) throws IOException {
+    return mResources.getColumnMetadata(new KijiColumnName(family, null)).getCellFormat();
   }
 }
@@ -21,6 +21,7 @@ package org.kiji.schema.impl;
 
 import java.util.Iterator;
 
+import org.apache.hadoop.hbase.client.HTableInterface;
 import org.apache.hadoop.hbase.client.Result;
 import org.apache.hadoop.hbase.client.ResultScanner;
 
@@ -46,6 +47,9 @@ public class HBaseKijiRowScanner implements KijiRowScanner {
   /** A cell decoder factory. */
   private final KijiCellDecoderFactory mCellDecoderFactory;
 
+  /** The HTable storing the stripes of the striped counters, or null if there are none. */
+  private final HTableInterface mCounterStripesHTable;
+
   /**
    * A class to encapsulate the various options the HBaseKijiRowScanner constructor requires.
    */
@@ -54,6 +58,7 @@ public class HBaseKijiRowScanner implements KijiRowScanner {
     private KijiDataRequest mDataRequest;
     private HBaseKijiTable mTable;
     private KijiCellDecoderFactory mCellDecoderFactory;
+    private HTableInterface mCounterStripesHTable;
 
     /**
      * Sets the HBase result scanner the KijiRowScanner will wrap.
@@ -99,6 +104,17 @@ public class HBaseKijiRowScanner implements KijiRowScanner {
       return this;
     }
 
+    /**
+     * Sets the HTable storing the stripes of the striped counters of the table being scanned.
+     *
+     * @param htable The counter stripes HTable, or null if the table has no striped counters.
+     * @return This options instance.
+     */
+    public Options withCounterStripesHTable(HTableInterface htable) {
+      mCounterStripesHTable = htable;
+      return this;
+    }
+
     /**
      * Gets the HBase result scanner.
      *
@@ -134,6 +150,15 @@ public class HBaseKijiRowScanner implements KijiRowScanner {
     public KijiCellDecoderFactory getCellDecoderFactory() {
       return mCellDecoderFactory;
     }
+
+    /**
+     * Gets the HTable storing the stripes of the striped counters.
+     *
+     * @return The counter stripes HTable, or null.
+     */
+    public HTableInterface getCounterStripesHTable() {
+      return mCounterStripesHTable;
+    }
   }
 
   /**
@@ -146,6 +171,7 @@ public class HBaseKijiRowScanner implements KijiRowScanner {
     mKijiDataRequest = options.getDataRequest();
     mTable = options.getTable();
     mCellDecoderFactory = options.getCellDecoderFactory();
+    mCounterStripesHTable = options.getCounterStripesHTable();
   }
 
   /** {@inheritDoc} */
@@ -203,7 +229,8 @@ public class HBaseKijiRowScanner implements KijiRowScanner {
           .withDataRequest(mKijiDataRequest)
           .withTableLayout(mTable.getLayout())
           .withCellDecoderFactory(mCellDecoderFactory)
-          .withHTable(mTable.getHTable()));
+          .withHTable(mTable.getHTable())
+          .withCounterStripesHTable(mCounterStripesHTable));
       return rowData;
     }
 
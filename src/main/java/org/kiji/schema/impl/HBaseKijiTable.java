@@ -20,7 +20,9 @@
 package org.kiji.schema.impl;
 
 import java.io.IOException;
+import java.util.concurrent.atomic.AtomicReference;
 
+import org.apache.commons.io.IOUtils;
 import org.apache.hadoop.hbase.TableNotFoundException;
 import org.apache.hadoop.hbase.client.HTableInterface;
 
@@ -32,6 +34,7 @@ import org.kiji.schema.KijiTable;
 import org.kiji.schema.KijiTableNotFoundException;
 import org.kiji.schema.KijiTableReader;
 import org.kiji.schema.KijiTableWriter;
+import org.kiji.schema.layout.ColumnNameTranslator;
 import org.kiji.schema.layout.KijiTableLayout;
 
 
@@ -46,27 +49,61 @@ public class HBaseKijiTable extends AbstractKijiTable {
   /** The underlying HTable that stores this Kiji table's data. */
   private final HTableInterface mHTable;
 
-  /** The layout of the Kiji table. */
-  private final KijiTableLayout mTableLayout;
+  /**
+   * The resources derived from the layout of the Kiji table, shared with other instances and
+   * swapped when the table layout is refreshed.
+   */
+  private final AtomicReference<KijiTableResources> mResources;
+
+  /** The registry of the shared table resources. */
+  private final KijiTableResourceRegistry mRegistry;
 
-  /** The factory for EntityIds. */
-  private final EntityIdFactory mEntityIdFactory;
+  /** Whether the HTable is shared through the registry, or owned by this instance. */
+  private final boolean mSharesHTable;
+
+  /** Factory of the HTables owned by this instance, or null if they come from the registry. */
+  private final HTableInterfaceFactory mHTableFactory;
+
+  /** The HTable of the counter stripes table, opened on first use. */
+  private HTableInterface mCounterStripesHTable = null;
 
   /**
    * Construct an opened Kiji table stored in HBase.
    *
+   * <p>The table layout and HTable are shared with the other instances of the table opened
+   * through the same Kiji instance.</p>
+   *
    * @param kiji The Kiji instance.
    * @param name The name of the Kiji user-space table to open.
    *
    * @throws IOException On an HBase error.
    */
   public HBaseKijiTable(Kiji kiji, String name) throws IOException {
-    this(kiji, name, DefaultHTableInterfaceFactory.get());
+    super(kiji, name);
+    mRegistry = kiji.getTableResourceRegistry();
+    mSharesHTable = true;
+    mHTableFactory = null;
+    try {
+      mHTable = mRegistry.acquireHTable(name);
+    } catch (TableNotFoundException e) {
+      super.close();
+      throw new KijiTableNotFoundException(name);
+    }
+    try {
+      mResources = mRegistry.acquire(name);
+    } catch (IOException ioe) {
+      IOUtils.closeQuietly(mHTable);
+      super.close();
+      throw ioe;
+    }
   }
 
   /**
    * Construct an opened Kiji table stored in HBase.
    *
+   * <p>The table layout is shared with the other instances of the table opened through the
+   * same Kiji instance, but this instance uses its own HTable.</p>
+   *
    * @param kiji The Kiji instance.
    * @param name The name of the Kiji user-space table to open.
    * @param htableFactory A factory that creates HTable objects.
@@ -76,6 +113,9 @@ public class HBaseKijiTable extends AbstractKijiTable {
   public HBaseKijiTable(Kiji kiji, String name, HTableInterfaceFactory htableFactory)
       throws IOException {
     super(kiji, name);
+    mRegistry = kiji.getTableResourceRegistry();
+    mSharesHTable = false;
+    mHTableFactory = htableFactory;
     try {
       mHTable = htableFactory.create(kiji.getConf(),
           KijiManagedHBaseTableName.getKijiTableName(kiji.getName(), name).toString());
@@ -83,8 +123,13 @@ public class HBaseKijiTable extends AbstractKijiTable {
       super.close();
       throw new KijiTableNotFoundException(name);
     }
-    mTableLayout = kiji.getMetaTable().getTableLayout(name);
-    mEntityIdFactory = EntityIdFactory.create(mTableLayout.getDesc().getKeysFormat());
+    try {
+      mResources = mRegistry.acquire(name);
+    } catch (IOException ioe) {
+      IOUtils.closeQuietly(mHTable);
+      super.close();
+      throw ioe;
+    }
   }
 
   /**
@@ -110,16 +155,79 @@ public class HBaseKijiTable extends AbstractKijiTable {
     return mHTable;
   }
 
+  /**
+   * Gets another HTable for this table, for threads other than the ones using
+   * {@link #getHTable()}: HTables are not thread-safe. The HTable must be returned with
+   * {@link #releaseHTable(HTableInterface)}.
+   *
+   * @return An HTable for this table.
+   * @throws IOException If there is an error creating the HTable.
+   */
+  public HTableInterface acquireHTable() throws IOException {
+    if (mSharesHTable) {
+      return mRegistry.acquireHTable(getName());
+    }
+    return mHTableFactory.create(getKiji().getConf(),
+        KijiManagedHBaseTableName.getKijiTableName(getKiji().getName(), getName()).toString());
+  }
+
+  /**
+   * Returns an HTable obtained with {@link #acquireHTable()}, after flushing it.
+   *
+   * @param htable The HTable to return.
+   * @throws IOException If there is an error flushing the HTable.
+   */
+  public void releaseHTable(HTableInterface htable) throws IOException {
+    if (mSharesHTable) {
+      mRegistry.releaseHTable(getName(), htable);
+    } else {
+      htable.close();
+    }
+  }
+
+  /**
+   * Gets the HTable of the counter stripes table of this table, used like {@link #getHTable()}.
+   * It is opened on first use and closed with this table.
+   *
+   * @return The HTable storing the stripes of the striped counters of this table.
+   * @throws IOException If there is an error opening the HTable.
+   */
+  public synchronized HTableInterface getCounterStripesHTable() throws IOException {
+    if (null == mCounterStripesHTable) {
+      mCounterStripesHTable = openCounterStripesHTable();
+    }
+    return mCounterStripesHTable;
+  }
+
+  /**
+   * Opens another HTable for the counter stripes table of this table, for threads other than
+   * the ones using {@link #getCounterStripesHTable()}. The caller must close it.
+   *
+   * @return A new HTable storing the stripes of the striped counters of this table.
+   * @throws IOException If there is an error opening the HTable.
+   */
+  public HTableInterface openCounterStripesHTable() throws IOException {
+    final HTableInterfaceFactory factory =
+        (null != mHTableFactory) ? mHTableFactory : DefaultHTableInterfaceFactory.get();
+    return factory.create(getKiji().getConf(), KijiManagedHBaseTableName
+        .getKijiCounterStripesTableName(getKiji().getName(), getName()).toString());
+  }
+
   /** {@inheritDoc} */
   @Override
   public KijiTableLayout getLayout() {
-    return mTableLayout;
+    return mResources.get().getLayout();
+  }
+
+  /** @return The translator between Kiji and HBase column names of this table. */
+  public ColumnNameTranslator getColumnNameTranslator() {
+    return mResources.get().getColumnNameTranslator();
   }
 
   /** {@inheritDoc} */
   @Override
   public EntityIdFactory getEntityIdFactory() {
-    return mEntityIdFactory;
+    return mResources.get().getEntityIdFactory();
   }
 
   /** {@inheritDoc} */
@@ -137,7 +245,19 @@ public class HBaseKijiTable extends AbstractKijiTable {
   /** {@inheritDoc} */
   @Override
   public void close() throws IOException {
-    mHTable.close();
+    synchronized (this) {
+      IOUtils.closeQuietly(mCounterStripesHTable);
+      mCounterStripesHTable = null;
+    }
+    if (mSharesHTable) {
+      mRegistry.release(getName(), mHTable);
+    } else {
+      try {
+        mHTable.close();
+      } finally {
+        mRegistry.release(getName(), null);
+      }
+    }
     super.close();
   }
 }
@@ -20,29 +20,53 @@
 package org.kiji.schema.impl;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
+import com.google.common.base.Preconditions;
+import org.apache.hadoop.hbase.HConstants;
 import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.HTable;
+import org.apache.hadoop.hbase.client.HTableInterface;
 import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
 import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.filter.Filter;
+import org.apache.hadoop.hbase.filter.FilterList;
+import org.apache.hadoop.hbase.filter.FirstKeyOnlyFilter;
+import org.apache.hadoop.hbase.filter.KeyOnlyFilter;
+import org.apache.hadoop.hbase.util.Bytes;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import org.kiji.schema.EntityId;
+import org.kiji.schema.EntityIdRange;
+import org.kiji.schema.HBaseColumnName;
 import org.kiji.schema.HBaseScanOptions;
 import org.kiji.schema.InternalKijiError;
 import org.kiji.schema.Kiji;
 import org.kiji.schema.KijiCellDecoderFactory;
+import org.kiji.schema.KijiColumnName;
 import org.kiji.schema.KijiDataRequest;
 import org.kiji.schema.KijiDataRequestValidator;
+import org.kiji.schema.KijiEntityIdScanner;
+import org.kiji.schema.KijiManagedHBaseTableName;
 import org.kiji.schema.KijiRowData;
 import org.kiji.schema.KijiRowScanner;
 import org.kiji.schema.KijiTable;
 import org.kiji.schema.KijiTableReader;
+import org.kiji.schema.avro.RowKeyEncoding;
+import org.kiji.schema.avro.RowKeyFormat;
 import org.kiji.schema.filter.KijiRowFilter;
 import org.kiji.schema.filter.KijiRowFilterApplicator;
+import org.kiji.schema.filter.MultiRowRangeFilter;
+import org.kiji.schema.filter.MultiRowRangeFilter.RowRange;
 import org.kiji.schema.layout.InvalidLayoutException;
 import org.kiji.schema.layout.KijiTableLayout;
 
@@ -52,11 +76,24 @@ import org.kiji.schema.layout.KijiTableLayout;
 public class HBaseKijiTableReader extends KijiTableReader {
   private static final Logger LOG = LoggerFactory.getLogger(HBaseKijiTableReader.class);
 
+  /** The number of index entries fetched per RPC by index lookups. */
+  private static final int INDEX_SCAN_CACHING = 1000;
+
+  /** Number of row keys fetched per RPC by the key-only scans of countRows and scanEntityIds. */
+  private static final int KEY_SCAN_CACHING = 1000;
+
   /** The kiji instance the table is in. */
   private final Kiji mKiji;
   /** The kiji table instance. */
   private final HBaseKijiTable mTable;
 
+  /** The index of the table, created by the first index lookup; null until then. */
+  private HBaseColumnIndex mColumnIndex = null;
+  /** The table layout the index was created for; null until the first index lookup. */
+  private KijiTableLayout mColumnIndexLayout = null;
+  /** The HBase index table, opened by the first index lookup; null until then. */
+  private HTableInterface mIndexHTable = null;
+
   /**
    * Creates a new <code>HBaseKijiTableReader</code> instance that sends the read requests
    * directly to HBase.
@@ -105,7 +142,8 @@ public class HBaseKijiTableReader extends KijiTableReader {
         .withDataRequest(dataRequest)
         .withTableLayout(tableLayout)
         .withCellDecoderFactory(getKijiCellDecoderFactory())
-        .withHTable(mTable.getHTable()));
+        .withHTable(mTable.getHTable())
+        .withCounterStripesHTable(getCounterStripesHTable(tableLayout)));
 
     return rowData;
 
@@ -170,7 +208,8 @@ public class HBaseKijiTableReader extends KijiTableReader {
               .withDataRequest(dataRequest)
               .withTableLayout(tableLayout)
               .withCellDecoderFactory(cellDecoderFactory)
-              .withHTable(mTable.getHTable()));
+              .withHTable(mTable.getHTable())
+              .withCounterStripesHTable(getCounterStripesHTable(tableLayout)));
       }
       rowDataList.add(rowData);
     }
@@ -209,28 +248,67 @@ public class HBaseKijiTableReader extends KijiTableReader {
       KijiRowFilter rowFilter, HBaseScanOptions scanOptions)
       throws IOException {
     try {
-      HBaseDataRequestAdapter dataRequestAdapter = new HBaseDataRequestAdapter(dataRequest);
       KijiTableLayout tableLayout = getTableLayout(dataRequest);
-      Scan scan = dataRequestAdapter.toScan(tableLayout, scanOptions);
+      Scan scan = toScan(dataRequest, tableLayout, rowFilter, scanOptions);
 
-      if (null != startRow) {
-        scan.setStartRow(startRow.getHBaseRowKey());
-      }
-      if (null != stopRow) {
-        scan.setStopRow(stopRow.getHBaseRowKey());
+      final RowKeyFormat format = tableLayout.getDesc().getKeysFormat();
+      final ResultScanner resultScanner;
+      if (format.getEncoding() == RowKeyEncoding.SALTED) {
+        resultScanner = getBucketScanner(scan, format, Collections.singletonList(new RowRange(
+            (null != startRow) ? startRow.getKijiRowKey() : null,
+            (null != stopRow) ? stopRow.getKijiRowKey() : null)));
+      } else {
+        if (null != startRow) {
+          scan.setStartRow(startRow.getHBaseRowKey());
+        }
+        if (null != stopRow) {
+          scan.setStopRow(stopRow.getHBaseRowKey());
+        }
+        resultScanner = mTable.getHTable().getScanner(scan);
       }
+      return toRowScanner(resultScanner, dataRequest);
+    } catch (InvalidLayoutException e) {
+      // The table layout should never be invalid at this point, since we got it from a valid
+      // opened table.  If it is, there's something seriously wrong.
+      throw new InternalKijiError(e);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @throws IllegalArgumentException If the ranges contain no row.
+   */
+  @Override
+  public KijiRowScanner getMultiRangeScanner(
+      KijiDataRequest dataRequest, List<EntityIdRange> ranges,
+      KijiRowFilter rowFilter, HBaseScanOptions scanOptions)
+      throws IOException {
+    try {
+      KijiTableLayout tableLayout = getTableLayout(dataRequest);
+      Scan scan = toScan(dataRequest, tableLayout, rowFilter, scanOptions);
 
-      if (null != rowFilter) {
-        KijiRowFilterApplicator applicator = new KijiRowFilterApplicator(rowFilter,
-          mKiji.getSchemaTable(), tableLayout);
-        applicator.applyTo(scan);
+      final RowKeyFormat format = tableLayout.getDesc().getKeysFormat();
+      final boolean salted = (format.getEncoding() == RowKeyEncoding.SALTED);
+      final List<RowRange> rowRanges = new ArrayList<RowRange>(ranges.size());
+      for (EntityIdRange range : ranges) {
+        rowRanges.add(toRowRange(range, salted));
       }
+      final List<RowRange> merged = MultiRowRangeFilter.sortAndMerge(rowRanges);
+      Preconditions.checkArgument(!merged.isEmpty(), "The ranges contain no row: %s", ranges);
 
-      return new HBaseKijiRowScanner(new HBaseKijiRowScanner.Options()
-          .withHBaseResultScanner(mTable.getHTable().getScanner(scan))
-          .withDataRequest(dataRequest)
-          .withTable(mTable)
-          .withCellDecoderFactory(getKijiCellDecoderFactory()));
+      final ResultScanner resultScanner;
+      if (salted) {
+        resultScanner = getBucketScanner(scan, format, merged);
+      } else {
+        scan.setStartRow(merged.get(0).getStart());
+        scan.setStopRow(merged.get(merged.size() - 1).getStop());
+        if (merged.size() > 1) {
+          addFilter(scan, new MultiRowRangeFilter(merged));
+        }
+        resultScanner = mTable.getHTable().getScanner(scan);
+      }
+      return toRowScanner(resultScanner, dataRequest);
     } catch (InvalidLayoutException e) {
       // The table layout should never be invalid at this point, since we got it from a valid
       // opened table.  If it is, there's something seriously wrong.
@@ -238,6 +316,357 @@ public class HBaseKijiTableReader extends KijiTableReader {
     }
   }
 
+  /** {@inheritDoc} */
+  @Override
+  public List<EntityId> lookupIndex(String family, String qualifier, Object value)
+      throws IOException {
+    final KijiColumnName column = new KijiColumnName(family, qualifier);
+    final HBaseColumnIndex index = getColumnIndex();
+    Preconditions.checkArgument(index.isIndexed(column), "Column '%s' is not indexed.", column);
+    final byte[] indexedValue = index.encodeValue(column, value);
+    final byte[] prefix = index.getIndexRowKeyPrefix(column, indexedValue);
+
+    // Read the candidate rows from the index:
+    final List<Get> gets = new ArrayList<Get>();
+    final HBaseColumnName hbaseColumnName =
+        mTable.getColumnNameTranslator().toHBaseColumnName(column);
+    final Scan scan = new Scan(prefix, FormattedEntityId.getStopRowKey(prefix));
+    scan.addFamily(HBaseColumnIndex.INDEX_FAMILY);
+    scan.setFilter(new KeyOnlyFilter());
+    scan.setCaching(INDEX_SCAN_CACHING);
+    final ResultScanner scanner = getIndexHTable().getScanner(scan);
+    try {
+      for (Result result : scanner) {
+        final Get get =
+            new Get(HBaseColumnIndex.getEntityRowKey(result.getRow(), prefix.length));
+        get.addColumn(hbaseColumnName.getFamily(), hbaseColumnName.getQualifier());
+        gets.add(get);
+      }
+    } finally {
+      scanner.close();
+    }
+    if (gets.isEmpty()) {
+      return Collections.emptyList();
+    }
+
+    // Index entries are not removed when cells are overwritten or deleted:
+    // check the most recent cell of each candidate row.
+    final List<EntityId> entityIds = new ArrayList<EntityId>();
+    for (Result result : mTable.getHTable().get(gets)) {
+      final byte[] cell =
+          result.getValue(hbaseColumnName.getFamily(), hbaseColumnName.getQualifier());
+      if ((null != cell) && Arrays.equals(indexedValue, index.encodeCell(column, cell))) {
+        entityIds.add(mTable.getEntityIdFactory().fromHBaseRowKey(result.getRow()));
+      }
+    }
+    return entityIds;
+  }
+
+  /**
+   * Gets the index of the table, for its current layout.
+   *
+   * @return the index of the table.
+   * @throws IOException If the layout is invalid.
+   */
+  private synchronized HBaseColumnIndex getColumnIndex() throws IOException {
+    final KijiTableLayout layout = mTable.getLayout();
+    if (layout != mColumnIndexLayout) {
+      mColumnIndex = new HBaseColumnIndex(layout, mKiji.getSchemaTable());
+      mColumnIndexLayout = layout;
+    }
+    return mColumnIndex;
+  }
+
+  /**
+   * Gets the HBase index table, opening it if necessary.  It is closed with this reader.
+   *
+   * @return the HBase index table.
+   * @throws IOException If the index table cannot be opened.
+   */
+  private synchronized HTableInterface getIndexHTable() throws IOException {
+    if (null == mIndexHTable) {
+      mIndexHTable = DefaultHTableInterfaceFactory.get().create(mKiji.getConf(),
+          KijiManagedHBaseTableName.getKijiIndexTableName(mKiji.getName(), mTable.getName())
+              .toString());
+    }
+    return mIndexHTable;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public long countRows(EntityIdRange range) throws IOException {
+    final RowKeyFormat format = mTable.getLayout().getDesc().getKeysFormat();
+    final boolean salted = (format.getEncoding() == RowKeyEncoding.SALTED);
+    final List<RowRange> merged =
+        MultiRowRangeFilter.sortAndMerge(Collections.singletonList(toRowRange(range, salted)));
+    final List<RowRange> rowRanges = new ArrayList<RowRange>();
+    if (salted && !merged.isEmpty()) {
+      for (int bucket = 0; bucket < format.getNumBuckets(); bucket++) {
+        rowRanges.addAll(toBucketRanges(bucket, merged));
+      }
+    } else {
+      rowRanges.addAll(merged);
+    }
+
+    final List<RowRange> regionRanges =
+        MultiRowRangeFilter.splitAt(rowRanges, getRegionStartKeys());
+    if (regionRanges.size() <= 1) {
+      return regionRanges.isEmpty() ? 0L : countRows(mTable.getHTable(), regionRanges.get(0));
+    }
+
+    // HTables are not thread-safe: each region is counted with its own pooled HTable,
+    // on the bounded executor shared by the scans of the Kiji instance.
+    final List<Future<Long>> counts = new ArrayList<Future<Long>>(regionRanges.size());
+    try {
+      for (final RowRange regionRange : regionRanges) {
+        counts.add(mKiji.getScanExecutor().submit(new Callable<Long>() {
+          @Override
+          public Long call() throws IOException {
+            final HTableInterface htable = mTable.acquireHTable();
+            try {
+              return countRows(htable, regionRange);
+            } finally {
+              mTable.releaseHTable(htable);
+            }
+          }
+        }));
+      }
+      long total = 0;
+      for (Future<Long> count : counts) {
+        total += count.get();
+      }
+      return total;
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while counting the rows of " + range);
+    } catch (ExecutionException ee) {
+      if (ee.getCause() instanceof IOException) {
+        throw (IOException) ee.getCause();
+      }
+      throw new RuntimeException(ee.getCause());
+    } finally {
+      // Stops the counts left running after a failure; completed counts are unaffected.
+      for (Future<Long> count : counts) {
+        count.cancel(true);
+      }
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public KijiEntityIdScanner scanEntityIds(EntityIdRange range) throws IOException {
+    final RowKeyFormat format = mTable.getLayout().getDesc().getKeysFormat();
+    final boolean salted = (format.getEncoding() == RowKeyEncoding.SALTED);
+    final List<RowRange> merged =
+        MultiRowRangeFilter.sortAndMerge(Collections.singletonList(toRowRange(range, salted)));
+    Preconditions.checkArgument(!merged.isEmpty(), "The range contains no row: %s", range);
+
+    final Scan scan = toKeyOnlyScan();
+    final ResultScanner resultScanner;
+    if (salted) {
+      resultScanner = getBucketScanner(scan, format, merged);
+    } else {
+      scan.setStartRow(merged.get(0).getStart());
+      scan.setStopRow(merged.get(0).getStop());
+      resultScanner = mTable.getHTable().getScanner(scan);
+    }
+    return new HBaseEntityIdScanner(resultScanner, mTable.getEntityIdFactory());
+  }
+
+  /**
+   * Builds an HBase scan descriptor returning only the key of the first cell of each row.
+   *
+   * @return the HBase scan descriptor, without start or stop rows.
+   */
+  private static Scan toKeyOnlyScan() {
+    final Scan scan = new Scan();
+    scan.setFilter(new FilterList(FilterList.Operator.MUST_PASS_ALL,
+        Arrays.<Filter>asList(new FirstKeyOnlyFilter(), new KeyOnlyFilter())));
+    scan.setCaching(KEY_SCAN_CACHING);
+    scan.setCacheBlocks(false);
+    return scan;
+  }
+
+  /**
+   * Counts the rows in a range of HBase row keys.
+   *
+   * @param htable The HTable to scan.
+   * @param range The range of HBase row keys.
+   * @return the number of rows in the range.
+   * @throws IOException If there is an IO error.
+   */
+  private static long countRows(HTableInterface htable, RowRange range) throws IOException {
+    final Scan scan = toKeyOnlyScan();
+    scan.setStartRow(range.getStart());
+    scan.setStopRow(range.getStop());
+    final ResultScanner scanner = htable.getScanner(scan);
+    try {
+      long count = 0;
+      for (Result result : scanner) {
+        count += 1;
+      }
+      return count;
+    } finally {
+      scanner.close();
+    }
+  }
+
+  /**
+   * Gets the start keys of the regions of the table.
+   *
+   * @return the start keys of the regions, or an empty list if the regions are unknown.
+   * @throws IOException If there is an IO error.
+   */
+  private List<byte[]> getRegionStartKeys() throws IOException {
+    final HTableInterface htable = mTable.getHTable();
+    if (!(htable instanceof HTable)) {
+      return Collections.emptyList();
+    }
+    return Arrays.asList(((HTable) htable).getStartKeys());
+  }
+
+  /**
+   * Builds the HBase scan descriptor for a data request, without start or stop rows.
+   *
+   * @param dataRequest The data request.
+   * @param tableLayout The layout of the table.
+   * @param rowFilter The KijiRowFilter to apply, or null.
+   * @param scanOptions The custom scanner configuration to use.
+   * @return the HBase scan descriptor.
+   * @throws IOException If there is an IO error, or if the table layout is invalid.
+   */
+  private Scan toScan(KijiDataRequest dataRequest, KijiTableLayout tableLayout,
+      KijiRowFilter rowFilter, HBaseScanOptions scanOptions)
+      throws IOException {
+    HBaseDataRequestAdapter dataRequestAdapter = new HBaseDataRequestAdapter(dataRequest);
+    Scan scan = dataRequestAdapter.toScan(tableLayout, scanOptions);
+    if (null != rowFilter) {
+      KijiRowFilterApplicator applicator = new KijiRowFilterApplicator(rowFilter,
+        mKiji.getSchemaTable(), tableLayout);
+      applicator.applyTo(scan);
+    }
+    return scan;
+  }
+
+  /**
+   * Wraps an HBase result scanner into a Kiji row scanner.
+   *
+   * @param resultScanner The HBase result scanner.
+   * @param dataRequest The data request the rows are read for.
+   * @return the Kiji row scanner.
+   * @throws IOException If there is an error getting the cell decoder factory.
+   */
+  private KijiRowScanner toRowScanner(ResultScanner resultScanner, KijiDataRequest dataRequest)
+      throws IOException {
+    return new HBaseKijiRowScanner(new HBaseKijiRowScanner.Options()
+        .withHBaseResultScanner(resultScanner)
+        .withDataRequest(dataRequest)
+        .withTable(mTable)
+        .withCellDecoderFactory(getKijiCellDecoderFactory())
+        .withCounterStripesHTable(getCounterStripesHTable(mTable.getLayout())));
+  }
+
+  /**
+   * Gets the HTable storing the stripes of the striped counters of the table.
+   *
+   * @param tableLayout The layout of the table.
+   * @return The counter stripes HTable, or null if the layout has no striped counters.
+   * @throws IOException If there is an error opening the HTable.
+   */
+  private HTableInterface getCounterStripesHTable(KijiTableLayout tableLayout)
+      throws IOException {
+    return HBaseCounterStripes.hasStripedCounters(tableLayout)
+        ? mTable.getCounterStripesHTable()
+        : null;
+  }
+
+  /**
+   * Translates a range of entity IDs into a range of row keys.
+   *
+   * @param range The range of entity IDs.
+   * @param salted Whether to translate into Kiji row keys, for salted tables, rather than into
+   *     HBase row keys.
+   * @return the range of row keys.
+   */
+  private static RowRange toRowRange(EntityIdRange range, boolean salted) {
+    final byte[] start = (null == range.getStart()) ? null
+        : salted ? range.getStart().getKijiRowKey() : range.getStart().getHBaseRowKey();
+    if (range.isPrefix()) {
+      return new RowRange(start, FormattedEntityId.getStopRowKey(start));
+    }
+    final byte[] stop = (null == range.getStop()) ? null
+        : salted ? range.getStop().getKijiRowKey() : range.getStop().getHBaseRowKey();
+    return new RowRange(start, stop);
+  }
+
+  /**
+   * Adds a filter to a scan, in conjunction with the filter already set on the scan if any.
+   *
+   * @param scan The scan descriptor.
+   * @param filter The filter to add.
+   */
+  private static void addFilter(Scan scan, Filter filter) {
+    final Filter existing = scan.getFilter();
+    // The new filter goes first, so that its seek hints take effect:
+    scan.setFilter((null == existing)
+        ? filter
+        : new FilterList(FilterList.Operator.MUST_PASS_ALL, Arrays.asList(filter, existing)));
+  }
+
+  /**
+   * Scans the salt buckets of a table in parallel, and merges the rows back in Kiji row key order.
+   *
+   * @param scan Scan to run over each bucket; its start and stop rows are ignored.
+   * @param format Salted row key format of the table.
+   * @param ranges Sorted and merged ranges of Kiji row keys to scan in each bucket.
+   * @return a result scanner over the rows of all the buckets, in Kiji row key order.
+   * @throws IOException If there is an error opening the bucket scanners.
+   */
+  private ResultScanner getBucketScanner(Scan scan, RowKeyFormat format, List<RowRange> ranges)
+      throws IOException {
+    final int numBuckets = format.getNumBuckets();
+    final List<ResultScanner> bucketScanners = new ArrayList<ResultScanner>(numBuckets);
+    try {
+      for (int bucket = 0; bucket < numBuckets; bucket++) {
+        final List<RowRange> bucketRanges = toBucketRanges(bucket, ranges);
+        final Scan bucketScan = new Scan(scan);
+        bucketScan.setStartRow(bucketRanges.get(0).getStart());
+        bucketScan.setStopRow(bucketRanges.get(bucketRanges.size() - 1).getStop());
+        if (bucketRanges.size() > 1) {
+          addFilter(bucketScan, new MultiRowRangeFilter(bucketRanges));
+        }
+        bucketScanners.add(mTable.getHTable().getScanner(bucketScan));
+      }
+    } catch (IOException ioe) {
+      for (ResultScanner bucketScanner : bucketScanners) {
+        bucketScanner.close();
+      }
+      throw ioe;
+    }
+    return new BucketMergingResultScanner(bucketScanners,
+        BucketMergingResultScanner.DEFAULT_PREFETCH_SIZE, mKiji.getScanExecutor());
+  }
+
+  /**
+   * Salts ranges of Kiji row keys into ranges of HBase row keys of a salt bucket.
+   *
+   * @param bucket Index of the salt bucket.
+   * @param ranges Ranges of Kiji row keys.
+   * @return the ranges of HBase row keys of the bucket.
+   */
+  private static List<RowRange> toBucketRanges(int bucket, List<RowRange> ranges) {
+    final byte[] salt = new byte[] {(byte) bucket};
+    final byte[] bucketEnd = (bucket + 1 < SaltedEntityId.MAX_NUM_BUCKETS)
+        ? new byte[] {(byte) (bucket + 1)}
+        : HConstants.EMPTY_END_ROW;
+    final List<RowRange> bucketRanges = new ArrayList<RowRange>(ranges.size());
+    for (RowRange range : ranges) {
+      bucketRanges.add(new RowRange(Bytes.add(salt, range.getStart()),
+          range.isUnbounded() ? bucketEnd : Bytes.add(salt, range.getStop())));
+    }
+    return bucketRanges;
+  }
+
   /**
    * Helper method to retrieve the KijiTableLayout.
    *
@@ -257,4 +686,18 @@ public class HBaseKijiTableReader extends KijiTableReader {
     return tableLayout;
   }
 
+  /** {@inheritDoc} */
+  @Override
+  public void close() throws IOException {
+    try {
+      synchronized (this) {
+        if (null != mIndexHTable) {
+          mIndexHTable.close();
+          mIndexHTable = null;
+        }
+      }
+    } finally {
+      super.close();
+    }
+  }
 }
@@ -20,17 +20,27 @@
 package org.kiji.schema.impl;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.NavigableMap;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.KeyValue;
 import org.apache.hadoop.hbase.client.Delete;
 import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.HTableInterface;
 import org.apache.hadoop.hbase.client.Increment;
 import org.apache.hadoop.hbase.client.Put;
 import org.apache.hadoop.hbase.client.Result;
-import org.apache.hadoop.hbase.client.RowLock;
 import org.apache.hadoop.hbase.filter.ColumnPrefixFilter;
 import org.apache.hadoop.hbase.filter.FilterList;
 import org.apache.hadoop.hbase.filter.KeyOnlyFilter;
@@ -39,13 +49,13 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import org.kiji.schema.EntityId;
-import org.kiji.schema.EntityIdFactory;
 import org.kiji.schema.HBaseColumnName;
 import org.kiji.schema.Kiji;
 import org.kiji.schema.KijiCell;
 import org.kiji.schema.KijiCellEncoder;
 import org.kiji.schema.KijiColumnName;
 import org.kiji.schema.KijiCounter;
+import org.kiji.schema.KijiManagedHBaseTableName;
 import org.kiji.schema.KijiTable;
 import org.kiji.schema.KijiTableWriter;
 import org.kiji.schema.NoSuchColumnException;
@@ -53,8 +63,11 @@ import org.kiji.schema.PutLocalApiWriter;
 import org.kiji.schema.WrappedDataWriter;
 import org.kiji.schema.avro.SchemaType;
 import org.kiji.schema.layout.ColumnNameTranslator;
+import org.kiji.schema.layout.KijiTableLayout;
 import org.kiji.schema.layout.KijiTableLayout.LocalityGroupLayout.FamilyLayout;
 import org.kiji.schema.layout.KijiTableLayout.LocalityGroupLayout.FamilyLayout.ColumnLayout;
+import org.kiji.schema.util.Clock;
+import org.kiji.schema.util.DefaultClock;
 
 /**
  * Makes modifications to a Kiji table by sending requests directly to HBase from the local client.
@@ -62,6 +75,12 @@ import org.kiji.schema.layout.KijiTableLayout.LocalityGroupLayout.FamilyLayout.C
 public class HBaseKijiTableWriter extends KijiTableWriter {
   private static final Logger LOG = LoggerFactory.getLogger(HBaseKijiTableWriter.class);
 
+  /** The maximum number of rows deleted from in one batch by deleteFamily(). */
+  public static final int DELETE_BATCH_SIZE = 1000;
+
+  /** Draws the counter stripe seeds of the writers that are not given one. */
+  private static final Random STRIPE_SEEDS = new Random();
+
   /** The kiji instance the table is in. */
   private final Kiji mKiji;
   /** The kiji table instance. */
@@ -72,6 +91,169 @@ public class HBaseKijiTableWriter extends KijiTableWriter {
   private final KijiCellEncoder mCellEncoder;
   /** A kiji data writer to perform puts with. */
   private final WrappedDataWriter<?, ?> mWriter;
+  /** The HTable storing the index of the table, or null if the table has no indexed column. */
+  private final HTableInterface mIndexHTable;
+  /** The striped counters of the table. */
+  private final HBaseCounterStripes mCounterStripes;
+  /** Picks the stripe of the striped counters incremented by this writer. */
+  private final int mStripeSeed;
+  /** Aggregates the increments sent through addToCounter(). */
+  private final KijiIncrementBuffer mIncrements;
+  /** The number of distinct counters that triggers a flush of the buffered increments. */
+  private final int mMaxBufferedIncrements;
+  /** The age of the oldest buffered increment that triggers a flush of the increments. */
+  private final long mIncrementFlushIntervalMillis;
+  /** A clock, used to age buffered increments. */
+  private final Clock mClock;
+  /** The time when the oldest buffered increment was added. Guarded by mIncrements. */
+  private long mFirstBufferedIncrementTime;
+  /** Flushes the expired increments in the background, or null without a flush interval. */
+  private final ScheduledExecutorService mIncrementFlusher;
+  /** The HTable of the background increment flusher, acquired on its first flush. */
+  private HTableInterface mIncrementFlusherHTable = null;
+  /** The counter stripes HTable of the background increment flusher, opened on first use. */
+  private HTableInterface mIncrementFlusherStripesHTable = null;
+  /** First error raised by a background flush of the increments, not yet reported. */
+  private final AtomicReference<Throwable> mIncrementFlushError =
+      new AtomicReference<Throwable>();
+  /** Set once the put writer is closed, which flushes the pending puts. */
+  private boolean mIsWriterClosed = false;
+
+  /**
+   * Describes the options that can be configured on the {@link HBaseKijiTableWriter}.
+   */
+  public static class Options {
+    private int mMaxBufferedPuts;
+    private long mMaxBufferedBytes;
+    private long mFlushIntervalMillis;
+    private boolean mWriteBehind;
+    private int mMaxBufferedIncrements;
+    private long mIncrementFlushIntervalMillis;
+    private Clock mClock = new DefaultClock();
+    private int mCounterStripeSeed = -1;
+
+    /**
+     * @param maxBufferedPuts When this number of puts have been stored in the buffer it will
+     *     auto-flush. Set this to 0 to disable buffering.
+     * @return This object to allow chaining of setter methods.
+     */
+    public Options withMaxBufferedPuts(int maxBufferedPuts) {
+      mMaxBufferedPuts = maxBufferedPuts;
+      return this;
+    }
+
+    /**
+     * @param maxBufferedBytes When the encoded puts stored in the buffer reach this size, it will
+     *     auto-flush. Set this to 0 to only flush based on the number of buffered puts.
+     * @return This object to allow chaining of setter methods.
+     */
+    public Options withMaxBufferedBytes(long maxBufferedBytes) {
+      mMaxBufferedBytes = maxBufferedBytes;
+      return this;
+    }
+
+    /**
+     * @param flushIntervalMillis In write-behind mode, the interval after which buffered puts are
+     *     flushed even if the buffer is not full. Set this to 0 to disable time-based flushes.
+     * @return This object to allow chaining of setter methods.
+     */
+    public Options withFlushIntervalMillis(long flushIntervalMillis) {
+      mFlushIntervalMillis = flushIntervalMillis;
+      return this;
+    }
+
+    /**
+     * @param writeBehind Whether buffered puts are flushed by a background thread, so that
+     *     callers of put() do not wait for the HBase RPCs.
+     * @return This object to allow chaining of setter methods.
+     */
+    public Options withWriteBehind(boolean writeBehind) {
+      mWriteBehind = writeBehind;
+      return this;
+    }
+
+    /**
+     * @param maxBufferedIncrements When increments to this number of distinct counters have been
+     *     aggregated by addToCounter(), they are sent to the table. Set this to 0 to send each
+     *     increment as soon as it is added.
+     * @return This object to allow chaining of setter methods.
+     */
+    public Options withMaxBufferedIncrements(int maxBufferedIncrements) {
+      mMaxBufferedIncrements = maxBufferedIncrements;
+      return this;
+    }
+
+    /**
+     * @param incrementFlushIntervalMillis When the oldest increment aggregated by addToCounter()
+     *     is older than this interval, the aggregated increments are sent to the table, either by
+     *     the next addToCounter() or by a background timer that checks their age every half
+     *     interval. Set this to 0 to only send them based on the number of buffered counters.
+     * @return This object to allow chaining of setter methods.
+     */
+    public Options withIncrementFlushIntervalMillis(long incrementFlushIntervalMillis) {
+      mIncrementFlushIntervalMillis = incrementFlushIntervalMillis;
+      return this;
+    }
+
+    /**
+     * @param clock The clock used to age the buffered increments.
+     * @return This object to allow chaining of setter methods.
+     */
+    public Options withClock(Clock clock) {
+      mClock = clock;
+      return this;
+    }
+
+    /**
+     * @param counterStripeSeed Picks the stripe of the striped counters incremented by the
+     *     writer, a non-negative integer. Set this to -1 to draw it at random.
+     * @return This object to allow chaining of setter methods.
+     */
+    public Options withCounterStripeSeed(int counterStripeSeed) {
+      mCounterStripeSeed = counterStripeSeed;
+      return this;
+    }
+
+    /** @return The number of buffered puts that triggers a flush. */
+    public int getMaxBufferedPuts() {
+      return mMaxBufferedPuts;
+    }
+
+    /** @return The encoded size of the buffered puts that triggers a flush. */
+    public long getMaxBufferedBytes() {
+      return mMaxBufferedBytes;
+    }
+
+    /** @return The interval after which buffered puts are flushed in write-behind mode. */
+    public long getFlushIntervalMillis() {
+      return mFlushIntervalMillis;
+    }
+
+    /** @return Whether buffered puts are flushed by a background thread. */
+    public boolean isWriteBehind() {
+      return mWriteBehind;
+    }
+
+    /** @return The number of distinct buffered counters that triggers a flush of increments. */
+    public int getMaxBufferedIncrements() {
+      return mMaxBufferedIncrements;
+    }
+
+    /** @return The age of the oldest buffered increment that triggers a flush of increments. */
+    public long getIncrementFlushIntervalMillis() {
+      return mIncrementFlushIntervalMillis;
+    }
+
+    /** @return The clock used to age the buffered increments. */
+    public Clock getClock() {
+      return mClock;
+    }
+
+    /** @return The seed picking the stripe of the striped counters, or -1 if drawn at random. */
+    public int getCounterStripeSeed() {
+      return mCounterStripeSeed;
+    }
+  }
 
   /**
    * Creates a non-buffered kiji table writer that sends modifications directly to Kiji.
@@ -92,19 +274,123 @@ public class HBaseKijiTableWriter extends KijiTableWriter {
    * @throws IOException If there is an error creating the writer.
    */
   public HBaseKijiTableWriter(KijiTable table, int maxBufferedPuts) throws IOException {
+    this(table, new Options().withMaxBufferedPuts(maxBufferedPuts));
+  }
+
+  /**
+   * Creates a kiji table writer that sends modifications directly to Kiji.
+   *
+   * @param table A kiji table.
+   * @param options The options to create the writer with.
+   * @throws IOException If there is an error creating the writer.
+   */
+  public HBaseKijiTableWriter(KijiTable table, Options options) throws IOException {
     mKiji = table.getKiji();
     mTable = HBaseKijiTable.downcast(table);
-    mColumnNameTranslator = new ColumnNameTranslator(mTable.getLayout());
+    mColumnNameTranslator = mTable.getColumnNameTranslator();
     mCellEncoder = new KijiCellEncoder(mKiji.getSchemaTable());
-    mWriter = new PutLocalApiWriter(new PutLocalApiWriter.Options()
+    final PutLocalApiWriter.Options writerOptions = new PutLocalApiWriter.Options()
         .withCellEncoder(mCellEncoder)
         .withColumnNameTranslator(mColumnNameTranslator)
-        .withEntityIdFactory(EntityIdFactory.create(mTable.getLayout().getDesc().getKeysFormat()))
-        .withMaxBufferedWrites(maxBufferedPuts)
-        .withKijiTable(table));
+        .withEntityIdFactory(mTable.getEntityIdFactory())
+        .withMaxBufferedWrites(options.getMaxBufferedPuts())
+        .withMaxBufferedBytes(options.getMaxBufferedBytes())
+        .withFlushIntervalMillis(options.getFlushIntervalMillis())
+        .withWriteBehind(options.isWriteBehind())
+        .withKijiTable(table);
+    final KijiTableLayout layout = mTable.getLayout();
+    if (HBaseColumnIndex.hasIndexedColumns(layout)) {
+      mIndexHTable = DefaultHTableInterfaceFactory.get().create(mKiji.getConf(),
+          KijiManagedHBaseTableName.getKijiIndexTableName(mKiji.getName(), mTable.getName())
+              .toString());
+      mWriter = new IndexingPutWriter(writerOptions,
+          new HBaseColumnIndex(layout, mKiji.getSchemaTable()), mIndexHTable);
+    } else {
+      mIndexHTable = null;
+      mWriter = new PutLocalApiWriter(writerOptions);
+    }
+    mCounterStripes = new HBaseCounterStripes(layout);
+    mStripeSeed = (options.getCounterStripeSeed() >= 0)
+        ? options.getCounterStripeSeed()
+        : STRIPE_SEEDS.nextInt(Integer.MAX_VALUE);
+    mIncrements = new KijiIncrementBuffer(mCounterStripes, mStripeSeed);
+    mMaxBufferedIncrements = options.getMaxBufferedIncrements();
+    mIncrementFlushIntervalMillis = options.getIncrementFlushIntervalMillis();
+    mClock = options.getClock();
+    if (mIncrementFlushIntervalMillis > 0) {
+      final long checkPeriodMillis = Math.max(1L, mIncrementFlushIntervalMillis / 2);
+      mIncrementFlusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+          .setDaemon(true)
+          .setNameFormat("kiji-increment-flusher-%d")
+          .build());
+      mIncrementFlusher.scheduleWithFixedDelay(new Runnable() {
+        /** {@inheritDoc} */
+        @Override
+        public void run() {
+          flushExpiredIncrements();
+        }
+      }, checkPeriodMillis, checkPeriodMillis, TimeUnit.MILLISECONDS);
+    } else {
+      mIncrementFlusher = null;
+    }
     LOG.debug("Finished creating HBaseKijiTableWriter");
   }
 
+  /**
+   * A put writer that maintains the index of the indexed columns.
+   *
+   * <p>The index entries of each batch of puts are sent to the index table in one batch, before
+   * the puts themselves, so that the index never misses a cell that reached the table.</p>
+   */
+  private static final class IndexingPutWriter extends PutLocalApiWriter {
+    /** The index of the table. */
+    private final HBaseColumnIndex mIndex;
+
+    /** The HTable storing the index. */
+    private final HTableInterface mIndexHTable;
+
+    /**
+     * Creates a writer.
+     *
+     * @param options The options to create the data writer with.
+     * @param index The index of the table.
+     * @param indexHTable The HTable storing the index.
+     */
+    private IndexingPutWriter(
+        PutLocalApiWriter.Options options, HBaseColumnIndex index, HTableInterface indexHTable) {
+      super(options);
+      mIndex = index;
+      mIndexHTable = indexHTable;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void doWrite(Put wrapped) throws IOException {
+      writeIndex(Collections.singletonList(wrapped));
+      super.doWrite(wrapped);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void doWriteBatch(List<Put> wrapped) throws IOException {
+      writeIndex(wrapped);
+      super.doWriteBatch(wrapped);
+    }
+
+    /**
+     * Sends the index entries of a batch of puts to the index table.
+     *
+     * @param puts A batch of puts to the table.
+     * @throws IOException If there is an error writing to the index table.
+     */
+    private void writeIndex(List<Put> puts) throws IOException {
+      final List<Put> indexPuts = mIndex.toIndexPuts(puts);
+      if (!indexPuts.isEmpty()) {
+        mIndexHTable.put(indexPuts);
+      }
+    }
+  }
+
   /** {@inheritDoc} */
   @Override
   public void put(EntityId entityId, String family, String qualifier, long timestamp,
@@ -112,18 +398,36 @@ public class HBaseKijiTableWriter extends KijiTableWriter {
     mWriter.write(entityId, family, qualifier, timestamp, cell);
   }
 
-  /** {@inheritDoc} */
+  /**
+   * {@inheritDoc}
+   *
+   * <p>A striped counter is incremented on the stripe picked by this writer, and its other
+   * stripes are then read back to return its value: the value returned is not atomic with
+   * respect to concurrent increments. Hot striped counters should use addToCounter().</p>
+   */
   @Override
   public KijiCounter increment(EntityId entityId, String family, String qualifier, long amount)
       throws IOException {
     verifyIsCounter(family, qualifier);
+    // The returned value must account for the increments buffered so far.
+    flushIncrements();
 
     // Translate the Kiji column name to an HBase column name.
-    final HBaseColumnName hbaseColumnName = mColumnNameTranslator.toHBaseColumnName(
-        new KijiColumnName(family, qualifier));
+    final KijiColumnName column = new KijiColumnName(family, qualifier);
+    final HBaseColumnName hbaseColumnName = mColumnNameTranslator.toHBaseColumnName(column);
+    final byte[] rowKey = entityId.getHBaseRowKey();
+    final int stripe = mCounterStripes.getStripe(column, mStripeSeed);
+    if (0 != stripe) {
+      final Result result = mTable.getCounterStripesHTable()
+          .increment(mCounterStripes.toStripeIncrement(stripe, rowKey, column, amount));
+      final KeyValue stripeCell = result.getColumnLatest(HBaseCounterStripes.STRIPES_FAMILY,
+          HBaseCounterStripes.getStripeQualifier(hbaseColumnName));
+      assert null != stripeCell;
+      return readStripedCounter(rowKey, column, stripeCell.getTimestamp());
+    }
 
     // Send the increment to the HBase HTable.
-    final Increment increment = new Increment(entityId.getHBaseRowKey());
+    final Increment increment = new Increment(rowKey);
     increment.addColumn(
         hbaseColumnName.getFamily(),
         hbaseColumnName.getQualifier(),
@@ -135,16 +439,63 @@ public class HBaseKijiTableWriter extends KijiTableWriter {
     assert 1 == counterEntries.size();
 
     final Map.Entry<Long, byte[]> counterEntry = counterEntries.firstEntry();
+    if (mCounterStripes.getStripes(column) > 1) {
+      return readStripedCounter(rowKey, column, counterEntry.getKey());
+    }
     return new DefaultKijiCounter(
         counterEntry.getKey(),
         Bytes.toLong(counterEntry.getValue()));
   }
 
+  /**
+   * Reads the value of a striped counter that was just incremented, by summing its stripes.
+   *
+   * @param rowKey The HBase row key of the entity.
+   * @param column The striped counter.
+   * @param timestamp The timestamp of the incremented stripe.
+   * @return The value of the counter, timestamped with the incremented stripe.
+   * @throws IOException If there is an error reading the stripes.
+   */
+  private KijiCounter readStripedCounter(byte[] rowKey, KijiColumnName column, long timestamp)
+      throws IOException {
+    final HBaseColumnName hbaseColumnName = mColumnNameTranslator.toHBaseColumnName(column);
+    final Get get = new Get(rowKey);
+    get.addColumn(hbaseColumnName.getFamily(), hbaseColumnName.getQualifier());
+    final KeyValue cell = mTable.getHTable().get(get)
+        .getColumnLatest(hbaseColumnName.getFamily(), hbaseColumnName.getQualifier());
+    final KijiCounter value = HBaseCounterStripes.sum(
+        (null == cell)
+            ? null
+            : new DefaultKijiCounter(cell.getTimestamp(), Bytes.toLong(cell.getValue())),
+        HBaseCounterStripes.readStripes(mTable.getCounterStripesHTable(), rowKey,
+            hbaseColumnName, mCounterStripes.getStripes(column), 0L, Long.MAX_VALUE));
+    return new DefaultKijiCounter(timestamp, (null == value) ? 0L : value.getValue());
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void addToCounter(EntityId entityId, String family, String qualifier, long amount)
+      throws IOException {
+    verifyIsCounter(family, qualifier);
+    synchronized (mIncrements) {
+      rethrowIncrementFlushError();
+      if (mIncrements.isEmpty()) {
+        mFirstBufferedIncrementTime = mClock.getTime();
+      }
+      mIncrements.add(entityId, family, qualifier, amount);
+      if (mIncrements.size() >= mMaxBufferedIncrements || isIncrementBufferExpired()) {
+        flushIncrements();
+      }
+    }
+  }
+
   /** {@inheritDoc} */
   @Override
   public void setCounter(EntityId entityId, String family, String qualifier, long value)
       throws IOException {
     verifyIsCounter(family, qualifier);
+    // Buffered increments must not be applied on top of the new value.
+    flushIncrements();
 
     // Construct an HBase Put object.
     HBaseColumnName hbaseColumnName = mColumnNameTranslator.toHBaseColumnName(
@@ -154,33 +505,82 @@ public class HBaseKijiTableWriter extends KijiTableWriter {
 
     // Send the Put to the HTable.
     mTable.getHTable().put(put);
+
+    // The value of a striped counter is the sum of its stripes: reset the other stripes.
+    deleteStripes(entityId, new KijiColumnName(family, qualifier), HConstants.LATEST_TIMESTAMP,
+        true);
   }
 
   /** {@inheritDoc} */
   @Override
   public void deleteRow(EntityId entityId, long upToTimestamp) throws IOException {
+    // Buffered increments were issued before this delete, so they must reach the table first.
+    flushIncrements();
     // Construct an HBase Delete object.
     Delete delete = new Delete(entityId.getHBaseRowKey(), upToTimestamp, null);
 
     // Send the delete to the HBase HTable.
     mTable.getHTable().delete(delete);
+
+    if (!mCounterStripes.isEmpty()) {
+      mTable.getCounterStripesHTable()
+          .delete(mCounterStripes.toRowDeletes(entityId.getHBaseRowKey(), upToTimestamp));
+    }
   }
 
   /** {@inheritDoc} */
   @Override
   public void deleteFamily(EntityId entityId, String family, long upToTimestamp)
       throws IOException {
+    deleteFamily(Collections.singletonList(entityId), family, upToTimestamp);
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>Rows are deleted from in batches of {@value #DELETE_BATCH_SIZE}, each sent with one
+   * multi-row request, plus one multi-row read for map-type families.</p>
+   */
+  @Override
+  public void deleteFamily(Iterable<EntityId> entityIds, String family, long upToTimestamp)
+      throws IOException {
+    // Buffered increments were issued before this delete, so they must reach the table first.
+    flushIncrements();
     final FamilyLayout familyLayout = mTable.getLayout().getFamilyMap().get(family);
     if (null == familyLayout) {
       throw new NoSuchColumnException(String.format("Family '%s' not found.", family));
     }
 
+    final List<EntityId> batch = new ArrayList<EntityId>();
+    for (EntityId entityId : entityIds) {
+      batch.add(entityId);
+      if (batch.size() >= DELETE_BATCH_SIZE) {
+        deleteFamily(batch, familyLayout, upToTimestamp);
+        batch.clear();
+      }
+    }
+    if (!batch.isEmpty()) {
+      deleteFamily(batch, familyLayout, upToTimestamp);
+    }
+  }
+
+  /**
+   * Deletes all cells from a family with a timestamp less than or equal to a specified
+   * timestamp, in a batch of rows.
+   *
+   * @param entityIds The entities (rows) to delete from.
+   * @param familyLayout The family layout.
+   * @param upToTimestamp A timestamp.
+   * @throws IOException If there is an IO error.
+   */
+  private void deleteFamily(List<EntityId> entityIds, FamilyLayout familyLayout,
+      long upToTimestamp) throws IOException {
     if (familyLayout.getLocalityGroup().getFamilyMap().size() > 1) {
       // There are multiple families within the locality group, so we need to be clever.
       if (familyLayout.isGroupType()) {
-        deleteGroupFamily(entityId, familyLayout, upToTimestamp);
+        deleteGroupFamily(entityIds, familyLayout, upToTimestamp);
       } else if (familyLayout.isMapType()) {
-        deleteMapFamily(entityId, familyLayout, upToTimestamp);
+        deleteMapFamily(entityIds, familyLayout, upToTimestamp);
       } else {
         throw new RuntimeException("Internal error: family is neither map-type nor group-type.");
       }
@@ -189,105 +589,162 @@ public class HBaseKijiTableWriter extends KijiTableWriter {
 
     // The only data in this HBase family is the one Kiji family, so we can delete everything.
     final HBaseColumnName hbaseColumnName =
-        mColumnNameTranslator.toHBaseColumnName(new KijiColumnName(family));
-    final Delete delete = new Delete(entityId.getHBaseRowKey());
-    delete.deleteFamily(hbaseColumnName.getFamily(), upToTimestamp);
+        mColumnNameTranslator.toHBaseColumnName(new KijiColumnName(familyLayout.getName()));
+    final List<Delete> deletes = new ArrayList<Delete>(entityIds.size());
+    for (EntityId entityId : entityIds) {
+      final Delete delete = new Delete(entityId.getHBaseRowKey());
+      delete.deleteFamily(hbaseColumnName.getFamily(), upToTimestamp);
+      deletes.add(delete);
+    }
 
-    // Send the delete to the HBase HTable.
-    mTable.getHTable().delete(delete);
+    // Send the deletes to the HBase HTable.
+    mTable.getHTable().delete(deletes);
+    if (familyLayout.isGroupType()) {
+      deleteFamilyStripes(entityIds, familyLayout, upToTimestamp);
+    }
   }
 
   /**
    * Deletes all cells from a group-type family with a timestamp less than or equal to a
-   * specified timestamp.
+   * specified timestamp, in a batch of rows.
    *
-   * @param entityId The entity (row) to delete from.
+   * @param entityIds The entities (rows) to delete from.
    * @param familyLayout The family layout.
    * @param upToTimestamp A timestamp.
    * @throws IOException If there is an IO error.
    */
   private void deleteGroupFamily(
-      EntityId entityId,
+      List<EntityId> entityIds,
       FamilyLayout familyLayout,
       long upToTimestamp)
       throws IOException {
     final String familyName = Preconditions.checkNotNull(familyLayout.getName());
     // Delete each column in the group according to the layout.
-    final Delete delete = new Delete(entityId.getHBaseRowKey());
+    final List<HBaseColumnName> hbaseColumnNames = new ArrayList<HBaseColumnName>();
     for (ColumnLayout columnLayout : familyLayout.getColumnMap().values()) {
       final String qualifier = columnLayout.getName();
-      final KijiColumnName column = new KijiColumnName(familyName, qualifier);
-      final HBaseColumnName hbaseColumnName = mColumnNameTranslator.toHBaseColumnName(column);
-      delete.deleteColumns(
-          hbaseColumnName.getFamily(), hbaseColumnName.getQualifier(), upToTimestamp);
+      hbaseColumnNames.add(
+          mColumnNameTranslator.toHBaseColumnName(new KijiColumnName(familyName, qualifier)));
     }
 
-    // Send the delete to the HBase HTable.
-    mTable.getHTable().delete(delete);
+    final List<Delete> deletes = new ArrayList<Delete>(entityIds.size());
+    for (EntityId entityId : entityIds) {
+      final Delete delete = new Delete(entityId.getHBaseRowKey());
+      for (HBaseColumnName hbaseColumnName : hbaseColumnNames) {
+        delete.deleteColumns(
+            hbaseColumnName.getFamily(), hbaseColumnName.getQualifier(), upToTimestamp);
+      }
+      deletes.add(delete);
+    }
+
+    // Send the deletes to the HBase HTable.
+    mTable.getHTable().delete(deletes);
+    deleteFamilyStripes(entityIds, familyLayout, upToTimestamp);
+  }
+
+  /**
+   * Deletes the cells of the other stripes of the striped counters of a group-type family,
+   * with a timestamp less than or equal to a specified timestamp, in a batch of rows.
+   *
+   * @param entityIds The entities (rows) to delete from.
+   * @param familyLayout The group-type family layout.
+   * @param upToTimestamp A timestamp.
+   * @throws IOException If there is an IO error.
+   */
+  private void deleteFamilyStripes(
+      List<EntityId> entityIds,
+      FamilyLayout familyLayout,
+      long upToTimestamp)
+      throws IOException {
+    final List<KijiColumnName> stripedColumns = new ArrayList<KijiColumnName>();
+    for (ColumnLayout columnLayout : familyLayout.getColumnMap().values()) {
+      final KijiColumnName column =
+          new KijiColumnName(familyLayout.getName(), columnLayout.getName());
+      if (mCounterStripes.getStripes(column) > 1) {
+        stripedColumns.add(column);
+      }
+    }
+    if (stripedColumns.isEmpty()) {
+      return;
+    }
+
+    final List<Delete> deletes = new ArrayList<Delete>();
+    for (EntityId entityId : entityIds) {
+      deletes.addAll(mCounterStripes.toStripeDeletes(
+          entityId.getHBaseRowKey(), stripedColumns, upToTimestamp, true));
+    }
+    mTable.getCounterStripesHTable().delete(deletes);
   }
 
   /**
    * Deletes all cells from a map-type family with a timestamp less than or equal to a
-   * specified timestamp.
+   * specified timestamp, in a batch of rows.
    *
-   * <p>This call requires an HBase row lock, so it should be used with care.</p>
+   * <p>This call does not lock the rows: cells written to new qualifiers of the family while
+   * the deletes are in flight may survive the delete.</p>
    *
-   * @param entityId The entity (row) to delete from.
+   * @param entityIds The entities (rows) to delete from.
    * @param familyLayout A family layout.
    * @param upToTimestamp A timestamp.
    * @throws IOException If there is an IO error.
    */
-  private void deleteMapFamily(EntityId entityId, FamilyLayout familyLayout, long upToTimestamp)
+  private void deleteMapFamily(
+      List<EntityId> entityIds,
+      FamilyLayout familyLayout,
+      long upToTimestamp)
       throws IOException {
     // Since multiple Kiji column families are mapped into a single HBase column family,
-    // we have to do this delete in a two-step transaction:
+    // we have to do this delete in two steps:
     //
     // 1. Send a get() to retrieve the names of all HBase qualifiers within the HBase
-    //    family that belong to the Kiji column family.
-    // 2. Send a delete() for each of the HBase qualifiers found in the previous step.
+    //    family that belong to the Kiji column family, for all the rows at once.
+    // 2. Send a delete() for each of the HBase qualifiers found in the previous step,
+    //    for all the rows at once.
 
     final String familyName = familyLayout.getName();
     final HBaseColumnName hbaseColumnName =
         mColumnNameTranslator.toHBaseColumnName(new KijiColumnName(familyName));
-    final byte[] hbaseRow = entityId.getHBaseRowKey();
 
-    // Lock the row.
-    final RowLock rowLock = mTable.getHTable().lockRow(hbaseRow);
-    try {
-      // Step 1.
-      final Get get = new Get(hbaseRow, rowLock);
+    // Step 1.
+    final FilterList filter = new FilterList(FilterList.Operator.MUST_PASS_ALL);
+    filter.addFilter(new KeyOnlyFilter());
+    filter.addFilter(new ColumnPrefixFilter(hbaseColumnName.getQualifier()));
+    final List<Get> gets = new ArrayList<Get>(entityIds.size());
+    for (EntityId entityId : entityIds) {
+      final Get get = new Get(entityId.getHBaseRowKey());
       get.addFamily(hbaseColumnName.getFamily());
-
-      final FilterList filter = new FilterList(FilterList.Operator.MUST_PASS_ALL);
-      filter.addFilter(new KeyOnlyFilter());
-      filter.addFilter(new ColumnPrefixFilter(hbaseColumnName.getQualifier()));
       get.setFilter(filter);
+      gets.add(get);
+    }
+    final Result[] results = mTable.getHTable().get(gets);
 
-      final Result result = mTable.getHTable().get(get);
-
-      // Step 2.
+    // Step 2.
+    final List<Delete> deletes = new ArrayList<Delete>(results.length);
+    for (Result result : results) {
       if (result.isEmpty()) {
-        LOG.debug("No qualifiers to delete in map family: " + familyName);
-      } else {
-        final Delete delete = new Delete(hbaseRow, HConstants.LATEST_TIMESTAMP, rowLock);
-        for (byte[] hbaseQualifier
-                 : result.getFamilyMap(hbaseColumnName.getFamily()).keySet()) {
-          LOG.debug("Deleting HBase column " + hbaseColumnName.getFamilyAsString()
-              + ":" + Bytes.toString(hbaseQualifier));
-          delete.deleteColumns(hbaseColumnName.getFamily(), hbaseQualifier, upToTimestamp);
-        }
-        mTable.getHTable().delete(delete);
+        continue;
       }
-    } finally {
-      // Make sure to unlock the row!
-      mTable.getHTable().unlockRow(rowLock);
+      final Delete delete = new Delete(result.getRow());
+      for (byte[] hbaseQualifier : result.getFamilyMap(hbaseColumnName.getFamily()).keySet()) {
+        LOG.debug("Deleting HBase column " + hbaseColumnName.getFamilyAsString()
+            + ":" + Bytes.toString(hbaseQualifier));
+        delete.deleteColumns(hbaseColumnName.getFamily(), hbaseQualifier, upToTimestamp);
+      }
+      deletes.add(delete);
     }
+    if (deletes.isEmpty()) {
+      LOG.debug("No qualifiers to delete in map family: " + familyName);
+      return;
+    }
+    mTable.getHTable().delete(deletes);
   }
 
   /** {@inheritDoc} */
   @Override
   public void deleteColumn(EntityId entityId, String family, String qualifier, long upToTimestamp)
       throws IOException {
+    // Buffered increments were issued before this delete, so they must reach the table first.
+    flushIncrements();
     // Construct an HBase Delete object.
     HBaseColumnName hbaseColumnName = mColumnNameTranslator.toHBaseColumnName(
         new KijiColumnName(family, qualifier));
@@ -297,12 +754,15 @@ public class HBaseKijiTableWriter extends KijiTableWriter {
 
     // Send the delete to the HBase HTable.
     mTable.getHTable().delete(delete);
+    deleteStripes(entityId, new KijiColumnName(family, qualifier), upToTimestamp, true);
   }
 
   /** {@inheritDoc} */
   @Override
   public void deleteCell(EntityId entityId, String family, String qualifier, long timestamp)
       throws IOException {
+    // Buffered increments were issued before this delete, so they must reach the table first.
+    flushIncrements();
     // Construct an HBase Delete object.
     HBaseColumnName hbaseColumnName = mColumnNameTranslator.toHBaseColumnName(
         new KijiColumnName(family, qualifier));
@@ -311,13 +771,161 @@ public class HBaseKijiTableWriter extends KijiTableWriter {
 
     // Send the delete to the HBase HTable.
     mTable.getHTable().delete(delete);
+    deleteStripes(entityId, new KijiColumnName(family, qualifier), timestamp, false);
+  }
+
+  /**
+   * Deletes the cells of the other stripes of a counter, if it is striped.
+   *
+   * @param entityId The entity (row) of the counter.
+   * @param column The column, striped counter or not.
+   * @param timestamp The timestamp of the deleted cells.
+   * @param allVersions Whether to delete all the versions up to the timestamp, or only the
+   *     version at the timestamp.
+   * @throws IOException If there is an IO error.
+   */
+  private void deleteStripes(EntityId entityId, KijiColumnName column, long timestamp,
+      boolean allVersions) throws IOException {
+    if (mCounterStripes.getStripes(column) <= 1) {
+      return;
+    }
+    mTable.getCounterStripesHTable().delete(mCounterStripes.toStripeDeletes(
+        entityId.getHBaseRowKey(), Collections.singletonList(column), timestamp, allVersions));
   }
 
   /** {@inheritDoc} */
   @Override
   public void flush() throws IOException, InterruptedException {
     // Flush any pending Puts.
-    mWriter.flush();
+    if (!mIsWriterClosed) {
+      mWriter.flush();
+    }
+    flushIncrements();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void close() throws IOException {
+    try {
+      // Flushes the pending puts, and stops the background flusher if any.
+      mIsWriterClosed = true;
+      mWriter.close();
+    } finally {
+      try {
+        // The remaining increments are flushed below, from this thread.
+        stopIncrementFlusher();
+        // Flushes the pending increments only: the puts were flushed above.
+        super.close();
+      } finally {
+        if (null != mIndexHTable) {
+          mIndexHTable.close();
+        }
+      }
+    }
+  }
+
+  /**
+   * Stops the background increment flusher, if any, and releases its HTable.
+   *
+   * @throws IOException If there is an error releasing the HTable.
+   */
+  private void stopIncrementFlusher() throws IOException {
+    if (null == mIncrementFlusher) {
+      return;
+    }
+    mIncrementFlusher.shutdown();
+    try {
+      // A flush in progress completes before the remaining increments are flushed.
+      mIncrementFlusher.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+    }
+    synchronized (mIncrements) {
+      if (null != mIncrementFlusherStripesHTable) {
+        mIncrementFlusherStripesHTable.close();
+        mIncrementFlusherStripesHTable = null;
+      }
+      if (null != mIncrementFlusherHTable) {
+        mTable.releaseHTable(mIncrementFlusherHTable);
+        mIncrementFlusherHTable = null;
+      }
+    }
+  }
+
+  /**
+   * Must be called while holding the lock on mIncrements.
+   *
+   * @return Whether the oldest buffered increment is older than the increment flush interval.
+   */
+  private boolean isIncrementBufferExpired() {
+    return (mIncrementFlushIntervalMillis > 0)
+        && (mClock.getTime() - mFirstBufferedIncrementTime >= mIncrementFlushIntervalMillis);
+  }
+
+  /**
+   * Sends the increments aggregated by addToCounter() to the table, one per row, in a single
+   * batch.
+   *
+   * @throws IOException If there is an IO error, or if a background flush of the increments
+   *     failed since the last call.
+   */
+  private void flushIncrements() throws IOException {
+    synchronized (mIncrements) {
+      rethrowIncrementFlushError();
+      mIncrements.flushTo(mTable.getHTable(),
+          mIncrements.hasStripeIncrements() ? mTable.getCounterStripesHTable() : null,
+          mColumnNameTranslator);
+    }
+  }
+
+  /**
+   * Sends the aggregated increments to the table from the background increment flusher, if the
+   * oldest of them has expired. HTables are not thread-safe: the flusher uses its own.
+   */
+  private void flushExpiredIncrements() {
+    synchronized (mIncrements) {
+      if (mIncrements.isEmpty() || !isIncrementBufferExpired()) {
+        return;
+      }
+      try {
+        if (null == mIncrementFlusherHTable) {
+          mIncrementFlusherHTable = mTable.acquireHTable();
+        }
+        if (mIncrements.hasStripeIncrements() && (null == mIncrementFlusherStripesHTable)) {
+          mIncrementFlusherStripesHTable = mTable.openCounterStripesHTable();
+        }
+        mIncrements.flushTo(
+            mIncrementFlusherHTable, mIncrementFlusherStripesHTable, mColumnNameTranslator);
+      } catch (IOException ioe) {
+        recordIncrementFlushError(ioe);
+      } catch (RuntimeException re) {
+        // Do not let the error cancel the next checks.
+        recordIncrementFlushError(re);
+      }
+    }
+  }
+
+  /**
+   * Records an error raised by a background flush of the increments, to report it later.
+   *
+   * @param error The error.
+   */
+  private void recordIncrementFlushError(Throwable error) {
+    LOG.error("Error while flushing buffered increments in the background: "
+        + error.getMessage());
+    mIncrementFlushError.compareAndSet(null, error);
+  }
+
+  /**
+   * Rethrows the first error raised by a background flush of the increments, if any.
+   *
+   * @throws IOException If a background flush of the increments failed since the last call.
+   */
+  private void rethrowIncrementFlushError() throws IOException {
+    final Throwable error = mIncrementFlushError.getAndSet(null);
+    if (null != error) {
+      throw new IOException("Error while flushing buffered increments in the background", error);
+    }
   }
 
   /**
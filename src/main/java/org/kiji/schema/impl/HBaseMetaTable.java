@@ -20,10 +20,15 @@
 package org.kiji.schema.impl;
 
 import java.io.IOException;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.NavigableMap;
 import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+import com.google.common.collect.Maps;
 import org.apache.hadoop.hbase.HTableDescriptor;
 import org.apache.hadoop.hbase.client.Delete;
 import org.apache.hadoop.hbase.client.HBaseAdmin;
@@ -36,6 +41,7 @@ import org.kiji.schema.KijiConfiguration;
 import org.kiji.schema.KijiManagedHBaseTableName;
 import org.kiji.schema.KijiMetaTable;
 import org.kiji.schema.KijiSchemaTable;
+import org.kiji.schema.KijiTableKeyValueBatchDatabase;
 import org.kiji.schema.KijiTableKeyValueDatabase;
 import org.kiji.schema.avro.MetadataBackup;
 import org.kiji.schema.avro.TableBackup;
@@ -48,9 +54,23 @@ import org.kiji.schema.layout.impl.HBaseTableLayoutDatabase;
 /**
  * An implementation of the KijiMetaTable that uses the 'kiji-meta'
  * HBase table as the backing store.
+ *
+ * <p>This class is thread-safe. Reads run concurrently with each other, and exclusively of
+ * writes: reads of an HTable only go through its shared HBase connection, while writes go
+ * through its client-side write buffer, which is not thread-safe.</p>
  */
-public class HBaseMetaTable extends KijiMetaTable {
+public class HBaseMetaTable extends KijiMetaTable implements KijiTableKeyValueBatchDatabase {
   private static final Logger LOG = LoggerFactory.getLogger(HBaseMetaTable.class);
+
+  /**
+   * Configuration variable for how long the key-value pairs read from the meta table are
+   * cached, in milliseconds. 0 disables caching.
+   */
+  public static final String KEY_VALUE_CACHE_TTL_CONF_NAME = "kiji.meta.key.value.cache.ttl.ms";
+
+  /** Default duration of the key-value pairs caching, in milliseconds: caching is disabled. */
+  public static final long DEFAULT_KEY_VALUE_CACHE_TTL = 0L;
+
   /** The HBase column family that will store table layout specific metadata. */
   private static final String LAYOUT_COLUMN_FAMILY = "layout";
 
@@ -65,8 +85,9 @@ public class HBaseMetaTable extends KijiMetaTable {
 
   /** The table we delegate storing per table meta data, in the form of key value pairs.*/
   private final KijiTableKeyValueDatabase mTableKeyValueDatabase;
-  // TODO: Make KijiTableLayoutDatabase thread-safe,
-  //     so we can call HBaseMetaTable thread-safe, too.
+
+  /** Shared by the reads of the meta table, exclusive for its writes. */
+  private final ReadWriteLock mLock = new ReentrantReadWriteLock();
 
   /**
    * Creates an HTableInterface for the specified table.
@@ -98,7 +119,8 @@ public class HBaseMetaTable extends KijiMetaTable {
       KijiSchemaTable schemaTable,
       HTableInterfaceFactory factory)
       throws IOException {
-    this(newMetaTable(kijiConf, factory), schemaTable);
+    this(newMetaTable(kijiConf, factory), schemaTable,
+        kijiConf.getConf().getLong(KEY_VALUE_CACHE_TTL_CONF_NAME, DEFAULT_KEY_VALUE_CACHE_TTL));
   }
 
   /**
@@ -112,9 +134,26 @@ public class HBaseMetaTable extends KijiMetaTable {
    * @throws IOException If there is an error.
    */
   public HBaseMetaTable(HTableInterface htable, KijiSchemaTable schemaTable) throws IOException {
+    this(htable, schemaTable, 0L);
+  }
+
+  /**
+   * Create a connection to a Kiji meta table backed by an HTable within HBase.
+   *
+   * <p>This class takes ownership of the HTable.  It will be closed when this instance is
+   * closed.</p>
+   *
+   * @param htable The HTable to use for storing Kiji meta data.
+   * @param schemaTable The Kiji schema table.
+   * @param keyValueCacheTtl How long the key-value pairs read are cached, in milliseconds.
+   *     0 disables caching.
+   * @throws IOException If there is an error.
+   */
+  public HBaseMetaTable(HTableInterface htable, KijiSchemaTable schemaTable,
+      long keyValueCacheTtl) throws IOException {
     this(htable,
         new HBaseTableLayoutDatabase(htable, LAYOUT_COLUMN_FAMILY, schemaTable),
-        new HBaseTableKeyValueDatabase(htable, META_COLUMN_FAMILY));
+        new HBaseTableKeyValueDatabase(htable, META_COLUMN_FAMILY, keyValueCacheTtl));
   }
 
   /**
@@ -136,96 +175,211 @@ public class HBaseMetaTable extends KijiMetaTable {
 
   /** {@inheritDoc} */
   @Override
-  public synchronized void deleteTable(String table) throws IOException {
-    Delete delete = new Delete(Bytes.toBytes(table));
-    mTable.delete(delete);
-    LOG.debug("Deleting ");
+  public void deleteTable(String table) throws IOException {
+    mLock.writeLock().lock();
+    try {
+      Delete delete = new Delete(Bytes.toBytes(table));
+      mTable.delete(delete);
+      if (mTableKeyValueDatabase instanceof HBaseTableKeyValueDatabase) {
+        // The key-value pairs of the table were deleted along with its row.
+        ((HBaseTableKeyValueDatabase) mTableKeyValueDatabase).invalidateTable(table);
+      }
+      LOG.debug("Deleting ");
+    } finally {
+      mLock.writeLock().unlock();
+    }
   }
 
 
   /** {@inheritDoc} */
   @Override
-  public synchronized KijiTableLayout updateTableLayout(String table, TableLayoutDesc layoutUpdate)
-
+  public KijiTableLayout updateTableLayout(String table, TableLayoutDesc layoutUpdate)
       throws IOException {
-    return mTableLayoutDatabase.updateTableLayout(table, layoutUpdate);
+    mLock.writeLock().lock();
+    try {
+      return mTableLayoutDatabase.updateTableLayout(table, layoutUpdate);
+    } finally {
+      mLock.writeLock().unlock();
+    }
   }
 
   /** {@inheritDoc} */
   @Override
-  public synchronized KijiTableLayout getTableLayout(String table) throws IOException {
-    return mTableLayoutDatabase.getTableLayout(table);
+  public KijiTableLayout getTableLayout(String table) throws IOException {
+    mLock.readLock().lock();
+    try {
+      return mTableLayoutDatabase.getTableLayout(table);
+    } finally {
+      mLock.readLock().unlock();
+    }
   }
 
   /** {@inheritDoc} */
   @Override
-  public synchronized List<KijiTableLayout> getTableLayoutVersions(String table, int numVersions)
+  public List<KijiTableLayout> getTableLayoutVersions(String table, int numVersions)
       throws IOException {
-    return mTableLayoutDatabase.getTableLayoutVersions(table, numVersions);
+    mLock.readLock().lock();
+    try {
+      return mTableLayoutDatabase.getTableLayoutVersions(table, numVersions);
+    } finally {
+      mLock.readLock().unlock();
+    }
   }
 
   /** {@inheritDoc} */
   @Override
-  public synchronized NavigableMap<Long, KijiTableLayout>
+  public NavigableMap<Long, KijiTableLayout>
       getTimedTableLayoutVersions(String table, int numVersions) throws IOException {
-    return mTableLayoutDatabase.getTimedTableLayoutVersions(table, numVersions);
+    mLock.readLock().lock();
+    try {
+      return mTableLayoutDatabase.getTimedTableLayoutVersions(table, numVersions);
+    } finally {
+      mLock.readLock().unlock();
+    }
   }
 
   /** {@inheritDoc} */
   @Override
-  public synchronized void removeAllTableLayoutVersions(String table) throws IOException {
-    mTableLayoutDatabase.removeAllTableLayoutVersions(table);
+  public void removeAllTableLayoutVersions(String table) throws IOException {
+    mLock.writeLock().lock();
+    try {
+      mTableLayoutDatabase.removeAllTableLayoutVersions(table);
+    } finally {
+      mLock.writeLock().unlock();
+    }
   }
 
   /** {@inheritDoc} */
   @Override
-  public synchronized void removeRecentTableLayoutVersions(String table, int numVersions)
+  public void removeRecentTableLayoutVersions(String table, int numVersions)
       throws IOException {
-    mTableLayoutDatabase.removeRecentTableLayoutVersions(table, numVersions);
+    mLock.writeLock().lock();
+    try {
+      mTableLayoutDatabase.removeRecentTableLayoutVersions(table, numVersions);
+    } finally {
+      mLock.writeLock().unlock();
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public List<String> listTables() throws IOException {
+    mLock.readLock().lock();
+    try {
+      return mTableLayoutDatabase.listTables();
+    } finally {
+      mLock.readLock().unlock();
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void close() throws IOException {
+    mLock.writeLock().lock();
+    try {
+      mTable.close();
+      super.close();
+    } finally {
+      mLock.writeLock().unlock();
+    }
   }
 
   /** {@inheritDoc} */
   @Override
-  public synchronized List<String> listTables() throws IOException {
-    return mTableLayoutDatabase.listTables();
+  public byte[] getValue(String table, String key) throws IOException {
+    mLock.readLock().lock();
+    try {
+      return mTableKeyValueDatabase.getValue(table, key);
+    } finally {
+      mLock.readLock().unlock();
+    }
   }
 
   /** {@inheritDoc} */
   @Override
-  public synchronized void close() throws IOException {
-    mTable.close();
-    super.close();
+  public Map<String, byte[]> getValues(String table, Collection<String> keys)
+      throws IOException {
+    mLock.readLock().lock();
+    try {
+      if (mTableKeyValueDatabase instanceof KijiTableKeyValueBatchDatabase) {
+        return ((KijiTableKeyValueBatchDatabase) mTableKeyValueDatabase).getValues(table, keys);
+      }
+      final Map<String, byte[]> values = Maps.newHashMap();
+      for (String key : keys) {
+        final byte[] value = mTableKeyValueDatabase.getValue(table, key);
+        if (null != value) {
+          values.put(key, value);
+        }
+      }
+      return values;
+    } finally {
+      mLock.readLock().unlock();
+    }
   }
 
   /** {@inheritDoc} */
   @Override
-  public synchronized byte[] getValue(String table, String key) throws IOException {
-    return mTableKeyValueDatabase.getValue(table, key);
+  public KijiTableKeyValueDatabase putValue(String table, String key, byte[] value)
+      throws IOException {
+    mLock.writeLock().lock();
+    try {
+      mTableKeyValueDatabase.putValue(table, key, value);
+      return this;
+    } finally {
+      mLock.writeLock().unlock();
+    }
   }
 
   /** {@inheritDoc} */
   @Override
-  public synchronized KijiTableKeyValueDatabase putValue(String table, String key, byte[] value)
+  public KijiTableKeyValueDatabase putValues(String table, Map<String, byte[]> values)
       throws IOException {
-    return mTableKeyValueDatabase.putValue(table, key, value);
+    mLock.writeLock().lock();
+    try {
+      if (mTableKeyValueDatabase instanceof KijiTableKeyValueBatchDatabase) {
+        ((KijiTableKeyValueBatchDatabase) mTableKeyValueDatabase).putValues(table, values);
+      } else {
+        for (Map.Entry<String, byte[]> entry : values.entrySet()) {
+          mTableKeyValueDatabase.putValue(table, entry.getKey(), entry.getValue());
+        }
+      }
+      return this;
+    } finally {
+      mLock.writeLock().unlock();
+    }
   }
 
   /** {@inheritDoc} */
   @Override
-  public synchronized void removeValues(String table, String key) throws IOException {
-    mTableKeyValueDatabase.removeValues(table, key);
+  public void removeValues(String table, String key) throws IOException {
+    mLock.writeLock().lock();
+    try {
+      mTableKeyValueDatabase.removeValues(table, key);
+    } finally {
+      mLock.writeLock().unlock();
+    }
   }
 
   /** {@inheritDoc} */
   @Override
   public Set<String> tableSet() throws IOException {
-    return mTableKeyValueDatabase.tableSet();
+    mLock.readLock().lock();
+    try {
+      return mTableKeyValueDatabase.tableSet();
+    } finally {
+      mLock.readLock().unlock();
+    }
   }
 
   /** {@inheritDoc} */
   @Override
   public Set<String> keySet(String table) throws IOException {
-    return mTableKeyValueDatabase.keySet(table);
+    mLock.readLock().lock();
+    try {
+      return mTableKeyValueDatabase.keySet(table);
+    } finally {
+      mLock.readLock().unlock();
+    }
   }
 
   /** {@inheritDoc} */
@@ -272,19 +426,34 @@ public class HBaseMetaTable extends KijiMetaTable {
   /** {@inheritDoc} */
   @Override
   public void writeToBackup(MetadataBackup.Builder backup) throws IOException {
-    mTableLayoutDatabase.writeToBackup(backup);
+    mLock.readLock().lock();
+    try {
+      mTableLayoutDatabase.writeToBackup(backup);
+    } finally {
+      mLock.readLock().unlock();
+    }
   }
 
   /** {@inheritDoc} */
   @Override
   public void restoreFromBackup(MetadataBackup backup) throws IOException {
-    mTableLayoutDatabase.restoreFromBackup(backup);
+    mLock.writeLock().lock();
+    try {
+      mTableLayoutDatabase.restoreFromBackup(backup);
+    } finally {
+      mLock.writeLock().unlock();
+    }
   }
 
   /** {@inheritDoc} */
   @Override
   public void restoreTableFromBackup(TableBackup tableBackup) throws IOException {
-    mTableLayoutDatabase.restoreTableFromBackup(tableBackup);
+    mLock.writeLock().lock();
+    try {
+      mTableLayoutDatabase.restoreTableFromBackup(tableBackup);
+    } finally {
+      mLock.writeLock().unlock();
+    }
   }
 
 }
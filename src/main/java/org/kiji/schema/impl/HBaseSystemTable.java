@@ -22,6 +22,8 @@ package org.kiji.schema.impl;
 import java.io.IOException;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.hadoop.hbase.HColumnDescriptor;
@@ -47,6 +49,8 @@ import org.kiji.schema.TableKeyNotFoundException;
  * properties of a Kiji installation.  There is a single column family "value".  For a
  * key-value property (K,V), the key K is stored as the row key in the HTable,
  * and the value V is stored in the "value:" column.<p>
+ *
+ * <p>This class is thread-safe. Lookups run concurrently, and exclusively of updates.</p>
  */
 public class HBaseSystemTable extends KijiSystemTable {
   /** The HBase column family that stores the value of the properties. */
@@ -65,6 +69,9 @@ public class HBaseSystemTable extends KijiSystemTable {
   /** The HTable that stores the Kiji instance properties. */
   private final HTableInterface mTable;
 
+  /** Shared by the reads of the system table, exclusive for its writes. */
+  private final ReadWriteLock mLock = new ReentrantReadWriteLock();
+
   /**
    * Creates a new HTableInterface for the Kiji system table.
    *
@@ -108,21 +115,26 @@ public class HBaseSystemTable extends KijiSystemTable {
 
   /** {@inheritDoc} */
   @Override
-  public synchronized String getDataVersion() throws IOException {
+  public String getDataVersion() throws IOException {
     byte[] result = getValue(KEY_DATA_VERSION);
     return result == null ? null : Bytes.toString(result);
   }
 
   /** {@inheritDoc} */
   @Override
-  public synchronized void setDataVersion(String version) throws IOException {
+  public void setDataVersion(String version) throws IOException {
     putValue(KEY_DATA_VERSION, Bytes.toBytes(version));
   }
 
   /** {@inheritDoc} */
   @Override
-  public synchronized void close() throws IOException {
-    mTable.close();
+  public void close() throws IOException {
+    mLock.writeLock().lock();
+    try {
+      mTable.close();
+    } finally {
+      mLock.writeLock().unlock();
+    }
   }
 
   /**
@@ -135,7 +147,13 @@ public class HBaseSystemTable extends KijiSystemTable {
   public byte[] getValue(String key) throws IOException {
     Get get = new Get(Bytes.toBytes(key));
     get.addColumn(Bytes.toBytes(VALUE_COLUMN_FAMILY), new byte[0]);
-    Result result = mTable.get(get);
+    final Result result;
+    mLock.readLock().lock();
+    try {
+      result = mTable.get(get);
+    } finally {
+      mLock.readLock().unlock();
+    }
     if (result == null) {
       throw new TableKeyNotFoundException(String.format(
           "The key '%s' was not found in the system table.", key));
@@ -153,7 +171,12 @@ public class HBaseSystemTable extends KijiSystemTable {
   public void putValue(String key, byte[] value) throws IOException {
     Put put = new Put(Bytes.toBytes(key));
     put.add(Bytes.toBytes(VALUE_COLUMN_FAMILY), new byte[0], value);
-    mTable.put(put);
+    mLock.writeLock().lock();
+    try {
+      mTable.put(put);
+    } finally {
+      mLock.writeLock().unlock();
+    }
   }
 
   /**
@@ -20,11 +20,16 @@
 package org.kiji.schema.impl;
 
 import java.io.IOException;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
 import org.apache.hadoop.hbase.client.Delete;
 import org.apache.hadoop.hbase.client.Get;
 import org.apache.hadoop.hbase.client.HTableInterface;
@@ -37,6 +42,7 @@ import org.apache.hadoop.hbase.util.Bytes;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.kiji.schema.KijiTableKeyValueBatchDatabase;
 import org.kiji.schema.KijiTableKeyValueDatabase;
 import org.kiji.schema.KijiTableNotFoundException;
 
@@ -44,8 +50,13 @@ import org.kiji.schema.KijiTableNotFoundException;
  /**
  * Manages key-value pairs on a per table basis. Storage of these key-value pairs is provided by
  * a column family of an HTable.
+ *
+ * <p>Values read from the HTable may be cached for a short time, so that repeated lookups of
+ * the same keys do not reach HBase. Caching is disabled unless a cache TTL is configured.
+ * Values updated or removed through this instance are never served stale, but values updated
+ * by other clients may be, until their cache entry expires.</p>
  */
-public class HBaseTableKeyValueDatabase implements KijiTableKeyValueDatabase {
+public class HBaseTableKeyValueDatabase implements KijiTableKeyValueBatchDatabase {
   public static final Logger LOG = LoggerFactory.getLogger(HBaseTableKeyValueDatabase.class);
 
   /** The name of the column family used to store the key-value database.*/
@@ -57,6 +68,33 @@ public class HBaseTableKeyValueDatabase implements KijiTableKeyValueDatabase {
   /**  The HBase table that stores Kiji metadata. */
   private final HTableInterface mTable;
 
+  /** How long values read from the HTable are cached, in milliseconds; 0 disables caching. */
+  private final long mCacheTtlMillis;
+
+  /** Map from table names to their cached values, keyed by key. */
+  private final ConcurrentMap<String, ConcurrentMap<String, CachedValue>> mCache =
+      new ConcurrentHashMap<String, ConcurrentMap<String, CachedValue>>();
+
+  /** A value read from the HTable, with its expiration time. */
+  private static final class CachedValue {
+    /** The value. */
+    private final byte[] mValue;
+
+    /** Time when the value expires, in milliseconds since the Epoch. */
+    private final long mExpiration;
+
+    /**
+     * Creates a cached value.
+     *
+     * @param value The value.
+     * @param expiration Time when the value expires, in milliseconds since the Epoch.
+     */
+    private CachedValue(byte[] value, long expiration) {
+      mValue = value;
+      mExpiration = expiration;
+    }
+  }
+
   /**
    * This class manages the storage and retrieval of key-value pairs on a per table basis. It is
    * backed by a column family in HBase specified by metaFamily, in the table specified by table.
@@ -65,15 +103,35 @@ public class HBaseTableKeyValueDatabase implements KijiTableKeyValueDatabase {
    * @param metaFamily the name of the column family to use.
    */
   public HBaseTableKeyValueDatabase(HTableInterface hTable, String metaFamily) {
+    this(hTable, metaFamily, 0L);
+  }
+
+  /**
+   * This class manages the storage and retrieval of key-value pairs on a per table basis. It is
+   * backed by a column family in HBase specified by metaFamily, in the table specified by table.
+   *
+   * @param hTable The table to store the key-value information in.
+   * @param metaFamily the name of the column family to use.
+   * @param cacheTtlMillis How long values read from the table are cached, in milliseconds.
+   *     0 disables caching.
+   */
+  public HBaseTableKeyValueDatabase(HTableInterface hTable, String metaFamily,
+      long cacheTtlMillis) {
+    Preconditions.checkArgument(cacheTtlMillis >= 0, "Negative cache TTL: " + cacheTtlMillis);
     mTable = Preconditions.checkNotNull(hTable);
     mFamily = Preconditions.checkNotNull(metaFamily);
     mFamilyBytes =  Bytes.toBytes(mFamily);
+    mCacheTtlMillis = cacheTtlMillis;
   }
 
 
 /** {@inheritDoc} */
   @Override
   public byte[] getValue(String table, String key) throws IOException {
+    final byte[] cached = getCachedValue(table, key);
+    if (null != cached) {
+      return cached;
+    }
     Get get = new Get(Bytes.toBytes(table));
     byte[] bKey = Bytes.toBytes(key);
     get.addColumn(mFamilyBytes, bKey);
@@ -82,7 +140,37 @@ public class HBaseTableKeyValueDatabase implements KijiTableKeyValueDatabase {
       throw new IOException(String.format("Unable to find value for table '%s' and key '%s'", table,
           key));
     }
-    return result.getValue(mFamilyBytes, bKey);
+    final byte[] value = result.getValue(mFamilyBytes, bKey);
+    cacheValue(table, key, value);
+    return value;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public Map<String, byte[]> getValues(String table, Collection<String> keys)
+      throws IOException {
+    final Map<String, byte[]> values = Maps.newHashMap();
+    final Get get = new Get(Bytes.toBytes(table));
+    for (String key : keys) {
+      final byte[] cached = getCachedValue(table, key);
+      if (null != cached) {
+        values.put(key, cached);
+      } else {
+        get.addColumn(mFamilyBytes, Bytes.toBytes(key));
+      }
+    }
+    if (!get.hasFamilies()) {
+      return values;
+    }
+    final Result result = mTable.get(get);
+    if (!result.isEmpty()) {
+      for (Map.Entry<byte[], byte[]> column : result.getFamilyMap(mFamilyBytes).entrySet()) {
+        final String key = Bytes.toString(column.getKey());
+        values.put(key, column.getValue());
+        cacheValue(table, key, column.getValue());
+      }
+    }
+    return values;
   }
 
   /** {@inheritDoc} */
@@ -92,6 +180,25 @@ public class HBaseTableKeyValueDatabase implements KijiTableKeyValueDatabase {
     Put put = new Put(Bytes.toBytes(table));
     put.add(mFamilyBytes, Bytes.toBytes(key), value);
     mTable.put(put);
+    invalidateValue(table, key);
+    return this;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public KijiTableKeyValueDatabase putValues(String table, Map<String, byte[]> values)
+      throws IOException {
+    if (values.isEmpty()) {
+      return this;
+    }
+    final Put put = new Put(Bytes.toBytes(table));
+    for (Map.Entry<String, byte[]> entry : values.entrySet()) {
+      put.add(mFamilyBytes, Bytes.toBytes(entry.getKey()), entry.getValue());
+    }
+    mTable.put(put);
+    for (String key : values.keySet()) {
+      invalidateValue(table, key);
+    }
     return this;
   }
 
@@ -101,6 +208,7 @@ public class HBaseTableKeyValueDatabase implements KijiTableKeyValueDatabase {
     Delete delete = new Delete(Bytes.toBytes(table));
     delete.deleteColumns(mFamilyBytes, Bytes.toBytes(key));
     mTable.delete(delete);
+    invalidateValue(table, key);
   }
 
   /** {@inheritDoc} */
@@ -151,6 +259,73 @@ public class HBaseTableKeyValueDatabase implements KijiTableKeyValueDatabase {
     for (String key : keysToRemove) {
       removeValues(table, key);
     }
+    invalidateTable(table);
+  }
+
+  /**
+   * Removes the cached values of a table, eg. after the row of the table is deleted from the
+   * HTable by another component.
+   *
+   * @param table The kiji table.
+   */
+  public void invalidateTable(String table) {
+    mCache.remove(table);
+  }
+
+  /**
+   * Gets a value from the cache, unless it expired.
+   *
+   * @param table The kiji table.
+   * @param key The key of the value.
+   * @return The cached value, or null if it is not cached.
+   */
+  private byte[] getCachedValue(String table, String key) {
+    final Map<String, CachedValue> tableCache = mCache.get(table);
+    if (null == tableCache) {
+      return null;
+    }
+    final CachedValue cached = tableCache.get(key);
+    if ((null == cached) || (cached.mExpiration < System.currentTimeMillis())) {
+      return null;
+    }
+    // Callers own the returned array: never hand out the cached one.
+    return cached.mValue.clone();
   }
 
+  /**
+   * Caches a value read from the HTable.
+   *
+   * @param table The kiji table.
+   * @param key The key of the value.
+   * @param value The value.
+   */
+  private void cacheValue(String table, String key, byte[] value) {
+    if (0 == mCacheTtlMillis) {
+      return;
+    }
+    ConcurrentMap<String, CachedValue> tableCache = mCache.get(table);
+    if (null == tableCache) {
+      final ConcurrentMap<String, CachedValue> newCache =
+          new ConcurrentHashMap<String, CachedValue>();
+      tableCache = mCache.putIfAbsent(table, newCache);
+      if (null == tableCache) {
+        tableCache = newCache;
+      }
+    }
+    tableCache.put(key,
+        new CachedValue(value.clone(), System.currentTimeMillis() + mCacheTtlMillis));
+  }
+
+  /**
+   * Removes a value from the cache, after it is updated or removed.
+   *
+   * @param table The kiji table.
+   * @param key The key of the value.
+   */
+  private void invalidateValue(String table, String key) {
+    final Map<String, CachedValue> tableCache = mCache.get(table);
+    if (null != tableCache) {
+      tableCache.remove(key);
+    }
+  }
 }
@@ -29,7 +29,6 @@ import org.apache.hadoop.hbase.util.Bytes;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import org.kiji.schema.avro.RowKeyEncoding;
 import org.kiji.schema.avro.RowKeyFormat;
 
 /**
@@ -63,7 +62,7 @@ public class HBaseTableRecordReader extends TableRecordReader {
     byte[] startRow = scan.getStartRow();
     byte[] stopRow = scan.getStopRow();
 
-    final boolean hashingEnabled = (mRowKeyFormat.getEncoding() != RowKeyEncoding.RAW);
+    final boolean hashingEnabled = RowKeyHasher.isHashed(mRowKeyFormat);
 
     if (!hashingEnabled) {
       if (null == startRow || 0 == startRow.length) {
@@ -26,7 +26,8 @@ import org.apache.hadoop.hbase.util.Bytes;
 
 /**
  * Comparator for HColumnDescriptors.  They are sorted by name, then
- * by max versions, ttl, and whether it is in memory.
+ * by max versions, ttl, whether it is in memory, compression, bloom filter type,
+ * block size, data block encoding and whether the block cache is enabled.
  */
 public class HColumnDescriptorComparator implements Comparator<HColumnDescriptor> {
   @Override
@@ -47,7 +48,25 @@ public class HColumnDescriptorComparator implements Comparator<HColumnDescriptor
     if (inMemoryResult != 0) {
       return inMemoryResult;
     }
-    // TODO: Add things like bloomfiltertype as necessary.
-    return o1.getCompressionType().toString().compareTo(o2.getCompressionType().toString());
+    int compressionResult =
+        o1.getCompressionType().toString().compareTo(o2.getCompressionType().toString());
+    if (compressionResult != 0) {
+      return compressionResult;
+    }
+    int bloomFilterResult =
+        o1.getBloomFilterType().toString().compareTo(o2.getBloomFilterType().toString());
+    if (bloomFilterResult != 0) {
+      return bloomFilterResult;
+    }
+    int blockSizeResult = Integer.valueOf(o1.getBlocksize()).compareTo(o2.getBlocksize());
+    if (blockSizeResult != 0) {
+      return blockSizeResult;
+    }
+    int encodingResult =
+        o1.getDataBlockEncoding().toString().compareTo(o2.getDataBlockEncoding().toString());
+    if (encodingResult != 0) {
+      return encodingResult;
+    }
+    return Boolean.valueOf(o1.isBlockCacheEnabled()).compareTo(o2.isBlockCacheEnabled());
   }
 }
@@ -26,7 +26,6 @@ import com.google.common.base.Preconditions;
 import org.kiji.schema.EntityId;
 import org.kiji.schema.avro.RowKeyEncoding;
 import org.kiji.schema.avro.RowKeyFormat;
-import org.kiji.schema.util.Hasher;
 
 /** Implements the hash-prefixed row key format. */
 public final class HashPrefixedEntityId extends EntityId {
@@ -82,12 +81,7 @@ public final class HashPrefixedEntityId extends EntityId {
    * @return a hash of the Kiji row key.
    */
   public static byte[] hashKijiRowKey(RowKeyFormat format, byte[] kijiRowKey) {
-    // TODO refactor into hash factories:
-    switch (format.getHashType()) {
-    case MD5: return Hasher.hash(kijiRowKey);
-    default:
-      throw new RuntimeException(String.format("Unexpected hashing type: '%s'.", format));
-    }
+    return RowKeyHasher.hash(format.getHashType(), kijiRowKey);
   }
 
   /**
@@ -31,6 +31,11 @@ import org.kiji.schema.EntityId;
 /**
  * A buffer used to hold data entries waiting to be written to a KijiTable.
  *
+ * <p>Besides the number of elements it holds, the buffer tracks their total size in bytes, as
+ * reported by callers of {@link #add(EntityId, Object, long)}. If the buffer is configured with
+ * a {@link WriteBufferBudget}, this size is also accounted against the budget until the buffer is
+ * cleared, or until the retained size is released after {@link #clearRetainingBudget()}.</p>
+ *
  * @param <T> The type of the elements being stored in the buffer.
  */
 public class KijiDataBuffer<T> {
@@ -38,13 +43,28 @@ public class KijiDataBuffer<T> {
   private Map<EntityId, List<T>> mBuffer;
   /** The current number of elements stored in this buffer. */
   private int mBufferSize;
+  /** The current total size, in bytes, of the elements stored in this buffer. */
+  private long mSizeInBytes;
+  /** The budget the size of this buffer is accounted against, or null. */
+  private final WriteBufferBudget mBudget;
 
   /**
-   * Creates an instance.
+   * Creates an instance that is not accounted against any memory budget.
    */
   public KijiDataBuffer() {
+    this(null);
+  }
+
+  /**
+   * Creates an instance.
+   *
+   * @param budget The memory budget the size of this buffer is accounted against, or null.
+   */
+  public KijiDataBuffer(WriteBufferBudget budget) {
     mBuffer = new HashMap<EntityId, List<T>>();
     mBufferSize = 0;
+    mSizeInBytes = 0;
+    mBudget = budget;
   }
 
   /**
@@ -55,8 +75,28 @@ public class KijiDataBuffer<T> {
    * @return A reference to {@code this} to allow chaining of add statements.
    */
   public KijiDataBuffer<T> add(EntityId id, T value) {
+    return add(id, value, 0);
+  }
+
+  /**
+   * Adds a buffer element of a known size to the buffer and associates it with the specified
+   * entity.
+   *
+   * @param id The entity id.
+   * @param value The buffer element to add to the buffer.
+   * @param sizeInBytes The size of the buffer element, in bytes.
+   * @return A reference to {@code this} to allow chaining of add statements.
+   */
+  public KijiDataBuffer<T> add(EntityId id, T value, long sizeInBytes) {
     getBuffer(id).add(value);
+    if ((0 == mBufferSize) && (null != mBudget)) {
+      mBudget.addActiveBuffer();
+    }
     mBufferSize++;
+    mSizeInBytes += sizeInBytes;
+    if (null != mBudget) {
+      mBudget.reserve(sizeInBytes);
+    }
     return this;
   }
 
@@ -64,8 +104,36 @@ public class KijiDataBuffer<T> {
    * Clears the buffer by removing all elements stored in it.
    */
   public void clear() {
+    releaseRetained(clearRetainingBudget());
+  }
+
+  /**
+   * Clears the buffer, but keeps the size of the removed elements accounted against the memory
+   * budget until it is released with {@link #releaseRetained(long)}, eg. once the removed elements
+   * are written by another thread.
+   *
+   * @return The number of bytes still accounted against the memory budget.
+   */
+  public long clearRetainingBudget() {
     mBuffer.clear();
+    if ((mBufferSize > 0) && (null != mBudget)) {
+      mBudget.removeActiveBuffer();
+    }
     mBufferSize = 0;
+    final long retained = (null != mBudget) ? mSizeInBytes : 0L;
+    mSizeInBytes = 0;
+    return retained;
+  }
+
+  /**
+   * Releases bytes retained by {@link #clearRetainingBudget()}.
+   *
+   * @param retainedBytes The number of bytes to release from the memory budget.
+   */
+  public void releaseRetained(long retainedBytes) {
+    if (null != mBudget) {
+      mBudget.release(retainedBytes);
+    }
   }
 
   /**
@@ -107,4 +175,19 @@ public class KijiDataBuffer<T> {
   public int size() {
     return mBufferSize;
   }
+
+  /**
+   * @return The total size, in bytes, of the elements stored in this buffer.
+   */
+  public long getSizeInBytes() {
+    return mSizeInBytes;
+  }
+
+  /**
+   * @return Whether the memory budget this buffer is accounted against is exhausted, and this
+   *     buffer holds at least its share of the budget.
+   */
+  public boolean isOverBudget() {
+    return (null != mBudget) && (mBufferSize > 0) && mBudget.isShareExhausted(mSizeInBytes);
+  }
 }
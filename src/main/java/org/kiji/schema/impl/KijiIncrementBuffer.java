@@ -0,0 +1,267 @@
+/**
+ * (c) Copyright 2012 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.schema.impl;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Preconditions;
+import org.apache.hadoop.hbase.client.HTableInterface;
+import org.apache.hadoop.hbase.client.Increment;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import org.kiji.schema.EntityId;
+import org.kiji.schema.HBaseColumnName;
+import org.kiji.schema.KijiColumnName;
+import org.kiji.schema.layout.ColumnNameTranslator;
+import org.kiji.schema.util.BytesKey;
+
+/**
+ * A buffer that aggregates counter increments client-side before they are sent to a Kiji table.
+ *
+ * <p>Increments to the same counter cell are summed into a single delta, and all the deltas of a
+ * row are sent as one multi-column HBase {@link Increment}. The increments of all the rows are
+ * then sent in a single batch, which HBase splits into one multi-action RPC per region server.
+ * Sending the same hot counters many times between two flushes therefore costs one RPC per
+ * region server instead of one RPC per increment.</p>
+ *
+ * <p>Increments to striped counters go to the stripe picked by the stripe seed of the buffer,
+ * in the counter stripes table unless it is stripe 0 (see {@link HBaseCounterStripes}).</p>
+ *
+ * <p>This class is not thread-safe.</p>
+ */
+public final class KijiIncrementBuffer {
+  /** Summed deltas, by HBase row key then by Kiji column, in the order they were first seen. */
+  private final Map<BytesKey, Map<KijiColumnName, long[]>> mDeltas =
+      new LinkedHashMap<BytesKey, Map<KijiColumnName, long[]>>();
+
+  /** Summed deltas to the stripes of striped counters, by row of the counter stripes table. */
+  private final Map<BytesKey, Map<KijiColumnName, long[]>> mStripeDeltas =
+      new LinkedHashMap<BytesKey, Map<KijiColumnName, long[]>>();
+
+  /** The striped counters of the table, or null to increment the counter cells only. */
+  private final HBaseCounterStripes mCounterStripes;
+
+  /** Picks the stripe of the striped counters incremented through this buffer. */
+  private final int mStripeSeed;
+
+  /** The number of distinct counter cells in this buffer. */
+  private int mNumCells = 0;
+
+  /** Creates a buffer that increments the counter cells only. */
+  public KijiIncrementBuffer() {
+    this(null, 0);
+  }
+
+  /**
+   * Creates a buffer that increments one stripe of the striped counters of a table.
+   *
+   * @param counterStripes The striped counters of the table, or null if none.
+   * @param stripeSeed Picks the stripe of the striped counters incremented through this buffer,
+   *     a non-negative integer, usually drawn at random once per writer.
+   */
+  public KijiIncrementBuffer(HBaseCounterStripes counterStripes, int stripeSeed) {
+    mCounterStripes = counterStripes;
+    mStripeSeed = stripeSeed;
+  }
+
+  /**
+   * Adds an increment to the buffer, summing it with previous increments to the same counter.
+   *
+   * @param entityId The entity (row) that contains the counter.
+   * @param family The family of the counter.
+   * @param qualifier The qualifier of the counter.
+   * @param amount The amount to increment the counter by (may be negative).
+   * @return A reference to {@code this} to allow chaining of add statements.
+   */
+  public KijiIncrementBuffer add(EntityId entityId, String family, String qualifier,
+      long amount) {
+    final KijiColumnName column = new KijiColumnName(family, qualifier);
+    final int stripe =
+        (null == mCounterStripes) ? 0 : mCounterStripes.getStripe(column, mStripeSeed);
+    final Map<BytesKey, Map<KijiColumnName, long[]>> deltas;
+    final BytesKey row;
+    if (0 == stripe) {
+      deltas = mDeltas;
+      row = new BytesKey(entityId.getHBaseRowKey());
+    } else {
+      deltas = mStripeDeltas;
+      row = new BytesKey(HBaseCounterStripes.getStripeRowKey(stripe, entityId.getHBaseRowKey()));
+    }
+    Map<KijiColumnName, long[]> rowDeltas = deltas.get(row);
+    if (null == rowDeltas) {
+      rowDeltas = new LinkedHashMap<KijiColumnName, long[]>();
+      deltas.put(row, rowDeltas);
+    }
+
+    final long[] delta = rowDeltas.get(column);
+    if (null == delta) {
+      rowDeltas.put(column, new long[] {amount});
+      mNumCells++;
+    } else {
+      // Sum in place, so that repeated increments to a hot counter do not allocate.
+      delta[0] += amount;
+    }
+    return this;
+  }
+
+  /**
+   * @return The number of distinct counter cells in this buffer.
+   */
+  public int size() {
+    return mNumCells;
+  }
+
+  /**
+   * @return Whether this buffer holds no increment.
+   */
+  public boolean isEmpty() {
+    return 0 == mNumCells;
+  }
+
+  /**
+   * Builds the HBase increments for the buffered deltas to counter cells, one per row.
+   *
+   * @param translator The translator used to convert Kiji column names to HBase column names.
+   * @return The HBase increments to send, one per row, in the order rows were first incremented.
+   * @throws IOException If a column cannot be translated to an HBase column.
+   */
+  public List<Increment> toIncrements(ColumnNameTranslator translator) throws IOException {
+    final List<Increment> increments = new ArrayList<Increment>(mDeltas.size());
+    for (Map.Entry<BytesKey, Map<KijiColumnName, long[]>> rowEntry : mDeltas.entrySet()) {
+      final Increment increment = new Increment(rowEntry.getKey().getBytes());
+      for (Map.Entry<KijiColumnName, long[]> cellEntry : rowEntry.getValue().entrySet()) {
+        final HBaseColumnName hbaseColumnName = translator.toHBaseColumnName(cellEntry.getKey());
+        increment.addColumn(
+            hbaseColumnName.getFamily(),
+            hbaseColumnName.getQualifier(),
+            cellEntry.getValue()[0]);
+      }
+      increments.add(increment);
+    }
+    return increments;
+  }
+
+  /**
+   * Builds the HBase increments for the buffered deltas to the stripes of striped counters, one
+   * per row of the counter stripes table.
+   *
+   * @param translator The translator used to convert Kiji column names to HBase column names.
+   * @return The HBase increments to send to the counter stripes table.
+   * @throws IOException If a column cannot be translated to an HBase column.
+   */
+  public List<Increment> toStripeIncrements(ColumnNameTranslator translator)
+      throws IOException {
+    final List<Increment> increments = new ArrayList<Increment>(mStripeDeltas.size());
+    for (Map.Entry<BytesKey, Map<KijiColumnName, long[]>> rowEntry : mStripeDeltas.entrySet()) {
+      final Increment increment = new Increment(rowEntry.getKey().getBytes());
+      for (Map.Entry<KijiColumnName, long[]> cellEntry : rowEntry.getValue().entrySet()) {
+        increment.addColumn(
+            HBaseCounterStripes.STRIPES_FAMILY,
+            HBaseCounterStripes.getStripeQualifier(
+                translator.toHBaseColumnName(cellEntry.getKey())),
+            cellEntry.getValue()[0]);
+      }
+      increments.add(increment);
+    }
+    return increments;
+  }
+
+  /**
+   * @return Whether this buffer holds increments to the stripes of striped counters, which must
+   *     be sent to the counter stripes table.
+   */
+  public boolean hasStripeIncrements() {
+    return !mStripeDeltas.isEmpty();
+  }
+
+  /**
+   * Sends the buffered increments to an HTable in a single batch, and clears the buffer.
+   *
+   * @param htable The HTable to send the increments to.
+   * @param translator The translator used to convert Kiji column names to HBase column names.
+   * @throws IOException If there is an error sending the increments.
+   */
+  public void flushTo(HTableInterface htable, ColumnNameTranslator translator)
+      throws IOException {
+    flushTo(htable, null, translator);
+  }
+
+  /**
+   * Sends the buffered increments to the counter cells and to the counter stripes in one batch
+   * per table, and clears the buffer.
+   *
+   * <p>The buffer is cleared before the increments are sent: if the batch fails, the increments
+   * may or may not have been applied, and retrying them could count them twice.</p>
+   *
+   * @param htable The HTable to send the increments to.
+   * @param stripesHTable The counter stripes HTable of the table, or null if there is no
+   *     increment to the stripes of a striped counter.
+   * @param translator The translator used to convert Kiji column names to HBase column names.
+   * @throws IOException If there is an error sending the increments.
+   */
+  public void flushTo(HTableInterface htable, HTableInterface stripesHTable,
+      ColumnNameTranslator translator) throws IOException {
+    if (isEmpty()) {
+      return;
+    }
+    Preconditions.checkState(!hasStripeIncrements() || (null != stripesHTable),
+        "Increments to counter stripes require the counter stripes table.");
+    final List<Increment> increments = toIncrements(translator);
+    final List<Increment> stripeIncrements = toStripeIncrements(translator);
+    clear();
+    batch(htable, increments);
+    batch(stripesHTable, stripeIncrements);
+  }
+
+  /**
+   * Sends increments to an HTable in a single batch.
+   *
+   * @param htable The HTable to send the increments to.
+   * @param increments The increments, one per row.
+   * @throws IOException If there is an error sending the increments.
+   */
+  private static void batch(HTableInterface htable, List<Increment> increments)
+      throws IOException {
+    if (increments.isEmpty()) {
+      return;
+    }
+    try {
+      htable.batch(increments);
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while sending " + increments.size()
+          + " row increments to table " + Bytes.toString(htable.getTableName()));
+    }
+  }
+
+  /**
+   * Clears the buffer by removing all the increments stored in it.
+   */
+  public void clear() {
+    mDeltas.clear();
+    mStripeDeltas.clear();
+    mNumCells = 0;
+  }
+}
@@ -0,0 +1,500 @@
+/**
+ * (c) Copyright 2012 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.kiji.schema.impl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.commons.io.IOUtils;
+import org.apache.hadoop.hbase.client.HTableInterface;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.kiji.schema.Kiji;
+import org.kiji.schema.KijiManagedHBaseTableName;
+
+/**
+ * Shares the resources of the Kiji tables opened through a Kiji instance.
+ *
+ * <p>The layout of a table is read from the meta table when the first instance of the table
+ * is opened, and the {@link KijiTableResources} derived from it are shared by all the
+ * instances opened until the last one is closed. When the layout of a table is invalidated,
+ * it is read again and swapped atomically into the opened instances of the table.
+ * HTables are not thread-safe, so each opened instance uses its own HTable: HTables released
+ * by closed instances are kept and handed to newly opened instances, and all share the HBase
+ * connection of the Kiji configuration.</p>
+ *
+ * <p>With a {@link ZooKeeperLayoutTracker}, the registry watches the layout updates of the
+ * tables it caches: layouts are refreshed when another client updates them, and are kept
+ * after the last instance of a table is closed, so that opening the table again does not
+ * read the meta table. Closed tables are forgotten when their layout is invalidated, or when
+ * they are the least recently used of more than {@link #DEFAULT_MAX_IDLE_TABLES} closed tables.
+ * Layouts are never kept for a table whose updates could not be watched.
+ * Updated layouts are read by a background thread rather than by the ZooKeeper event
+ * thread.</p>
+ *
+ * <p>The registry lock only guards the map of tables and their reference counts: layouts are
+ * read and watched under a lock of their table, so that a slow open of a table only delays
+ * the concurrent opens and refreshes of the same table.</p>
+ *
+ * <p>This class is thread-safe.</p>
+ */
+public final class KijiTableResourceRegistry
+    implements ZooKeeperLayoutTracker.LayoutListener, Closeable {
+  private static final Logger LOG = LoggerFactory.getLogger(KijiTableResourceRegistry.class);
+
+  /** Default maximum number of closed tables whose layout resources are kept. */
+  public static final int DEFAULT_MAX_IDLE_TABLES = 64;
+
+  /** The Kiji instance the tables belong to. */
+  private final Kiji mKiji;
+
+  /** Factory for HTable instances. */
+  private final HTableInterfaceFactory mHTableFactory;
+
+  /** Tracker of the table layout updates, or null if layout updates are not tracked. */
+  private final ZooKeeperLayoutTracker mTracker;
+
+  /** Reads the layouts updated by other clients, away from the ZooKeeper event thread. */
+  private final Executor mReloadExecutor;
+
+  /** The executor created by this registry to read updated layouts, or null. */
+  private final ExecutorService mOwnedReloadExecutor;
+
+  /** Maximum number of closed tables whose layout resources are kept. */
+  private final int mMaxIdleTables;
+
+  /**
+   * Map from the name of the opened or cached Kiji tables to their shared resources, from the
+   * least to the most recently used.
+   */
+  private final Map<String, Entry> mEntries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+  /** Number of times the tracking of the layout updates was lost, guarded by the registry. */
+  private long mTrackingLosses = 0;
+
+  /**
+   * The shared resources of an opened table. The fields are guarded by the registry, except
+   * for the resources, which are swapped while holding the load lock of the entry.
+   */
+  private static final class Entry {
+    /** Held while the layout of the table is watched or read. */
+    private final Object mLoadLock = new Object();
+
+    /** The shared layout resources, swapped when the layout is refreshed. */
+    private final AtomicReference<KijiTableResources> mResources =
+        new AtomicReference<KijiTableResources>();
+
+    /** Whether the layout resources must be read again before the table is opened. */
+    private boolean mIsStale = true;
+
+    /** Whether the layout updates of the table are watched. */
+    private boolean mIsWatched = false;
+
+    /** Number of opened instances of the table. */
+    private int mRefCount = 0;
+
+    /** HTables released by closed instances of the table. */
+    private final Deque<HTableInterface> mIdleHTables = new ArrayDeque<HTableInterface>();
+  }
+
+  /**
+   * Creates a registry for the tables of a Kiji instance.
+   *
+   * @param kiji The Kiji instance.
+   * @param htableFactory Factory for HTable instances.
+   */
+  public KijiTableResourceRegistry(Kiji kiji, HTableInterfaceFactory htableFactory) {
+    this(kiji, htableFactory, null);
+  }
+
+  /**
+   * Creates a registry for the tables of a Kiji instance.
+   *
+   * <p>The caller must register the registry as a listener of the tracker.</p>
+   *
+   * @param kiji The Kiji instance.
+   * @param htableFactory Factory for HTable instances.
+   * @param tracker Tracker of the table layout updates, or null to not track them.
+   */
+  public KijiTableResourceRegistry(
+      Kiji kiji, HTableInterfaceFactory htableFactory, ZooKeeperLayoutTracker tracker) {
+    this(kiji, htableFactory, tracker, null, DEFAULT_MAX_IDLE_TABLES);
+  }
+
+  /**
+   * Creates a registry for the tables of a Kiji instance.
+   *
+   * @param kiji The Kiji instance.
+   * @param htableFactory Factory for HTable instances.
+   * @param tracker Tracker of the table layout updates, or null to not track them.
+   * @param reloadExecutor Executor reading the layouts updated by other clients, or null to
+   *     use a background thread owned by the registry.
+   * @param maxIdleTables Maximum number of closed tables whose layout resources are kept.
+   */
+  KijiTableResourceRegistry(Kiji kiji, HTableInterfaceFactory htableFactory,
+      ZooKeeperLayoutTracker tracker, Executor reloadExecutor, int maxIdleTables) {
+    mKiji = kiji;
+    mMaxIdleTables = maxIdleTables;
+    mHTableFactory = htableFactory;
+    mTracker = tracker;
+    if (null == reloadExecutor) {
+      // The thread is only started by the first layout update.
+      mOwnedReloadExecutor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+          .setDaemon(true)
+          .setNameFormat("kiji-layout-reloader-%d")
+          .build());
+      mReloadExecutor = mOwnedReloadExecutor;
+    } else {
+      mOwnedReloadExecutor = null;
+      mReloadExecutor = reloadExecutor;
+    }
+  }
+
+  /**
+   * Acquires a reference to the resources of a table. Each reference must be released with
+   * {@link #release(String, HTableInterface)}.
+   *
+   * @param name The name of the Kiji table.
+   * @return The shared resources of the table, refreshed when the table layout is updated.
+   * @throws IOException If the layout of the table cannot be read.
+   */
+  public AtomicReference<KijiTableResources> acquire(String name) throws IOException {
+    final Entry entry;
+    synchronized (this) {
+      Entry cached = mEntries.get(name);
+      if (null == cached) {
+        cached = new Entry();
+        mEntries.put(name, cached);
+      }
+      // The reference keeps the entry registered while its layout is read.
+      cached.mRefCount++;
+      entry = cached;
+    }
+    boolean loaded = false;
+    try {
+      load(name, entry);
+      loaded = true;
+    } finally {
+      if (!loaded) {
+        release(name, null);
+      }
+    }
+    return entry.mResources;
+  }
+
+  /**
+   * Watches the layout updates of a table if they are tracked and not watched yet, then reads
+   * the layout of the table if it is stale.
+   *
+   * @param name The name of the Kiji table.
+   * @param entry The registered entry of the table, to which a reference is held.
+   * @throws IOException If the layout of the table cannot be read.
+   */
+  private void load(String name, Entry entry) throws IOException {
+    synchronized (entry.mLoadLock) {
+      final boolean watch;
+      final long trackingLosses;
+      synchronized (this) {
+        watch = !entry.mIsWatched && isTracking();
+        trackingLosses = mTrackingLosses;
+      }
+      if (watch) {
+        // Watch before reading the layout, so that no update is missed.
+        try {
+          mTracker.watch(name);
+          synchronized (this) {
+            // A watch set before the tracking was lost may have been lost with it.
+            if (trackingLosses == mTrackingLosses) {
+              entry.mIsWatched = true;
+              entry.mIsStale = true;
+            }
+          }
+        } catch (IOException ioe) {
+          // Without a watch, the layout is forgotten once the last instance is closed.
+          LOG.warn("Unable to watch the layout of table " + name + ": " + ioe);
+        }
+      }
+      final boolean stale;
+      synchronized (this) {
+        stale = entry.mIsStale;
+      }
+      if (stale) {
+        reload(name, entry);
+      }
+    }
+  }
+
+  /**
+   * Reads the layout of a table and swaps it into the entry of the table. The caller must hold
+   * the load lock of the entry.
+   *
+   * @param name The name of the Kiji table.
+   * @param entry The entry of the table.
+   * @throws IOException If the layout of the table cannot be read.
+   */
+  private void reload(String name, Entry entry) throws IOException {
+    synchronized (this) {
+      // Staleness reported while the layout is read is kept, and read again on the next open.
+      entry.mIsStale = false;
+    }
+    try {
+      entry.mResources.set(
+          KijiTableResources.rebuild(mKiji.getMetaTable().getTableLayout(name)));
+    } catch (IOException ioe) {
+      synchronized (this) {
+        entry.mIsStale = true;
+      }
+      throw ioe;
+    }
+  }
+
+  /**
+   * Gets an HTable for a table to which a reference is held, either released by a closed
+   * instance of the table or newly created.
+   *
+   * @param name The name of the Kiji table.
+   * @return An HTable for the table.
+   * @throws IOException If there is an error creating the HTable.
+   */
+  public HTableInterface acquireHTable(String name) throws IOException {
+    synchronized (this) {
+      final Entry entry = mEntries.get(name);
+      if ((null != entry) && !entry.mIdleHTables.isEmpty()) {
+        return entry.mIdleHTables.pop();
+      }
+    }
+    return mHTableFactory.create(mKiji.getConf(),
+        KijiManagedHBaseTableName.getKijiTableName(mKiji.getName(), name).toString());
+  }
+
+  /**
+   * Returns an HTable obtained with {@link #acquireHTable(String)} that is not the HTable of
+   * an opened instance of the table, eg. an HTable used by a background thread. The HTable is
+   * kept for newly opened instances while the table is opened, and closed otherwise.
+   *
+   * @param name The name of the Kiji table.
+   * @param htable The HTable to return.
+   * @throws IOException If there is an error flushing the HTable.
+   */
+  public void releaseHTable(String name, HTableInterface htable) throws IOException {
+    htable.flushCommits();
+    synchronized (this) {
+      final Entry entry = mEntries.get(name);
+      if ((null != entry) && (entry.mRefCount > 0)) {
+        entry.mIdleHTables.push(htable);
+        return;
+      }
+    }
+    IOUtils.closeQuietly(htable);
+  }
+
+  /**
+   * Releases a reference to the resources of a table. Once the last reference is released,
+   * the HTables of the table are closed, and its layout is forgotten unless its updates are
+   * watched. Kept layouts are forgotten once invalidated, or evicted when more than the
+   * maximum number of closed tables are kept.
+   *
+   * @param name The name of the Kiji table.
+   * @param htable The HTable used by the released instance, or null if it does not share it.
+   * @throws IOException If there is an error flushing the HTable.
+   */
+  public void release(String name, HTableInterface htable) throws IOException {
+    if (null != htable) {
+      htable.flushCommits();
+    }
+    final List<HTableInterface> toClose = Lists.newArrayList();
+    synchronized (this) {
+      final Entry entry = mEntries.get(name);
+      if ((null == entry) || (entry.mRefCount <= 0)) {
+        LOG.warn("Released resources of table " + name + " that were not acquired.");
+        if (null != htable) {
+          toClose.add(htable);
+        }
+      } else {
+        if (null != htable) {
+          entry.mIdleHTables.push(htable);
+        }
+        entry.mRefCount--;
+        if (entry.mRefCount == 0) {
+          toClose.addAll(entry.mIdleHTables);
+          entry.mIdleHTables.clear();
+          if (!isTracking() || !entry.mIsWatched || entry.mIsStale) {
+            mEntries.remove(name);
+          } else {
+            evictIdleEntries();
+          }
+        }
+      }
+    }
+    for (HTableInterface idle : toClose) {
+      IOUtils.closeQuietly(idle);
+    }
+  }
+
+  /**
+   * Reads the layout of a table again. Opened instances of the table switch to the new
+   * layout, and the readers and writers they opened keep using the previous one.
+   * If the layout cannot be read, opened instances keep their layout and instances opened
+   * afterwards read it again.
+   *
+   * @param name The name of the Kiji table.
+   */
+  public void invalidate(String name) {
+    final Entry entry;
+    synchronized (this) {
+      entry = mEntries.get(name);
+      if (null == entry) {
+        return;
+      }
+      if (0 == entry.mRefCount) {
+        mEntries.remove(name);
+        return;
+      }
+    }
+    synchronized (entry.mLoadLock) {
+      try {
+        reload(name, entry);
+      } catch (IOException ioe) {
+        LOG.debug("Unable to refresh the layout of table " + name + ": " + ioe);
+      }
+    }
+  }
+
+  /**
+   * Reads the layout of a table again, unless it is already up to date. The layout is read
+   * without holding the registry lock, and swapped into the opened instances of the table.
+   *
+   * @param tableName The name of the Kiji table.
+   * @param layoutId The ID of the new layout of the table, or null if it was removed.
+   */
+  private void refresh(String tableName, String layoutId) {
+    final boolean stale;
+    final KijiTableResources resources;
+    synchronized (this) {
+      final Entry entry = mEntries.get(tableName);
+      if (null == entry) {
+        return;
+      }
+      stale = entry.mIsStale;
+      resources = entry.mResources.get();
+    }
+    if (!stale && (null != layoutId) && (null != resources)
+        && layoutId.equals(resources.getLayout().getDesc().getLayoutId())) {
+      // Already up to date, eg. the update was made through this Kiji instance.
+      return;
+    }
+    LOG.debug("Refreshing the layout of table " + tableName + " to " + layoutId);
+    invalidate(tableName);
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>Called on the ZooKeeper event thread, which must neither read the meta table nor wait
+   * for the threads reading it: the layout is refreshed in the background.</p>
+   */
+  @Override
+  public void layoutChanged(final String tableName, final String layoutId) {
+    try {
+      mReloadExecutor.execute(new Runnable() {
+        /** {@inheritDoc} */
+        @Override
+        public void run() {
+          refresh(tableName, layoutId);
+        }
+      });
+    } catch (RejectedExecutionException ree) {
+      // The registry is closed: there is no layout left to refresh.
+      LOG.debug("Not refreshing the layout of table " + tableName + ": " + ree);
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public synchronized void trackingLost() {
+    mTrackingLosses++;
+    final Iterator<Entry> it = mEntries.values().iterator();
+    while (it.hasNext()) {
+      final Entry entry = it.next();
+      if (0 == entry.mRefCount) {
+        it.remove();
+      } else {
+        // Updates may have been missed: read the layout again on the next open.
+        entry.mIsStale = true;
+        entry.mIsWatched = false;
+      }
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void close() throws IOException {
+    if (null != mOwnedReloadExecutor) {
+      mOwnedReloadExecutor.shutdown();
+    }
+    final List<HTableInterface> toClose = Lists.newArrayList();
+    synchronized (this) {
+      for (Entry entry : mEntries.values()) {
+        toClose.addAll(entry.mIdleHTables);
+        entry.mIdleHTables.clear();
+      }
+    }
+    for (HTableInterface idle : toClose) {
+      IOUtils.closeQuietly(idle);
+    }
+  }
+
+  /** Forgets the least recently used closed tables, beyond the maximum number kept. */
+  private synchronized void evictIdleEntries() {
+    int idle = 0;
+    for (Entry entry : mEntries.values()) {
+      if (0 == entry.mRefCount) {
+        idle++;
+      }
+    }
+    final Iterator<Entry> it = mEntries.values().iterator();
+    while ((idle > mMaxIdleTables) && it.hasNext()) {
+      if (0 == it.next().mRefCount) {
+        it.remove();
+        idle--;
+      }
+    }
+  }
+
+  /** @return Whether the layout updates of the cached tables are reported to this registry. */
+  private boolean isTracking() {
+    return (null != mTracker) && mTracker.isTracking();
+  }
+}
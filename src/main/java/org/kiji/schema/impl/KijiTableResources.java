@@ -0,0 +1,300 @@
+/**
+ * (c) Copyright 2012 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.kiji.schema.impl;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.MapMaker;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.apache.avro.Schema;
+
+import org.kiji.schema.EntityIdFactory;
+import org.kiji.schema.KijiCellFormat;
+import org.kiji.schema.KijiColumnName;
+import org.kiji.schema.KijiSchemaTable;
+import org.kiji.schema.KijiSchemaTable.SchemaEntry;
+import org.kiji.schema.NoSuchColumnException;
+import org.kiji.schema.avro.CellSchema;
+import org.kiji.schema.avro.SchemaType;
+import org.kiji.schema.layout.ColumnNameTranslator;
+import org.kiji.schema.layout.InvalidLayoutException;
+import org.kiji.schema.layout.KijiTableLayout;
+import org.kiji.schema.layout.KijiTableLayout.LocalityGroupLayout.FamilyLayout;
+import org.kiji.schema.util.BytesKey;
+
+/**
+ * The immutable resources derived from the layout of a Kiji table, shared by all the opened
+ * instances of the table through a {@link KijiTableResourceRegistry}, and by the readers,
+ * row data and filters built from the same layout through {@link #forLayout(KijiTableLayout)}.
+ */
+public final class KijiTableResources {
+  /**
+   * Resources of the layouts in use, by layout identity. Both are weakly referenced, since the
+   * resources reference their layout: they are collected once no table, reader or row data
+   * uses them.
+   */
+  private static final ConcurrentMap<KijiTableLayout, KijiTableResources> RESOURCES =
+      new MapMaker().weakKeys().weakValues().makeMap();
+
+  /** The layout of the Kiji table. */
+  private final KijiTableLayout mLayout;
+
+  /** Translates between Kiji and HBase column names. */
+  private final ColumnNameTranslator mColumnNameTranslator;
+
+  /** The factory for EntityIds. */
+  private final EntityIdFactory mEntityIdFactory;
+
+  /** Compiled metadata of the columns and map-type families read so far. */
+  private final ConcurrentMap<KijiColumnName, ColumnMetadata> mColumns = Maps.newConcurrentMap();
+
+  /**
+   * Milliseconds after which the writer schemas of a column that were not found in the schema
+   * table are looked up again.
+   */
+  private static final long MISSING_WRITER_SCHEMAS_RETRY_MILLIS = 60000L;
+
+  /** The metadata of a column, compiled from its cell schema once per layout. */
+  public static final class ColumnMetadata {
+    /** The cell schema of the column. */
+    private final CellSchema mCellSchema;
+
+    /** The parsed Avro schema of the column, or null for counters. */
+    private final Schema mSchema;
+
+    /** The encoding of the cells of the column. */
+    private final KijiCellFormat mCellFormat;
+
+    /** The schemas the cells of the column may be written with; empty for counters. */
+    private final List<Schema> mWriterSchemaCandidates;
+
+    /** Schema table entries of the writer schemas of the column, by schema table. */
+    private final ConcurrentMap<KijiSchemaTable, WriterSchemas> mWriterSchemas =
+        new MapMaker().weakKeys().makeMap();
+
+    /**
+     * Compiles the metadata of a column.
+     *
+     * @param cellSchema The cell schema of the column.
+     * @throws InvalidLayoutException If the Avro schema of the column is invalid.
+     */
+    private ColumnMetadata(CellSchema cellSchema) throws InvalidLayoutException {
+      mCellSchema = cellSchema;
+      mSchema = KijiTableLayout.readAvroSchema(cellSchema);
+      mCellFormat = KijiCellFormat.fromSchemaStorage(cellSchema.getStorage());
+      mWriterSchemaCandidates = (null == mSchema)
+          ? Collections.<Schema>emptyList()
+          : ImmutableList.copyOf(getWriterSchemaCandidates(mSchema));
+    }
+
+    /**
+     * Lists the schemas a cell may be written with to be read with a reader schema: the reader
+     * schema, the branches of a union, and the primitive types Avro promotes to them. Records,
+     * enums and fixed types are only written with their reader schema.
+     *
+     * @param reader The reader schema of a column.
+     * @return The writer schemas resolvable against the reader schema, without duplicates.
+     */
+    private static Set<Schema> getWriterSchemaCandidates(Schema reader) {
+      final Set<Schema> candidates = Sets.newLinkedHashSet();
+      candidates.add(reader);
+      final List<Schema> branches = (Schema.Type.UNION == reader.getType())
+          ? reader.getTypes()
+          : Collections.singletonList(reader);
+      for (Schema branch : branches) {
+        candidates.add(branch);
+        switch (branch.getType()) {
+        case DOUBLE:
+          candidates.add(Schema.create(Schema.Type.FLOAT));
+          candidates.add(Schema.create(Schema.Type.LONG));
+          candidates.add(Schema.create(Schema.Type.INT));
+          break;
+        case FLOAT:
+          candidates.add(Schema.create(Schema.Type.LONG));
+          candidates.add(Schema.create(Schema.Type.INT));
+          break;
+        case LONG:
+          candidates.add(Schema.create(Schema.Type.INT));
+          break;
+        default:
+          break;
+        }
+      }
+      return candidates;
+    }
+
+    /** @return The cell schema of the column. */
+    public CellSchema getCellSchema() {
+      return mCellSchema;
+    }
+
+    /** @return The parsed Avro schema of the column, or null for counters. */
+    public Schema getSchema() {
+      return mSchema;
+    }
+
+    /** @return The encoding of the cells of the column. */
+    public KijiCellFormat getCellFormat() {
+      return mCellFormat;
+    }
+
+    /** @return Whether the column is a counter. */
+    public boolean isCounter() {
+      return SchemaType.COUNTER == mCellSchema.getType();
+    }
+
+    /**
+     * Gets the schema table entries of the schemas the cells of the column may be written
+     * with, ie. of the writer schemas resolvable against the schema of the column that are
+     * registered in a schema table. Entries are looked up once per schema table; schemas
+     * missing from the schema table are looked up again at most once a minute.
+     *
+     * @param schemaTable The schema table of the Kiji instance.
+     * @return The schema table entries of the writer schemas of the column.
+     * @throws IOException If there is an error reading the schema table.
+     */
+    public List<SchemaEntry> getWriterSchemas(KijiSchemaTable schemaTable) throws IOException {
+      final WriterSchemas cached = mWriterSchemas.get(schemaTable);
+      final long now = System.currentTimeMillis();
+      if ((null != cached) && ((cached.mEntries.size() == mWriterSchemaCandidates.size())
+          || (now - cached.mLookupTime < MISSING_WRITER_SCHEMAS_RETRY_MILLIS))) {
+        return cached.mEntries;
+      }
+      final List<SchemaEntry> entries = Lists.newArrayList();
+      for (Schema candidate : mWriterSchemaCandidates) {
+        final BytesKey hash = schemaTable.getSchemaHash(candidate);
+        // Only look up the ID of registered schemas, to not register the unused ones:
+        if (null != schemaTable.getSchema(hash)) {
+          entries.add(new SchemaEntry(schemaTable.getOrCreateSchemaId(candidate), hash, candidate));
+        }
+      }
+      final WriterSchemas looked = new WriterSchemas(Collections.unmodifiableList(entries), now);
+      mWriterSchemas.put(schemaTable, looked);
+      return looked.mEntries;
+    }
+  }
+
+  /** The schema table entries of the writer schemas of a column found in a schema table. */
+  private static final class WriterSchemas {
+    /** The schema table entries found. */
+    private final List<SchemaEntry> mEntries;
+
+    /** The time the entries were looked up, in milliseconds since the epoch. */
+    private final long mLookupTime;
+
+    /**
+     * Records the writer schemas of a column found in a schema table.
+     *
+     * @param entries The schema table entries found.
+     * @param lookupTime The time the entries were looked up, in milliseconds since the epoch.
+     */
+    private WriterSchemas(List<SchemaEntry> entries, long lookupTime) {
+      mEntries = entries;
+      mLookupTime = lookupTime;
+    }
+  }
+
+  /**
+   * Builds the resources of a table layout.
+   *
+   * @param layout The layout of the Kiji table.
+   */
+  private KijiTableResources(KijiTableLayout layout) {
+    mLayout = layout;
+    mColumnNameTranslator = new ColumnNameTranslator(layout);
+    mEntityIdFactory = EntityIdFactory.create(layout.getDesc().getKeysFormat());
+  }
+
+  /**
+   * Gets the resources of a table layout, built once for each layout instance.
+   *
+   * @param layout The layout of the Kiji table.
+   * @return The resources derived from the layout.
+   */
+  public static KijiTableResources forLayout(KijiTableLayout layout) {
+    final KijiTableResources resources = RESOURCES.get(layout);
+    if (null != resources) {
+      return resources;
+    }
+    final KijiTableResources created = new KijiTableResources(layout);
+    final KijiTableResources existing = RESOURCES.putIfAbsent(layout, created);
+    return (null != existing) ? existing : created;
+  }
+
+  /**
+   * Builds the resources of a layout read again from the meta table, replacing the resources
+   * previously built for the same layout instance.
+   *
+   * @param layout The layout of the Kiji table.
+   * @return The new resources derived from the layout.
+   */
+  static KijiTableResources rebuild(KijiTableLayout layout) {
+    final KijiTableResources created = new KijiTableResources(layout);
+    RESOURCES.put(layout, created);
+    return created;
+  }
+
+  /** @return The layout of the Kiji table. */
+  public KijiTableLayout getLayout() {
+    return mLayout;
+  }
+
+  /** @return The translator between Kiji and HBase column names. */
+  public ColumnNameTranslator getColumnNameTranslator() {
+    return mColumnNameTranslator;
+  }
+
+  /** @return The factory for EntityIds. */
+  public EntityIdFactory getEntityIdFactory() {
+    return mEntityIdFactory;
+  }
+
+  /**
+   * Gets the compiled metadata of a column. The columns of a map-type family share the
+   * metadata of the family.
+   *
+   * @param column The name of the column, or of a map-type family.
+   * @return The metadata of the column.
+   * @throws NoSuchColumnException If the column does not exist.
+   * @throws InvalidLayoutException If the Avro schema of the column is invalid.
+   */
+  public ColumnMetadata getColumnMetadata(KijiColumnName column)
+      throws NoSuchColumnException, InvalidLayoutException {
+    final FamilyLayout family = mLayout.getFamilyMap().get(column.getFamily());
+    final KijiColumnName key = ((null != family) && family.isMapType())
+        ? new KijiColumnName(column.getFamily())
+        : column;
+    final ColumnMetadata metadata = mColumns.get(key);
+    if (null != metadata) {
+      return metadata;
+    }
+    final ColumnMetadata compiled = new ColumnMetadata(mLayout.getCellSchema(key));
+    final ColumnMetadata existing = mColumns.putIfAbsent(key, compiled);
+    return (null != existing) ? existing : compiled;
+  }
+}
@@ -70,6 +70,34 @@ public abstract class LocalApiWriter<WRAPPER extends KijiDataWrapper<DATUM>, DAT
       return this;
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public Options<WRAPPER> withMaxBufferedBytes(long maxBufferedBytes) {
+      super.withMaxBufferedBytes(maxBufferedBytes);
+      return this;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Options<WRAPPER> withFlushIntervalMillis(long flushIntervalMillis) {
+      super.withFlushIntervalMillis(flushIntervalMillis);
+      return this;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Options<WRAPPER> withWriteBehind(boolean writeBehind) {
+      super.withWriteBehind(writeBehind);
+      return this;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Options<WRAPPER> withMaxPendingFlushes(int maxPendingFlushes) {
+      super.withMaxPendingFlushes(maxPendingFlushes);
+      return this;
+    }
+
     /** {@inheritDoc} */
     @Override
     public Options<WRAPPER> withWrapper(WRAPPER wrapper) {
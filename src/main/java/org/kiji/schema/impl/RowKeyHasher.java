@@ -0,0 +1,214 @@
+/**
+ * (c) Copyright 2012 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.kiji.schema.impl;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import org.kiji.schema.avro.HashType;
+import org.kiji.schema.avro.RowKeyFormat;
+import org.kiji.schema.util.Hasher;
+
+/**
+ * Computes the hashes of Kiji row keys, for the HASH and HASH_PREFIX row key encodings.
+ *
+ * <p>MD5 is kept for the existing tables. Row keys only need to be spread uniformly across
+ * regions, so the non-cryptographic MURMUR3_128 and XXHASH64 are much cheaper alternatives
+ * for new tables.</p>
+ *
+ * <p>This class is thread-safe.</p>
+ */
+public final class RowKeyHasher {
+  /** Murmur3 128-bit hash function, with seed 0. */
+  private static final HashFunction MURMUR3_128 = Hashing.murmur3_128();
+
+  /** xxHash64 primes. */
+  private static final long PRIME64_1 = 0x9E3779B185EBCA87L;
+  private static final long PRIME64_2 = 0xC2B2AE3D27D4EB4FL;
+  private static final long PRIME64_3 = 0x165667B19E3779F9L;
+  private static final long PRIME64_4 = 0x85EBCA77C2B2AE63L;
+  private static final long PRIME64_5 = 0x27D4EB2F165667C5L;
+
+  /** Disable constructor for utility class. */
+  private RowKeyHasher() {}
+
+  /**
+   * Reports whether the row keys of a format are hashed, and hence spread uniformly across
+   * the space of the HBase row keys.
+   *
+   * @param format Row key format.
+   * @return Whether the HBase row keys start with a hash.
+   */
+  public static boolean isHashed(RowKeyFormat format) {
+    switch (format.getEncoding()) {
+    case RAW: return false;
+    case HASH: return true;
+    case HASH_PREFIX: return true;
+    case FORMATTED: return format.getHashSize() > 0;
+    case SALTED: return false;
+    default:
+      throw new RuntimeException(String.format("Unexpected row key encoding: '%s'.", format));
+    }
+  }
+
+  /**
+   * Gets the size of the hashes produced by a hashing method.
+   *
+   * @param hashType The hashing method.
+   * @return The size of the hashes, in bytes.
+   */
+  public static int getHashSize(HashType hashType) {
+    switch (hashType) {
+    case MD5: return Hasher.HASH_SIZE_BYTES;
+    case MURMUR3_128: return 16;
+    case XXHASH64: return 8;
+    default:
+      throw new RuntimeException(String.format("Unexpected hashing type: '%s'.", hashType));
+    }
+  }
+
+  /**
+   * Hashes a Kiji row key.
+   *
+   * @param hashType The hashing method.
+   * @param kijiRowKey The Kiji row key to hash.
+   * @return The hash of the Kiji row key, of {@link #getHashSize(HashType)} bytes.
+   */
+  public static byte[] hash(HashType hashType, byte[] kijiRowKey) {
+    switch (hashType) {
+    case MD5: return Hasher.hash(kijiRowKey);
+    case MURMUR3_128: return MURMUR3_128.hashBytes(kijiRowKey).asBytes();
+    case XXHASH64: return Bytes.toBytes(xxHash64(kijiRowKey, 0L));
+    default:
+      throw new RuntimeException(String.format("Unexpected hashing type: '%s'.", hashType));
+    }
+  }
+
+  /**
+   * Computes the xxHash64 of a byte array.
+   *
+   * @param input The bytes to hash.
+   * @param seed The seed of the hash.
+   * @return The 64-bit hash of the input.
+   */
+  static long xxHash64(byte[] input, long seed) {
+    final int length = input.length;
+    int offset = 0;
+    long hash;
+    if (length >= 32) {
+      long v1 = seed + PRIME64_1 + PRIME64_2;
+      long v2 = seed + PRIME64_2;
+      long v3 = seed;
+      long v4 = seed - PRIME64_1;
+      while (offset <= length - 32) {
+        v1 = xxRound(v1, readLongLE(input, offset));
+        v2 = xxRound(v2, readLongLE(input, offset + 8));
+        v3 = xxRound(v3, readLongLE(input, offset + 16));
+        v4 = xxRound(v4, readLongLE(input, offset + 24));
+        offset += 32;
+      }
+      hash = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7)
+          + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+      hash = xxMerge(hash, v1);
+      hash = xxMerge(hash, v2);
+      hash = xxMerge(hash, v3);
+      hash = xxMerge(hash, v4);
+    } else {
+      hash = seed + PRIME64_5;
+    }
+    hash += length;
+
+    while (offset <= length - 8) {
+      hash ^= xxRound(0L, readLongLE(input, offset));
+      hash = Long.rotateLeft(hash, 27) * PRIME64_1 + PRIME64_4;
+      offset += 8;
+    }
+    if (offset <= length - 4) {
+      hash ^= (readIntLE(input, offset) & 0xFFFFFFFFL) * PRIME64_1;
+      hash = Long.rotateLeft(hash, 23) * PRIME64_2 + PRIME64_3;
+      offset += 4;
+    }
+    while (offset < length) {
+      hash ^= (input[offset] & 0xFFL) * PRIME64_5;
+      hash = Long.rotateLeft(hash, 11) * PRIME64_1;
+      offset++;
+    }
+
+    hash ^= hash >>> 33;
+    hash *= PRIME64_2;
+    hash ^= hash >>> 29;
+    hash *= PRIME64_3;
+    hash ^= hash >>> 32;
+    return hash;
+  }
+
+  /**
+   * Mixes 8 bytes of input into an xxHash64 accumulator.
+   *
+   * @param acc The accumulator.
+   * @param input The 8 bytes of input, as a little-endian long.
+   * @return The updated accumulator.
+   */
+  private static long xxRound(long acc, long input) {
+    return Long.rotateLeft(acc + input * PRIME64_2, 31) * PRIME64_1;
+  }
+
+  /**
+   * Merges an xxHash64 accumulator into the hash.
+   *
+   * @param hash The hash.
+   * @param acc The accumulator.
+   * @return The updated hash.
+   */
+  private static long xxMerge(long hash, long acc) {
+    return (hash ^ xxRound(0L, acc)) * PRIME64_1 + PRIME64_4;
+  }
+
+  /**
+   * Reads a little-endian long.
+   *
+   * @param bytes The byte array.
+   * @param offset The offset of the long in the byte array.
+   * @return The long.
+   */
+  private static long readLongLE(byte[] bytes, int offset) {
+    long value = 0;
+    for (int i = 7; i >= 0; i--) {
+      value = (value << 8) | (bytes[offset + i] & 0xFFL);
+    }
+    return value;
+  }
+
+  /**
+   * Reads a little-endian int.
+   *
+   * @param bytes The byte array.
+   * @param offset The offset of the int in the byte array.
+   * @return The int.
+   */
+  private static int readIntLE(byte[] bytes, int offset) {
+    return (bytes[offset] & 0xFF)
+        | ((bytes[offset + 1] & 0xFF) << 8)
+        | ((bytes[offset + 2] & 0xFF) << 16)
+        | ((bytes[offset + 3] & 0xFF) << 24);
+  }
+}
@@ -0,0 +1,153 @@
+/**
+ * (c) Copyright 2012 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.kiji.schema.impl;
+
+import java.util.Arrays;
+
+import com.google.common.base.Preconditions;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import org.kiji.schema.EntityId;
+import org.kiji.schema.avro.RowKeyEncoding;
+import org.kiji.schema.avro.RowKeyFormat;
+
+/**
+ * Implements the salted row key format.
+ *
+ * <p>The HBase row key is the Kiji row key prefixed by a single salt byte: the bucket number,
+ * computed as the hash of the Kiji row key modulo the number of buckets.  Monotonically
+ * increasing Kiji row keys are thus spread over the buckets, while rows remain sorted by Kiji
+ * row key within each bucket.</p>
+ */
+public final class SaltedEntityId extends EntityId {
+  /** Size of the salt prefix, in bytes. */
+  public static final int SALT_SIZE = 1;
+
+  /** Maximum number of buckets addressable by the salt prefix. */
+  public static final int MAX_NUM_BUCKETS = 256;
+
+  private final RowKeyFormat mFormat;
+
+  /** Kiji row key bytes. */
+  private final byte[] mKijiRowKey;
+
+  /** HBase row key bytes. */
+  private final byte[] mHBaseRowKey;
+
+  /**
+   * Creates a SaltedEntityId from the specified Kiji row key.
+   *
+   * @param kijiRowKey Kiji row key.
+   * @param format Row key format.
+   * @return a new SaltedEntityId with the specified Kiji row key.
+   */
+  public static SaltedEntityId fromKijiRowKey(byte[] kijiRowKey, RowKeyFormat format) {
+    checkFormat(format);
+    final byte[] hbaseRowKey = new byte[SALT_SIZE + kijiRowKey.length];
+    hbaseRowKey[0] = (byte) getBucket(kijiRowKey, format);
+    System.arraycopy(kijiRowKey, 0, hbaseRowKey, SALT_SIZE, kijiRowKey.length);
+    return new SaltedEntityId(kijiRowKey, hbaseRowKey, format);
+  }
+
+  /**
+   * Creates a SaltedEntityId from the specified HBase row key.
+   *
+   * @param hbaseRowKey HBase row key.
+   * @param format Row key format.
+   * @return a new SaltedEntityId with the specified HBase row key.
+   */
+  public static SaltedEntityId fromHBaseRowKey(byte[] hbaseRowKey, RowKeyFormat format) {
+    checkFormat(format);
+    Preconditions.checkArgument(hbaseRowKey.length >= SALT_SIZE,
+        "Salted HBase row key is missing its salt: '%s'.", Bytes.toStringBinary(hbaseRowKey));
+    final byte[] kijiRowKey = Arrays.copyOfRange(hbaseRowKey, SALT_SIZE, hbaseRowKey.length);
+    return new SaltedEntityId(kijiRowKey, hbaseRowKey, format);
+  }
+
+  /**
+   * Computes the bucket a Kiji row key belongs to.
+   *
+   * @param kijiRowKey Kiji row key.
+   * @param format Row key format.
+   * @return the bucket number, between 0 and the number of buckets (excluded).
+   */
+  public static int getBucket(byte[] kijiRowKey, RowKeyFormat format) {
+    final byte[] hash = RowKeyHasher.hash(format.getHashType(), kijiRowKey);
+    return (Bytes.toInt(hash, 0) & Integer.MAX_VALUE) % format.getNumBuckets();
+  }
+
+  /**
+   * Checks that a row key format is a valid salted row key format.
+   *
+   * @param format Row key format.
+   * @throws IllegalArgumentException If the format is not valid.
+   */
+  public static void checkFormat(RowKeyFormat format) {
+    Preconditions.checkNotNull(format);
+    Preconditions.checkArgument(format.getEncoding() == RowKeyEncoding.SALTED);
+    Preconditions.checkArgument(null != format.getHashType(),
+        "Salted row key format requires a hash type: '%s'.", format);
+    Preconditions.checkArgument(
+        (format.getNumBuckets() >= 2) && (format.getNumBuckets() <= MAX_NUM_BUCKETS),
+        "Salted row key format requires between 2 and %s buckets: '%s'.",
+        MAX_NUM_BUCKETS, format);
+  }
+
+  /**
+   * Creates a new SaltedEntityId.
+   *
+   * @param kijiRowKey Kiji row key.
+   * @param hbaseRowKey HBase row key.
+   * @param format Row key format.
+   */
+  private SaltedEntityId(byte[] kijiRowKey, byte[] hbaseRowKey, RowKeyFormat format) {
+    mKijiRowKey = Preconditions.checkNotNull(kijiRowKey);
+    mHBaseRowKey = Preconditions.checkNotNull(hbaseRowKey);
+    mFormat = Preconditions.checkNotNull(format);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public RowKeyFormat getFormat() {
+    return mFormat;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public byte[] getKijiRowKey() {
+    return mKijiRowKey;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public byte[] getHBaseRowKey() {
+    return mHBaseRowKey;
+  }
+
+  /**
+   * Gets the bucket this entity belongs to.
+   *
+   * @return the bucket number of this entity.
+   */
+  public int getBucket() {
+    return mHBaseRowKey[0] & 0xFF;
+  }
+}
@@ -0,0 +1,148 @@
+/**
+ * (c) Copyright 2012 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.schema.impl;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A memory budget, in bytes, shared by the write buffers of several Kiji data writers.
+ *
+ * <p>Buffers account the encoded size of the cells they hold against the budget, and release it
+ * once their cells are written. When the budget is exhausted, writers are expected to flush their
+ * buffer as soon as it holds its share of the budget, ie. the capacity divided by the number of
+ * buffers holding cells. This bounds the amount of memory held by write buffers regardless of how
+ * many writers are open and how large the buffered cells are, while a writer that stops writing
+ * with a full buffer does not force the other writers to flush after every write.</p>
+ *
+ * <p>All the writers in a JVM share the budget returned by {@link #getShared()} unless they are
+ * configured with a budget of their own.</p>
+ */
+public final class WriteBufferBudget {
+  /** Fraction of the maximum heap size used as default capacity of the shared budget. */
+  private static final long DEFAULT_HEAP_FRACTION = 10;
+
+  /** Budget shared by all the writers in this JVM. */
+  private static final WriteBufferBudget SHARED =
+      new WriteBufferBudget(Runtime.getRuntime().maxMemory() / DEFAULT_HEAP_FRACTION);
+
+  /** Maximum number of bytes that may be buffered before writers must flush. */
+  private volatile long mCapacity;
+
+  /** Number of bytes currently held by buffers using this budget. */
+  private final AtomicLong mUsedBytes = new AtomicLong(0);
+
+  /** Number of buffers currently holding cells accounted against this budget. */
+  private final AtomicInteger mActiveBuffers = new AtomicInteger(0);
+
+  /**
+   * Creates a new budget.
+   *
+   * @param capacity Maximum number of bytes that may be buffered before writers must flush.
+   */
+  public WriteBufferBudget(long capacity) {
+    setCapacity(capacity);
+  }
+
+  /**
+   * Returns the budget shared by all the writers in this JVM.
+   *
+   * <p>Its capacity defaults to a tenth of the maximum heap size.</p>
+   *
+   * @return The budget shared by all the writers in this JVM.
+   */
+  public static WriteBufferBudget getShared() {
+    return SHARED;
+  }
+
+  /**
+   * Sets the maximum number of bytes that may be buffered before writers must flush.
+   *
+   * @param capacity The new capacity, in bytes.
+   */
+  public void setCapacity(long capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("Write buffer budget must be positive, got " + capacity);
+    }
+    mCapacity = capacity;
+  }
+
+  /** @return The maximum number of bytes that may be buffered before writers must flush. */
+  public long getCapacity() {
+    return mCapacity;
+  }
+
+  /** @return The number of bytes currently held by buffers using this budget. */
+  public long getUsedBytes() {
+    return mUsedBytes.get();
+  }
+
+  /**
+   * Accounts bytes added to a buffer.
+   *
+   * @param bytes Number of bytes added to a buffer.
+   */
+  public void reserve(long bytes) {
+    mUsedBytes.addAndGet(bytes);
+  }
+
+  /**
+   * Accounts bytes removed from a buffer.
+   *
+   * @param bytes Number of bytes removed from a buffer.
+   */
+  public void release(long bytes) {
+    mUsedBytes.addAndGet(-bytes);
+  }
+
+  /** @return The number of buffers currently holding cells accounted against this budget. */
+  public int getActiveBuffers() {
+    return mActiveBuffers.get();
+  }
+
+  /** Accounts a buffer that starts holding cells. */
+  public void addActiveBuffer() {
+    mActiveBuffers.incrementAndGet();
+  }
+
+  /** Accounts a buffer that no longer holds cells. */
+  public void removeActiveBuffer() {
+    mActiveBuffers.decrementAndGet();
+  }
+
+  /** @return Whether the buffers using this budget hold more than its capacity. */
+  public boolean isExhausted() {
+    return mUsedBytes.get() >= mCapacity;
+  }
+
+  /**
+   * Reports whether a buffer should be flushed because the budget is exhausted and the buffer
+   * holds at least its share of the budget.
+   *
+   * @param bufferedBytes Number of bytes held by the buffer.
+   * @return Whether the buffer should be flushed.
+   */
+  public boolean isShareExhausted(long bufferedBytes) {
+    if (!isExhausted()) {
+      return false;
+    }
+    return bufferedBytes >= mCapacity / Math.max(1, mActiveBuffers.get());
+  }
+}
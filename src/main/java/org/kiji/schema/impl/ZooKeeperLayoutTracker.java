@@ -0,0 +1,308 @@
+/**
+ * (c) Copyright 2012 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.kiji.schema.impl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.KeeperException.NoNodeException;
+import org.apache.zookeeper.KeeperException.NodeExistsException;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.Watcher.Event.EventType;
+import org.apache.zookeeper.Watcher.Event.KeeperState;
+import org.apache.zookeeper.ZooDefs.Ids;
+import org.apache.zookeeper.ZooKeeper;
+import org.apache.zookeeper.data.Stat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Tracks the layout updates of the tables of a Kiji instance through ZooKeeper.
+ *
+ * <p>Each Kiji table has a ZooKeeper node <code>/kiji-layouts/&lt;instance&gt;/&lt;table&gt;</code>
+ * that holds the ID of its current layout. The node is rewritten by
+ * {@link #notifyLayoutChanged(String, String)} when the layout of the table is updated,
+ * and deleted by {@link #notifyLayoutRemoved(String)} when the table is deleted.
+ * Clients {@link #watch(String)} the nodes of the tables whose layout they cache, and the
+ * registered {@link LayoutListener}s are told about each change.</p>
+ *
+ * <p>Tracking is enabled by setting {@value #ENABLED_CONF_NAME} to true, both on the clients
+ * and on the hosts that update the table layouts.</p>
+ *
+ * <p>This class is thread-safe.</p>
+ */
+public final class ZooKeeperLayoutTracker implements Closeable {
+  private static final Logger LOG = LoggerFactory.getLogger(ZooKeeperLayoutTracker.class);
+
+  /** Configuration variable enabling the tracking of the table layouts through ZooKeeper. */
+  public static final String ENABLED_CONF_NAME = "kiji.layout.tracker.enabled";
+
+  /** Path of the ZooKeeper node under which the layout nodes of all instances are stored. */
+  public static final String ROOT_PATH = "/kiji-layouts";
+
+  /** ZooKeeper session timeout, in milliseconds. */
+  private static final int SESSION_TIMEOUT = 60000;
+
+  /** Listens to the layout updates of the tracked tables. */
+  public interface LayoutListener {
+    /**
+     * Called when the layout of a watched table is updated or removed.
+     *
+     * @param tableName The name of the Kiji table.
+     * @param layoutId The ID of the new layout of the table, or null if it was removed.
+     */
+    void layoutChanged(String tableName, String layoutId);
+
+    /**
+     * Called when the ZooKeeper session expires. No further layout update is reported.
+     */
+    void trackingLost();
+  }
+
+  /** The ZooKeeper client. */
+  private final ZooKeeper mZooKeeper;
+
+  /** Path of the ZooKeeper node under which the layout nodes of the instance are stored. */
+  private final String mInstancePath;
+
+  /** The listeners told about the layout updates. */
+  private final List<LayoutListener> mListeners = new CopyOnWriteArrayList<LayoutListener>();
+
+  /** Whether the ZooKeeper session is still valid. */
+  private volatile boolean mIsTracking = true;
+
+  /** Watches the layout nodes and the ZooKeeper session. */
+  private final class LayoutWatcher implements Watcher {
+    /** {@inheritDoc} */
+    @Override
+    public void process(WatchedEvent event) {
+      if (event.getType() == EventType.None) {
+        if (event.getState() == KeeperState.Expired) {
+          sessionExpired();
+        }
+        return;
+      }
+      final String path = event.getPath();
+      if ((null == path) || !path.startsWith(mInstancePath + "/")) {
+        return;
+      }
+      final String tableName = path.substring(mInstancePath.length() + 1);
+      final String layoutId;
+      try {
+        // Watches only fire once: keep watching the node before reading it.
+        layoutId = watch(tableName);
+      } catch (IOException ioe) {
+        LOG.warn("Unable to watch the layout of table " + tableName + ": " + ioe);
+        sessionExpired();
+        return;
+      }
+      for (LayoutListener listener : mListeners) {
+        listener.layoutChanged(tableName, layoutId);
+      }
+    }
+  }
+
+  /** Watches the layout nodes and the ZooKeeper session. */
+  private final LayoutWatcher mWatcher = new LayoutWatcher();
+
+  /**
+   * Creates a tracker for the table layouts of a Kiji instance.
+   *
+   * @param conf The configuration with the ZooKeeper quorum of the HBase cluster.
+   * @param instanceName The name of the Kiji instance.
+   * @throws IOException If the ZooKeeper client cannot be created.
+   */
+  public ZooKeeperLayoutTracker(Configuration conf, String instanceName) throws IOException {
+    final String zkQuorum = conf.get("hbase.zookeeper.quorum");
+    final String zkClientPort = conf.get("hbase.zookeeper.property.clientPort");
+    final String zkConnStr = String.format("%s:%s", zkQuorum, zkClientPort);
+    mInstancePath = ROOT_PATH + "/" + instanceName;
+    mZooKeeper = new ZooKeeper(zkConnStr, SESSION_TIMEOUT, mWatcher);
+  }
+
+  /**
+   * Creates a tracker for the table layouts of a Kiji instance using a ZooKeeper client.
+   *
+   * @param zooKeeper The ZooKeeper client, owned by the tracker from now on.
+   * @param instanceName The name of the Kiji instance.
+   */
+  ZooKeeperLayoutTracker(ZooKeeper zooKeeper, String instanceName) {
+    mInstancePath = ROOT_PATH + "/" + instanceName;
+    mZooKeeper = zooKeeper;
+  }
+
+  /**
+   * Reports whether the tracking of the table layouts is enabled in a configuration.
+   *
+   * @param conf The configuration.
+   * @return Whether {@value #ENABLED_CONF_NAME} is set to true.
+   */
+  public static boolean isEnabled(Configuration conf) {
+    return conf.getBoolean(ENABLED_CONF_NAME, false);
+  }
+
+  /**
+   * Registers a listener to be told about the layout updates of the watched tables.
+   *
+   * @param listener The listener.
+   */
+  public void addListener(LayoutListener listener) {
+    mListeners.add(listener);
+  }
+
+  /** @return Whether the layout updates are still reported. */
+  public boolean isTracking() {
+    return mIsTracking;
+  }
+
+  /**
+   * Watches the layout updates of a table.
+   *
+   * @param tableName The name of the Kiji table.
+   * @return The ID of the current layout of the table, or null if it is not known.
+   * @throws IOException If the layout node cannot be watched.
+   */
+  public String watch(String tableName) throws IOException {
+    final String path = getLayoutPath(tableName);
+    try {
+      final Stat stat = mZooKeeper.exists(path, mWatcher);
+      if (null == stat) {
+        return null;
+      }
+      return Bytes.toString(mZooKeeper.getData(path, false, stat));
+    } catch (NoNodeException nne) {
+      // Removed after being watched: the watch reports the removal.
+      return null;
+    } catch (KeeperException ke) {
+      throw new IOException(ke);
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      throw new IOException(ie);
+    }
+  }
+
+  /**
+   * Tells the clients watching a table that its layout was updated.
+   *
+   * @param tableName The name of the Kiji table.
+   * @param layoutId The ID of the new layout of the table.
+   * @throws IOException If the layout node cannot be written.
+   */
+  public void notifyLayoutChanged(String tableName, String layoutId) throws IOException {
+    final String path = getLayoutPath(tableName);
+    final byte[] data = Bytes.toBytes((null == layoutId) ? "" : layoutId);
+    try {
+      try {
+        mZooKeeper.setData(path, data, -1);  // -1 means any version
+      } catch (NoNodeException nne) {
+        createIfMissing(ROOT_PATH, new byte[0]);
+        createIfMissing(mInstancePath, new byte[0]);
+        if (!createIfMissing(path, data)) {
+          mZooKeeper.setData(path, data, -1);
+        }
+      }
+    } catch (KeeperException ke) {
+      throw new IOException(ke);
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      throw new IOException(ie);
+    }
+  }
+
+  /**
+   * Tells the clients watching a table that it was deleted.
+   *
+   * @param tableName The name of the Kiji table.
+   * @throws IOException If the layout node cannot be deleted.
+   */
+  public void notifyLayoutRemoved(String tableName) throws IOException {
+    try {
+      mZooKeeper.delete(getLayoutPath(tableName), -1);  // -1 means any version
+    } catch (NoNodeException nne) {
+      LOG.debug("No layout node to remove for table " + tableName);
+    } catch (KeeperException ke) {
+      throw new IOException(ke);
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      throw new IOException(ie);
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void close() throws IOException {
+    mIsTracking = false;
+    try {
+      mZooKeeper.close();
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      throw new IOException(ie);
+    }
+  }
+
+  /**
+   * Gets the path of the layout node of a table.
+   *
+   * @param tableName The name of the Kiji table.
+   * @return The path of the ZooKeeper node holding the layout ID of the table.
+   */
+  private String getLayoutPath(String tableName) {
+    return mInstancePath + "/" + tableName;
+  }
+
+  /**
+   * Creates a persistent ZooKeeper node, unless it already exists.
+   *
+   * @param path The path of the node.
+   * @param data The content of the node.
+   * @return Whether the node was created.
+   * @throws KeeperException On ZooKeeper error.
+   * @throws InterruptedException If interrupted.
+   */
+  private boolean createIfMissing(String path, byte[] data)
+      throws KeeperException, InterruptedException {
+    try {
+      mZooKeeper.create(path, data, Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+      return true;
+    } catch (NodeExistsException nee) {
+      return false;
+    }
+  }
+
+  /** Stops reporting layout updates after the ZooKeeper session is lost. */
+  private void sessionExpired() {
+    if (!mIsTracking) {
+      return;
+    }
+    mIsTracking = false;
+    LOG.warn("ZooKeeper session expired: table layout updates are no longer tracked.");
+    for (LayoutListener listener : mListeners) {
+      listener.trackingLost();
+    }
+  }
+}
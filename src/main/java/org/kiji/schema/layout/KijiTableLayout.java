@@ -51,7 +51,11 @@ import org.kiji.schema.avro.CellSchema;
 import org.kiji.schema.avro.ColumnDesc;
 import org.kiji.schema.avro.FamilyDesc;
 import org.kiji.schema.avro.LocalityGroupDesc;
+import org.kiji.schema.avro.RowKeyEncoding;
+import org.kiji.schema.avro.SchemaType;
 import org.kiji.schema.avro.TableLayoutDesc;
+import org.kiji.schema.impl.FormattedEntityId;
+import org.kiji.schema.impl.SaltedEntityId;
 import org.kiji.schema.layout.KijiTableLayout.LocalityGroupLayout.FamilyLayout;
 import org.kiji.schema.layout.KijiTableLayout.LocalityGroupLayout.FamilyLayout.ColumnLayout;
 import org.kiji.schema.layout.impl.ColumnId;
@@ -219,6 +223,9 @@ import org.kiji.schema.util.ToJson;
 public class KijiTableLayout {
   private static final Logger LOG = LoggerFactory.getLogger(KijiTableLayout.class);
 
+  /** Maximum number of stripes of a counter: stripes are identified by one byte. */
+  public static final int MAX_COUNTER_STRIPES = 256;
+
   /** Concrete layout of a locality group. */
   public class LocalityGroupLayout {
 
@@ -276,10 +283,24 @@ public class KijiTableLayout {
             }
             mId = reference.getId();
             desc.setId(mId.getId());
+
+            // Dropping stripes would drop the part of the counter value they hold:
+            final int refStripes = reference.getDesc().getColumnSchema().getCounterStripes();
+            if (mDesc.getColumnSchema().getCounterStripes() < refStripes) {
+              throw new InvalidLayoutException(String.format(
+                  "Invalid layout update for column '%s': cannot reduce the number of counter "
+                  + "stripes from %d to %d.",
+                  getName(), refStripes, mDesc.getColumnSchema().getCounterStripes()));
+            }
           }
 
           // Force validation of schema:
           validateAvroSchema(mDesc.getColumnSchema());
+
+          if (mDesc.getIndexed() && (mDesc.getColumnSchema().getType() == SchemaType.COUNTER)) {
+            throw new InvalidLayoutException(String.format(
+                "Counter column '%s' may not be indexed.", getName()));
+          }
         }
 
         /** @return the Avro descriptor for this column. */
@@ -406,6 +427,11 @@ public class KijiTableLayout {
         if (this.isMapType()) {
           // Force validation of schema:
           validateAvroSchema(mDesc.getMapSchema());
+          if (1 != mDesc.getMapSchema().getCounterStripes()) {
+            throw new InvalidLayoutException(String.format(
+                "Invalid map-type family '%s': counter stripes are only supported in "
+                + "group-type families.", getName()));
+          }
         }
 
         // Build columns:
@@ -636,6 +662,11 @@ public class KijiTableLayout {
             "Invalid max versions for locality group '%s': max versions must be positive, got %d.",
             getName(), mDesc.getMaxVersions()));
       }
+      if (mDesc.getBlockSize() < 0) {
+        throw new InvalidLayoutException(String.format(
+            "Invalid block size for locality group '%s': block size must not be negative, got %d.",
+            getName(), mDesc.getBlockSize()));
+      }
 
       if (reference != null) {
         if ((mId != null) && !mId.equals(reference.getId())) {
@@ -840,6 +871,24 @@ public class KijiTableLayout {
       throw new InvalidLayoutException(String.format("Invalid table name: '%s'.", getName()));
     }
 
+    if (mDesc.getKeysFormat().getEncoding() == RowKeyEncoding.FORMATTED) {
+      try {
+        FormattedEntityId.checkFormat(mDesc.getKeysFormat());
+      } catch (IllegalArgumentException iae) {
+        throw new InvalidLayoutException(String.format(
+            "Invalid formatted row keys format: %s", iae.getMessage()));
+      }
+    }
+
+    if (mDesc.getKeysFormat().getEncoding() == RowKeyEncoding.SALTED) {
+      try {
+        SaltedEntityId.checkFormat(mDesc.getKeysFormat());
+      } catch (IllegalArgumentException iae) {
+        throw new InvalidLayoutException(String.format(
+            "Invalid salted row keys format: %s", iae.getMessage()));
+      }
+    }
+
     if (reference != null) {
       if (!getName().equals(reference.getName())) {
         throw new InvalidLayoutException(String.format(
@@ -1226,6 +1275,13 @@ public class KijiTableLayout {
    * @throws InvalidLayoutException if the cell schema descriptor is invalid.
    */
   private static void validateAvroSchema(CellSchema avro) throws InvalidLayoutException {
+    if ((avro.getCounterStripes() < 1) || (avro.getCounterStripes() > MAX_COUNTER_STRIPES)) {
+      throw new InvalidLayoutException(
+          "Invalid number of counter stripes: " + avro.getCounterStripes());
+    }
+    if ((avro.getCounterStripes() > 1) && (avro.getType() != SchemaType.COUNTER)) {
+      throw new InvalidLayoutException("Only counters may be striped.");
+    }
     try {
       readAvroSchema(avro);
     } catch (SchemaClassNotFoundException scnfe) {
@@ -54,7 +54,7 @@ public final class TableLayoutSerializer {
    * @param conf The configuration object to store the layout into.
    * @throws IOException If there is an error.
    */
-  private static void serializeTableLayout(KijiTableLayout tableLayout, String confKey,
+  public static void serializeTableLayout(KijiTableLayout tableLayout, String confKey,
       Configuration conf) throws IOException {
     final ByteArrayOutputStream jsonOutputStream = new ByteArrayOutputStream();
     final JsonEncoder jsonEncoder = EncoderFactory.get().jsonEncoder(TableLayoutDesc.SCHEMA$,
@@ -21,8 +21,10 @@ package org.kiji.schema.layout.impl;
 
 import org.apache.hadoop.hbase.HColumnDescriptor;
 import org.apache.hadoop.hbase.HTableDescriptor;
+import org.apache.hadoop.hbase.io.encoding.DataBlockEncoding;
 
 import org.kiji.schema.KijiManagedHBaseTableName;
+import org.kiji.schema.avro.LocalityGroupDesc;
 import org.kiji.schema.layout.KijiTableLayout;
 import org.kiji.schema.layout.KijiTableLayout.LocalityGroupLayout;
 
@@ -70,13 +72,20 @@ public class HTableSchemaTranslator {
    * @return The HColumnDescriptor to use for storing the data in the locality group.
    */
   private static HColumnDescriptor toHColumnDescriptor(LocalityGroupLayout localityGroup) {
-    return new HColumnDescriptor(
+    final LocalityGroupDesc desc = localityGroup.getDesc();
+    final HColumnDescriptor columnDescriptor = new HColumnDescriptor(
         localityGroup.getId().toByteArray(),  // HBase family name
-        localityGroup.getDesc().getMaxVersions(),
-        localityGroup.getDesc().getCompressionType().toString(),
-        localityGroup.getDesc().getInMemory(),
-        true,  // block cache
-        localityGroup.getDesc().getTtlSeconds(),
-        HColumnDescriptor.DEFAULT_BLOOMFILTER);
+        desc.getMaxVersions(),
+        desc.getCompressionType().toString(),
+        desc.getInMemory(),
+        desc.getBlockCacheEnabled(),
+        desc.getTtlSeconds(),
+        desc.getBloomType().toString());
+    if (desc.getBlockSize() > 0) {
+      columnDescriptor.setBlocksize(desc.getBlockSize());
+    }
+    columnDescriptor.setDataBlockEncoding(
+        DataBlockEncoding.valueOf(desc.getBlockEncoding().toString()));
+    return columnDescriptor;
   }
 }
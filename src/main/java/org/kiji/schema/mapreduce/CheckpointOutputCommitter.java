@@ -0,0 +1,111 @@
+/**
+ * (c) Copyright 2012 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.kiji.schema.mapreduce;
+
+import java.io.IOException;
+
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.JobStatus;
+import org.apache.hadoop.mapreduce.OutputCommitter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+
+import org.kiji.schema.KijiMetaTable;
+
+/**
+ * An OutputCommitter that advances the input checkpoint of incremental jobs when they
+ * commit successfully.
+ *
+ * @see KijiTableInputFormat#setIncrementalOptions
+ */
+final class CheckpointOutputCommitter extends OutputCommitter {
+  private final OutputCommitter mDelegate;
+
+  /** The meta table to write the checkpoint to, or null to open the input Kiji instance. */
+  private final KijiMetaTable mMetaTable;
+
+  /**
+   * Wraps an OutputCommitter.
+   *
+   * @param delegate The wrapped OutputCommitter.
+   */
+  CheckpointOutputCommitter(OutputCommitter delegate) {
+    this(delegate, null);
+  }
+
+  /**
+   * Wraps an OutputCommitter, advancing checkpoints in the specified meta table.
+   *
+   * @param delegate The wrapped OutputCommitter.
+   * @param metaTable The meta table to write the checkpoint to, or null to open the input
+   *     Kiji instance of the job.
+   */
+  CheckpointOutputCommitter(OutputCommitter delegate, KijiMetaTable metaTable) {
+    mDelegate = delegate;
+    mMetaTable = metaTable;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void setupJob(JobContext context) throws IOException {
+    mDelegate.setupJob(context);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void commitJob(JobContext context) throws IOException {
+    mDelegate.commitJob(context);
+    if (null == mMetaTable) {
+      KijiTableInputFormat.commitCheckpoint(context.getConfiguration());
+    } else {
+      KijiTableInputFormat.commitCheckpoint(context.getConfiguration(), mMetaTable);
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void abortJob(JobContext context, JobStatus.State state) throws IOException {
+    mDelegate.abortJob(context, state);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void setupTask(TaskAttemptContext context) throws IOException {
+    mDelegate.setupTask(context);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean needsTaskCommit(TaskAttemptContext context) throws IOException {
+    return mDelegate.needsTaskCommit(context);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void commitTask(TaskAttemptContext context) throws IOException {
+    mDelegate.commitTask(context);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void abortTask(TaskAttemptContext context) throws IOException {
+    mDelegate.abortTask(context);
+  }
+}
@@ -0,0 +1,122 @@
+/**
+ * (c) Copyright 2012 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.kiji.schema.mapreduce;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.OutputCommitter;
+import org.apache.hadoop.mapreduce.OutputFormat;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.util.ReflectionUtils;
+
+/**
+ * Wraps the output format of an incremental job, so that the input checkpoint of the job is
+ * advanced when the job commits successfully, whatever the job writes to.
+ *
+ * <p>Configure the output format of the job first, then wrap it:</p>
+ * <code>
+ *   <pre>
+ *   KijiTableInputFormat.setIncrementalOptions(job, instance, table, request, checkpoint);
+ *   job.setOutputFormatClass(SequenceFileOutputFormat.class);
+ *   CheckpointOutputFormat.wrap(job);
+ *   </pre>
+ * </code>
+ *
+ * <p>{@link KijiTableOutputFormat} advances the checkpoint itself, and does not need to be
+ * wrapped.</p>
+ *
+ * @param <K> The type of the output keys.
+ * @param <V> The type of the output values.
+ */
+public class CheckpointOutputFormat<K, V> extends OutputFormat<K, V> {
+  /** Configuration variable for the wrapped output format class. */
+  public static final String DELEGATE_CONF_NAME = "kiji.checkpoint.output.format.class";
+
+  /** The wrapped output format, created on first use. */
+  private OutputFormat<K, V> mDelegate;
+
+  /**
+   * Wraps the output format of a job, so that the job advances its input checkpoint when it
+   * commits successfully.
+   *
+   * @param job The job to configure, with its output format already set.
+   * @throws IOException If the output format class of the job cannot be loaded.
+   */
+  public static void wrap(Job job) throws IOException {
+    final Class<? extends OutputFormat<?, ?>> outputFormat;
+    try {
+      outputFormat = job.getOutputFormatClass();
+    } catch (ClassNotFoundException cnfe) {
+      throw new IOException(cnfe);
+    }
+    if (CheckpointOutputFormat.class.isAssignableFrom(outputFormat)
+        || KijiTableOutputFormat.class.isAssignableFrom(outputFormat)) {
+      // The output format already advances the checkpoint.
+      return;
+    }
+    job.getConfiguration().setClass(DELEGATE_CONF_NAME, outputFormat, OutputFormat.class);
+    job.setOutputFormatClass(CheckpointOutputFormat.class);
+  }
+
+  /**
+   * Gets the wrapped output format.
+   *
+   * @param conf The job configuration.
+   * @return The wrapped output format.
+   */
+  @SuppressWarnings("unchecked")
+  private synchronized OutputFormat<K, V> getDelegate(Configuration conf) {
+    if (null == mDelegate) {
+      final Class<?> delegateClass = conf.getClass(DELEGATE_CONF_NAME, null, OutputFormat.class);
+      if (null == delegateClass) {
+        throw new IllegalStateException(
+            "Missing wrapped output format in job configuration: " + DELEGATE_CONF_NAME);
+      }
+      mDelegate = (OutputFormat<K, V>) ReflectionUtils.newInstance(delegateClass, conf);
+    }
+    return mDelegate;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public RecordWriter<K, V> getRecordWriter(TaskAttemptContext context)
+      throws IOException, InterruptedException {
+    return getDelegate(context.getConfiguration()).getRecordWriter(context);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void checkOutputSpecs(JobContext context) throws IOException, InterruptedException {
+    getDelegate(context.getConfiguration()).checkOutputSpecs(context);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public OutputCommitter getOutputCommitter(TaskAttemptContext context)
+      throws IOException, InterruptedException {
+    return new CheckpointOutputCommitter(
+        getDelegate(context.getConfiguration()).getOutputCommitter(context));
+  }
+}
@@ -55,9 +55,16 @@ import org.kiji.schema.mapreduce.KijiDelete.KijiDeleteScope;
  *   job.setOutputKeyClass(NullWritable.class);
  *   </pre>
  * </code>
+ *
+ * <p>Mappers whose increments should be summed by a combiner before reaching the table
+ * should instead create their writer with {@link #keyedByCell(TaskInputOutputContext)},
+ * and configure the job with
+ * {@link KijiIncrementReducer#configureJob(org.apache.hadoop.mapreduce.Job)}.</p>
  */
 public class ContextKijiTableWriter extends KijiTableWriter {
-  private final TaskInputOutputContext<?, ?, NullWritable, KijiOutput> mContext;
+  private final TaskInputOutputContext<?, ?, Object, Object> mContext;
+  /** Whether mutations are written as key with a NullWritable value, instead of as value. */
+  private final boolean mKeyedByCell;
 
   /**
    * Builds a new ContextKijiTableWriter.
@@ -65,7 +72,52 @@ public class ContextKijiTableWriter extends KijiTableWriter {
    * @param context The map-reduce context to write to.
    */
   public ContextKijiTableWriter(TaskInputOutputContext<?, ?, NullWritable, KijiOutput> context) {
-    mContext = context;
+    this(context, false);
+  }
+
+  /**
+   * Builds a new ContextKijiTableWriter.
+   *
+   * @param context The map-reduce context to write to.
+   * @param keyedByCell Whether mutations are written as key with a NullWritable value.
+   */
+  @SuppressWarnings("unchecked")
+  private ContextKijiTableWriter(TaskInputOutputContext<?, ?, ?, ?> context,
+      boolean keyedByCell) {
+    mContext = (TaskInputOutputContext<?, ?, Object, Object>) context;
+    mKeyedByCell = keyedByCell;
+  }
+
+  /**
+   * Builds a ContextKijiTableWriter that writes each mutation as key, with a NullWritable
+   * value, so that the mutations are grouped by cell during the shuffle without being
+   * serialized twice. This lets {@link KijiIncrementCombiner} sum the increments to each
+   * counter before they are sent to the reducers.
+   *
+   * @param context The map context to write to.
+   * @return A new ContextKijiTableWriter.
+   */
+  public static ContextKijiTableWriter keyedByCell(
+      TaskInputOutputContext<?, ?, KijiOutput, NullWritable> context) {
+    return new ContextKijiTableWriter(context, true);
+  }
+
+  /**
+   * Writes a mutation to the context.
+   *
+   * @param mutation The mutation to write.
+   * @throws IOException If there is an IO error.
+   * @throws InterruptedException If the thread is interrupted.
+   */
+  private void write(KijiMutation mutation) throws IOException, InterruptedException {
+    final KijiOutput output = new KijiOutput(mutation);
+    // Lets the mutation write its schemas as IDs in the schema table of the output instance.
+    output.setConf(mContext.getConfiguration());
+    if (mKeyedByCell) {
+      mContext.write(output, NullWritable.get());
+    } else {
+      mContext.write(NullWritable.get(), output);
+    }
   }
 
   /** {@inheritDoc} */
@@ -73,7 +125,7 @@ public class ContextKijiTableWriter extends KijiTableWriter {
   public void put(EntityId entityId, String family, String qualifier, long timestamp,
       KijiCell<?> cell) throws IOException, InterruptedException {
     final KijiPut put = new KijiPut(entityId, family, qualifier, timestamp, cell);
-    mContext.write(NullWritable.get(), new KijiOutput(put));
+    write(put);
   }
 
   /**
@@ -93,7 +145,7 @@ public class ContextKijiTableWriter extends KijiTableWriter {
       throws IOException {
     final KijiIncrement increment = new KijiIncrement(entityId, family, qualifier, amount);
     try {
-      mContext.write(NullWritable.get(), new KijiOutput(increment));
+      write(increment);
     } catch (InterruptedException ex) {
       throw new IOException(ex);
     }
@@ -118,7 +170,7 @@ public class ContextKijiTableWriter extends KijiTableWriter {
     final KijiDelete delete = new KijiDelete(entityId);
 
     try {
-      mContext.write(NullWritable.get(), new KijiOutput(delete));
+      write(delete);
     } catch (InterruptedException ex) {
       throw new IOException(ex);
     }
@@ -130,7 +182,7 @@ public class ContextKijiTableWriter extends KijiTableWriter {
     final KijiDelete delete = new KijiDelete(entityId, upToTimestamp);
 
     try {
-      mContext.write(NullWritable.get(), new KijiOutput(delete));
+      write(delete);
     } catch (InterruptedException ex) {
       throw new IOException(ex);
     }
@@ -144,7 +196,7 @@ public class ContextKijiTableWriter extends KijiTableWriter {
         KijiDeleteScope.MULTIPLE_VERSIONS);
 
     try {
-      mContext.write(NullWritable.get(), new KijiOutput(delete));
+      write(delete);
     } catch (InterruptedException ex) {
       throw new IOException(ex);
     }
@@ -158,7 +210,7 @@ public class ContextKijiTableWriter extends KijiTableWriter {
         KijiDeleteScope.MULTIPLE_VERSIONS);
 
     try {
-      mContext.write(NullWritable.get(), new KijiOutput(delete));
+      write(delete);
     } catch (InterruptedException ex) {
       throw new IOException(ex);
     }
@@ -172,7 +224,7 @@ public class ContextKijiTableWriter extends KijiTableWriter {
         KijiDeleteScope.SINGLE_VERSION);
 
     try {
-      mContext.write(NullWritable.get(), new KijiOutput(delete));
+      write(delete);
     } catch (InterruptedException ex) {
       throw new IOException(ex);
     }
@@ -27,6 +27,7 @@ import com.google.common.base.Objects;
 import org.apache.commons.lang.builder.EqualsBuilder;
 import org.apache.commons.lang.builder.HashCodeBuilder;
 import org.apache.hadoop.hbase.client.Delete;
+import org.apache.hadoop.io.WritableUtils;
 
 import org.kiji.schema.EntityId;
 import org.kiji.schema.HBaseColumnName;
@@ -312,81 +313,50 @@ public class KijiDelete implements KijiMutation {
     return del;
   }
 
-  /**
-   * During serialization, if an attribute is null, write the String NULL to DataOutput,
-   * else write the actual value.
-   *
-   * @param toWrite Object to write to DataOutput.
-   * @param out Interface to output stream.
-   * @throws IOException if an I/O error occurs.
-   */
-  private void writeOptionalValue(Object toWrite, DataOutput out) throws IOException {
-    if (null == toWrite) {
-      out.writeUTF("NULL");
-      return;
-    }
-    if (toWrite instanceof KijiDeleteOperation) {
-      out.writeUTF(((KijiDeleteOperation) toWrite).name());
-      return;
-    }
-    if (toWrite instanceof Long) {
-      out.writeUTF(((Long) toWrite).toString());
-      return;
-    }
-    out.writeUTF((String) toWrite);
-  }
-
-  /**
-   * During deserialization, read attributes that may have been NULL while serializing.
-   *
-   * @param in Interface to input stream.
-   * @param type The class to read.
-   * @return An object of "type" or null.
-   * @throws IOException if an I/O error occurs.
-   */
-  private Object readOptionalValue(DataInput in, Class<?> type) throws IOException {
-    String input = in.readUTF();
-    if (input.equals("NULL")) {
-      return null;
-    }
-    if (KijiDeleteOperation.class == type) {
-      return KijiDeleteOperation.valueOf(input);
-    }
-    if (Long.class == type) {
-      return new Long(input);
-    }
-    return input;
-  }
-
   /** {@inheritDoc} */
   @Override
   public void write(DataOutput out) throws IOException {
-    // EntityId.
-    final byte[] bytes = mEntityId.getHBaseRowKey();
-    out.writeInt(bytes.length);
-    out.write(bytes);
+    // EntityId/Family/Qualifier, the sort key of the mutation.
+    MutationWritables.writeBytes(out, mEntityId.getHBaseRowKey());
+    MutationWritables.writeString(out, mFamily);
+    MutationWritables.writeString(out, mQualifier);
+
+    // Timestamp.
+    out.writeBoolean(null != mTimestamp);
+    if (null != mTimestamp) {
+      WritableUtils.writeVLong(out, mTimestamp);
+    }
 
-    // Family/Qualifier/Timestamp.
-    writeOptionalValue(mFamily, out);
-    writeOptionalValue(mQualifier, out);
-    writeOptionalValue(mTimestamp, out);
-    writeOptionalValue(mOperation, out);
+    // Operation, as its ordinal plus one (zero for null).
+    if (null == mOperation) {
+      out.writeByte(0);
+    } else {
+      out.writeByte(mOperation.ordinal() + 1);
+    }
   }
 
   /** {@inheritDoc} */
   @Override
   public void readFields(DataInput in) throws IOException {
-    // EntityId.
-    final byte[] bytes = new byte[in.readInt()];
-    in.readFully(bytes);
-    mEntityId = new HBaseEntityId(bytes);
+    // EntityId/Family/Qualifier.
+    mEntityId = new HBaseEntityId(MutationWritables.readBytes(in));
+    mFamily = MutationWritables.readString(in);
+    mQualifier = MutationWritables.readString(in);
 
-    // Family/Qualifier/Timestamp.
-    mFamily = (String)readOptionalValue(in, String.class);
+    // Timestamp.
+    if (in.readBoolean()) {
+      mTimestamp = WritableUtils.readVLong(in);
+    } else {
+      mTimestamp = null;
+    }
 
-    mQualifier = (String) readOptionalValue(in, String.class);
-    mTimestamp = (Long) readOptionalValue(in, Long.class);
-    mOperation = (KijiDeleteOperation)readOptionalValue(in, KijiDeleteOperation.class);
+    // Operation.
+    final int operation = in.readByte();
+    if (0 == operation) {
+      mOperation = null;
+    } else {
+      mOperation = KijiDeleteOperation.values()[operation - 1];
+    }
   }
 
   /** {@inheritDoc} */
@@ -0,0 +1,293 @@
+/**
+ * (c) Copyright 2012 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.schema.mapreduce;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.HTable;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.mapreduce.HFileOutputFormat;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.kiji.schema.Kiji;
+import org.kiji.schema.KijiCellEncoder;
+import org.kiji.schema.KijiConfiguration;
+import org.kiji.schema.KijiManagedHBaseTableName;
+import org.kiji.schema.KijiSchemaTable;
+import org.kiji.schema.impl.HBaseColumnIndex;
+import org.kiji.schema.impl.HBaseKijiTable;
+import org.kiji.schema.layout.ColumnNameTranslator;
+import org.kiji.schema.layout.KijiTableLayout;
+
+/**
+ * Writes {@link KijiPut}s into HFiles that can be bulk-loaded into a Kiji table, instead of
+ * sending them to the region servers. Use the
+ * {@link KijiHFileOutputFormat#configureJob(Job, String, String, Path)} method to configure
+ * this output format for use in a mapreduce job, and the <code>kiji bulk-load</code> tool
+ * to load the HFiles into the table once the job has completed.
+ *
+ * <p>Cells are encoded exactly as {@link KijiTableOutputFormat} would encode them, and written
+ * to one HFile per locality group. HFiles must be written in row order: the job is configured
+ * with a total-order partitioner over the current region boundaries of the table, so that each
+ * reducer receives the rows of one region in order. For this to work, the map output keys
+ * must be the HBase row keys of the entities, as in:</p>
+ * <code>
+ *   <pre>
+ *   context.write(new ImmutableBytesWritable(entityId.getHBaseRowKey()),
+ *       new KijiOutput(new KijiPut(entityId, family, qualifier, timestamp, cell)));
+ *   </pre>
+ * </code>
+ *
+ * <p>The record writer fails if it receives a row after a row that sorts after it: the map
+ * output value class must be {@link KijiOutput}, and the job must keep the identity reducer
+ * that {@link #configureJob(Job, String, String, Path)} sets up.</p>
+ *
+ * <p>Only puts are supported: increments and deletes cannot be bulk-loaded.</p>
+ *
+ * <p>The secondary index of the table is not maintained: the bulk-load tool refuses tables
+ * with indexed columns unless told otherwise, and their index must be rebuilt with the
+ * <code>kiji rebuild-index</code> tool once the HFiles are loaded.</p>
+ *
+ * @param <K> The key is ignored in this OutputFormat.
+ */
+public class KijiHFileOutputFormat<K> extends FileOutputFormat<K, KijiOutput> {
+  private static final Logger LOG = LoggerFactory.getLogger(KijiHFileOutputFormat.class);
+
+  /** Configuration variable for the output kiji instance. */
+  public static final String INSTANCE_CONF_NAME = KijiTableOutputFormat.INSTANCE_CONF_NAME;
+
+  /** Configuration variable for the output kiji table. */
+  public static final String TABLE_CONF_NAME = KijiTableOutputFormat.TABLE_CONF_NAME;
+
+  /**
+   * A {@link org.apache.hadoop.mapreduce.RecordWriter} for writing KijiPuts to HFiles.
+   */
+  protected static class KijiHFileRecordWriter<K> extends RecordWriter<K, KijiOutput> {
+    private final HFileOutputFormat mHFileOutputFormat = new HFileOutputFormat();
+    private final TaskAttemptContext mContext;
+    private final ColumnNameTranslator mTranslator;
+    private final KijiCellEncoder mEncoder;
+    private final Kiji mKiji;
+    private final HBaseKijiTable mTable;
+
+    /** The cells of the current row, sorted as HFiles require. */
+    private final NavigableSet<KeyValue> mRowKeyValues =
+        new TreeSet<KeyValue>(KeyValue.COMPARATOR);
+    /** The HBase row key of the current row, or null if no cell is buffered. */
+    private byte[] mCurrentRow = null;
+    /** The HBase row key of the last row written to the HFiles, or null. */
+    private byte[] mLastWrittenRow = null;
+    /** Writes the current set of HFiles, one per locality group, or null. */
+    private RecordWriter<ImmutableBytesWritable, KeyValue> mHFileWriter = null;
+
+    /**
+     * Creates a new RecordWriter for this output format.
+     *
+     * @param context The task context.
+     * @throws IOException If there is an error opening a connection to Kiji.
+     */
+    public KijiHFileRecordWriter(TaskAttemptContext context) throws IOException {
+      final Configuration conf = context.getConfiguration();
+      final String instance = checkNotNull(conf.get(INSTANCE_CONF_NAME),
+          "Missing output Kiji instance in job configuration.");
+      final String table = checkNotNull(conf.get(TABLE_CONF_NAME),
+          "Missing output Kiji table in job configuration.");
+      mContext = context;
+      mKiji = Kiji.open(new KijiConfiguration(conf, instance));
+      mTable = HBaseKijiTable.downcast(mKiji.openTable(table));
+      mTranslator = new ColumnNameTranslator(mTable.getLayout());
+      mEncoder = new KijiCellEncoder(mKiji.getSchemaTable());
+      if (HBaseColumnIndex.hasIndexedColumns(mTable.getLayout())) {
+        LOG.warn("HFiles do not update the index of table " + table + ": rebuild it with "
+            + "'kiji rebuild-index' once they are loaded.");
+      }
+    }
+
+    /**
+     * Creates a new RecordWriter for a table layout, without opening a connection to Kiji.
+     *
+     * @param context The task context.
+     * @param layout The layout of the table the HFiles are written for.
+     * @param schemaTable The schema table to encode the cells with.
+     */
+    KijiHFileRecordWriter(
+        TaskAttemptContext context, KijiTableLayout layout, KijiSchemaTable schemaTable) {
+      mContext = context;
+      mKiji = null;
+      mTable = null;
+      mTranslator = new ColumnNameTranslator(layout);
+      mEncoder = new KijiCellEncoder(schemaTable);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void write(K key, KijiOutput value) throws IOException, InterruptedException {
+      final KijiMutation op = value.getOperation();
+      if (!(op instanceof KijiPut)) {
+        throw new IOException("HFiles can only contain puts, found: " + op);
+      }
+      final Put put = ((KijiPut) op).toPut(mTranslator, mEncoder);
+      if ((null != mCurrentRow) && !Bytes.equals(mCurrentRow, put.getRow())) {
+        writeCurrentRow();
+      }
+      mCurrentRow = put.getRow();
+      for (List<KeyValue> keyValues : put.getFamilyMap().values()) {
+        mRowKeyValues.addAll(keyValues);
+      }
+    }
+
+    /**
+     * Writes the cells of the current row to the HFiles.
+     *
+     * @throws IOException If there is an error writing the HFiles, or if the current row does
+     *     not sort after the last row written.
+     * @throws InterruptedException If the thread is interrupted.
+     */
+    private void writeCurrentRow() throws IOException, InterruptedException {
+      if ((null != mLastWrittenRow) && (Bytes.compareTo(mCurrentRow, mLastWrittenRow) <= 0)) {
+        throw new IOException(String.format(
+            "Row %s received after row %s: HFiles must be written in row order.",
+            Bytes.toStringBinary(mCurrentRow), Bytes.toStringBinary(mLastWrittenRow)));
+      }
+      if (null == mHFileWriter) {
+        mHFileWriter = mHFileOutputFormat.getRecordWriter(mContext);
+      }
+      final ImmutableBytesWritable row = new ImmutableBytesWritable(mCurrentRow);
+      for (KeyValue keyValue : mRowKeyValues) {
+        mHFileWriter.write(row, keyValue);
+      }
+      mRowKeyValues.clear();
+      mLastWrittenRow = mCurrentRow;
+      mCurrentRow = null;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void close(TaskAttemptContext context) throws IOException, InterruptedException {
+      try {
+        if (null != mCurrentRow) {
+          writeCurrentRow();
+        }
+        if (null != mHFileWriter) {
+          mHFileWriter.close(context);
+        }
+      } finally {
+        IOUtils.closeQuietly(mTable);
+        IOUtils.closeQuietly(mKiji);
+      }
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public RecordWriter<K, KijiOutput> getRecordWriter(TaskAttemptContext context)
+      throws IOException, InterruptedException {
+    return new KijiHFileRecordWriter<K>(context);
+  }
+
+  /**
+   * Configures a job to write HFiles for the specified Kiji table.
+   *
+   * <p>This sets up a total-order partitioner over the current region boundaries of the table,
+   * with one reducer per region, and the compression of each locality group. The map output
+   * keys must be the HBase row keys of the entities, as {@link ImmutableBytesWritable}s, and
+   * the map output values must be {@link KijiOutput}s.</p>
+   *
+   * @param job The job to configure.
+   * @param instance Name of the Kiji instance to write to.
+   * @param table Name of the Kiji table to write to.
+   * @param outputPath The directory to write the HFiles to.
+   * @throws IOException If there is an error reading the region boundaries of the table.
+   * @throws IllegalArgumentException If the job has other map output key or value classes.
+   */
+  public static void configureJob(Job job, String instance, String table, Path outputPath)
+      throws IOException {
+    configureMapOutput(job);
+    final Configuration conf = job.getConfiguration();
+    final String htableName = KijiManagedHBaseTableName
+        .getKijiTableName(instance, table)
+        .toString();
+    final HTable htable = new HTable(conf, htableName);
+    try {
+      // Sets up the partitioner, reducer count and locality group compression from the table.
+      HFileOutputFormat.configureIncrementalLoad(job, htable);
+    } finally {
+      htable.close();
+    }
+
+    job.setOutputKeyClass(ImmutableBytesWritable.class);
+    job.setOutputValueClass(KijiOutput.class);
+    job.setOutputFormatClass(KijiHFileOutputFormat.class);
+    FileOutputFormat.setOutputPath(job, outputPath);
+    conf.set(INSTANCE_CONF_NAME, instance);
+    conf.set(TABLE_CONF_NAME, table);
+  }
+
+  /**
+   * Sets the map output classes of a job to the row keys and KijiOutputs this output format
+   * expects, failing if the job was configured with other classes.
+   *
+   * <p>HFileOutputFormat only logs a warning for map output values it does not know, and then
+   * leaves the job with the identity reducer, which is what KijiOutputs need.</p>
+   *
+   * @param job The job to configure.
+   * @throws IllegalArgumentException If the job has other map output key or value classes.
+   */
+  static void configureMapOutput(Job job) {
+    final Configuration conf = job.getConfiguration();
+    checkMapOutputClass(conf, "mapred.mapoutput.key.class", ImmutableBytesWritable.class);
+    checkMapOutputClass(conf, "mapred.mapoutput.value.class", KijiOutput.class);
+    job.setMapOutputKeyClass(ImmutableBytesWritable.class);
+    job.setMapOutputValueClass(KijiOutput.class);
+  }
+
+  /**
+   * Checks that a map output class is either not configured, or the expected one.
+   *
+   * @param conf The job configuration.
+   * @param confName The configuration variable of the map output class.
+   * @param expected The expected class.
+   * @throws IllegalArgumentException If the configured class is not the expected one.
+   */
+  private static void checkMapOutputClass(Configuration conf, String confName, Class<?> expected) {
+    final String actual = conf.get(confName);
+    if ((null != actual) && !expected.getName().equals(actual)) {
+      throw new IllegalArgumentException(String.format(
+          "HFile jobs require %s as map output class, but %s is %s.",
+          expected.getName(), confName, actual));
+    }
+  }
+}
@@ -27,6 +27,7 @@ import com.google.common.base.Objects;
 import org.apache.commons.lang.builder.EqualsBuilder;
 import org.apache.commons.lang.builder.HashCodeBuilder;
 import org.apache.hadoop.hbase.client.Increment;
+import org.apache.hadoop.io.WritableUtils;
 
 import org.kiji.schema.EntityId;
 import org.kiji.schema.HBaseColumnName;
@@ -64,6 +65,26 @@ public class KijiIncrement implements KijiMutation {
     mAmount = amount;
   }
 
+  /** @return The entityId of the counter being incremented. */
+  public EntityId getEntityId() {
+    return mEntityId;
+  }
+
+  /** @return The family of the counter being incremented. */
+  public String getFamily() {
+    return mFamily;
+  }
+
+  /** @return The qualifier of the counter being incremented. */
+  public String getQualifier() {
+    return mQualifier;
+  }
+
+  /** @return The amount to increment the counter by. */
+  public long getAmount() {
+    return mAmount;
+  }
+
   /**
    * Converts this KijiIncrement into an HBase {@link Increment}.
    *
@@ -90,28 +111,25 @@ public class KijiIncrement implements KijiMutation {
   /** {@inheritDoc} */
   @Override
   public void write(DataOutput out) throws IOException {
-    final byte[] bytes = mEntityId.getHBaseRowKey();
-    out.writeInt(bytes.length);
-    out.write(bytes);
-
-    // Family/Qualifier/Amount.
-    out.writeUTF(mFamily);
-    out.writeUTF(mQualifier);
-    out.writeLong(mAmount);
+    // EntityId/Family/Qualifier, the sort key of the mutation.
+    MutationWritables.writeBytes(out, mEntityId.getHBaseRowKey());
+    MutationWritables.writeString(out, mFamily);
+    MutationWritables.writeString(out, mQualifier);
+
+    // Amount.
+    WritableUtils.writeVLong(out, mAmount);
   }
 
   /** {@inheritDoc} */
   @Override
   public void readFields(DataInput in) throws IOException {
-    // EntityId.
-    final byte[] bytes = new byte[in.readInt()];
-    in.readFully(bytes);
-    mEntityId = new RawEntityId(bytes);
-
-    // Family/Qualifier/Timestamp.
-    mFamily = in.readUTF();
-    mQualifier = in.readUTF();
-    mAmount = in.readLong();
+    // EntityId/Family/Qualifier.
+    mEntityId = new RawEntityId(MutationWritables.readBytes(in));
+    mFamily = MutationWritables.readString(in);
+    mQualifier = MutationWritables.readString(in);
+
+    // Amount.
+    mAmount = WritableUtils.readVLong(in);
   }
 
   /** {@inheritDoc} */
@@ -0,0 +1,75 @@
+/**
+ * (c) Copyright 2012 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.schema.mapreduce;
+
+import java.io.IOException;
+
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.mapreduce.Reducer;
+
+/**
+ * A combiner that sums the {@link KijiIncrement}s to each counter cell, and passes any other
+ * mutation through unchanged.
+ *
+ * <p>This combiner expects the map output keys to be the mutations themselves, as written by a
+ * {@link ContextKijiTableWriter} built with
+ * {@link ContextKijiTableWriter#keyedByCell(org.apache.hadoop.mapreduce.TaskInputOutputContext)}.
+ * KijiOutput keys are grouped by row, family, qualifier and mutation type, so each group
+ * holds either the increments to a single counter, or mutations that are not increments.
+ * The values are NullWritables: as for any grouped key, the framework updates the key to the
+ * mutation of each value while the values are iterated.
+ * See {@link KijiIncrementReducer#configureJob(org.apache.hadoop.mapreduce.Job)}.</p>
+ */
+public class KijiIncrementCombiner
+    extends Reducer<KijiOutput, NullWritable, KijiOutput, NullWritable> {
+  /** {@inheritDoc} */
+  @Override
+  protected void reduce(KijiOutput key, Iterable<NullWritable> values, Context context)
+      throws IOException, InterruptedException {
+    if (key.getOperation() instanceof KijiIncrement) {
+      context.write(new KijiOutput(sumIncrements(key, values)), NullWritable.get());
+    } else {
+      for (NullWritable value : values) {
+        context.write(key, value);
+      }
+    }
+  }
+
+  /**
+   * Sums increments to a single counter cell.
+   *
+   * @param key The grouped key, updated to the increment of each value while they are iterated.
+   * @param values The values grouped under the key.
+   * @return A single increment of the counter by the sum of the amounts.
+   */
+  static KijiIncrement sumIncrements(KijiOutput key, Iterable<NullWritable> values) {
+    KijiIncrement first = null;
+    long amount = 0;
+    for (NullWritable value : values) {
+      final KijiIncrement increment = (KijiIncrement) key.getOperation();
+      if (null == first) {
+        first = increment;
+      }
+      amount += increment.getAmount();
+    }
+    return new KijiIncrement(
+        first.getEntityId(), first.getFamily(), first.getQualifier(), amount);
+  }
+}
@@ -0,0 +1,77 @@
+/**
+ * (c) Copyright 2012 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.schema.mapreduce;
+
+import java.io.IOException;
+
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Reducer;
+
+/**
+ * A reducer that sums the {@link KijiIncrement}s to each counter cell, and writes the result
+ * along with every other mutation to a {@link KijiTableOutputFormat}. Each distinct counter cell
+ * is thus incremented once per job, instead of once per emitted increment.
+ *
+ * To setup a job to aggregate its increments:
+ * <code>
+ *   <pre>
+ *   KijiTableOutputFormat.setOptions(job, instance, table);
+ *   KijiIncrementReducer.configureJob(job);
+ *
+ *   // In the mapper:
+ *   final ContextKijiTableWriter writer = ContextKijiTableWriter.keyedByCell(context);
+ *   writer.increment(entityId, family, qualifier, 1L);
+ *   </pre>
+ * </code>
+ */
+public class KijiIncrementReducer
+    extends Reducer<KijiOutput, NullWritable, NullWritable, KijiOutput> {
+  /** {@inheritDoc} */
+  @Override
+  protected void reduce(KijiOutput key, Iterable<NullWritable> values, Context context)
+      throws IOException, InterruptedException {
+    if (key.getOperation() instanceof KijiIncrement) {
+      context.write(NullWritable.get(),
+          new KijiOutput(KijiIncrementCombiner.sumIncrements(key, values)));
+    } else {
+      // The key is updated to the mutation of each value while the values are iterated.
+      for (NullWritable value : values) {
+        context.write(value, key);
+      }
+    }
+  }
+
+  /**
+   * Configures a job to key its map outputs by cell, and to sum the increments to each counter
+   * cell with a {@link KijiIncrementCombiner} and a {@link KijiIncrementReducer}.
+   *
+   * @param job The job to configure.
+   */
+  public static void configureJob(Job job) {
+    job.setMapOutputKeyClass(KijiOutput.class);
+    job.setMapOutputValueClass(NullWritable.class);
+    job.setCombinerClass(KijiIncrementCombiner.class);
+    job.setReducerClass(KijiIncrementReducer.class);
+    job.setOutputKeyClass(NullWritable.class);
+    job.setOutputValueClass(KijiOutput.class);
+    job.setOutputFormatClass(KijiTableOutputFormat.class);
+  }
+}
@@ -0,0 +1,80 @@
+/**
+ * (c) Copyright 2012 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.schema.mapreduce;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+import org.kiji.schema.EntityId;
+import org.kiji.schema.KijiRowData;
+
+/**
+ * The rows of several Kiji tables that share the same entity ID, as read by a
+ * {@link KijiMultiTableInputFormat}. Tables with no data for the entity are absent.
+ */
+public final class KijiJoinedRowData {
+  /** The entity ID shared by the rows. */
+  private final EntityId mEntityId;
+
+  /** Map from table name to the row data of the entity in the table. */
+  private final Map<String, KijiRowData> mRows;
+
+  /**
+   * Creates a joined row.
+   *
+   * @param entityId The entity ID shared by the rows.
+   * @param rows Map from table name to the row data of the entity in the table.
+   */
+  KijiJoinedRowData(EntityId entityId, Map<String, KijiRowData> rows) {
+    mEntityId = entityId;
+    mRows = Collections.unmodifiableMap(rows);
+  }
+
+  /** @return The entity ID shared by the rows. */
+  public EntityId getEntityId() {
+    return mEntityId;
+  }
+
+  /** @return The names of the tables with data for the entity. */
+  public Set<String> getTableNames() {
+    return mRows.keySet();
+  }
+
+  /**
+   * Reports whether a table has data for the entity.
+   *
+   * @param table Name of the table.
+   * @return whether the table has data for the entity.
+   */
+  public boolean containsTable(String table) {
+    return mRows.containsKey(table);
+  }
+
+  /**
+   * Gets the row data of the entity in a table.
+   *
+   * @param table Name of the table.
+   * @return The row data of the entity in the table, or null if the table has no data for it.
+   */
+  public KijiRowData getRowData(String table) {
+    return mRows.get(table);
+  }
+}
@@ -0,0 +1,406 @@
+/**
+ * (c) Copyright 2012 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.schema.mapreduce;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeSet;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.SerializationUtils;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.HRegionInfo;
+import org.apache.hadoop.hbase.ServerName;
+import org.apache.hadoop.hbase.client.HTable;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.mapreduce.GenericTableMapReduceUtil;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.mapreduce.InputFormat;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+
+import org.kiji.schema.EntityId;
+import org.kiji.schema.Kiji;
+import org.kiji.schema.KijiCellDecoderFactory;
+import org.kiji.schema.KijiConfiguration;
+import org.kiji.schema.KijiDataRequest;
+import org.kiji.schema.KijiManagedHBaseTableName;
+import org.kiji.schema.KijiRowData;
+import org.kiji.schema.KijiTable;
+import org.kiji.schema.SpecificCellDecoderFactory;
+import org.kiji.schema.avro.RowKeyFormat;
+import org.kiji.schema.impl.DefaultHTableInterfaceFactory;
+import org.kiji.schema.impl.HBaseCounterStripes;
+import org.kiji.schema.impl.HBaseDataRequestAdapter;
+import org.kiji.schema.impl.HBaseKijiRowData;
+import org.kiji.schema.impl.HBaseKijiTable;
+import org.kiji.schema.impl.HBaseTableRecordReader;
+import org.kiji.schema.layout.KijiTableLayout;
+import org.kiji.schema.layout.TableLayoutSerializer;
+
+/**
+ * An InputFormat for MapReduce jobs that co-scan several Kiji tables sharing the same row key
+ * format, for instance to join a table of users with a table of user events without a
+ * shuffle. Each input split covers the same range of row keys in every table, and the mapper
+ * receives, for each entity ID, the rows of all the tables that have data for it.
+ *
+ * <p>Splits are bounded by the region boundaries of all the tables. Tables created with the
+ * same number of regions, whose split keys come from {@link org.kiji.schema.KijiRowKeySplitter},
+ * have identical boundaries: each split then covers exactly one region of every table.
+ * Splits are scheduled on the host of the region of the first table.</p>
+ *
+ * To setup a job to use KijiMultiTableInputFormat:
+ * <code>
+ *   <pre>
+ *   final Map&lt;String, KijiDataRequest&gt; requests = Maps.newLinkedHashMap();
+ *   requests.put("users", usersRequest);
+ *   requests.put("user_events", eventsRequest);
+ *   KijiMultiTableInputFormat.setOptions(job, instance, requests);
+ *   job.setInputFormatClass(KijiMultiTableInputFormat.class);
+ *   </pre>
+ * </code>
+ */
+public class KijiMultiTableInputFormat extends InputFormat<EntityId, KijiJoinedRowData> {
+  /** Configuration variable for the names of the input Kiji tables. */
+  public static final String TABLES_CONF_NAME = "kiji.input.multi.tables";
+
+  /** Prefix of the configuration variables for the data request of each table. */
+  public static final String REQUEST_CONF_PREFIX = "kiji.input.multi.request.";
+
+  /** Prefix of the configuration variables for the layout of each table. */
+  public static final String LAYOUT_CONF_PREFIX = "kiji.input.multi.layout.";
+
+  /** {@inheritDoc} */
+  @Override
+  public RecordReader<EntityId, KijiJoinedRowData> createRecordReader(
+      InputSplit split, TaskAttemptContext context) throws IOException {
+    return new KijiMultiTableRecordReader(context.getConfiguration());
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public List<InputSplit> getSplits(JobContext context) throws IOException {
+    final Configuration conf = context.getConfiguration();
+    final String instance = conf.get(KijiTableInputFormat.INSTANCE_CONF_NAME);
+
+    final List<NavigableMap<HRegionInfo, ServerName>> regions = Lists.newArrayList();
+    for (String table : conf.getStrings(TABLES_CONF_NAME)) {
+      final String hbaseTableName = KijiManagedHBaseTableName
+          .getKijiTableName(instance, table)
+          .toString();
+      final HTable htable = new HTable(conf, hbaseTableName);
+      try {
+        regions.add(htable.getRegionLocations());
+      } finally {
+        IOUtils.closeQuietly(htable);
+      }
+    }
+    return computeSplits(regions);
+  }
+
+  /**
+   * Computes splits bounded by the region boundaries of several tables.
+   *
+   * @param regions The regions of each table, and their locations.
+   * @return The splits covering the tables, ordered by start row.
+   */
+  static List<InputSplit> computeSplits(List<NavigableMap<HRegionInfo, ServerName>> regions) {
+    final TreeSet<byte[]> boundaries = new TreeSet<byte[]>(Bytes.BYTES_COMPARATOR);
+    for (NavigableMap<HRegionInfo, ServerName> tableRegions : regions) {
+      for (HRegionInfo region : tableRegions.keySet()) {
+        if (region.getStartKey().length > 0) {
+          boundaries.add(region.getStartKey());
+        }
+      }
+    }
+
+    final NavigableMap<HRegionInfo, ServerName> firstTableRegions = regions.get(0);
+    final List<InputSplit> splits = Lists.newArrayList();
+    byte[] startRow = HConstants.EMPTY_START_ROW;
+    for (byte[] boundary : boundaries) {
+      splits.add(new KijiMultiTableSplit(
+          startRow, boundary, getLocation(firstTableRegions, startRow)));
+      startRow = boundary;
+    }
+    splits.add(new KijiMultiTableSplit(
+        startRow, HConstants.EMPTY_END_ROW, getLocation(firstTableRegions, startRow)));
+    return splits;
+  }
+
+  /**
+   * Gets the host of the region that contains a row.
+   *
+   * @param regions The regions of a table, and their locations.
+   * @param row The row key.
+   * @return The host of the region that contains the row, or an empty string if unknown.
+   */
+  private static String getLocation(NavigableMap<HRegionInfo, ServerName> regions, byte[] row) {
+    for (Map.Entry<HRegionInfo, ServerName> entry : regions.entrySet()) {
+      if (entry.getKey().containsRow(row) && (null != entry.getValue())) {
+        return entry.getValue().getHostname();
+      }
+    }
+    return "";
+  }
+
+  /**
+   * Serializes the specified tables and data requests into the specified job's configuration.
+   *
+   * @param job Job to configure.
+   * @param instance Name of the Kiji instance to read from.
+   * @param requests Map from the name of each Kiji table to read from to its data request.
+   *     The first table is the one whose region locations are used to schedule the splits.
+   * @throws IOException if an error occurs while reading the table layouts.
+   */
+  public static void setOptions(Job job, String instance, Map<String, KijiDataRequest> requests)
+      throws IOException {
+    checkArgument(!requests.isEmpty(), "No input Kiji table specified.");
+    final Configuration conf = job.getConfiguration();
+
+    final Kiji kiji = Kiji.open(new KijiConfiguration(conf, instance));
+    try {
+      RowKeyFormat keysFormat = null;
+      for (Map.Entry<String, KijiDataRequest> entry : requests.entrySet()) {
+        final String tableName = entry.getKey();
+        final KijiDataRequest request = entry.getValue();
+        checkArgument(!request.isEmpty(), "Empty data request for table '%s'.", tableName);
+
+        final KijiTable table = kiji.openTable(tableName);
+        final KijiTableLayout layout;
+        try {
+          layout = HBaseKijiTable.downcast(table).getLayout();
+        } finally {
+          IOUtils.closeQuietly(table);
+        }
+
+        // Co-scanning relies on the entities being ordered the same way in all the tables.
+        final RowKeyFormat tableKeysFormat = layout.getDesc().getKeysFormat();
+        if (null == keysFormat) {
+          keysFormat = tableKeysFormat;
+        } else if (!keysFormat.equals(tableKeysFormat)) {
+          throw new IllegalArgumentException(String.format(
+              "Table '%s' has row key format %s, but the other tables have row key format %s.",
+              tableName, tableKeysFormat, keysFormat));
+        }
+
+        TableLayoutSerializer.serializeTableLayout(layout, LAYOUT_CONF_PREFIX + tableName, conf);
+        conf.set(REQUEST_CONF_PREFIX + tableName,
+            Base64.encodeBase64String(SerializationUtils.serialize(request)));
+      }
+    } finally {
+      IOUtils.closeQuietly(kiji);
+    }
+
+    conf.set(KijiTableInputFormat.INSTANCE_CONF_NAME, instance);
+    conf.setStrings(TABLES_CONF_NAME, requests.keySet().toArray(new String[requests.size()]));
+    GenericTableMapReduceUtil.addAllDependencyJars(job);
+  }
+
+  /**
+   * Record reader that merges scans over the same range of row keys in several tables.
+   */
+  public static class KijiMultiTableRecordReader
+      extends RecordReader<EntityId, KijiJoinedRowData> {
+    /** Hadoop Configuration object containing settings. */
+    private final Configuration mConf;
+
+    /** Names of the tables to read from. */
+    private final String[] mTables;
+
+    /** Data requests of the tables. */
+    private final KijiDataRequest[] mRequests;
+
+    /** Layouts of the tables. */
+    private final KijiTableLayout[] mLayouts;
+
+    private Kiji mKiji;
+    private KijiCellDecoderFactory mCellDecoderFactory;
+    private HBaseKijiTable[] mKijiTables;
+    /** Scanners over the split in each table. */
+    private HBaseTableRecordReader[] mReaders;
+    /** Next row of each table, or null once the scanner over the table is exhausted. */
+    private Result[] mNextRows;
+    private KijiJoinedRowData mCurrentRow;
+
+    /**
+     * Creates a new RecordReader for this input format.
+     *
+     * @param conf The configuration object of the job.
+     * @throws IOException if the layouts of the tables cannot be read.
+     */
+    public KijiMultiTableRecordReader(Configuration conf) throws IOException {
+      mConf = conf;
+      mTables = checkNotNull(conf.getStrings(TABLES_CONF_NAME),
+          "Missing input Kiji tables in job configuration.");
+      mRequests = new KijiDataRequest[mTables.length];
+      mLayouts = new KijiTableLayout[mTables.length];
+      for (int i = 0; i < mTables.length; i++) {
+        final String serializedRequest = checkNotNull(
+            conf.get(REQUEST_CONF_PREFIX + mTables[i]),
+            "Missing data request for table '%s' in job configuration.", mTables[i]);
+        mRequests[i] = (KijiDataRequest) SerializationUtils.deserialize(
+            Base64.decodeBase64(serializedRequest.getBytes(Charset.forName("UTF-8"))));
+        mLayouts[i] = TableLayoutSerializer.readTableLayout(LAYOUT_CONF_PREFIX + mTables[i], conf);
+      }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void initialize(InputSplit split, TaskAttemptContext context)
+        throws InterruptedException, IOException {
+      final KijiMultiTableSplit multiSplit = (KijiMultiTableSplit) split;
+      final String instance = checkNotNull(mConf.get(KijiTableInputFormat.INSTANCE_CONF_NAME),
+          "Missing input Kiji instance in job configuration.");
+      mKiji = new Kiji(
+          new KijiConfiguration(mConf, instance),
+          false,
+          DefaultHTableInterfaceFactory.get());
+      mCellDecoderFactory = new SpecificCellDecoderFactory(mKiji.getSchemaTable());
+
+      mKijiTables = new HBaseKijiTable[mTables.length];
+      mReaders = new HBaseTableRecordReader[mTables.length];
+      mNextRows = new Result[mTables.length];
+      for (int i = 0; i < mTables.length; i++) {
+        mKijiTables[i] = HBaseKijiTable.downcast(mKiji.openTable(mTables[i]));
+
+        final Scan scan = new HBaseDataRequestAdapter(mRequests[i]).toScan(mLayouts[i]);
+        scan.setStartRow(multiSplit.getStartRow()).setStopRow(multiSplit.getEndRow());
+        scan.setCacheBlocks(false);
+
+        mReaders[i] = new HBaseTableRecordReader(mLayouts[i].getDesc().getKeysFormat());
+        mReaders[i].setScan(scan);
+        // TODO: TableRecordReader requires type HTable, instead of HTableInterface:
+        mReaders[i].setHTable((HTable) mKijiTables[i].getHTable());
+        mReaders[i].init();
+        mNextRows[i] = advance(i);
+      }
+    }
+
+    /**
+     * Reads the next row of a table.
+     *
+     * @param index Index of the table.
+     * @return The next row of the table, or null if the scanner over the table is exhausted.
+     * @throws IOException on I/O error.
+     * @throws InterruptedException if the thread is interrupted.
+     */
+    private Result advance(int index) throws IOException, InterruptedException {
+      if (mReaders[index].nextKeyValue()) {
+        return mReaders[index].getCurrentValue();
+      }
+      return null;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public EntityId getCurrentKey() throws InterruptedException, IOException {
+      return mCurrentRow.getEntityId();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public KijiJoinedRowData getCurrentValue() throws InterruptedException, IOException {
+      return mCurrentRow;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public float getProgress() throws InterruptedException, IOException {
+      // The slowest scanner determines the progress of the merge.
+      float progress = 1.0f;
+      for (int i = 0; i < mTables.length; i++) {
+        if (null != mNextRows[i]) {
+          progress = Math.min(progress, mReaders[i].getProgress());
+        }
+      }
+      return progress;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean nextKeyValue() throws InterruptedException, IOException {
+      // The next entity is the one with the smallest row key among the next rows of the tables.
+      byte[] rowKey = null;
+      for (Result row : mNextRows) {
+        if ((null != row) && ((null == rowKey) || (Bytes.compareTo(row.getRow(), rowKey) < 0))) {
+          rowKey = row.getRow();
+        }
+      }
+      if (null == rowKey) {
+        return false;
+      }
+
+      final Map<String, KijiRowData> rows = Maps.newLinkedHashMap();
+      EntityId entityId = null;
+      for (int i = 0; i < mTables.length; i++) {
+        if ((null == mNextRows[i]) || !Bytes.equals(mNextRows[i].getRow(), rowKey)) {
+          continue;
+        }
+        final HBaseKijiRowData.Options options = new HBaseKijiRowData.Options()
+            .withDataRequest(mRequests[i])
+            .withTableLayout(mLayouts[i])
+            .withHBaseResult(mNextRows[i])
+            .withCellDecoderFactory(mCellDecoderFactory);
+        if (mRequests[i].isPagingEnabled()) {
+          options.withHTable(mKijiTables[i].getHTable());
+        }
+        if (HBaseCounterStripes.hasStripedCounters(mLayouts[i])) {
+          options.withCounterStripesHTable(mKijiTables[i].getCounterStripesHTable());
+        }
+        final HBaseKijiRowData rowData = new HBaseKijiRowData(options);
+        if (null == entityId) {
+          entityId = rowData.getEntityId();
+        }
+        rows.put(mTables[i], rowData);
+        mNextRows[i] = advance(i);
+      }
+      mCurrentRow = new KijiJoinedRowData(entityId, rows);
+      return true;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void close() throws IOException {
+      if (null != mReaders) {
+        for (int i = 0; i < mTables.length; i++) {
+          if (null != mReaders[i]) {
+            mReaders[i].close();
+          }
+          IOUtils.closeQuietly(mKijiTables[i]);
+        }
+      }
+      IOUtils.closeQuietly(mKiji);
+    }
+  }
+}
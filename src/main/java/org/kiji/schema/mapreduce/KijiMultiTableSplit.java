@@ -0,0 +1,93 @@
+/**
+ * (c) Copyright 2012 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.schema.mapreduce;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapreduce.InputSplit;
+
+/**
+ * A range of row keys co-scanned in several Kiji tables by a {@link KijiMultiTableInputFormat}.
+ */
+class KijiMultiTableSplit extends InputSplit implements Writable {
+  private byte[] mStartRow;
+  private byte[] mEndRow;
+  private String mLocation;
+
+  /** Empty constructor for Writable serialization. */
+  public KijiMultiTableSplit() {
+  }
+
+  /**
+   * Creates a new split.
+   *
+   * @param startRow First row key of the split, or empty for the start of the tables.
+   * @param endRow End row key of the split (exclusive), or empty for the end of the tables.
+   * @param location Host of the region of the first table that contains the split.
+   */
+  public KijiMultiTableSplit(byte[] startRow, byte[] endRow, String location) {
+    mStartRow = startRow;
+    mEndRow = endRow;
+    mLocation = location;
+  }
+
+  /** @return The first row key of the split, or empty for the start of the tables. */
+  public byte[] getStartRow() {
+    return mStartRow;
+  }
+
+  /** @return The end row key of the split (exclusive), or empty for the end of the tables. */
+  public byte[] getEndRow() {
+    return mEndRow;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public long getLength() {
+    // The size of the split is not known.
+    return 0;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String[] getLocations() {
+    return new String[] {mLocation};
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void readFields(DataInput in) throws IOException {
+    mStartRow = Bytes.readByteArray(in);
+    mEndRow = Bytes.readByteArray(in);
+    mLocation = Bytes.toString(Bytes.readByteArray(in));
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void write(DataOutput out) throws IOException {
+    Bytes.writeByteArray(out, mStartRow);
+    Bytes.writeByteArray(out, mEndRow);
+    Bytes.writeByteArray(out, Bytes.toBytes(mLocation));
+  }
+}
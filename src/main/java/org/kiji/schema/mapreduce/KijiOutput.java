@@ -22,8 +22,16 @@ package org.kiji.schema.mapreduce;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.util.Arrays;
 
-import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.conf.Configurable;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.io.WritableUtils;
+
+import org.kiji.schema.KijiSchemaTable;
 
 /**
  * KijiOutput is a class used to wrap {@link KijiMutation}s. This class is necessary to
@@ -35,10 +43,42 @@ import org.apache.hadoop.io.Writable;
  *   KijiPut put = ...
  *   context.write(NullWritable.get(), new KijiOutput(put));
  * </code>
+ *
+ * <p>KijiOutputs are ordered by the HBase row key, family and qualifier of the wrapped
+ * operation, then by operation type. The registered {@link Comparator} compares serialized
+ * KijiOutputs without deserializing them, so that KijiOutputs may be used as map output keys,
+ * for instance to group all the operations on a cell together.</p>
+ *
+ * <p>When configured with a job configuration that names an output Kiji instance, KijiOutputs
+ * write the writer schemas of their cells as IDs in the schema table of that instance, instead
+ * of full JSON schemas. Hadoop configures the KijiOutputs it deserializes, and
+ * {@link ContextKijiTableWriter} configures the KijiOutputs it writes.</p>
  */
-public class KijiOutput implements Writable {
+public class KijiOutput implements WritableComparable<KijiOutput>, Configurable {
+  /** Type tag of operations that are serialized along with their class name. */
+  private static final byte OTHER = 0;
+  /** Type tag of a {@link KijiPut}. */
+  private static final byte PUT = 1;
+  /** Type tag of a {@link KijiIncrement}. */
+  private static final byte INCREMENT = 2;
+  /** Type tag of a {@link KijiDelete}. */
+  private static final byte DELETE = 3;
+
+  static {
+    WritableComparator.define(KijiOutput.class, new Comparator());
+  }
+
   private KijiMutation mOperation;
 
+  /** Job configuration naming the output Kiji instance, or null. */
+  private Configuration mConf;
+
+  /** Schema table to write and resolve schema IDs from, or null until needed. */
+  private KijiSchemaTable mSchemaTable;
+
+  /** Serialized sort key and operation tag, cached for compareTo() and hashCode(). */
+  private byte[] mBytes;
+
   /** Empty constructor for Writable serialization. */
   public KijiOutput() { }
 
@@ -58,31 +98,217 @@ public class KijiOutput implements Writable {
     return mOperation;
   }
 
+  /** {@inheritDoc} */
+  @Override
+  public void setConf(Configuration conf) {
+    mConf = conf;
+    mSchemaTable = null;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public Configuration getConf() {
+    return mConf;
+  }
+
+  /**
+   * Sets the schema table to write and resolve schema IDs from, instead of the schema table of
+   * the output Kiji instance named by the configuration.
+   *
+   * @param schemaTable The schema table to use.
+   */
+  void setSchemaTable(KijiSchemaTable schemaTable) {
+    mSchemaTable = schemaTable;
+  }
+
+  /**
+   * Gets the schema table to write and resolve schema IDs from.
+   *
+   * @return The schema table, or null if this KijiOutput is not configured with one.
+   * @throws IOException If the output Kiji instance cannot be opened.
+   */
+  private KijiSchemaTable getSchemaTable() throws IOException {
+    if (null == mSchemaTable) {
+      mSchemaTable = MutationWritables.getSchemaTable(mConf);
+    }
+    return mSchemaTable;
+  }
+
   /** {@inheritDoc} */
   @Override
   public void write(DataOutput out) throws IOException {
-    // Serialize the wrapped operation type.
-    out.writeUTF(mOperation.getClass().getName());
+    write(out, getSchemaTable());
+  }
+
+  /**
+   * Serializes this KijiOutput.
+   *
+   * @param out The output to write to.
+   * @param schemaTable The schema table to write schema IDs from, or null.
+   * @throws IOException If there is an error writing.
+   */
+  private void write(DataOutput out, KijiSchemaTable schemaTable) throws IOException {
+    // Serialize the wrapped operation type, as a one byte tag for the known operations.
+    final byte tag = getTag(mOperation);
+    out.writeByte(tag);
+    if (OTHER == tag) {
+      WritableUtils.writeString(out, mOperation.getClass().getName());
+    }
 
     // Serialize the wrapped operation.
-    mOperation.write(out);
+    if (PUT == tag) {
+      ((KijiPut) mOperation).write(out, schemaTable);
+    } else {
+      mOperation.write(out);
+    }
   }
 
   /** {@inheritDoc} */
   @Override
   public void readFields(DataInput in) throws IOException {
-    // Create a new empty instance of KijiMutation if an instance doesn't already exist.
-    try {
-      mOperation = (KijiMutation) Class.forName(in.readUTF()).newInstance();
-    } catch (ClassNotFoundException ex) {
-      throw new IOException("Unrecognized KijiMutation found!", ex);
-    } catch (InstantiationException ex) {
-      throw new IOException(ex);
-    } catch (IllegalAccessException ex) {
-      throw new IOException(ex);
+    // Create a new empty instance of KijiMutation.
+    mBytes = null;
+    final byte tag = in.readByte();
+    switch (tag) {
+    case PUT:
+      mOperation = new KijiPut();
+      break;
+    case INCREMENT:
+      mOperation = new KijiIncrement();
+      break;
+    case DELETE:
+      mOperation = new KijiDelete();
+      break;
+    case OTHER:
+      try {
+        mOperation = (KijiMutation) Class.forName(WritableUtils.readString(in)).newInstance();
+      } catch (ClassNotFoundException ex) {
+        throw new IOException("Unrecognized KijiMutation found!", ex);
+      } catch (InstantiationException ex) {
+        throw new IOException(ex);
+      } catch (IllegalAccessException ex) {
+        throw new IOException(ex);
+      }
+      break;
+    default:
+      throw new IOException("Unrecognized KijiMutation type tag: " + tag);
     }
 
     // Populate the wrapped operation.
-    mOperation.readFields(in);
+    if (PUT == tag) {
+      ((KijiPut) mOperation).readFields(in, getSchemaTable());
+    } else {
+      mOperation.readFields(in);
+    }
+  }
+
+  /**
+   * Gets the type tag of an operation.
+   *
+   * @param operation A KijiMutation.
+   * @return The type tag of the operation.
+   */
+  private static byte getTag(KijiMutation operation) {
+    // Subclasses do not get the tag of their parent, since they serialize differently.
+    if (operation.getClass() == KijiPut.class) {
+      return PUT;
+    } else if (operation.getClass() == KijiIncrement.class) {
+      return INCREMENT;
+    } else if (operation.getClass() == KijiDelete.class) {
+      return DELETE;
+    }
+    return OTHER;
+  }
+
+  /**
+   * Serializes this KijiOutput once, without schema IDs, for compareTo() and hashCode().
+   *
+   * @return This KijiOutput, serialized.
+   */
+  private byte[] toBytes() {
+    if (null == mBytes) {
+      final DataOutputBuffer buffer = new DataOutputBuffer();
+      try {
+        write(buffer, null);
+      } catch (IOException ioe) {
+        // Writing to memory does not fail.
+        throw new RuntimeException(ioe);
+      }
+      mBytes = Arrays.copyOf(buffer.getData(), buffer.getLength());
+    }
+    return mBytes;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public int compareTo(KijiOutput other) {
+    final byte[] mine = toBytes();
+    final byte[] theirs = other.toBytes();
+    return WritableComparator.get(KijiOutput.class)
+        .compare(mine, 0, mine.length, theirs, 0, theirs.length);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean equals(Object other) {
+    if (!(other instanceof KijiOutput)) {
+      return false;
+    }
+    final KijiOutput o = (KijiOutput) other;
+    if (null == mOperation) {
+      return null == o.mOperation;
+    }
+    return mOperation.equals(o.mOperation);
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>The hash code only depends on the row key, family and qualifier of the operation, so
+   * that all the operations on a cell are sent to the same partition.</p>
+   */
+  @Override
+  public int hashCode() {
+    final byte[] bytes = toBytes();
+    if (OTHER == bytes[0]) {
+      return WritableComparator.hashBytes(bytes, bytes.length);
+    }
+    try {
+      final int sortKeyEnd = MutationWritables.getSortKeyEnd(bytes, 1);
+      return WritableComparator.hashBytes(bytes, 1, sortKeyEnd - 1);
+    } catch (IOException ioe) {
+      throw new RuntimeException(ioe);
+    }
+  }
+
+  /**
+   * Compares serialized KijiOutputs by the row key, family and qualifier of their operation,
+   * then by operation type.
+   */
+  public static class Comparator extends WritableComparator {
+    /** Creates a comparator for KijiOutputs. */
+    public Comparator() {
+      super(KijiOutput.class);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+      final byte tag1 = b1[s1];
+      final byte tag2 = b2[s2];
+      if ((OTHER == tag1) || (OTHER == tag2)) {
+        // The layout of unknown operations is unknown: only the bytes can be compared.
+        return compareBytes(b1, s1, l1, b2, s2, l2);
+      }
+      try {
+        final int cmp = MutationWritables.compareSortKeys(b1, s1 + 1, b2, s2 + 1);
+        if (0 != cmp) {
+          return cmp;
+        }
+      } catch (IOException ioe) {
+        throw new IllegalArgumentException(ioe);
+      }
+      return tag1 - tag2;
+    }
   }
 }
@@ -31,6 +31,7 @@ import org.apache.commons.lang.builder.EqualsBuilder;
 import org.apache.commons.lang.builder.HashCodeBuilder;
 import org.apache.hadoop.hbase.client.Put;
 import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.io.WritableUtils;
 
 import org.kiji.schema.EntityId;
 import org.kiji.schema.HBaseColumnName;
@@ -40,6 +41,7 @@ import org.kiji.schema.KijiCellDecoderFactory;
 import org.kiji.schema.KijiCellEncoder;
 import org.kiji.schema.KijiCellFormat;
 import org.kiji.schema.KijiColumnName;
+import org.kiji.schema.KijiSchemaTable;
 import org.kiji.schema.SpecificCellDecoderFactory;
 import org.kiji.schema.avro.SchemaType;
 import org.kiji.schema.impl.HBaseEntityId;
@@ -126,44 +128,60 @@ public class KijiPut implements KijiMutation {
   /** {@inheritDoc} */
   @Override
   public void write(DataOutput out) throws IOException {
-    // EntityId.
-    final byte[] bytes = mEntityId.getHBaseRowKey();
-    out.writeInt(bytes.length);
-    out.write(bytes);
+    write(out, null);
+  }
+
+  /**
+   * Serializes this KijiPut, with the writer schema of its cell as an ID in a schema table.
+   *
+   * @param out The output to write to.
+   * @param schemaTable The schema table to write the writer schema ID from, or null to write
+   *     the full writer schema.
+   * @throws IOException If there is an error writing.
+   */
+  void write(DataOutput out, KijiSchemaTable schemaTable) throws IOException {
+    // EntityId/Family/Qualifier, the sort key of the mutation.
+    MutationWritables.writeBytes(out, mEntityId.getHBaseRowKey());
+    MutationWritables.writeString(out, mFamily);
+    MutationWritables.writeString(out, mQualifier);
 
-    // Family/Qualifier/Timestamp.
-    out.writeUTF(mFamily);
-    out.writeUTF(mQualifier);
-    out.writeLong(mTimestamp);
+    // Timestamp.
+    WritableUtils.writeVLong(out, mTimestamp);
 
     // Avro.
     final KijiCellEncoder encoder = new KijiCellEncoder(null);
     final byte[] cellData = encoder.encode(mCell, KijiCellFormat.NONE);
-    out.writeUTF(mCell.getWriterSchema().toString());
-    out.writeInt(cellData.length);
-    out.write(cellData);
+    MutationWritables.writeSchema(out, mCell.getWriterSchema(), schemaTable);
+    MutationWritables.writeBytes(out, cellData);
   }
 
   /** {@inheritDoc} */
   @Override
   public void readFields(DataInput in) throws IOException {
-    // EntityId.
-    final byte[] bytes = new byte[in.readInt()];
-    in.readFully(bytes);
-    mEntityId = new HBaseEntityId(bytes);
+    readFields(in, null);
+  }
+
+  /**
+   * Deserializes this KijiPut, resolving the writer schema ID of its cell from a schema table.
+   *
+   * @param in The input to read from.
+   * @param schemaTable The schema table to resolve the writer schema ID from, or null.
+   * @throws IOException If there is an error reading.
+   */
+  void readFields(DataInput in, KijiSchemaTable schemaTable) throws IOException {
+    // EntityId/Family/Qualifier.
+    mEntityId = new HBaseEntityId(MutationWritables.readBytes(in));
+    mFamily = MutationWritables.readString(in);
+    mQualifier = MutationWritables.readString(in);
 
-    // Family/Qualifier/Timestamp.
-    mFamily = in.readUTF();
-    mQualifier = in.readUTF();
-    mTimestamp = in.readLong();
+    // Timestamp.
+    mTimestamp = WritableUtils.readVLong(in);
 
     // Avro.
-    final Schema schema = new Schema.Parser().parse(in.readUTF());
+    final Schema schema = MutationWritables.readSchema(in, schemaTable);
     final KijiCellDecoderFactory decoderFactory = new SpecificCellDecoderFactory(null);
     final KijiCellDecoder<?> decoder = decoderFactory.create(schema, KijiCellFormat.NONE);
-    final byte[] cellData = new byte[in.readInt()];
-    in.readFully(cellData);
-    mCell = decoder.decode(cellData, null);
+    mCell = decoder.decode(MutationWritables.readBytes(in), null);
   }
 
   /** {@inheritDoc} */
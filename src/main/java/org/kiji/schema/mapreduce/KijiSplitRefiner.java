@@ -0,0 +1,219 @@
+/**
+ * (c) Copyright 2012 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.schema.mapreduce;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.Lists;
+import org.apache.hadoop.hbase.util.Bytes;
+
+/**
+ * Refines the splits of a {@link KijiTableInputFormat} according to the estimated size of the
+ * regions they cover: splits larger than a maximum size are divided into sub-ranges, and
+ * adjacent splits smaller than a minimum size hosted by the same region server are merged.
+ * The location of each refined split is the location of the region(s) it covers.
+ */
+final class KijiSplitRefiner {
+  /** Number of bytes appended to the bounds of a range to interpolate split points. */
+  private static final int INTERPOLATION_PADDING = 4;
+
+  /** Computes the split points dividing a range of row keys into sub-ranges. */
+  interface SplitPointSource {
+    /**
+     * Computes the split points that divide a range of rows into sub-ranges of similar sizes.
+     *
+     * @param startRow First row of the range, or empty for the start of the table.
+     * @param endRow End of the range (exclusive), or empty for the end of the table.
+     * @param numSplits Desired number of sub-ranges.
+     * @return At most numSplits - 1 split points, in any order.
+     * @throws IOException on I/O error.
+     */
+    List<byte[]> getSplitPoints(byte[] startRow, byte[] endRow, int numSplits)
+        throws IOException;
+  }
+
+  /** Interpolates split points uniformly between the bounds of a range. */
+  static final SplitPointSource INTERPOLATE = new SplitPointSource() {
+    /** {@inheritDoc} */
+    @Override
+    public List<byte[]> getSplitPoints(byte[] startRow, byte[] endRow, int numSplits) {
+      return interpolate(startRow, endRow, numSplits);
+    }
+  };
+
+  /** Splits larger than this size, in bytes, are divided. 0 disables dividing splits. */
+  private final long mMaxSplitSize;
+
+  /** Adjacent splits smaller than this size, in bytes, are merged. 0 disables merging. */
+  private final long mMinSplitSize;
+
+  /** Computes the points at which large splits are divided. */
+  private final SplitPointSource mSplitPoints;
+
+  /**
+   * Creates a new split refiner.
+   *
+   * @param maxSplitSize Splits larger than this size, in bytes, are divided, unless 0.
+   * @param minSplitSize Adjacent splits smaller than this size, in bytes, are merged, unless 0.
+   * @param splitPoints Computes the points at which large splits are divided.
+   */
+  KijiSplitRefiner(long maxSplitSize, long minSplitSize, SplitPointSource splitPoints) {
+    mMaxSplitSize = maxSplitSize;
+    mMinSplitSize = minSplitSize;
+    mSplitPoints = splitPoints;
+  }
+
+  /**
+   * Refines a list of splits.
+   *
+   * @param splits Splits to refine, ordered by start row, with their estimated sizes.
+   * @return The refined splits, ordered by start row.
+   * @throws IOException on I/O error.
+   */
+  List<KijiTableSplit> refine(List<KijiTableSplit> splits) throws IOException {
+    final List<KijiTableSplit> refined = Lists.newArrayList();
+    KijiTableSplit pending = null;
+    for (KijiTableSplit split : splits) {
+      final long size = split.getLength();
+      if ((mMaxSplitSize > 0) && (size > mMaxSplitSize)) {
+        if (null != pending) {
+          refined.add(pending);
+          pending = null;
+        }
+        refined.addAll(divide(split, (int) ((size + mMaxSplitSize - 1) / mMaxSplitSize)));
+      } else if ((mMinSplitSize > 0) && (size < mMinSplitSize)) {
+        if ((null != pending) && canMerge(pending, split)) {
+          pending = new KijiTableSplit(pending.getTableName(), pending.getStartRow(),
+              split.getEndRow(), pending.getRegionLocation(), pending.getRegionStartKey(),
+              pending.getLength() + size);
+        } else {
+          if (null != pending) {
+            refined.add(pending);
+          }
+          pending = split;
+        }
+      } else {
+        if (null != pending) {
+          refined.add(pending);
+          pending = null;
+        }
+        refined.add(split);
+      }
+    }
+    if (null != pending) {
+      refined.add(pending);
+    }
+    return refined;
+  }
+
+  /**
+   * Reports whether a small split may be merged into the preceding pending split.
+   *
+   * @param pending The pending merged split.
+   * @param split The next small split.
+   * @return whether the two splits are adjacent, hosted by the same region server, and small
+   *     enough once merged.
+   */
+  private boolean canMerge(KijiTableSplit pending, KijiTableSplit split) {
+    return Bytes.equals(pending.getEndRow(), split.getStartRow())
+        && Objects.equal(pending.getRegionLocation(), split.getRegionLocation())
+        && (pending.getLength() + split.getLength() <= mMinSplitSize);
+  }
+
+  /**
+   * Divides a split into sub-ranges.
+   *
+   * @param split The split to divide.
+   * @param numSplits Desired number of sub-ranges.
+   * @return The sub-ranges of the split, ordered by start row.
+   * @throws IOException on I/O error.
+   */
+  private List<KijiTableSplit> divide(KijiTableSplit split, int numSplits) throws IOException {
+    final byte[] startRow = split.getStartRow();
+    final byte[] endRow = split.getEndRow();
+
+    // Keep the split points strictly inside the split, sorted and without duplicates.
+    final List<byte[]> points = Lists.newArrayList();
+    for (byte[] point : mSplitPoints.getSplitPoints(startRow, endRow, numSplits)) {
+      if ((Bytes.compareTo(point, startRow) > 0)
+          && ((endRow.length == 0) || (Bytes.compareTo(point, endRow) < 0))) {
+        points.add(point);
+      }
+    }
+    final byte[][] sorted = points.toArray(new byte[points.size()][]);
+    Arrays.sort(sorted, Bytes.BYTES_COMPARATOR);
+
+    final List<KijiTableSplit> subSplits = Lists.newArrayList();
+    final long subSize = Math.max(1L, split.getLength() / (sorted.length + 1));
+    byte[] subStart = startRow;
+    for (byte[] point : sorted) {
+      if (Bytes.equals(point, subStart)) {
+        continue;
+      }
+      subSplits.add(new KijiTableSplit(split.getTableName(), subStart, point,
+          split.getRegionLocation(), split.getRegionStartKey(), subSize));
+      subStart = point;
+    }
+    subSplits.add(new KijiTableSplit(split.getTableName(), subStart, endRow,
+        split.getRegionLocation(), split.getRegionStartKey(), subSize));
+    return subSplits;
+  }
+
+  /**
+   * Interpolates split points uniformly between the bounds of a range of row keys.
+   * This is accurate for hashed row keys, and a rough approximation for raw row keys.
+   *
+   * @param startRow First row of the range, or empty for the start of the table.
+   * @param endRow End of the range (exclusive), or empty for the end of the table.
+   * @param numSplits Desired number of sub-ranges.
+   * @return The numSplits - 1 interpolated split points, or none if the range is too narrow.
+   */
+  static List<byte[]> interpolate(byte[] startRow, byte[] endRow, int numSplits) {
+    final List<byte[]> points = Lists.newArrayList();
+    if (numSplits < 2) {
+      return points;
+    }
+    // Pad the bounds with trailing bytes, so that close bounds still have keys in between.
+    final int keySize = Math.max(startRow.length, endRow.length) + INTERPOLATION_PADDING;
+    final byte[] lower = Arrays.copyOf(startRow, keySize);
+    final byte[] upper;
+    if (endRow.length == 0) {
+      upper = new byte[keySize];
+      Arrays.fill(upper, (byte) 0xFF);
+    } else {
+      upper = Arrays.copyOf(endRow, keySize);
+    }
+    if (Bytes.compareTo(lower, upper) >= 0) {
+      return points;
+    }
+    final byte[][] bounds = Bytes.split(lower, upper, numSplits - 1);
+    if (null == bounds) {
+      return points;
+    }
+    // The first and last keys returned by Bytes.split() are the bounds of the range.
+    for (int i = 1; i < bounds.length - 1; i++) {
+      points.add(bounds[i]);
+    }
+    return points;
+  }
+}
@@ -25,17 +25,29 @@ import static com.google.common.base.Preconditions.checkState;
 import java.io.IOException;
 import java.nio.charset.Charset;
 import java.util.List;
+import java.util.Map;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import org.apache.commons.codec.binary.Base64;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.SerializationUtils;
 import org.apache.hadoop.conf.Configurable;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.ClusterStatus;
+import org.apache.hadoop.hbase.HRegionInfo;
+import org.apache.hadoop.hbase.HServerLoad;
+import org.apache.hadoop.hbase.ServerName;
+import org.apache.hadoop.hbase.client.HBaseAdmin;
 import org.apache.hadoop.hbase.client.HTable;
 import org.apache.hadoop.hbase.client.HTableInterface;
 import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
 import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.filter.FilterList;
+import org.apache.hadoop.hbase.filter.FirstKeyOnlyFilter;
+import org.apache.hadoop.hbase.filter.KeyOnlyFilter;
+import org.apache.hadoop.hbase.filter.RandomRowFilter;
 import org.apache.hadoop.hbase.mapreduce.GenericTableMapReduceUtil;
 import org.apache.hadoop.hbase.mapreduce.TableSplit;
 import org.apache.hadoop.hbase.util.Bytes;
@@ -57,14 +69,17 @@ import org.kiji.schema.KijiConfiguration;
 import org.kiji.schema.KijiDataRequest;
 import org.kiji.schema.KijiDataRequestException;
 import org.kiji.schema.KijiManagedHBaseTableName;
+import org.kiji.schema.KijiMetaTable;
 import org.kiji.schema.KijiRowData;
 import org.kiji.schema.KijiTable;
 import org.kiji.schema.SpecificCellDecoderFactory;
 import org.kiji.schema.impl.DefaultHTableInterfaceFactory;
+import org.kiji.schema.impl.HBaseCounterStripes;
 import org.kiji.schema.impl.HBaseDataRequestAdapter;
 import org.kiji.schema.impl.HBaseKijiRowData;
 import org.kiji.schema.impl.HBaseKijiTable;
 import org.kiji.schema.impl.HBaseTableRecordReader;
+import org.kiji.schema.impl.RowKeyHasher;
 import org.kiji.schema.layout.KijiTableLayout;
 import org.kiji.schema.layout.TableLayoutSerializer;
 
@@ -86,6 +101,54 @@ public class KijiTableInputFormat
   /** Configuration variable for the input kiji table. */
   public static final String TABLE_CONF_NAME = "kiji.input.table";
 
+  /**
+   * Configuration variable for the maximum estimated size of a split, in bytes. Regions larger
+   * than this are divided into several splits. Regions are never divided when this is 0.
+   */
+  public static final String MAX_SPLIT_SIZE_CONF_NAME = "kiji.input.split.max.size";
+
+  /**
+   * Configuration variable for the minimum estimated size of a split, in bytes. Adjacent regions
+   * smaller than this and hosted by the same region server are merged into a single split.
+   * Regions are never merged when this is 0.
+   */
+  public static final String MIN_SPLIT_SIZE_CONF_NAME = "kiji.input.split.min.size";
+
+  /**
+   * Configuration variable for the fraction of the rows sampled to divide regions of tables
+   * with RAW row keys. Split points are interpolated between the region boundaries when this
+   * is 0, which is always the case for tables with hashed row keys.
+   */
+  public static final String SPLIT_SAMPLE_RATE_CONF_NAME = "kiji.input.split.sample.rate";
+
+  /** Configuration variable for the name of the checkpoint of an incremental job. */
+  public static final String CHECKPOINT_CONF_NAME = "kiji.input.checkpoint";
+
+  /**
+   * Configuration variable for the time at which an incremental job was configured.
+   * This becomes the new value of the checkpoint once the job succeeds.
+   */
+  public static final String CHECKPOINT_TIME_CONF_NAME = "kiji.input.checkpoint.time";
+
+  /**
+   * Configuration variable for the safety margin, in milliseconds, subtracted from the end of
+   * the time range read by an incremental job.
+   */
+  public static final String CHECKPOINT_SAFETY_MARGIN_CONF_NAME =
+      "kiji.input.checkpoint.safety.margin";
+
+  /** Default safety margin of incremental jobs, in milliseconds. */
+  public static final long DEFAULT_CHECKPOINT_SAFETY_MARGIN = 60000L;
+
+  /** Prefix of the meta table keys storing the checkpoints of a table. */
+  private static final String CHECKPOINT_KEY_PREFIX = "kiji.input.checkpoint.";
+
+  /** Number of bytes in a megabyte, the unit of region sizes reported by region servers. */
+  private static final long MEGABYTE = 1024L * 1024L;
+
+  /** Number of sampled row keys fetched per RPC when sampling split points. */
+  private static final int SAMPLE_SCANNER_CACHING = 1000;
+
   /** Configuration of this input format. */
   private Configuration mConf;
 
@@ -125,11 +188,19 @@ public class KijiTableInputFormat
         .getKijiTableName(instance, table)
         .toString();
 
+    final long maxSplitSize = conf.getLong(MAX_SPLIT_SIZE_CONF_NAME, 0);
+    final long minSplitSize = conf.getLong(MIN_SPLIT_SIZE_CONF_NAME, 0);
+    final boolean refineSplits = (maxSplitSize > 0) || (minSplitSize > 0);
+
     // Get the start keys for all regions, and associate these with the user's splits.
     final HTable htable = new HTable(context.getConfiguration(), hbaseTableName);
     Pair<byte[][], byte[][]> startEndKeys = null;
+    Map<byte[], Long> regionSizes = null;
     try {
       startEndKeys = htable.getStartEndKeys();
+      if (refineSplits) {
+        regionSizes = getRegionSizes(htable);
+      }
     } finally {
       IOUtils.closeQuietly(htable);
     }
@@ -182,10 +253,156 @@ public class KijiTableInputFormat
         regionStart = startKeys[startKeyIdx++];
       }
 
-      outSplits.add(new KijiTableSplit(tblSplit, regionStart));
+      if (refineSplits) {
+        // Regions whose size is unknown get the default size estimate of KijiTableSplit.
+        final Long regionSize = regionSizes.get(regionStart);
+        final long length =
+            (null == regionSize) ? KijiTableSplit.UNKNOWN_LENGTH : regionSize.longValue();
+        outSplits.add(new KijiTableSplit(tblSplit.getTableName(), tblSplit.getStartRow(),
+            tblSplit.getEndRow(), tblSplit.getRegionLocation(), regionStart, length));
+      } else {
+        outSplits.add(new KijiTableSplit(tblSplit, regionStart));
+      }
+    }
+
+    if (!refineSplits) {
+      return outSplits;
+    }
+
+    // Divide the large regions and merge the small ones.
+    final List<KijiTableSplit> kijiSplits = Lists.newArrayList();
+    for (InputSplit split : outSplits) {
+      kijiSplits.add((KijiTableSplit) split);
+    }
+    final KijiSplitRefiner refiner =
+        new KijiSplitRefiner(maxSplitSize, minSplitSize, getSplitPointSource(conf));
+    final List<InputSplit> refinedSplits = Lists.newArrayList();
+    refinedSplits.addAll(refiner.refine(kijiSplits));
+    LOG.debug("Refined {} region splits into {} splits.", outSplits.size(), refinedSplits.size());
+    return refinedSplits;
+  }
+
+  /**
+   * Gets the estimated sizes of the regions of a table, as reported by the region servers.
+   *
+   * @param htable The HBase table.
+   * @return The estimated sizes of the regions in bytes, keyed by region start key.
+   *     Regions whose size is not reported are omitted.
+   * @throws IOException on I/O error.
+   */
+  private static Map<byte[], Long> getRegionSizes(HTable htable) throws IOException {
+    // Collect the size of every region reported by the region servers.
+    final Map<byte[], Long> sizesByRegionName = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+    final HBaseAdmin admin = new HBaseAdmin(htable.getConfiguration());
+    try {
+      final ClusterStatus status = admin.getClusterStatus();
+      for (ServerName server : status.getServers()) {
+        for (HServerLoad.RegionLoad load : status.getLoad(server).getRegionsLoad().values()) {
+          sizesByRegionName.put(load.getName(),
+              getRegionSize(load.getStorefileSizeMB(), load.getMemStoreSizeMB()));
+        }
+      }
+    } finally {
+      IOUtils.closeQuietly(admin);
+    }
+
+    final Map<byte[], Long> sizes = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+    for (HRegionInfo region : htable.getRegionLocations().keySet()) {
+      final Long size = sizesByRegionName.get(region.getRegionName());
+      if (null != size) {
+        sizes.put(region.getStartKey(), size);
+      }
+    }
+    return sizes;
+  }
+
+  /**
+   * Estimates the size of a region from the sizes reported by its region server.
+   *
+   * <p>Region servers report sizes in whole megabytes, rounded down, so regions holding less
+   * than a megabyte report 0. Those are estimated at 1 byte: a known, small size, rather than
+   * the unknown length that KijiTableSplit replaces with its default estimate.</p>
+   *
+   * @param storefileSizeMB The size of the store files of the region, in megabytes.
+   * @param memStoreSizeMB The size of the memstores of the region, in megabytes.
+   * @return The estimated size of the region in bytes, at least 1.
+   */
+  static long getRegionSize(int storefileSizeMB, int memStoreSizeMB) {
+    return Math.max(1L, (storefileSizeMB + memStoreSizeMB) * MEGABYTE);
+  }
+
+  /**
+   * Gets the source of split points used to divide large regions.
+   *
+   * @param conf The job configuration.
+   * @return Split points sampled from the table for RAW row keys when configured, or
+   *     interpolated between the region boundaries otherwise.
+   * @throws IOException if the table layout cannot be read from the configuration.
+   */
+  private static KijiSplitRefiner.SplitPointSource getSplitPointSource(final Configuration conf)
+      throws IOException {
+    final float sampleRate = conf.getFloat(SPLIT_SAMPLE_RATE_CONF_NAME, 0.0f);
+    final KijiTableLayout layout = TableLayoutSerializer.readInputTableLayout(conf);
+    if ((sampleRate <= 0.0f)
+        || RowKeyHasher.isHashed(layout.getDesc().getKeysFormat())) {
+      return KijiSplitRefiner.INTERPOLATE;
+    }
+    final String hbaseTableName = KijiManagedHBaseTableName
+        .getKijiTableName(conf.get(INSTANCE_CONF_NAME), conf.get(TABLE_CONF_NAME))
+        .toString();
+    return new KijiSplitRefiner.SplitPointSource() {
+      /** {@inheritDoc} */
+      @Override
+      public List<byte[]> getSplitPoints(byte[] startRow, byte[] endRow, int numSplits)
+          throws IOException {
+        return sampleSplitPoints(conf, hbaseTableName, sampleRate, startRow, endRow, numSplits);
+      }
+    };
+  }
+
+  /**
+   * Computes split points from a random sample of the row keys in a range.
+   *
+   * @param conf The job configuration.
+   * @param hbaseTableName Name of the HBase table to sample.
+   * @param sampleRate Fraction of the rows to sample.
+   * @param startRow First row of the range.
+   * @param endRow End of the range (exclusive).
+   * @param numSplits Desired number of sub-ranges.
+   * @return Split points evenly spaced among the sampled row keys.
+   * @throws IOException on I/O error.
+   */
+  private static List<byte[]> sampleSplitPoints(Configuration conf, String hbaseTableName,
+      float sampleRate, byte[] startRow, byte[] endRow, int numSplits) throws IOException {
+    final Scan scan = new Scan(startRow, endRow);
+    scan.setFilter(new FilterList(
+        new RandomRowFilter(sampleRate), new FirstKeyOnlyFilter(), new KeyOnlyFilter()));
+    scan.setCaching(SAMPLE_SCANNER_CACHING);
+    scan.setCacheBlocks(false);
+
+    final List<byte[]> samples = Lists.newArrayList();
+    final HTable htable = new HTable(conf, hbaseTableName);
+    try {
+      final ResultScanner scanner = htable.getScanner(scan);
+      try {
+        for (Result result : scanner) {
+          samples.add(result.getRow());
+        }
+      } finally {
+        scanner.close();
+      }
+    } finally {
+      IOUtils.closeQuietly(htable);
     }
 
-    return outSplits;
+    final List<byte[]> points = Lists.newArrayList();
+    for (int i = 1; i < numSplits; i++) {
+      final int index = (int) ((long) i * samples.size() / numSplits);
+      if (index < samples.size()) {
+        points.add(samples.get(index));
+      }
+    }
+    return points;
   }
 
   /**
@@ -312,6 +529,147 @@ public class KijiTableInputFormat
     conf.set(TABLE_CONF_NAME, table);
   }
 
+  /**
+   * Configures a job to read only the cells written since the last successful run of the job,
+   * as recorded by a named checkpoint of the input table. The cells of the data request are
+   * restricted to those written after the checkpoint and before this method is called, minus
+   * the safety margin configured by {@link #CHECKPOINT_SAFETY_MARGIN_CONF_NAME}.
+   * HBase skips the rows, and the store files, that hold no cell in this time range.
+   *
+   * <p>The checkpoint is advanced by {@link #commitCheckpoint(Configuration)}, which
+   * {@link KijiTableOutputFormat} calls when the job commits successfully. Jobs that write
+   * elsewhere can wrap their output format with {@link CheckpointOutputFormat#wrap(Job)}.</p>
+   *
+   * @param job Job to configure.
+   * @param instance Name of the Kiji instance to read from.
+   * @param table Name of the Kiji table to read from.
+   * @param request The data requested.
+   * @param checkpoint Name of the checkpoint recording the progress of the job.
+   * @throws IOException if an error occurs while reading the checkpoint.
+   */
+  public static void setIncrementalOptions(Job job, String instance, String table,
+      KijiDataRequest request, String checkpoint) throws IOException {
+    final Configuration conf = job.getConfiguration();
+    final long endTime = getCheckpointEndTime(conf, System.currentTimeMillis());
+
+    final KijiDataRequest incrementalRequest;
+    final Kiji kiji = Kiji.open(new KijiConfiguration(conf, instance));
+    try {
+      incrementalRequest =
+          getIncrementalRequest(kiji.getMetaTable(), table, request, checkpoint, endTime);
+    } finally {
+      IOUtils.closeQuietly(kiji);
+    }
+
+    setOptions(job, instance, table, incrementalRequest);
+    conf.set(CHECKPOINT_CONF_NAME, checkpoint);
+    conf.setLong(CHECKPOINT_TIME_CONF_NAME, endTime);
+  }
+
+  /**
+   * Gets the end of the time range read by an incremental job, which becomes the new value of
+   * its checkpoint once the job succeeds.
+   *
+   * <p>Cells are timestamped by the clients or region servers that write them, whose clocks may
+   * run behind the clock of this client, and some writes may still be in flight. The end time
+   * is pulled back by a safety margin, so that such cells are read by the next run rather than
+   * skipped by both runs.</p>
+   *
+   * @param conf The job configuration.
+   * @param now The current time of this client, in milliseconds.
+   * @return The end of the time range to read, exclusive.
+   */
+  static long getCheckpointEndTime(Configuration conf, long now) {
+    final long margin =
+        conf.getLong(CHECKPOINT_SAFETY_MARGIN_CONF_NAME, DEFAULT_CHECKPOINT_SAFETY_MARGIN);
+    checkState(margin >= 0, "Negative checkpoint safety margin: %s", margin);
+    return now - margin;
+  }
+
+  /**
+   * Restricts a data request to the cells written after a checkpoint and before an end time.
+   *
+   * @param metaTable The meta table storing the checkpoints of the table.
+   * @param table Name of the Kiji table to read from.
+   * @param request The data requested.
+   * @param checkpoint Name of the checkpoint recording the progress of the job.
+   * @param endTime The end of the time range to read, exclusive.
+   * @return A copy of the data request, restricted to the time range to read.
+   * @throws IOException if an error occurs while reading the checkpoint, or if the time range
+   *     to read is empty.
+   */
+  static KijiDataRequest getIncrementalRequest(KijiMetaTable metaTable, String table,
+      KijiDataRequest request, String checkpoint, long endTime) throws IOException {
+    // Read the high-water mark of the previous successful run, if any.
+    long startTime = 0;
+    final byte[] mark = metaTable.getValue(table, getCheckpointKey(checkpoint));
+    if (null != mark) {
+      startTime = Bytes.toLong(mark);
+    }
+
+    final long minTimestamp = Math.max(startTime, request.getMinTimestamp());
+    final long maxTimestamp = Math.min(endTime, request.getMaxTimestamp());
+    if (maxTimestamp <= minTimestamp) {
+      throw new IOException(String.format(
+          "Checkpoint '%s' of table '%s' leaves no time range to read: [%d, %d).",
+          checkpoint, table, minTimestamp, maxTimestamp));
+    }
+    LOG.info("Reading cells of table '{}' written in [{}, {}).",
+        new Object[] {table, minTimestamp, maxTimestamp});
+    return ((KijiDataRequest) SerializationUtils.clone(request))
+        .withTimeRange(minTimestamp, maxTimestamp);
+  }
+
+  /**
+   * Advances the checkpoint of a job configured with
+   * {@link #setIncrementalOptions(Job, String, String, KijiDataRequest, String)}, so that the
+   * next run only reads the cells written after the time range of this run.
+   * This does nothing if the job is not incremental.
+   *
+   * @param conf The job configuration.
+   * @throws IOException if an error occurs while writing the checkpoint.
+   */
+  public static void commitCheckpoint(Configuration conf) throws IOException {
+    if (null == conf.get(CHECKPOINT_CONF_NAME)) {
+      return;
+    }
+    final Kiji kiji = Kiji.open(new KijiConfiguration(conf, conf.get(INSTANCE_CONF_NAME)));
+    try {
+      commitCheckpoint(conf, kiji.getMetaTable());
+    } finally {
+      IOUtils.closeQuietly(kiji);
+    }
+  }
+
+  /**
+   * Advances the checkpoint of an incremental job.
+   *
+   * @param conf The job configuration.
+   * @param metaTable The meta table storing the checkpoints of the table.
+   * @throws IOException if an error occurs while writing the checkpoint.
+   */
+  static void commitCheckpoint(Configuration conf, KijiMetaTable metaTable) throws IOException {
+    final String checkpoint = conf.get(CHECKPOINT_CONF_NAME);
+    if (null == checkpoint) {
+      return;
+    }
+    final String table = conf.get(TABLE_CONF_NAME);
+    final long mark = conf.getLong(CHECKPOINT_TIME_CONF_NAME, 0);
+    metaTable.putValue(table, getCheckpointKey(checkpoint), Bytes.toBytes(mark));
+    LOG.info("Advanced checkpoint '{}' of table '{}' to {}.",
+        new Object[] {checkpoint, table, mark});
+  }
+
+  /**
+   * Gets the meta table key that stores a checkpoint of a table.
+   *
+   * @param checkpoint Name of the checkpoint.
+   * @return The meta table key of the checkpoint.
+   */
+  private static String getCheckpointKey(String checkpoint) {
+    return CHECKPOINT_KEY_PREFIX + checkpoint;
+  }
+
   /**
    * Record reader that KijiTableInputFormat uses.
    */
@@ -428,6 +786,9 @@ public class KijiTableInputFormat
             .withTableLayout(mLayout)
             .withHBaseResult(hbaseValue)
             .withCellDecoderFactory(mCellDecoderFactory);
+        if (HBaseCounterStripes.hasStripedCounters(mLayout)) {
+          standard.withCounterStripesHTable(mKijiTable.getCounterStripesHTable());
+        }
 
         if (mPagingEnabled) {
           mCurrentRow = new HBaseKijiRowData(standard.withHTable(mKijiTable.getHTable()));
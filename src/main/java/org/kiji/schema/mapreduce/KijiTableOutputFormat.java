@@ -22,10 +22,15 @@ package org.kiji.schema.mapreduce;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.hadoop.conf.Configurable;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.client.HTableInterface;
+import org.apache.hadoop.hbase.client.Put;
 import org.apache.hadoop.hbase.mapreduce.TableOutputFormat;
 import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.mapreduce.Job;
@@ -39,7 +44,11 @@ import org.kiji.schema.Kiji;
 import org.kiji.schema.KijiCellEncoder;
 import org.kiji.schema.KijiConfiguration;
 import org.kiji.schema.KijiManagedHBaseTableName;
+import org.kiji.schema.impl.DefaultHTableInterfaceFactory;
+import org.kiji.schema.impl.HBaseColumnIndex;
+import org.kiji.schema.impl.HBaseCounterStripes;
 import org.kiji.schema.impl.HBaseKijiTable;
+import org.kiji.schema.impl.KijiIncrementBuffer;
 import org.kiji.schema.layout.ColumnNameTranslator;
 
 /**
@@ -72,6 +81,15 @@ public class KijiTableOutputFormat<K> extends OutputFormat<K, KijiOutput>
   /** Configuration variable for the input kiji table. */
   public static final String TABLE_CONF_NAME = "kiji.output.table";
 
+  /**
+   * Configuration variable for the number of distinct counters whose increments are aggregated
+   * by each task before being sent to the table. Increments are sent one by one when this is 0.
+   */
+  public static final String INCREMENT_BUFFER_SIZE_CONF_NAME = "kiji.output.increment.buffer.size";
+
+  /** Increments are not aggregated by default. */
+  public static final int DEFAULT_INCREMENT_BUFFER_SIZE = 0;
+
   private final HTableOutputFormat<K> mDelegate = new HTableOutputFormat<K>();
 
   /**
@@ -83,6 +101,14 @@ public class KijiTableOutputFormat<K> extends OutputFormat<K, KijiOutput>
     private final KijiCellEncoder mEncoder;
     private final Kiji mKiji;
     private final HBaseKijiTable mTable;
+    /** Aggregates the increments written to this record writer. */
+    private final KijiIncrementBuffer mIncrements;
+    /** The number of distinct counters that triggers a flush of the aggregated increments. */
+    private final int mMaxBufferedIncrements;
+    /** The index of the table, or null if the table has no indexed column. */
+    private final HBaseColumnIndex mIndex;
+    /** The HTable storing the index of the table, or null if the table has no indexed column. */
+    private final HTableInterface mIndexHTable;
 
     /**
      * Creates a new RecordWriter for this output format. This RecordWriter will perform the actual
@@ -104,6 +130,23 @@ public class KijiTableOutputFormat<K> extends OutputFormat<K, KijiOutput>
       mDelegate = delegate;
       mTranslator = new ColumnNameTranslator(HBaseKijiTable.downcast(mTable).getLayout());
       mEncoder = new KijiCellEncoder(mKiji.getSchemaTable());
+      // Each record writer increments the striped counters on a stripe of its own.
+      mIncrements = new KijiIncrementBuffer(new HBaseCounterStripes(mTable.getLayout()),
+          new Random().nextInt(Integer.MAX_VALUE));
+      mMaxBufferedIncrements =
+          conf.getInt(INCREMENT_BUFFER_SIZE_CONF_NAME, DEFAULT_INCREMENT_BUFFER_SIZE);
+      if (HBaseColumnIndex.hasIndexedColumns(mTable.getLayout())) {
+        mIndex = new HBaseColumnIndex(mTable.getLayout(), mKiji.getSchemaTable());
+        mIndexHTable = DefaultHTableInterfaceFactory.get().create(conf,
+            KijiManagedHBaseTableName.getKijiIndexTableName(instance, table).toString());
+        // The underlying TableRecordWriter flushes its buffered puts whenever its write buffer
+        // fills up, so index entries are sent synchronously, before the puts they index are
+        // handed to it: the index never misses a cell that reached the table.
+        mIndexHTable.setAutoFlush(true);
+      } else {
+        mIndex = null;
+        mIndexHTable = null;
+      }
     }
 
     /** {@inheritDoc} */
@@ -112,13 +155,23 @@ public class KijiTableOutputFormat<K> extends OutputFormat<K, KijiOutput>
       final KijiMutation op = value.getOperation();
 
       if (op instanceof KijiIncrement) {
-        // Write increments directly using an HTable.
+        // Aggregate increments, then write them directly using an HTable.
         final KijiIncrement increment = (KijiIncrement) op;
-        mTable.getHTable().increment(increment.toIncrement(mTranslator));
+        mIncrements.add(increment.getEntityId(), increment.getFamily(), increment.getQualifier(),
+            increment.getAmount());
+        if (mIncrements.size() >= mMaxBufferedIncrements) {
+          flushIncrements();
+        }
       } else if (op instanceof KijiPut) {
         // Pass puts off to the underlying TableRecordWriter.
-        final KijiPut put = (KijiPut) op;
-        mDelegate.write(key, put.toPut(mTranslator, mEncoder));
+        final Put hbasePut = ((KijiPut) op).toPut(mTranslator, mEncoder);
+        if (null != mIndex) {
+          final List<Put> indexPuts = mIndex.toIndexPuts(Collections.singletonList(hbasePut));
+          if (!indexPuts.isEmpty()) {
+            mIndexHTable.put(indexPuts);
+          }
+        }
+        mDelegate.write(key, hbasePut);
       } else if (op instanceof KijiDelete) {
         // Pass deletes off to the underlying TableRecordWriter.
         final KijiDelete del = (KijiDelete) op;
@@ -131,9 +184,28 @@ public class KijiTableOutputFormat<K> extends OutputFormat<K, KijiOutput>
     /** {@inheritDoc} */
     @Override
     public void close(TaskAttemptContext context) throws IOException, InterruptedException {
-      IOUtils.closeQuietly(mKiji);
-      IOUtils.closeQuietly(mTable);
-      mDelegate.close(context);
+      try {
+        flushIncrements();
+        if (null != mIndexHTable) {
+          mIndexHTable.close();
+        }
+      } finally {
+        IOUtils.closeQuietly(mKiji);
+        IOUtils.closeQuietly(mTable);
+        mDelegate.close(context);
+      }
+    }
+
+    /**
+     * Sends the aggregated increments to the table, one per row, in a single batch, and those
+     * of the striped counters to the counter stripes table.
+     *
+     * @throws IOException If there is an error sending the increments.
+     */
+    private void flushIncrements() throws IOException {
+      mIncrements.flushTo(mTable.getHTable(),
+          mIncrements.hasStripeIncrements() ? mTable.getCounterStripesHTable() : null,
+          mTranslator);
     }
   }
 
@@ -175,7 +247,7 @@ public class KijiTableOutputFormat<K> extends OutputFormat<K, KijiOutput>
   @Override
   public OutputCommitter getOutputCommitter(TaskAttemptContext context)
       throws IOException, InterruptedException {
-    return mDelegate.getOutputCommitter(context);
+    return new CheckpointOutputCommitter(mDelegate.getOutputCommitter(context));
   }
 
   /**
@@ -19,6 +19,7 @@
 
 package org.kiji.schema.mapreduce;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.io.DataInput;
@@ -35,8 +36,11 @@ import org.apache.hadoop.hbase.util.Bytes;
  * more intelligent about how it reports its size to other systems.
  */
 class KijiTableSplit extends TableSplit {
+  /** Length of a split whose size is not known, estimated from the HBase configuration. */
+  public static final long UNKNOWN_LENGTH = -1L;
+
   private byte[] mRegionStartKey;
-  private long mSplitSize; // lazily calculated and populated via getLength().
+  private long mSplitSize = UNKNOWN_LENGTH; // lazily calculated and populated via getLength().
 
   /**
    * The default constructor.
@@ -58,6 +62,26 @@ class KijiTableSplit extends TableSplit {
     mRegionStartKey = regionStartKey;
   }
 
+  /**
+   * Create a new KijiTableSplit instance covering a range of rows.
+   *
+   * @param tableName the name of the HBase table.
+   * @param startRow the first row of the split.
+   * @param endRow the end row of the split (exclusive), or empty for the end of the table.
+   * @param location the location of the region hosting the split.
+   * @param regionStartKey the starting key of the region associated with this split.
+   * @param length the estimated size of the split, in bytes, or UNKNOWN_LENGTH if unknown.
+   */
+  public KijiTableSplit(byte[] tableName, byte[] startRow, byte[] endRow, String location,
+      byte[] regionStartKey, long length) {
+    super(tableName, startRow, endRow, location);
+
+    checkNotNull(regionStartKey);
+    checkArgument((length >= 0) || (UNKNOWN_LENGTH == length), "Invalid split length: %s", length);
+    mRegionStartKey = regionStartKey;
+    mSplitSize = length;
+  }
+
   /**
    * Returns the start key of the region associated with this split.  If this split
    * is the first in the total scan, this may differ from the value returned by
@@ -72,9 +96,10 @@ class KijiTableSplit extends TableSplit {
   /**
    * Returns the length of the split.
 
-   * This method does not currently examine the data in the region
-   * represented by the split. We assume that each split is 3/4 full (where
-   * "full" is defined as hbase.hregion.max.filesize). If the region had
+   * Unless the split was created with a size estimate, this method does not
+   * examine the data in the region represented by the split. We assume that
+   * each split is 3/4 full (where "full" is defined as
+   * hbase.hregion.max.filesize). If the region had
    * that many bytes in it, it would split in two, each containing 1/2 that
    * many bytes. So we expect, on average, regions to be halfway between
    * "newly split" and "just about to split."
@@ -84,7 +109,7 @@ class KijiTableSplit extends TableSplit {
    */
   @Override
   public long getLength() {
-    if (0 == mSplitSize) {
+    if (UNKNOWN_LENGTH == mSplitSize) {
       // Calculate this value once and memoize its result.
       Configuration conf = new Configuration();
       conf = HBaseConfiguration.addHbaseResources(conf);
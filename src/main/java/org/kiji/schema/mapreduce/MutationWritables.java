@@ -0,0 +1,298 @@
+/**
+ * (c) Copyright 2012 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.schema.mapreduce;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.avro.Schema;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.io.WritableUtils;
+
+import org.kiji.schema.Kiji;
+import org.kiji.schema.KijiConfiguration;
+import org.kiji.schema.KijiSchemaTable;
+
+/**
+ * Compact Writable encoding shared by the {@link KijiMutation}s.
+ *
+ * <p>Every mutation starts with its sort key: the HBase row key, then the family and the
+ * qualifier, each written as a nullable byte array. A nullable byte array is a variable-length
+ * integer holding the length of the array plus one (zero for null), followed by the bytes.
+ * This lets {@link KijiOutput.Comparator} compare serialized mutations without deserializing
+ * them.</p>
+ *
+ * <p>Avro schemas are written as their ID in the schema table of the output Kiji instance, so
+ * that a mutation does not carry its full JSON schema through the shuffle. Mutations written
+ * without access to a schema table, for instance outside of a map-reduce job, fall back to the
+ * JSON description of the schema.</p>
+ */
+final class MutationWritables {
+  /** Tag of a schema written as its full JSON description. */
+  private static final byte JSON_SCHEMA = 0;
+
+  /** Tag of a schema written as its ID in the Kiji schema table. */
+  private static final byte SCHEMA_ID = -1;
+
+  /** Parsed schemas, by JSON description, so that each distinct schema is parsed once. */
+  private static final ConcurrentMap<String, Schema> PARSED_SCHEMAS =
+      new ConcurrentHashMap<String, Schema>();
+
+  /**
+   * Schema tables of the output Kiji instances, by instance name. The Kiji instances are opened
+   * once per task JVM, and are kept open for the lifetime of the JVM.
+   */
+  private static final ConcurrentMap<String, KijiSchemaTable> SCHEMA_TABLES =
+      new ConcurrentHashMap<String, KijiSchemaTable>();
+
+  /** Utility class cannot be instantiated. */
+  private MutationWritables() {}
+
+  /**
+   * Writes a nullable byte array.
+   *
+   * @param out The output to write to.
+   * @param bytes The bytes to write, or null.
+   * @throws IOException If there is an error writing.
+   */
+  static void writeBytes(DataOutput out, byte[] bytes) throws IOException {
+    if (null == bytes) {
+      WritableUtils.writeVInt(out, 0);
+      return;
+    }
+    WritableUtils.writeVInt(out, bytes.length + 1);
+    out.write(bytes);
+  }
+
+  /**
+   * Reads a nullable byte array.
+   *
+   * @param in The input to read from.
+   * @return The bytes read, or null.
+   * @throws IOException If there is an error reading.
+   */
+  static byte[] readBytes(DataInput in) throws IOException {
+    final int length = WritableUtils.readVInt(in) - 1;
+    if (length < 0) {
+      return null;
+    }
+    final byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return bytes;
+  }
+
+  /**
+   * Writes a nullable string, as UTF-8 bytes.
+   *
+   * @param out The output to write to.
+   * @param string The string to write, or null.
+   * @throws IOException If there is an error writing.
+   */
+  static void writeString(DataOutput out, String string) throws IOException {
+    if (null == string) {
+      writeBytes(out, null);
+      return;
+    }
+    writeBytes(out, string.getBytes("UTF-8"));
+  }
+
+  /**
+   * Reads a nullable string.
+   *
+   * @param in The input to read from.
+   * @return The string read, or null.
+   * @throws IOException If there is an error reading.
+   */
+  static String readString(DataInput in) throws IOException {
+    final byte[] bytes = readBytes(in);
+    if (null == bytes) {
+      return null;
+    }
+    return new String(bytes, "UTF-8");
+  }
+
+  /**
+   * Writes an Avro schema. Primitive schemas are written as a single byte, other schemas as
+   * their ID in the schema table, or as their JSON description when no schema table is given.
+   *
+   * @param out The output to write to.
+   * @param schema The schema to write.
+   * @param schemaTable The schema table to write schema IDs from, or null.
+   * @throws IOException If there is an error writing.
+   */
+  static void writeSchema(DataOutput out, Schema schema, KijiSchemaTable schemaTable)
+      throws IOException {
+    if (isPrimitive(schema)) {
+      out.writeByte(schema.getType().ordinal() + 1);
+      return;
+    }
+    if (null != schemaTable) {
+      out.writeByte(SCHEMA_ID);
+      WritableUtils.writeVLong(out, schemaTable.getOrCreateSchemaId(schema));
+      return;
+    }
+    out.writeByte(JSON_SCHEMA);
+    writeString(out, schema.toString());
+  }
+
+  /**
+   * Reads an Avro schema.
+   *
+   * @param in The input to read from.
+   * @param schemaTable The schema table to resolve schema IDs from, or null.
+   * @return The schema read.
+   * @throws IOException If there is an error reading, or if the schema ID cannot be resolved.
+   */
+  static Schema readSchema(DataInput in, KijiSchemaTable schemaTable) throws IOException {
+    final byte tag = in.readByte();
+    if (SCHEMA_ID == tag) {
+      final long schemaId = WritableUtils.readVLong(in);
+      if (null == schemaTable) {
+        throw new IOException(String.format(
+            "Cannot resolve schema ID %d without a Kiji schema table.", schemaId));
+      }
+      final Schema schema = schemaTable.getSchema(schemaId);
+      if (null == schema) {
+        throw new IOException(String.format("Unknown schema ID %d.", schemaId));
+      }
+      return schema;
+    }
+    if (JSON_SCHEMA != tag) {
+      return Schema.create(Schema.Type.values()[tag - 1]);
+    }
+    final String json = readString(in);
+    Schema schema = PARSED_SCHEMAS.get(json);
+    if (null == schema) {
+      schema = new Schema.Parser().parse(json);
+      PARSED_SCHEMAS.putIfAbsent(json, schema);
+    }
+    return schema;
+  }
+
+  /**
+   * Gets the schema table of the output Kiji instance of a job.
+   *
+   * @param conf The job configuration, or null.
+   * @return The schema table of the output Kiji instance, or null if the configuration does not
+   *     name one.
+   * @throws IOException If the Kiji instance cannot be opened.
+   */
+  static KijiSchemaTable getSchemaTable(Configuration conf) throws IOException {
+    if (null == conf) {
+      return null;
+    }
+    final String instance = conf.get(KijiTableOutputFormat.INSTANCE_CONF_NAME);
+    if (null == instance) {
+      return null;
+    }
+    KijiSchemaTable schemaTable = SCHEMA_TABLES.get(instance);
+    if (null == schemaTable) {
+      synchronized (SCHEMA_TABLES) {
+        schemaTable = SCHEMA_TABLES.get(instance);
+        if (null == schemaTable) {
+          schemaTable = Kiji.open(new KijiConfiguration(conf, instance)).getSchemaTable();
+          SCHEMA_TABLES.put(instance, schemaTable);
+        }
+      }
+    }
+    return schemaTable;
+  }
+
+  /**
+   * Tests whether a schema is fully described by its type.
+   *
+   * @param schema An Avro schema.
+   * @return Whether the schema is a primitive type without properties.
+   */
+  private static boolean isPrimitive(Schema schema) {
+    switch (schema.getType()) {
+    case STRING:
+    case BYTES:
+    case INT:
+    case LONG:
+    case FLOAT:
+    case DOUBLE:
+    case BOOLEAN:
+    case NULL:
+      return schema.getJsonProps().isEmpty();
+    default:
+      return false;
+    }
+  }
+
+  /**
+   * Finds the end of the sort key of a serialized mutation, ie. its row key, family and
+   * qualifier.
+   *
+   * @param bytes The serialized mutation.
+   * @param start The offset of the mutation in the bytes.
+   * @return The offset of the first byte after the sort key.
+   * @throws IOException If the sort key cannot be decoded.
+   */
+  static int getSortKeyEnd(byte[] bytes, int start) throws IOException {
+    int offset = start;
+    for (int field = 0; field < 3; field++) {
+      final int length = WritableComparator.readVInt(bytes, offset) - 1;
+      offset += WritableUtils.decodeVIntSize(bytes[offset]) + Math.max(length, 0);
+    }
+    return offset;
+  }
+
+  /**
+   * Compares the sort keys of two serialized mutations, field by field.
+   *
+   * <p>Null fields sort before all other values; byte arrays compare lexicographically.</p>
+   *
+   * @param b1 The first serialized mutation.
+   * @param s1 The offset of the first mutation.
+   * @param b2 The second serialized mutation.
+   * @param s2 The offset of the second mutation.
+   * @return A negative integer, zero, or a positive integer as the first sort key is less than,
+   *     equal to, or greater than the second.
+   * @throws IOException If the sort keys cannot be decoded.
+   */
+  static int compareSortKeys(byte[] b1, int s1, byte[] b2, int s2) throws IOException {
+    int o1 = s1;
+    int o2 = s2;
+    for (int field = 0; field < 3; field++) {
+      final int l1 = WritableComparator.readVInt(b1, o1) - 1;
+      final int l2 = WritableComparator.readVInt(b2, o2) - 1;
+      o1 += WritableUtils.decodeVIntSize(b1[o1]);
+      o2 += WritableUtils.decodeVIntSize(b2[o2]);
+      if ((l1 < 0) || (l2 < 0)) {
+        if (l1 != l2) {
+          return l1 - l2;
+        }
+        continue;
+      }
+      final int cmp = WritableComparator.compareBytes(b1, o1, l1, b2, o2, l2);
+      if (0 != cmp) {
+        return cmp;
+      }
+      o1 += l1;
+      o2 += l2;
+    }
+    return 0;
+  }
+}
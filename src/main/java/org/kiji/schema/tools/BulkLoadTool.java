@@ -0,0 +1,123 @@
+/**
+ * (c) Copyright 2012 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.schema.tools;
+
+import java.util.List;
+
+import com.odiago.common.flags.Flag;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.client.HTable;
+import org.apache.hadoop.hbase.mapreduce.LoadIncrementalHFiles;
+import org.apache.hadoop.util.ToolRunner;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.kiji.schema.KijiManagedHBaseTableName;
+import org.kiji.schema.impl.HBaseColumnIndex;
+import org.kiji.schema.layout.KijiTableLayout;
+
+/**
+ * Command-line tool to bulk-load HFiles written by
+ * {@link org.kiji.schema.mapreduce.KijiHFileOutputFormat} into a kiji table.
+ *
+ * <p>Bulk-loaded cells bypass the secondary index: tables with indexed columns are refused
+ * unless --allow-stale-index is set, in which case the rebuild-index tool must be run after
+ * the load.</p>
+ */
+public class BulkLoadTool extends VersionValidatedTool {
+  private static final Logger LOG = LoggerFactory.getLogger(BulkLoadTool.class);
+
+  @Flag(name="table", usage="kiji table name")
+  private String mTableName = "";
+
+  @Flag(name="hfile", usage="Path of the output directory of the HFile job.")
+  private String mHFile = "";
+
+  @Flag(name="allow-stale-index",
+      usage="Bulk-load into a table with indexed columns, whose index must then be rebuilt")
+  private boolean mAllowStaleIndex = false;
+
+  @Override
+  protected void validateFlags() throws Exception {
+    super.validateFlags();
+    if (mTableName.isEmpty()) {
+      throw new RequiredFlagException("table");
+    }
+    if (mHFile.isEmpty()) {
+      throw new RequiredFlagException("hfile");
+    }
+  }
+
+  @Override
+  protected int run(List<String> nonFlagArgs) throws Exception {
+    final KijiTableLayout tableLayout = getKiji().getMetaTable().getTableLayout(mTableName);
+    if (null == tableLayout) {
+      LOG.error("No such table: " + mTableName);
+      return 1;
+    }
+    final String staleIndexWarning = getStaleIndexWarning(mTableName, tableLayout);
+    if ((null != staleIndexWarning) && !mAllowStaleIndex) {
+      LOG.error(staleIndexWarning + " Use --allow-stale-index to load it anyway.");
+      return 1;
+    }
+
+    final String htableName = KijiManagedHBaseTableName
+        .getKijiTableName(getURI().getInstance(), mTableName)
+        .toString();
+    final HTable htable = new HTable(getConf(), htableName);
+    try {
+      // HFiles that span several regions are split by LoadIncrementalHFiles before loading.
+      new LoadIncrementalHFiles(getConf()).doBulkLoad(new Path(mHFile), htable);
+    } finally {
+      htable.close();
+    }
+    getPrintStream().println("Bulk-loaded " + mHFile + " into table: " + mTableName);
+    if (null != staleIndexWarning) {
+      getPrintStream().println(staleIndexWarning);
+    }
+    return 0;
+  }
+
+  /**
+   * Builds the warning for a bulk load into a table whose index would not cover the loaded cells.
+   *
+   * @param tableName The name of the kiji table.
+   * @param tableLayout The layout of the kiji table.
+   * @return the warning, or null if the table has no indexed column.
+   */
+  static String getStaleIndexWarning(String tableName, KijiTableLayout tableLayout) {
+    if (!HBaseColumnIndex.hasIndexedColumns(tableLayout)) {
+      return null;
+    }
+    return String.format("Table %s has indexed columns %s, which bulk loads do not index: "
+        + "run 'kiji rebuild-index --table=%s' after the load.",
+        tableName, HBaseColumnIndex.getIndexedColumns(tableLayout), tableName);
+  }
+
+  /**
+   * Program entry point.
+   *
+   * @param args The command-line arguments.
+   * @throws Exception If there is an error.
+   */
+  public static void main(String[] args) throws Exception {
+    System.exit(ToolRunner.run(new BulkLoadTool(), args));
+  }
+}
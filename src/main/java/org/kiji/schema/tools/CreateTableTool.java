@@ -33,8 +33,13 @@ import org.apache.hadoop.util.ToolRunner;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.kiji.schema.EntityIdFactory;
 import org.kiji.schema.KijiAdmin;
+import org.kiji.schema.KijiTable;
+import org.kiji.schema.avro.RowKeyEncoding;
+import org.kiji.schema.impl.RowKeyHasher;
 import org.kiji.schema.layout.KijiTableLayout;
+import org.kiji.schema.util.RowKeySampler;
 import org.kiji.schema.util.SplitKeyFile;
 
 
@@ -61,6 +66,26 @@ public class CreateTableTool extends VersionValidatedTool {
       usage="Path to a file of row keys to use as boundaries between regions")
   private String mSplitKeyFilePath = "";
 
+  // Alternatively, --num-regions may be combined with a sample of the row keys, from an existing
+  // table or from a file, to compute balanced split keys for any row key format.
+  @Flag(name="sample-table",
+      usage="Name of an existing kiji table whose row keys are sampled to compute split keys")
+  private String mSampleTableName = "";
+
+  @Flag(name="sample-file",
+      usage="Path to a file of kiji row keys, one per line, sampled to compute split keys")
+  private String mSampleFilePath = "";
+
+  @Flag(name="sample-rate", usage="Fraction of the rows of --sample-table to sample")
+  private float mSampleRate = 0.01f;
+
+  @Flag(name="max-samples", usage="Maximum number of row keys kept in the sample")
+  private int mMaxSamples = RowKeySampler.DEFAULT_MAX_SAMPLES;
+
+  @Flag(name="split-by",
+      usage="Balance sampled regions by 'rows' or by 'size' (size requires --sample-table)")
+  private String mSplitBy = "rows";
+
   private HBaseAdmin mHBaseAdmin;
 
   @Override
@@ -76,9 +101,25 @@ public class CreateTableTool extends VersionValidatedTool {
       throw new RuntimeException(
           "Only one of --num-regions and --split-key-file may be specified");
     }
+    if (isSampling() && !mSplitKeyFilePath.isEmpty()) {
+      throw new RuntimeException(
+          "Only one of --split-key-file and row key sampling may be specified");
+    }
     if (mNumRegions < 1) {
       throw new RuntimeException("--num-regions must be positive");
     }
+    if (!mSampleTableName.isEmpty() && !mSampleFilePath.isEmpty()) {
+      throw new RuntimeException("Only one of --sample-table and --sample-file may be specified");
+    }
+    if (isSampling() && (mNumRegions < 2)) {
+      throw new RuntimeException("Sampling row keys requires --num-regions of at least 2");
+    }
+    if (!mSplitBy.equals("rows") && !mSplitBy.equals("size")) {
+      throw new RuntimeException("--split-by must be 'rows' or 'size'");
+    }
+    if (mSplitBy.equals("size") && mSampleTableName.isEmpty()) {
+      throw new RuntimeException("--split-by=size requires --sample-table");
+    }
   }
 
   @Override
@@ -112,20 +153,22 @@ public class CreateTableTool extends VersionValidatedTool {
 
     setURI(getURI().setTableName(mTableName));
     getPrintStream().println("Creating kiji table: " + getURI().toString() + "...");
-    if (mNumRegions > 1) {
+    if (isSampling()) {
+      // Create a table with regions balanced according to a sample of the row keys.
+      final byte[][] splitKeys = sampleSplitKeys(tableLayout);
+      getPrintStream().println(String.format("Sampled %d split keys.", splitKeys.length));
+      admin.createTable(mTableName, tableLayout, false, splitKeys);
+    } else if (mNumRegions > 1) {
       // Create a table with an initial number of evenly split regions.
       admin.createTable(mTableName, tableLayout, false, mNumRegions);
     } else if (!mSplitKeyFilePath.isEmpty()) {
-      switch (tableLayout.getDesc().getKeysFormat().getEncoding()) {
-      case HASH:
-      case HASH_PREFIX:
+      if (RowKeyHasher.isHashed(tableLayout.getDesc().getKeysFormat())) {
         throw new RuntimeException(
             "Row key hashing is enabled for the table.  Use --num-regions instead.");
-      case RAW:
-        break;
-      default:
+      }
+      if (tableLayout.getDesc().getKeysFormat().getEncoding() == RowKeyEncoding.SALTED) {
         throw new RuntimeException(
-            "Unexpected row key encoding: " + tableLayout.getDesc().getKeysFormat().getEncoding());
+            "Row keys are salted for the table.  Use --num-regions instead.");
       }
       // Open the split key file.
       Path splitKeyFilePath = new Path(mSplitKeyFilePath);
@@ -150,6 +193,47 @@ public class CreateTableTool extends VersionValidatedTool {
     return 0;
   }
 
+  /**
+   * Determines whether split keys are computed from a sample of the row keys.
+   *
+   * @return whether a sample source was specified.
+   */
+  private boolean isSampling() {
+    return !mSampleTableName.isEmpty() || !mSampleFilePath.isEmpty();
+  }
+
+  /**
+   * Computes split keys from a sample of the row keys of an existing table or of a file.
+   *
+   * @param tableLayout Layout of the table to create.
+   * @return The row keys that serve as the boundaries between the regions.
+   * @throws IOException on I/O error.
+   */
+  private byte[][] sampleSplitKeys(KijiTableLayout tableLayout) throws IOException {
+    final EntityIdFactory targetFactory =
+        EntityIdFactory.create(tableLayout.getDesc().getKeysFormat());
+    final RowKeySampler sampler = new RowKeySampler(mMaxSamples);
+    if (!mSampleTableName.isEmpty()) {
+      getPrintStream().println("Sampling row keys from kiji table: " + mSampleTableName);
+      final KijiTable sampleTable = getKiji().openTable(mSampleTableName);
+      try {
+        sampler.addTable(sampleTable, targetFactory, mSampleRate,
+            mSplitBy.equals("size") ? RowKeySampler.Balance.SIZE : RowKeySampler.Balance.ROW_COUNT);
+      } finally {
+        IOUtils.closeQuietly(sampleTable);
+      }
+    } else {
+      getPrintStream().println("Sampling row keys from file: " + mSampleFilePath);
+      final Path sampleFilePath = new Path(mSampleFilePath);
+      final FileSystem sampleFileFs = fileSystemSpecified(sampleFilePath)
+          ? sampleFilePath.getFileSystem(getConf()) : FileSystem.getLocal(getConf());
+      sampler.addRowKeyFile(sampleFileFs.open(sampleFilePath), targetFactory);
+    }
+    LOG.debug(String.format("Sampled %d row keys out of %d.",
+        sampler.getNumSamples(), sampler.getNumRowKeys()));
+    return sampler.getSplitKeys(mNumRegions);
+  }
+
   /**
    * Determines whether a path has its filesystem explicitly specified.  Did it start
    * with "hdfs://" or "file://"?
@@ -0,0 +1,174 @@
+/**
+ * (c) Copyright 2012 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.kiji.schema.tools;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.odiago.common.flags.Flag;
+import org.apache.commons.io.IOUtils;
+import org.apache.hadoop.hbase.HTableDescriptor;
+import org.apache.hadoop.hbase.client.HBaseAdmin;
+import org.apache.hadoop.hbase.client.HTable;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.util.ToolRunner;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.kiji.schema.HBaseColumnName;
+import org.kiji.schema.KijiColumnName;
+import org.kiji.schema.KijiManagedHBaseTableName;
+import org.kiji.schema.impl.HBaseColumnIndex;
+import org.kiji.schema.layout.ColumnNameTranslator;
+import org.kiji.schema.layout.KijiTableLayout;
+
+/**
+ * Command-line tool rebuilding the secondary index of a kiji table from its content.
+ *
+ * <p>Use it to index the existing rows after a column is declared indexed, or to drop the
+ * stale entries left behind by overwritten and deleted cells.  Unless --truncate=false, the
+ * index table is recreated first: writers to the table should be stopped meanwhile.</p>
+ */
+public class RebuildIndexTool extends VersionValidatedTool {
+  private static final Logger LOG = LoggerFactory.getLogger(RebuildIndexTool.class);
+
+  @Flag(name="table", usage="The name of the kiji table whose index to rebuild.")
+  private String mTableName = "";
+
+  @Flag(name="truncate",
+      usage="Recreate the index table before indexing the rows, dropping stale entries")
+  private boolean mTruncate = true;
+
+  @Flag(name="batch-size", usage="Number of index entries written per batch")
+  private int mBatchSize = 1000;
+
+  private HBaseAdmin mHBaseAdmin;
+
+  @Override
+  protected void validateFlags() throws Exception {
+    super.validateFlags();
+    if (mTableName.isEmpty()) {
+      throw new RequiredFlagException("table");
+    }
+    if (mBatchSize < 1) {
+      throw new RuntimeException("--batch-size must be positive");
+    }
+  }
+
+  @Override
+  protected void setup() throws Exception {
+    super.setup();
+    mHBaseAdmin = new HBaseAdmin(getConf());
+  }
+
+  @Override
+  protected void cleanup() throws IOException {
+    IOUtils.closeQuietly(mHBaseAdmin);
+    super.cleanup();
+  }
+
+  @Override
+  protected int run(List<String> nonFlagArgs) throws Exception {
+    final KijiTableLayout tableLayout = getKiji().getMetaTable().getTableLayout(mTableName);
+    if (null == tableLayout) {
+      LOG.error("No such table: " + mTableName);
+      return 1;
+    }
+    setURI(getURI().setTableName(mTableName));
+    final List<KijiColumnName> indexedColumns = HBaseColumnIndex.getIndexedColumns(tableLayout);
+    if (indexedColumns.isEmpty()) {
+      LOG.error("Table " + mTableName + " has no indexed column.");
+      return 1;
+    }
+
+    final String instanceName = getURI().getInstance();
+    final HTableDescriptor indexDesc =
+        HBaseColumnIndex.getIndexTableDescriptor(instanceName, mTableName);
+    if (mHBaseAdmin.tableExists(indexDesc.getName()) && mTruncate) {
+      getPrintStream().println("Dropping the index table " + indexDesc.getNameAsString());
+      mHBaseAdmin.disableTable(indexDesc.getName());
+      mHBaseAdmin.deleteTable(indexDesc.getName());
+    }
+    if (!mHBaseAdmin.tableExists(indexDesc.getName())) {
+      mHBaseAdmin.createTable(indexDesc);
+    }
+
+    // Only the latest version of the indexed columns is scanned:
+    final ColumnNameTranslator translator = new ColumnNameTranslator(tableLayout);
+    final Scan scan = new Scan();
+    for (KijiColumnName column : indexedColumns) {
+      final HBaseColumnName hbaseColumn = translator.toHBaseColumnName(column);
+      scan.addColumn(hbaseColumn.getFamily(), hbaseColumn.getQualifier());
+    }
+    scan.setMaxVersions(1);
+    scan.setCaching(mBatchSize);
+    scan.setCacheBlocks(false);
+
+    final HBaseColumnIndex index = new HBaseColumnIndex(tableLayout, getKiji().getSchemaTable());
+    final HTable htable = new HTable(getConf(),
+        KijiManagedHBaseTableName.getKijiTableName(instanceName, mTableName).toString());
+    final HTable indexHTable = new HTable(getConf(), indexDesc.getName());
+    long rows = 0;
+    long entries = 0;
+    try {
+      indexHTable.setAutoFlush(false);
+      final ResultScanner scanner = htable.getScanner(scan);
+      try {
+        final List<Put> batch = new ArrayList<Put>();
+        for (Result result : scanner) {
+          rows += 1;
+          index.addIndexPuts(Arrays.asList(result.raw()), batch);
+          if (batch.size() >= mBatchSize) {
+            entries += batch.size();
+            indexHTable.put(batch);
+            batch.clear();
+          }
+        }
+        entries += batch.size();
+        indexHTable.put(batch);
+        indexHTable.flushCommits();
+      } finally {
+        scanner.close();
+      }
+    } finally {
+      indexHTable.close();
+      htable.close();
+    }
+    getPrintStream().println(String.format(
+        "Indexed %d entries from %d rows of table %s.", entries, rows, getURI()));
+    return 0;
+  }
+
+  /**
+   * Program entry point.
+   *
+   * @param args The command-line arguments.
+   * @throws Exception If there is an error.
+   */
+  public static void main(String[] args) throws Exception {
+    System.exit(ToolRunner.run(new RebuildIndexTool(), args));
+  }
+}
@@ -0,0 +1,534 @@
+/**
+ * (c) Copyright 2012 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.kiji.schema.tools;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import com.odiago.common.flags.Flag;
+import org.apache.commons.io.IOUtils;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.ClusterStatus;
+import org.apache.hadoop.hbase.HRegionInfo;
+import org.apache.hadoop.hbase.HServerLoad;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.ServerName;
+import org.apache.hadoop.hbase.client.HBaseAdmin;
+import org.apache.hadoop.hbase.client.HTable;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.filter.RandomRowFilter;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.util.ToolRunner;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.kiji.schema.KijiManagedHBaseTableName;
+import org.kiji.schema.avro.CompressionType;
+import org.kiji.schema.avro.LocalityGroupDesc;
+import org.kiji.schema.layout.KijiTableLayout;
+import org.kiji.schema.layout.KijiTableLayout.LocalityGroupLayout;
+import org.kiji.schema.util.RowKeySampler;
+import org.kiji.schema.util.SplitKeyFile;
+
+/**
+ * Command-line tool reporting the load and the row key distribution of the regions of a kiji
+ * table, to diagnose hot or oversized regions.
+ *
+ * <p>Request rates and store sizes come from the HBase cluster status; request rates are the
+ * difference between two snapshots of the cumulative request counts.  With --interval-secs=0,
+ * the cumulative request counts since the regions were opened are reported as totals instead.
+ * Row counts, row sizes and locality group sizes are estimated from a sampled scan of the
+ * table.  The tool suggests split keys for the hot regions, in the split key file format, and
+ * locality group tuning.</p>
+ */
+public class RegionStatsTool extends VersionValidatedTool {
+  private static final Logger LOG = LoggerFactory.getLogger(RegionStatsTool.class);
+
+  /** Number of bytes in a megabyte. */
+  private static final long MB = 1024L * 1024L;
+
+  @Flag(name="table", usage="The name of the kiji table to analyze.")
+  private String mTableName = "";
+
+  @Flag(name="interval-secs",
+      usage="Seconds between the two cluster status snapshots used to compute request rates, "
+      + "or 0 to report the request counts since the regions were opened")
+  private int mIntervalSecs = 10;
+
+  @Flag(name="sample-rate", usage="Fraction of the rows to sample, or 0 to skip sampling")
+  private float mSampleRate = 0.01f;
+
+  @Flag(name="max-samples", usage="Maximum number of row keys sampled per region")
+  private int mMaxSamples = 10000;
+
+  @Flag(name="skew-factor",
+      usage="A region is hot when its load is at least this factor times the average load")
+  private double mSkewFactor = 2.0;
+
+  @Flag(name="split-key-file", usage="Path of a file to write the suggested split keys to")
+  private String mSplitKeyFilePath = "";
+
+  @Flag(name="in-memory-max-mb",
+      usage="Largest locality group for which in-memory caching is suggested, in megabytes")
+  private long mInMemoryMaxMB = 256;
+
+  @Flag(name="compress-min-mb",
+      usage="Smallest uncompressed locality group for which compression is suggested, in MB")
+  private long mCompressMinMB = 1024;
+
+  private HBaseAdmin mHBaseAdmin;
+
+  /** Statistics gathered about a region. */
+  private static final class RegionStats {
+    private final HRegionInfo mInfo;
+    private final ServerName mServer;
+    private final RowKeySampler mSampler;
+    /** Read requests per second, or since the region was opened if the interval is 0. */
+    private double mReadRate = 0.0;
+    /** Write requests per second, or since the region was opened if the interval is 0. */
+    private double mWriteRate = 0.0;
+    private int mStoreFileSizeMB = 0;
+    private int mMemStoreSizeMB = 0;
+    private long mSampledRows = 0;
+    private long mSampledBytes = 0;
+
+    /**
+     * Creates statistics for a region.
+     *
+     * @param info The region.
+     * @param server The region server hosting the region.
+     * @param maxSamples Maximum number of row keys to sample in the region.
+     */
+    private RegionStats(HRegionInfo info, ServerName server, int maxSamples) {
+      mInfo = info;
+      mServer = server;
+      mSampler = new RowKeySampler(maxSamples);
+    }
+
+  }
+
+  /**
+   * Gets the total request rates of regions.
+   *
+   * @param regions Regions of the table.
+   * @return the request rates of the regions, in requests per second, or the request counts
+   *     since the regions were opened if the interval is 0.
+   */
+  private static double[] getRequestRates(List<RegionStats> regions) {
+    final double[] rates = new double[regions.size()];
+    for (int i = 0; i < rates.length; i++) {
+      rates[i] = regions.get(i).mReadRate + regions.get(i).mWriteRate;
+    }
+    return rates;
+  }
+
+  /**
+   * Gets the sizes of regions.
+   *
+   * @param regions Regions of the table.
+   * @return the sizes of the regions, in megabytes.
+   */
+  private static double[] getSizes(List<RegionStats> regions) {
+    final double[] sizes = new double[regions.size()];
+    for (int i = 0; i < sizes.length; i++) {
+      sizes[i] = regions.get(i).mStoreFileSizeMB + regions.get(i).mMemStoreSizeMB;
+    }
+    return sizes;
+  }
+
+  @Override
+  protected void validateFlags() throws Exception {
+    super.validateFlags();
+    if (mTableName.isEmpty()) {
+      throw new RequiredFlagException("table");
+    }
+    if (mIntervalSecs < 0) {
+      throw new RuntimeException("--interval-secs must not be negative");
+    }
+    if ((mSampleRate < 0.0f) || (mSampleRate > 1.0f)) {
+      throw new RuntimeException("--sample-rate must be between 0 and 1");
+    }
+    if (mMaxSamples < 1) {
+      throw new RuntimeException("--max-samples must be positive");
+    }
+    if (mSkewFactor <= 1.0) {
+      throw new RuntimeException("--skew-factor must be greater than 1");
+    }
+  }
+
+  @Override
+  protected void setup() throws Exception {
+    super.setup();
+    mHBaseAdmin = new HBaseAdmin(getConf());
+  }
+
+  @Override
+  protected void cleanup() throws IOException {
+    IOUtils.closeQuietly(mHBaseAdmin);
+    super.cleanup();
+  }
+
+  @Override
+  protected int run(List<String> nonFlagArgs) throws Exception {
+    final KijiTableLayout tableLayout = getKiji().getMetaTable().getTableLayout(mTableName);
+    if (null == tableLayout) {
+      LOG.error("No such table: " + mTableName);
+      return 1;
+    }
+    setURI(getURI().setTableName(mTableName));
+
+    final String htableName = KijiManagedHBaseTableName
+        .getKijiTableName(getURI().getInstance(), mTableName)
+        .toString();
+    final HTable htable = new HTable(getConf(), htableName);
+    try {
+      // Regions indexed by start key:
+      final NavigableMap<byte[], RegionStats> regions =
+          new TreeMap<byte[], RegionStats>(Bytes.BYTES_COMPARATOR);
+      for (Map.Entry<HRegionInfo, ServerName> entry : htable.getRegionLocations().entrySet()) {
+        regions.put(entry.getKey().getStartKey(),
+            new RegionStats(entry.getKey(), entry.getValue(), mMaxSamples));
+      }
+
+      collectLoads(regions);
+      final Map<String, Long> familyBytes = new TreeMap<String, Long>();
+      if (mSampleRate > 0.0f) {
+        sampleRows(htable, regions, familyBytes);
+      }
+
+      final List<RegionStats> regionList = new ArrayList<RegionStats>(regions.values());
+      printRegions(regionList);
+      printSplitKeys(regionList);
+      printLocalityGroupTuning(tableLayout, regionList, familyBytes);
+    } finally {
+      htable.close();
+    }
+    return 0;
+  }
+
+  /**
+   * Snapshots the cumulative request counts of all the regions of the cluster.
+   *
+   * @return the HBase load of the regions, indexed by region name.
+   * @throws IOException on I/O error.
+   */
+  private Map<byte[], HServerLoad.RegionLoad> getRegionLoads() throws IOException {
+    final Map<byte[], HServerLoad.RegionLoad> loads =
+        new TreeMap<byte[], HServerLoad.RegionLoad>(Bytes.BYTES_COMPARATOR);
+    final ClusterStatus status = mHBaseAdmin.getClusterStatus();
+    for (ServerName server : status.getServers()) {
+      loads.putAll(status.getLoad(server).getRegionsLoad());
+    }
+    return loads;
+  }
+
+  /**
+   * Fills in the request rates and store sizes of the regions from the cluster status.
+   *
+   * @param regions Regions of the table, indexed by start key.
+   * @throws IOException on I/O error.
+   * @throws InterruptedException If interrupted while waiting between two snapshots.
+   */
+  private void collectLoads(NavigableMap<byte[], RegionStats> regions)
+      throws IOException, InterruptedException {
+    final Map<byte[], HServerLoad.RegionLoad> before = getRegionLoads();
+    Map<byte[], HServerLoad.RegionLoad> after = before;
+    if (mIntervalSecs > 0) {
+      getPrintStream().println(String.format(
+          "Measuring request rates over %d seconds...", mIntervalSecs));
+      Thread.sleep(mIntervalSecs * 1000L);
+      after = getRegionLoads();
+    }
+    for (RegionStats stats : regions.values()) {
+      final HServerLoad.RegionLoad load = after.get(stats.mInfo.getRegionName());
+      if (null == load) {
+        LOG.warn("No load reported for region " + stats.mInfo.getRegionNameAsString());
+        continue;
+      }
+      stats.mStoreFileSizeMB = load.getStorefileSizeMB();
+      stats.mMemStoreSizeMB = load.getMemStoreSizeMB();
+      // A region opened between the two snapshots counted its requests from zero.
+      final HServerLoad.RegionLoad previous = before.get(stats.mInfo.getRegionName());
+      stats.mReadRate = getRequestRate(load.getReadRequestsCount(),
+          (null == previous) ? 0L : previous.getReadRequestsCount(), mIntervalSecs);
+      stats.mWriteRate = getRequestRate(load.getWriteRequestsCount(),
+          (null == previous) ? 0L : previous.getWriteRequestsCount(), mIntervalSecs);
+    }
+  }
+
+  /**
+   * Computes the request rate of a region from two snapshots of its cumulative request count.
+   *
+   * @param count The request count of the region in the last snapshot.
+   * @param previousCount The request count of the region in the first snapshot.
+   * @param intervalSecs Seconds between the two snapshots, or 0 if there is a single snapshot.
+   * @return the requests per second between the snapshots, or the request count since the
+   *     region was opened if the interval is 0.
+   */
+  static double getRequestRate(long count, long previousCount, int intervalSecs) {
+    if (intervalSecs <= 0) {
+      return count;
+    }
+    return (double) (count - previousCount) / intervalSecs;
+  }
+
+  /**
+   * Samples the rows of the table, and records the sampled rows in their region.
+   *
+   * @param htable HTable to sample.
+   * @param regions Regions of the table, indexed by start key.
+   * @param familyBytes Filled with the number of sampled bytes per HBase family.
+   * @throws IOException on I/O error.
+   */
+  private void sampleRows(HTable htable, NavigableMap<byte[], RegionStats> regions,
+      Map<String, Long> familyBytes) throws IOException {
+    getPrintStream().println(String.format(
+        "Sampling %.2f%% of the rows...", mSampleRate * 100.0f));
+    final Scan scan = new Scan();
+    scan.setCaching(1000);
+    scan.setCacheBlocks(false);
+    if (mSampleRate < 1.0f) {
+      scan.setFilter(new RandomRowFilter(mSampleRate));
+    }
+    final ResultScanner scanner = htable.getScanner(scan);
+    try {
+      for (Result result : scanner) {
+        long rowBytes = 0;
+        for (KeyValue kv : result.raw()) {
+          rowBytes += kv.getLength();
+          final String family = Bytes.toString(kv.getFamily());
+          final Long bytes = familyBytes.get(family);
+          familyBytes.put(family, ((null == bytes) ? 0L : bytes) + kv.getLength());
+        }
+        final RegionStats stats = regions.floorEntry(result.getRow()).getValue();
+        stats.mSampledRows += 1;
+        stats.mSampledBytes += rowBytes;
+        stats.mSampler.add(result.getRow(), rowBytes);
+      }
+    } finally {
+      scanner.close();
+    }
+  }
+
+  /**
+   * Prints the statistics of each region, flagging the hot regions.
+   *
+   * @param regions Regions of the table, in row key order.
+   */
+  private void printRegions(List<RegionStats> regions) {
+    final PrintStream out = getPrintStream();
+    final double[] rates = getRequestRates(regions);
+    final double[] sizes = getSizes(regions);
+    final List<Integer> hotRegions = findHotRegions(rates, sizes, mSkewFactor);
+    // Without an interval, the request counts are totals since the regions were opened.
+    final boolean isRate = (mIntervalSecs > 0);
+    out.println(String.format("Regions of table %s:", getURI()));
+    out.println(String.format("%5s %-24s %10s %10s %10s %10s %12s  %s",
+        "index", "server", isRate ? "reads/s" : "reads", isRate ? "writes/s" : "writes",
+        "store MB", "memstore", "est. rows", "start key"));
+    final String rowFormat = isRate
+        ? "%5d %-24s %10.1f %10.1f %10d %10d %12s  %s%s"
+        : "%5d %-24s %10.0f %10.0f %10d %10d %12s  %s%s";
+    for (int i = 0; i < regions.size(); i++) {
+      final RegionStats stats = regions.get(i);
+      out.println(String.format(rowFormat,
+          i,
+          stats.mServer.getHostname(),
+          stats.mReadRate,
+          stats.mWriteRate,
+          stats.mStoreFileSizeMB,
+          stats.mMemStoreSizeMB,
+          (mSampleRate > 0.0f) ? Long.toString((long) (stats.mSampledRows / mSampleRate)) : "-",
+          SplitKeyFile.encodeRowKey(stats.mInfo.getStartKey()),
+          hotRegions.contains(i) ? "  <-- HOT" : ""));
+    }
+    out.println(String.format("Request %s skew (max/mean): %.2f",
+        isRate ? "rate" : "count", getSkew(rates)));
+    out.println(String.format("Region size skew (max/mean): %.2f", getSkew(sizes)));
+  }
+
+  /**
+   * Prints split keys for the hot regions, and writes them to the split key file if requested.
+   *
+   * @param regions Regions of the table, in row key order.
+   * @throws IOException on I/O error.
+   */
+  private void printSplitKeys(List<RegionStats> regions) throws IOException {
+    final List<byte[]> splitKeys = new ArrayList<byte[]>();
+    for (int index : findHotRegions(getRequestRates(regions), getSizes(regions), mSkewFactor)) {
+      final RegionStats stats = regions.get(index);
+      if (stats.mSampler.getNumSamples() < 2) {
+        continue;
+      }
+      for (byte[] splitKey : stats.mSampler.getSplitKeys(2)) {
+        splitKeys.add(splitKey);
+      }
+    }
+    final PrintStream out = getPrintStream();
+    if (splitKeys.isEmpty()) {
+      out.println("No split key suggested.");
+      return;
+    }
+    final StringBuilder content = new StringBuilder();
+    for (byte[] splitKey : splitKeys) {
+      content.append(SplitKeyFile.encodeRowKey(splitKey)).append('\n');
+    }
+    out.println("Suggested split keys for the hot regions:");
+    out.print(content);
+    if (!mSplitKeyFilePath.isEmpty()) {
+      final Path path = new Path(mSplitKeyFilePath);
+      final FileSystem fs = (null != path.toUri().getScheme())
+          ? path.getFileSystem(getConf()) : FileSystem.getLocal(getConf());
+      final FSDataOutputStream os = fs.create(path);
+      try {
+        os.write(Bytes.toBytes(content.toString()));
+      } finally {
+        os.close();
+      }
+      out.println("Wrote suggested split keys to: " + mSplitKeyFilePath);
+    }
+  }
+
+  /**
+   * Prints tuning suggestions for the locality groups of the table.
+   *
+   * @param tableLayout Layout of the table.
+   * @param regions Regions of the table.
+   * @param familyBytes Number of sampled bytes per HBase family.
+   */
+  private void printLocalityGroupTuning(KijiTableLayout tableLayout, List<RegionStats> regions,
+      Map<String, Long> familyBytes) {
+    if (mSampleRate <= 0.0f) {
+      return;
+    }
+    double readRate = 0.0;
+    double writeRate = 0.0;
+    for (RegionStats stats : regions) {
+      readRate += stats.mReadRate;
+      writeRate += stats.mWriteRate;
+    }
+    final PrintStream out = getPrintStream();
+    out.println("Locality group tuning:");
+    for (LocalityGroupLayout group : tableLayout.getLocalityGroups()) {
+      final Long sampledBytes = familyBytes.get(Bytes.toString(group.getId().toByteArray()));
+      final long estimatedMB =
+          (long) (((null == sampledBytes) ? 0L : sampledBytes) / mSampleRate / MB);
+      final List<String> suggestions = suggestLocalityGroupTuning(group.getDesc(), estimatedMB,
+          readRate, writeRate, mInMemoryMaxMB, mCompressMinMB);
+      out.println(String.format("  %s (est. %d MB): %s", group.getName(), estimatedMB,
+          suggestions.isEmpty() ? "no change suggested" : suggestions));
+    }
+  }
+
+  /**
+   * Finds the regions whose request rate or size is at least a factor of the average.
+   *
+   * @param rates Request rates of the regions.
+   * @param sizes Sizes of the regions.
+   * @param skewFactor Factor of the average load from which a region is hot.
+   * @return the indexes of the hot regions.
+   */
+  static List<Integer> findHotRegions(double[] rates, double[] sizes, double skewFactor) {
+    final double meanRate = getMean(rates);
+    final double meanSize = getMean(sizes);
+    final List<Integer> hot = new ArrayList<Integer>();
+    for (int i = 0; i < rates.length; i++) {
+      if (((meanRate > 0.0) && (rates[i] >= skewFactor * meanRate))
+          || ((meanSize > 0.0) && (sizes[i] >= skewFactor * meanSize))) {
+        hot.add(i);
+      }
+    }
+    return hot;
+  }
+
+  /**
+   * Computes the ratio between the largest and the average load of the regions.
+   *
+   * @param loads Loads of the regions.
+   * @return the ratio between the maximum and the mean load, or 0 if there is no load.
+   */
+  static double getSkew(double[] loads) {
+    double max = 0.0;
+    for (double load : loads) {
+      max = Math.max(max, load);
+    }
+    final double mean = getMean(loads);
+    return (mean > 0.0) ? max / mean : 0.0;
+  }
+
+  /**
+   * Computes the average of loads.
+   *
+   * @param loads Loads of the regions.
+   * @return the average load, or 0 if there is no region.
+   */
+  private static double getMean(double[] loads) {
+    double total = 0.0;
+    for (double load : loads) {
+      total += load;
+    }
+    return (loads.length > 0) ? total / loads.length : 0.0;
+  }
+
+  /**
+   * Suggests tuning for a locality group given its estimated size and the table traffic.
+   *
+   * @param desc Locality group descriptor.
+   * @param estimatedMB Estimated size of the locality group, in megabytes.
+   * @param readRate Read request rate of the table.
+   * @param writeRate Write request rate of the table.
+   * @param inMemoryMaxMB Largest locality group to keep in memory, in megabytes.
+   * @param compressMinMB Smallest uncompressed locality group to compress, in megabytes.
+   * @return the suggested changes, possibly empty.
+   */
+  static List<String> suggestLocalityGroupTuning(LocalityGroupDesc desc, long estimatedMB,
+      double readRate, double writeRate, long inMemoryMaxMB, long compressMinMB) {
+    final List<String> suggestions = new ArrayList<String>();
+    if (!desc.getInMemory() && (estimatedMB <= inMemoryMaxMB) && (readRate > writeRate)) {
+      suggestions.add("set in_memory to true: small and read-mostly");
+    } else if (desc.getInMemory() && (estimatedMB > inMemoryMaxMB)) {
+      suggestions.add(String.format("set in_memory to false: larger than %d MB", inMemoryMaxMB));
+    }
+    if ((desc.getCompressionType() == CompressionType.NONE) && (estimatedMB >= compressMinMB)) {
+      suggestions.add("set compression_type to SNAPPY or GZ: large and uncompressed");
+    }
+    return suggestions;
+  }
+
+  /**
+   * Program entry point.
+   *
+   * @param args The command-line arguments.
+   * @throws Exception If there is an error.
+   */
+  public static void main(String[] args) throws Exception {
+    System.exit(ToolRunner.run(new RegionStatsTool(), args));
+  }
+}
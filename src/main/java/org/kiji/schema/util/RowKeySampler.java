@@ -0,0 +1,324 @@
+/**
+ * (c) Copyright 2012 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.kiji.schema.util;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.HTableInterface;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.filter.FilterList;
+import org.apache.hadoop.hbase.filter.FirstKeyOnlyFilter;
+import org.apache.hadoop.hbase.filter.RandomRowFilter;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.kiji.schema.EntityId;
+import org.kiji.schema.EntityIdFactory;
+import org.kiji.schema.KijiTable;
+import org.kiji.schema.impl.HBaseKijiTable;
+
+/**
+ * Computes region split keys from a sample of the row keys a table will hold.
+ *
+ * <p>Row keys are fed to the sampler, which keeps a uniform random sample of bounded size
+ * (reservoir sampling).  Each row key carries a weight: 1 to balance regions by row count,
+ * or the size of the row to balance regions by size.  Split keys are the weighted quantiles
+ * of the sample.</p>
+ *
+ * <p>Row keys are sampled as HBase row keys of the table to create, so that the split keys
+ * can be passed as is to {@link org.kiji.schema.KijiAdmin#createTable(String,
+ * org.kiji.schema.layout.KijiTableLayout, boolean, byte[][])}.</p>
+ */
+public final class RowKeySampler {
+  private static final Logger LOG = LoggerFactory.getLogger(RowKeySampler.class);
+
+  /** Default maximum number of row keys kept in the sample. */
+  public static final int DEFAULT_MAX_SAMPLES = 100000;
+
+  /** How regions are balanced. */
+  public static enum Balance {
+    /** Regions hold roughly the same number of rows. */
+    ROW_COUNT,
+
+    /** Regions hold roughly the same number of bytes. */
+    SIZE
+  }
+
+  /** A sampled row key and its weight. */
+  private static final class Sample {
+    private final byte[] mRowKey;
+    private final long mWeight;
+
+    /**
+     * Creates a new sample.
+     *
+     * @param rowKey HBase row key.
+     * @param weight Weight of the row.
+     */
+    private Sample(byte[] rowKey, long weight) {
+      mRowKey = rowKey;
+      mWeight = weight;
+    }
+  }
+
+  /** Orders samples by row key. */
+  private static final Comparator<Sample> ROW_KEY_ORDER = new Comparator<Sample>() {
+    @Override
+    public int compare(Sample a, Sample b) {
+      return Bytes.compareTo(a.mRowKey, b.mRowKey);
+    }
+  };
+
+  /** Maximum number of row keys kept in the sample. */
+  private final int mMaxSamples;
+
+  /** Source of randomness for the reservoir sampling. */
+  private final Random mRandom;
+
+  /** Sampled row keys. */
+  private final List<Sample> mSamples;
+
+  /** Number of row keys fed to the sampler so far. */
+  private long mNumRowKeys = 0;
+
+  /**
+   * Creates a new row key sampler.
+   *
+   * @param maxSamples Maximum number of row keys to keep in the sample.
+   */
+  public RowKeySampler(int maxSamples) {
+    this(maxSamples, new Random());
+  }
+
+  /**
+   * Creates a new row key sampler.
+   *
+   * @param maxSamples Maximum number of row keys to keep in the sample.
+   * @param random Source of randomness for the sampling.
+   */
+  public RowKeySampler(int maxSamples, Random random) {
+    Preconditions.checkArgument(maxSamples > 0, "Invalid maximum number of samples: %s.",
+        maxSamples);
+    mMaxSamples = maxSamples;
+    mRandom = Preconditions.checkNotNull(random);
+    mSamples = new ArrayList<Sample>(Math.min(maxSamples, 1024));
+  }
+
+  /**
+   * Feeds a row key with a weight of 1 to the sampler.
+   *
+   * @param rowKey HBase row key.
+   */
+  public void add(byte[] rowKey) {
+    add(rowKey, 1L);
+  }
+
+  /**
+   * Feeds a row key to the sampler.
+   *
+   * @param rowKey HBase row key.
+   * @param weight Weight of the row: 1 to balance by row count, the row size to balance by size.
+   */
+  public void add(byte[] rowKey, long weight) {
+    Preconditions.checkNotNull(rowKey);
+    Preconditions.checkArgument(weight >= 0, "Invalid row key weight: %s.", weight);
+    mNumRowKeys += 1;
+    if (mSamples.size() < mMaxSamples) {
+      mSamples.add(new Sample(rowKey, weight));
+    } else {
+      // Keep the new row key with probability maxSamples / numRowKeys:
+      final long index = (long) (mRandom.nextDouble() * mNumRowKeys);
+      if (index < mMaxSamples) {
+        mSamples.set((int) index, new Sample(rowKey, weight));
+      }
+    }
+  }
+
+  /**
+   * Gets the number of row keys fed to the sampler so far.
+   *
+   * @return the number of row keys fed to the sampler.
+   */
+  public long getNumRowKeys() {
+    return mNumRowKeys;
+  }
+
+  /**
+   * Gets the number of row keys currently in the sample.
+   *
+   * @return the number of row keys in the sample.
+   */
+  public int getNumSamples() {
+    return mSamples.size();
+  }
+
+  /**
+   * Samples the rows of an existing Kiji table.
+   *
+   * <p>Row keys are translated into the row key format of the table to create: when the formats
+   * differ, the row keys of the sampled table must expose their Kiji row keys, ie. the sampled
+   * table may not use HASH row keys.</p>
+   *
+   * @param table Kiji table to sample.
+   * @param targetFactory Entity ID factory of the table to create.
+   * @param rate Fraction of the rows to sample, in (0, 1].
+   * @param balance How the regions are balanced.
+   * @throws IOException on I/O error.
+   */
+  public void addTable(KijiTable table, EntityIdFactory targetFactory, float rate,
+      Balance balance) throws IOException {
+    Preconditions.checkArgument((rate > 0.0f) && (rate <= 1.0f), "Invalid sample rate: %s.", rate);
+    final EntityIdFactory sourceFactory = table.getEntityIdFactory();
+    final boolean translate = !sourceFactory.getFormat().equals(targetFactory.getFormat());
+
+    final Scan scan = new Scan();
+    scan.setCaching(1000);
+    scan.setCacheBlocks(false);
+    final FilterList filters = new FilterList(FilterList.Operator.MUST_PASS_ALL);
+    if (rate < 1.0f) {
+      filters.addFilter(new RandomRowFilter(rate));
+    }
+    if (balance == Balance.ROW_COUNT) {
+      // Row keys are all we need:
+      filters.addFilter(new FirstKeyOnlyFilter());
+    }
+    if (!filters.getFilters().isEmpty()) {
+      scan.setFilter(filters);
+    }
+
+    final HTableInterface htable = HBaseKijiTable.downcast(table).getHTable();
+    final ResultScanner scanner = htable.getScanner(scan);
+    try {
+      for (Result result : scanner) {
+        byte[] rowKey = result.getRow();
+        if (translate) {
+          final EntityId source = sourceFactory.fromHBaseRowKey(rowKey);
+          rowKey = targetFactory.fromKijiRowKey(source.getKijiRowKey()).getHBaseRowKey();
+        }
+        long weight = 1L;
+        if (balance == Balance.SIZE) {
+          weight = 0L;
+          for (KeyValue kv : result.raw()) {
+            weight += kv.getLength();
+          }
+        }
+        add(rowKey, weight);
+      }
+    } finally {
+      scanner.close();
+    }
+  }
+
+  /**
+   * Samples the row keys listed in a file, each with a weight of 1.
+   *
+   * <p>The file contains one Kiji row key per line, encoded as in a {@link SplitKeyFile}.
+   * This method takes ownership of the input stream, and closes it.</p>
+   *
+   * @param inputStream Contents of the row key file.
+   * @param targetFactory Entity ID factory of the table to create.
+   * @throws IOException on I/O error.
+   */
+  public void addRowKeyFile(InputStream inputStream, EntityIdFactory targetFactory)
+      throws IOException {
+    final BufferedReader reader =
+        new BufferedReader(new InputStreamReader(inputStream, Charsets.UTF_8));
+    try {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (line.isEmpty()) {
+          continue;
+        }
+        final byte[] kijiRowKey = SplitKeyFile.decodeRowKey(line);
+        add(targetFactory.fromKijiRowKey(kijiRowKey).getHBaseRowKey());
+      }
+    } finally {
+      reader.close();
+    }
+  }
+
+  /**
+   * Computes split keys that balance the sampled rows over the specified number of regions.
+   *
+   * <p>Fewer split keys may be returned if the sample does not contain enough distinct
+   * row keys.</p>
+   *
+   * @param numRegions The number of desired regions.
+   * @return The row keys that serve as the boundaries between the regions.
+   */
+  public byte[][] getSplitKeys(int numRegions) {
+    Preconditions.checkArgument(numRegions >= 2,
+        "numRegions must be at least 2, but was %s", numRegions);
+    final List<Sample> samples = new ArrayList<Sample>(mSamples);
+    Collections.sort(samples, ROW_KEY_ORDER);
+    long totalWeight = 0;
+    for (Sample sample : samples) {
+      totalWeight += sample.mWeight;
+    }
+    Preconditions.checkState(totalWeight > 0, "No row key sampled.");
+
+    final List<byte[]> splitKeys = new ArrayList<byte[]>(numRegions - 1);
+    long cumulatedWeight = 0;
+    int region = 1;
+    byte[] previousRowKey = null;
+    for (Sample sample : samples) {
+      // Region i starts with the first distinct row key past i/numRegions of the total weight:
+      if ((null != previousRowKey) && !Bytes.equals(previousRowKey, sample.mRowKey)
+          && (cumulatedWeight >= (double) totalWeight * region / numRegions)) {
+        splitKeys.add(sample.mRowKey);
+        while ((region < numRegions)
+            && (cumulatedWeight >= (double) totalWeight * region / numRegions)) {
+          region += 1;
+        }
+        if (region == numRegions) {
+          break;
+        }
+      }
+      cumulatedWeight += sample.mWeight;
+      previousRowKey = sample.mRowKey;
+    }
+
+    if (splitKeys.size() < numRegions - 1) {
+      LOG.warn(String.format("Sample of %d row keys only yields %d regions out of %d.",
+          samples.size(), splitKeys.size() + 1, numRegions));
+    }
+    if (LOG.isDebugEnabled()) {
+      for (byte[] splitKey : splitKeys) {
+        LOG.debug("Sampled split key: " + ByteArrayFormatter.toHex(splitKey, ':'));
+      }
+    }
+    return splitKeys.toArray(new byte[splitKeys.size()][]);
+  }
+}
@@ -71,6 +71,26 @@ public final class SplitKeyFile {
     }
   }
 
+  /**
+   * Encodes a row key as a line of a split key file.
+   *
+   * @param rowKey Row key to encode.
+   * @return the row key, encoded as a string.
+   */
+  public static String encodeRowKey(byte[] rowKey) {
+    final StringBuilder sb = new StringBuilder(rowKey.length);
+    for (byte data : rowKey) {
+      if (data == '\\') {
+        sb.append("\\\\");
+      } else if ((data >= 0x20) && (data < 0x7f)) {
+        sb.append((char) data);
+      } else {
+        sb.append(String.format("\\x%02x", data & 0xFF));
+      }
+    }
+    return sb.toString();
+  }
+
   /**
    * Decodes a string encoded row key.
    *
@@ -19,10 +19,15 @@
 
 package org.kiji.schema;
 
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.IOException;
 import java.util.ArrayList;
@@ -32,15 +37,19 @@ import java.util.NavigableMap;
 
 import org.apache.avro.Schema;
 import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.HTableInterface;
 import org.apache.hadoop.hbase.client.Put;
 import org.apache.hadoop.hbase.client.Result;
 import org.apache.hadoop.hbase.util.Bytes;
+import org.easymock.EasyMock;
 import org.junit.Before;
 import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import org.kiji.schema.avro.Node;
+import org.kiji.schema.impl.HBaseCounterStripes;
 import org.kiji.schema.impl.HBaseKijiRowData;
 import org.kiji.schema.impl.RawEntityId;
 import org.kiji.schema.layout.ColumnNameTranslator;
@@ -564,6 +573,61 @@ public class TestHBaseKijiRowData extends KijiClientTest {
     assertEquals("value2", strings.get("qual2").toString());
   }
 
+  @Test
+  public void testGetStripedCounterSumsTheStripes() throws IOException {
+    final KijiTableLayout tableLayout = getKiji().getMetaTable()
+        .updateTableLayout("user", KijiTableLayouts.getLayout(KijiTableLayouts.COUNTER_TEST));
+    final HBaseColumnName hits = new ColumnNameTranslator(tableLayout)
+        .toHBaseColumnName(new KijiColumnName("info", "hits"));
+    final byte[] stripeQualifier = HBaseCounterStripes.getStripeQualifier(hits);
+    final EntityId entityId = EntityIdFactory.create(tableLayout.getDesc().getKeysFormat())
+        .fromKijiRowKey("row0");
+    final byte[] hbaseRowKey = entityId.getHBaseRowKey();
+
+    final HTableInterface stripesHTable = createMock(HTableInterface.class);
+    expect(stripesHTable.get(EasyMock.<List<Get>>anyObject())).andReturn(new Result[] {
+      new Result(),
+      new Result(new KeyValue[] {
+          new KeyValue(HBaseCounterStripes.getStripeRowKey(2, hbaseRowKey),
+              HBaseCounterStripes.STRIPES_FAMILY, stripeQualifier, 5L, Bytes.toBytes(3L)),
+      }),
+      new Result(new KeyValue[] {
+          new KeyValue(HBaseCounterStripes.getStripeRowKey(3, hbaseRowKey),
+              HBaseCounterStripes.STRIPES_FAMILY, stripeQualifier, 2L, Bytes.toBytes(4L)),
+      }),
+    });
+    replay(stripesHTable);
+
+    final Result result = new Result(new KeyValue[] {
+        new KeyValue(hbaseRowKey, hits.getFamily(), hits.getQualifier(), 1L, Bytes.toBytes(10L)),
+    });
+    final KijiDataRequest dataRequest = new KijiDataRequest();
+    dataRequest.addColumn(new KijiDataRequest.Column("info", "hits"));
+    final KijiRowData input = new HBaseKijiRowData(new HBaseKijiRowData.Options()
+        .withHBaseResult(result)
+        .withDataRequest(dataRequest)
+        .withTableLayout(tableLayout)
+        .withCellDecoderFactory(getCellDecoderFactory())
+        .withCounterStripesHTable(stripesHTable));
+    final KijiCounter counter = input.getCounter("info", "hits");
+    assertEquals(17L, counter.getValue());
+    assertEquals(5L, counter.getTimestamp());
+    verify(stripesHTable);
+
+    // The stripes may not be silently left out.
+    final KijiRowData withoutStripes = new HBaseKijiRowData(new HBaseKijiRowData.Options()
+        .withHBaseResult(result)
+        .withDataRequest(dataRequest)
+        .withTableLayout(tableLayout)
+        .withCellDecoderFactory(getCellDecoderFactory()));
+    try {
+      withoutStripes.getCounter("info", "hits");
+      fail("Reading a striped counter without the counter stripes table should throw.");
+    } catch (IOException ioe) {
+      assertTrue(ioe.getMessage().contains("counter stripes table"));
+    }
+  }
+
   private byte[] encode(Schema.Type type, Object value) throws IOException {
     return getCellEncoder()
         .encode(new KijiCell<Object>(Schema.create(type), value), KijiCellFormat.HASH);
@@ -19,19 +19,26 @@
 
 package org.kiji.schema;
 
+import static org.easymock.EasyMock.capture;
 import static org.easymock.EasyMock.createMock;
 import static org.easymock.EasyMock.expect;
 import static org.easymock.EasyMock.replay;
 import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import static org.kiji.schema.util.GetEquals.eqGet;
 import static org.kiji.schema.util.ListGetEquals.eqListGet;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 import org.apache.avro.Schema;
 import org.apache.hadoop.conf.Configuration;
@@ -39,7 +46,13 @@ import org.apache.hadoop.hbase.KeyValue;
 import org.apache.hadoop.hbase.client.Get;
 import org.apache.hadoop.hbase.client.HTableInterface;
 import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.filter.FilterList;
+import org.apache.hadoop.hbase.filter.FirstKeyOnlyFilter;
+import org.apache.hadoop.hbase.filter.KeyOnlyFilter;
 import org.apache.hadoop.hbase.util.Bytes;
+import org.easymock.Capture;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -208,6 +221,65 @@ public class TestHBaseKijiTableReader extends KijiClientTest {
     verify(htable);
   }
 
+  @Test
+  public void testCountRowsAndScanEntityIds() throws Exception {
+    final HTableInterface htable = createMock(HTableInterface.class);
+    final ResultScanner countScanner = createMock(ResultScanner.class);
+    final ResultScanner idScanner = createMock(ResultScanner.class);
+    HBaseKijiTable table = new HBaseKijiTable(getKiji(), "table", new HTableInterfaceFactory() {
+      @Override
+      public HTableInterface create(Configuration conf, String hbaseTableName) throws IOException {
+        return htable;
+      }
+    });
+    final ColumnNameTranslator columnNameTranslator = new ColumnNameTranslator(
+        getKiji().getMetaTable().getTableLayout("table"));
+    final List<Result> cannedResults = Arrays.asList(
+        makeHBaseResult("FOO", "family:column", "foo-val", table, columnNameTranslator),
+        makeHBaseResult("BAR", "family:column", "bar-val", table, columnNameTranslator));
+
+    // A mock HTable has no known region: the rows are counted with a single scan.
+    final Capture<Scan> countScan = new Capture<Scan>();
+    final Capture<Scan> idScan = new Capture<Scan>();
+    expect(htable.getScanner(capture(countScan))).andReturn(countScanner);
+    expect(countScanner.iterator()).andReturn(cannedResults.iterator());
+    countScanner.close();
+    expect(htable.getScanner(capture(idScan))).andReturn(idScanner);
+    expect(idScanner.iterator()).andReturn(cannedResults.iterator());
+    idScanner.close();
+    htable.close();
+    replay(htable, countScanner, idScanner);
+
+    final KijiTableReader reader = table.openTableReader();
+    assertEquals(2L, reader.countRows());
+    final KijiEntityIdScanner scanner = reader.scanEntityIds(EntityIdRange.between(null, null));
+    final Iterator<EntityId> entityIds = scanner.iterator();
+    assertArrayEquals(table.getEntityId("FOO").getHBaseRowKey(),
+        entityIds.next().getHBaseRowKey());
+    assertArrayEquals(table.getEntityId("BAR").getHBaseRowKey(),
+        entityIds.next().getHBaseRowKey());
+    assertFalse(entityIds.hasNext());
+    try {
+      entityIds.next();
+      fail("An exhausted entity ID scanner should not return more entity IDs.");
+    } catch (NoSuchElementException nsee) {
+      // Expected.
+    }
+    scanner.close();
+    reader.close();
+    table.close();
+
+    verify(htable, countScanner, idScanner);
+
+    // Both scans only fetch the key of the first cell of each row.
+    for (Scan scan : Arrays.asList(countScan.getValue(), idScan.getValue())) {
+      final FilterList filters = (FilterList) scan.getFilter();
+      assertTrue(filters.getFilters().get(0) instanceof FirstKeyOnlyFilter);
+      assertTrue(filters.getFilters().get(1) instanceof KeyOnlyFilter);
+      assertFalse(scan.getCacheBlocks());
+    }
+  }
+
   /**
    * Creates an hbase Get for a single entityId, and column.
    *
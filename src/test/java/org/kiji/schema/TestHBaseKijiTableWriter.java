@@ -19,30 +19,46 @@
 
 package org.kiji.schema;
 
+import static org.easymock.EasyMock.capture;
 import static org.easymock.EasyMock.createMock;
 import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
 import static org.easymock.EasyMock.replay;
 import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import static org.kiji.schema.util.IncrementEquals.eqIncrement;
 import static org.kiji.schema.util.PutEquals.eqPut;
 
 import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
+import com.google.common.collect.Lists;
 import org.apache.avro.Schema;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Delete;
+import org.apache.hadoop.hbase.client.Get;
 import org.apache.hadoop.hbase.client.HTableInterface;
 import org.apache.hadoop.hbase.client.Increment;
 import org.apache.hadoop.hbase.client.Put;
 import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.Row;
 import org.apache.hadoop.hbase.util.Bytes;
+import org.easymock.Capture;
+import org.easymock.EasyMock;
+import org.easymock.IAnswer;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import org.kiji.schema.impl.HBaseCounterStripes;
 import org.kiji.schema.impl.HBaseKijiTable;
+import org.kiji.schema.impl.HBaseKijiTableWriter;
 import org.kiji.schema.impl.HTableInterfaceFactory;
 import org.kiji.schema.layout.ColumnNameTranslator;
 import org.kiji.schema.layout.KijiTableLayout;
@@ -50,8 +66,10 @@ import org.kiji.schema.layout.KijiTableLayouts;
 
 public class TestHBaseKijiTableWriter extends KijiClientTest {
   private boolean mShouldVerifyMocks;
+  private boolean mShouldVerifyStripesMocks;
   private ColumnNameTranslator mColumnNameTranslator;
   private HTableInterface mHTable;
+  private HTableInterface mStripesHTable;
   private KijiTable mKijiTable;
   private KijiTableWriter mWriter;
 
@@ -63,10 +81,11 @@ public class TestHBaseKijiTableWriter extends KijiClientTest {
     mColumnNameTranslator = new ColumnNameTranslator(
         getKiji().getMetaTable().getTableLayout("user"));
     mHTable = createMock(HTableInterface.class);
+    mStripesHTable = createMock(HTableInterface.class);
     mKijiTable = new HBaseKijiTable(getKiji(), "user", new HTableInterfaceFactory() {
       @Override
       public HTableInterface create(Configuration conf, String htabeTableName) throws IOException {
-        return mHTable;
+        return htabeTableName.contains(".counters.") ? mStripesHTable : mHTable;
       }
     });
     mWriter = mKijiTable.openTableWriter();
@@ -80,6 +99,9 @@ public class TestHBaseKijiTableWriter extends KijiClientTest {
     if (mShouldVerifyMocks) {
       verify(mHTable);
     }
+    if (mShouldVerifyStripesMocks) {
+      verify(mStripesHTable);
+    }
   }
 
   @Test
@@ -130,6 +152,245 @@ public class TestHBaseKijiTableWriter extends KijiClientTest {
     assertEquals(12L, kijiCounter.getValue());
   }
 
+  @Test
+  public void testAddToCounterAggregatesIncrements() throws Exception {
+    // Set the expectations that the writer will execute on the HTable.
+    final HBaseColumnName hbaseColumnName = mColumnNameTranslator.toHBaseColumnName(
+        new KijiColumnName("info", "visits"));
+    final Increment expectedIncrement =
+        new Increment(mKijiTable.getEntityId("foo").getHBaseRowKey());
+    expectedIncrement.addColumn(hbaseColumnName.getFamily(), hbaseColumnName.getQualifier(), 9L);
+    final Increment otherIncrement =
+        new Increment(mKijiTable.getEntityId("bar").getHBaseRowKey());
+    otherIncrement.addColumn(hbaseColumnName.getFamily(), hbaseColumnName.getQualifier(), 1L);
+    final Capture<List<Row>> batch = new Capture<List<Row>>();
+    expect(mHTable.batch(capture(batch))).andReturn(new Object[2]);
+    // flush() and close() flush the HTable, and so does closing the default writer.
+    mHTable.flushCommits();
+    expectLastCall().times(3);
+    mHTable.close();
+    replay(mHTable);
+    mShouldVerifyMocks = true;
+
+    final KijiTableWriter writer = new HBaseKijiTableWriter(mKijiTable,
+        new HBaseKijiTableWriter.Options().withMaxBufferedIncrements(10));
+    try {
+      writer.addToCounter(mKijiTable.getEntityId("foo"), "info", "visits", 2L);
+      writer.addToCounter(mKijiTable.getEntityId("foo"), "info", "visits", 3L);
+      writer.addToCounter(mKijiTable.getEntityId("bar"), "info", "visits", 1L);
+      writer.addToCounter(mKijiTable.getEntityId("foo"), "info", "visits", 4L);
+      // The increments are summed into one per row, and sent in a single batch when the writer
+      // is flushed.
+      writer.flush();
+    } finally {
+      writer.close();
+    }
+    assertEquals(2, batch.getValue().size());
+    assertEquals(expectedIncrement.toString(), batch.getValue().get(0).toString());
+    assertEquals(otherIncrement.toString(), batch.getValue().get(1).toString());
+  }
+
+  @Test
+  public void testAddToStripedCounterIncrementsTheWriterStripe() throws Exception {
+    final byte[] fooRow = mKijiTable.getEntityId("foo").getHBaseRowKey();
+    final HBaseColumnName hits = mColumnNameTranslator.toHBaseColumnName(
+        new KijiColumnName("info", "hits"));
+    final HBaseColumnName visits = mColumnNameTranslator.toHBaseColumnName(
+        new KijiColumnName("info", "visits"));
+    final Capture<List<Row>> batch = new Capture<List<Row>>();
+    expect(mHTable.batch(capture(batch))).andReturn(new Object[1]);
+    mHTable.flushCommits();
+    expectLastCall().times(3);
+    mHTable.close();
+    final Capture<List<Row>> stripesBatch = new Capture<List<Row>>();
+    expect(mStripesHTable.batch(capture(stripesBatch))).andReturn(new Object[1]);
+    mStripesHTable.close();
+    replay(mHTable, mStripesHTable);
+    mShouldVerifyMocks = true;
+    mShouldVerifyStripesMocks = true;
+
+    // Seed 1 picks stripe 1 of the 4 stripes of info:hits.
+    final KijiTableWriter writer = new HBaseKijiTableWriter(mKijiTable,
+        new HBaseKijiTableWriter.Options()
+            .withMaxBufferedIncrements(10)
+            .withCounterStripeSeed(1));
+    try {
+      writer.addToCounter(mKijiTable.getEntityId("foo"), "info", "hits", 2L);
+      writer.addToCounter(mKijiTable.getEntityId("foo"), "info", "visits", 3L);
+      writer.addToCounter(mKijiTable.getEntityId("foo"), "info", "hits", 4L);
+      writer.flush();
+    } finally {
+      writer.close();
+    }
+
+    final Increment expectedIncrement = new Increment(fooRow);
+    expectedIncrement.addColumn(visits.getFamily(), visits.getQualifier(), 3L);
+    assertEquals(1, batch.getValue().size());
+    assertEquals(expectedIncrement.toString(), batch.getValue().get(0).toString());
+    final Increment expectedStripeIncrement =
+        new Increment(HBaseCounterStripes.getStripeRowKey(1, fooRow));
+    expectedStripeIncrement.addColumn(
+        HBaseCounterStripes.STRIPES_FAMILY, HBaseCounterStripes.getStripeQualifier(hits), 6L);
+    assertEquals(1, stripesBatch.getValue().size());
+    assertEquals(expectedStripeIncrement.toString(),
+        stripesBatch.getValue().get(0).toString());
+  }
+
+  @Test
+  public void testIncrementStripedCounterSumsTheStripes() throws Exception {
+    final byte[] fooRow = mKijiTable.getEntityId("foo").getHBaseRowKey();
+    final HBaseColumnName hits = mColumnNameTranslator.toHBaseColumnName(
+        new KijiColumnName("info", "hits"));
+    final byte[] stripeQualifier = HBaseCounterStripes.getStripeQualifier(hits);
+    final Increment expectedIncrement =
+        new Increment(HBaseCounterStripes.getStripeRowKey(2, fooRow));
+    expectedIncrement.addColumn(HBaseCounterStripes.STRIPES_FAMILY, stripeQualifier, 5L);
+    expect(mStripesHTable.increment(eqIncrement(expectedIncrement))).andReturn(
+        new Result(new KeyValue[] {
+            new KeyValue(HBaseCounterStripes.getStripeRowKey(2, fooRow),
+                HBaseCounterStripes.STRIPES_FAMILY, stripeQualifier, 7L, Bytes.toBytes(4L)),
+        }));
+    final Capture<Get> get = new Capture<Get>();
+    expect(mHTable.get(capture(get))).andReturn(new Result(new KeyValue[] {
+        new KeyValue(fooRow, hits.getFamily(), hits.getQualifier(), 3L, Bytes.toBytes(10L)),
+    }));
+    expect(mStripesHTable.get(EasyMock.<List<Get>>anyObject())).andReturn(new Result[] {
+        new Result(new KeyValue[] {
+            new KeyValue(HBaseCounterStripes.getStripeRowKey(1, fooRow),
+                HBaseCounterStripes.STRIPES_FAMILY, stripeQualifier, 6L, Bytes.toBytes(1L)),
+        }),
+        new Result(new KeyValue[] {
+            new KeyValue(HBaseCounterStripes.getStripeRowKey(2, fooRow),
+                HBaseCounterStripes.STRIPES_FAMILY, stripeQualifier, 7L, Bytes.toBytes(4L)),
+        }),
+        new Result(),
+    });
+    mHTable.flushCommits();
+    expectLastCall().times(2);
+    mHTable.close();
+    mStripesHTable.close();
+    replay(mHTable, mStripesHTable);
+    mShouldVerifyMocks = true;
+    mShouldVerifyStripesMocks = true;
+
+    final KijiTableWriter writer = new HBaseKijiTableWriter(mKijiTable,
+        new HBaseKijiTableWriter.Options().withCounterStripeSeed(2));
+    try {
+      final KijiCounter counter =
+          writer.increment(mKijiTable.getEntityId("foo"), "info", "hits", 5L);
+      assertEquals(15L, counter.getValue());
+      assertEquals(7L, counter.getTimestamp());
+    } finally {
+      writer.close();
+    }
+    assertArrayEquals(fooRow, get.getValue().getRow());
+  }
+
+  @Test
+  public void testExpiredIncrementsAreFlushedInTheBackground() throws Exception {
+    final CountDownLatch flushed = new CountDownLatch(1);
+    final Capture<List<Row>> batch = new Capture<List<Row>>();
+    expect(mHTable.batch(capture(batch))).andAnswer(new IAnswer<Object[]>() {
+      @Override
+      public Object[] answer() {
+        flushed.countDown();
+        return new Object[1];
+      }
+    });
+    mHTable.flushCommits();
+    expectLastCall().anyTimes();
+    mHTable.close();
+    expectLastCall().anyTimes();
+    replay(mHTable);
+    mShouldVerifyMocks = true;
+
+    final KijiTableWriter writer = new HBaseKijiTableWriter(mKijiTable,
+        new HBaseKijiTableWriter.Options()
+            .withMaxBufferedIncrements(10)
+            .withIncrementFlushIntervalMillis(20L));
+    try {
+      writer.addToCounter(mKijiTable.getEntityId("foo"), "info", "visits", 2L);
+      // No further write and no flush: the background timer sends the increment.
+      assertTrue(flushed.await(10L, TimeUnit.SECONDS));
+    } finally {
+      writer.close();
+    }
+    assertEquals(1, batch.getValue().size());
+  }
+
+  @Test
+  public void testDeleteMapFamilyFromManyRows() throws Exception {
+    // The map-type family shares its locality group, so its qualifiers are read, then deleted,
+    // with one multi-row request each and no row lock.
+    final HBaseColumnName hbaseColumnName = mColumnNameTranslator.toHBaseColumnName(
+        new KijiColumnName("experiments", "exp1"));
+    final byte[] fooRow = mKijiTable.getEntityId("foo").getHBaseRowKey();
+    final Capture<List<Get>> gets = new Capture<List<Get>>();
+    expect(mHTable.get(capture(gets))).andReturn(new Result[] {
+        new Result(new KeyValue[] {
+            new KeyValue(fooRow, hbaseColumnName.getFamily(), hbaseColumnName.getQualifier(),
+                1L, new byte[0]),
+        }),
+        new Result(),
+    });
+    final Capture<List<Delete>> deletes = new Capture<List<Delete>>();
+    mHTable.delete(capture(deletes));
+    mHTable.flushCommits();
+    mHTable.close();
+    replay(mHTable);
+    mShouldVerifyMocks = true;
+
+    mWriter.deleteFamily(
+        Lists.newArrayList(mKijiTable.getEntityId("foo"), mKijiTable.getEntityId("bar")),
+        "experiments", 123L);
+
+    assertEquals(2, gets.getValue().size());
+    assertEquals(1, deletes.getValue().size());
+    final Delete delete = deletes.getValue().get(0);
+    assertArrayEquals(fooRow, delete.getRow());
+    final List<KeyValue> deleted = delete.getFamilyMap().get(hbaseColumnName.getFamily());
+    assertEquals(1, deleted.size());
+    assertArrayEquals(hbaseColumnName.getQualifier(), deleted.get(0).getQualifier());
+    assertEquals(123L, deleted.get(0).getTimestamp());
+  }
+
+  @Test
+  public void testDeleteGroupFamilyDeletesTheCounterStripes() throws Exception {
+    final byte[] fooRow = mKijiTable.getEntityId("foo").getHBaseRowKey();
+    final byte[] barRow = mKijiTable.getEntityId("bar").getHBaseRowKey();
+    final byte[] hitsQualifier = HBaseCounterStripes.getStripeQualifier(
+        mColumnNameTranslator.toHBaseColumnName(new KijiColumnName("info", "hits")));
+    final Capture<List<Delete>> deletes = new Capture<List<Delete>>();
+    mHTable.delete(capture(deletes));
+    mHTable.flushCommits();
+    mHTable.close();
+    final Capture<List<Delete>> stripeDeletes = new Capture<List<Delete>>();
+    mStripesHTable.delete(capture(stripeDeletes));
+    mStripesHTable.close();
+    replay(mHTable, mStripesHTable);
+    mShouldVerifyMocks = true;
+    mShouldVerifyStripesMocks = true;
+
+    mWriter.deleteFamily(
+        Lists.newArrayList(mKijiTable.getEntityId("foo"), mKijiTable.getEntityId("bar")),
+        "info", 123L);
+
+    assertEquals(2, deletes.getValue().size());
+    // Stripes 1 to 3 of info:hits, for each of the two rows.
+    assertEquals(6, stripeDeletes.getValue().size());
+    for (int stripe = 1; stripe < 4; stripe++) {
+      assertArrayEquals(HBaseCounterStripes.getStripeRowKey(stripe, fooRow),
+          stripeDeletes.getValue().get(stripe - 1).getRow());
+      assertArrayEquals(HBaseCounterStripes.getStripeRowKey(stripe, barRow),
+          stripeDeletes.getValue().get(stripe + 2).getRow());
+    }
+    final List<KeyValue> deleted = stripeDeletes.getValue().get(0).getFamilyMap()
+        .get(HBaseCounterStripes.STRIPES_FAMILY);
+    assertEquals(1, deleted.size());
+    assertArrayEquals(hitsQualifier, deleted.get(0).getQualifier());
+    assertEquals(123L, deleted.get(0).getTimestamp());
+  }
+
   @Test(expected=IOException.class)
   public void testIncrementAColumnThatIsNotACounter() throws IOException {
     // This should throw an exception because we are attempting to increment a column that
@@ -152,4 +413,30 @@ public class TestHBaseKijiTableWriter extends KijiClientTest {
 
     mWriter.setCounter(mKijiTable.getEntityId("foo"), "info", "visits", 5L);
   }
+
+  @Test
+  public void testSetStripedCounterResetsTheOtherStripes() throws Exception {
+    final byte[] fooRow = mKijiTable.getEntityId("foo").getHBaseRowKey();
+    final HBaseColumnName hits = mColumnNameTranslator.toHBaseColumnName(
+        new KijiColumnName("info", "hits"));
+    final Put expectedPut = new Put(fooRow);
+    expectedPut.add(hits.getFamily(), hits.getQualifier(), Bytes.toBytes(5L));
+    mHTable.put(eqPut(expectedPut));
+    mHTable.flushCommits();
+    mHTable.close();
+    final Capture<List<Delete>> deletes = new Capture<List<Delete>>();
+    mStripesHTable.delete(capture(deletes));
+    mStripesHTable.close();
+    replay(mHTable, mStripesHTable);
+    mShouldVerifyMocks = true;
+    mShouldVerifyStripesMocks = true;
+
+    mWriter.setCounter(mKijiTable.getEntityId("foo"), "info", "hits", 5L);
+
+    assertEquals(3, deletes.getValue().size());
+    for (int stripe = 1; stripe < 4; stripe++) {
+      assertArrayEquals(HBaseCounterStripes.getStripeRowKey(stripe, fooRow),
+          deletes.getValue().get(stripe - 1).getRow());
+    }
+  }
 }
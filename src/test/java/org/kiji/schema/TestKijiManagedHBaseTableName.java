@@ -70,6 +70,14 @@ public class TestKijiManagedHBaseTableName {
     assertArrayEquals(Bytes.toBytes("kiji.default.table.foo"), tableName.toBytes());
   }
 
+  @Test
+  public void testCounterStripesTable() {
+    KijiManagedHBaseTableName tableName =
+        KijiManagedHBaseTableName.getKijiCounterStripesTableName("default", "foo");
+    assertEquals("kiji.default.counters.foo", tableName.toString());
+    assertEquals("foo", tableName.getKijiTableName());
+  }
+
   @Test
   public void testEquals() {
     KijiManagedHBaseTableName foo = KijiManagedHBaseTableName.getKijiTableName("default", "foo");
@@ -27,6 +27,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.IOException;
 
@@ -136,6 +137,81 @@ public class TestKijiTablePool extends KijiClientTest {
     assertTrue("Released table should be reused.", first == second);
   }
 
+  @Test
+  public void testAcquireTimeoutWaitsForRelease() throws Exception {
+    KijiTablePool.Options options = new KijiTablePool.Options()
+        .withMaxSize(1)
+        .withAcquireTimeout(10000);
+    final KijiTablePool pool = new KijiTablePool(mTableFactory, options);
+
+    KijiTable foo = createMock(KijiTable.class);
+    expect(foo.getName()).andReturn("foo").anyTimes();
+    expect(mTableFactory.openTable("foo")).andReturn(foo);
+
+    replay(foo);
+    replay(mTableFactory);
+
+    final KijiTable first = pool.get("foo");
+    final Thread releaser = new Thread() {
+      @Override
+      public void run() {
+        try {
+          Thread.sleep(50);
+        } catch (InterruptedException ie) {
+          return;
+        }
+        pool.release(first);
+      }
+    };
+    releaser.start();
+
+    // Blocks until the other thread releases the table.
+    KijiTable second = pool.get("foo");
+    assertTrue("Released table should be handed off to the waiting client.", first == second);
+    releaser.join();
+
+    KijiTablePool.Stats stats = pool.getStats("foo");
+    assertEquals(1, stats.getNumInUse());
+    assertEquals(0, stats.getNumIdle());
+    assertEquals(1, stats.getNumHits());
+    assertEquals(1, stats.getNumMisses());
+    assertEquals(0, stats.getNumTimeouts());
+    verify(mTableFactory);
+  }
+
+  @Test
+  public void testWarmUp() throws IOException {
+    KijiTablePool.Options options = new KijiTablePool.Options()
+        .withMinSize(2);
+    KijiTablePool pool = new KijiTablePool(mTableFactory, options);
+
+    KijiTable foo1 = createMock(KijiTable.class);
+    expect(foo1.getName()).andReturn("foo").anyTimes();
+    KijiTable foo2 = createMock(KijiTable.class);
+    expect(foo2.getName()).andReturn("foo").anyTimes();
+    expect(mTableFactory.openTable("foo")).andReturn(foo1);
+    expect(mTableFactory.openTable("foo")).andReturn(foo2);
+
+    replay(foo1);
+    replay(foo2);
+    replay(mTableFactory);
+
+    pool.warmUp("foo");
+    assertEquals(2, pool.getStats("foo").getNumIdle());
+
+    // Both gets are served by the connections opened when warming up.
+    KijiTable first = pool.get("foo");
+    KijiTable second = pool.get("foo");
+    assertFalse(first == second);
+
+    KijiTablePool.Stats stats = pool.getStats("foo");
+    assertEquals(2, stats.getNumInUse());
+    assertEquals(0, stats.getNumIdle());
+    assertEquals(2, stats.getNumHits());
+    assertEquals(0, stats.getNumMisses());
+    verify(mTableFactory);
+  }
+
   @Test
   public void testIdleTimeout() throws IOException, InterruptedException {
     KijiTablePool.Options options = new KijiTablePool.Options()
@@ -178,4 +254,70 @@ public class TestKijiTablePool extends KijiClientTest {
     pool.release(second);
     pool.close();
   }
+
+  @Test(expected=IllegalArgumentException.class)
+  public void testReleaseForeignTable() throws IOException {
+    KijiTablePool pool = new KijiTablePool(mTableFactory);
+
+    KijiTable foo = createMock(KijiTable.class);
+    expect(foo.getName()).andReturn("foo").anyTimes();
+    KijiTable other = createMock(KijiTable.class);
+    expect(other.getName()).andReturn("foo").anyTimes();
+    expect(mTableFactory.openTable("foo")).andReturn(foo);
+
+    replay(foo);
+    replay(other);
+    replay(mTableFactory);
+
+    pool.get("foo");
+    pool.release(other);
+  }
+
+  @Test
+  public void testDoubleRelease() throws IOException {
+    KijiTablePool pool = new KijiTablePool(mTableFactory);
+
+    KijiTable foo = createMock(KijiTable.class);
+    expect(foo.getName()).andReturn("foo").anyTimes();
+    expect(mTableFactory.openTable("foo")).andReturn(foo);
+
+    replay(foo);
+    replay(mTableFactory);
+
+    KijiTable first = pool.get("foo");
+    pool.release(first);
+    try {
+      pool.release(first);
+      fail("A table released twice should be rejected.");
+    } catch (IllegalArgumentException iae) {
+      // Expected.
+    }
+    assertEquals(1, pool.getStats("foo").getNumIdle());
+    assertEquals(0, pool.getStats("foo").getNumInUse());
+  }
+
+  @Test
+  public void testWarmUpCountsTablesInUse() throws IOException {
+    KijiTablePool.Options options = new KijiTablePool.Options()
+        .withMinSize(2);
+    KijiTablePool pool = new KijiTablePool(mTableFactory, options);
+
+    KijiTable foo1 = createMock(KijiTable.class);
+    expect(foo1.getName()).andReturn("foo").anyTimes();
+    KijiTable foo2 = createMock(KijiTable.class);
+    expect(foo2.getName()).andReturn("foo").anyTimes();
+    expect(mTableFactory.openTable("foo")).andReturn(foo1);
+    expect(mTableFactory.openTable("foo")).andReturn(foo2);
+
+    replay(foo1);
+    replay(foo2);
+    replay(mTableFactory);
+
+    KijiTable first = pool.get("foo");
+    pool.warmUp("foo");
+    pool.warmUp("foo");
+    pool.release(first);
+    assertEquals(2, pool.getStats("foo").getNumIdle());
+    verify(mTableFactory);
+  }
 }
@@ -18,19 +18,28 @@
  */
 package org.kiji.schema;
 
+import static org.easymock.EasyMock.anyObject;
 import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expectLastCall;
 import static org.easymock.EasyMock.replay;
 import static org.easymock.EasyMock.verify;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
-import static org.kiji.schema.util.PutEquals.eqPut;
+import static org.kiji.schema.util.ListPutEquals.eqListPut;
 
 import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
+import com.google.common.collect.Lists;
 import org.apache.avro.Schema;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hbase.client.HTableInterface;
 import org.apache.hadoop.hbase.client.Put;
+import org.easymock.IAnswer;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -39,6 +48,7 @@ import org.slf4j.LoggerFactory;
 
 import org.kiji.schema.impl.HBaseKijiTable;
 import org.kiji.schema.impl.HTableInterfaceFactory;
+import org.kiji.schema.impl.WriteBufferBudget;
 import org.kiji.schema.layout.ColumnNameTranslator;
 import org.kiji.schema.layout.KijiTableLayout;
 import org.kiji.schema.layout.KijiTableLayouts;
@@ -107,7 +117,7 @@ public class TestPutLocalApiWriter
         cellEncoder.encode(
             new KijiCell<CharSequence>(Schema.create(Schema.Type.STRING), "foo"),
             KijiCellFormat.HASH));
-    mHTable.put(eqPut(expectedPut));
+    mHTable.put(eqListPut(Lists.newArrayList(expectedPut)));
     mHTable.flushCommits();
     mHTable.close();
     replay(mHTable);
@@ -146,8 +156,7 @@ public class TestPutLocalApiWriter
               new KijiCell<CharSequence>(Schema.create(Schema.Type.STRING), "Robert Chiu " + i),
               KijiCellFormat.HASH));
     }
-    mHTable.put(eqPut(expectedPut1));
-    mHTable.put(eqPut(expectedPut2));
+    mHTable.put(eqListPut(Lists.newArrayList(expectedPut1, expectedPut2)));
     expectedPut3.add(
         hBaseColumnName.getFamily(),
         hBaseColumnName.getQualifier(),
@@ -156,7 +165,7 @@ public class TestPutLocalApiWriter
             new KijiCell<CharSequence>(Schema.create(Schema.Type.STRING), "Robert Chiu 10"),
             KijiCellFormat.HASH));
     mHTable.flushCommits();
-    mHTable.put(eqPut(expectedPut3));
+    mHTable.put(eqListPut(Lists.newArrayList(expectedPut3)));
     mHTable.flushCommits();
     mHTable.close();
     replay(mHTable);
@@ -172,4 +181,201 @@ public class TestPutLocalApiWriter
     mWriter.write(mEntityIdFactory.fromKijiRowKey("bar2"), "name", "Robert Chiu 10");
     assertEquals(1, mWriter.getNumBufferedElements());
   }
+
+  /**
+   * Replaces the writer under test with a write-behind writer flushing every two writes.
+   *
+   * @throws IOException If the previous writer cannot be closed.
+   */
+  private void useWriteBehindWriter() throws IOException {
+    mWriter.close();
+    mWriter = new PutLocalApiWriter(new PutLocalApiWriter.Options()
+        .withEntityIdFactory(mEntityIdFactory)
+        .withMaxBufferedWrites(2)
+        .withWriteBehind(true)
+        .withCellEncoder(new KijiCellEncoder(getKiji().getSchemaTable()))
+        .withColumnNameTranslator(mColumnNameTranslator)
+        .withKijiTable(mKijiTable)
+        .withFamily("info"));
+  }
+
+  @Test
+  public void testWriteBehind() throws Exception {
+    // Record expectation
+    Put expectedPut = new Put(mEntityIdFactory.fromKijiRowKey("foo").getHBaseRowKey());
+    KijiCellEncoder cellEncoder = new KijiCellEncoder(getKiji().getSchemaTable());
+    HBaseColumnName hBaseColumnName = mColumnNameTranslator.toHBaseColumnName(
+        new KijiColumnName("info", "name"));
+    for (long i = 0; i < 2; i++) {
+      expectedPut.add(
+          hBaseColumnName.getFamily(),
+          hBaseColumnName.getQualifier(),
+          i,
+          cellEncoder.encode(
+              new KijiCell<CharSequence>(Schema.create(Schema.Type.STRING), "name " + i),
+              KijiCellFormat.HASH));
+    }
+    // The first flush comes from closing the synchronous writer, the second from the flusher.
+    mHTable.flushCommits();
+    mHTable.put(eqListPut(Lists.newArrayList(expectedPut)));
+    mHTable.flushCommits();
+    // The flusher's own HTable, then the table's HTable, are closed.
+    mHTable.close();
+    expectLastCall().times(2);
+    replay(mHTable);
+
+    useWriteBehindWriter();
+    assertTrue(mWriter.isWriteBehind());
+    for (long i = 0; i < 2; i++) {
+      mWriter.write(mEntityIdFactory.fromKijiRowKey("foo"), "name", i, "name " + i);
+    }
+    // The full buffer was handed over to the background flusher.
+    assertEquals(0, mWriter.getNumBufferedElements());
+    mWriter.flush();
+  }
+
+  @Test
+  public void testWriteBehindFlusherUsesItsOwnHTable() throws Exception {
+    // The table's HTable is left to the caller: the flusher sends the puts on another one.
+    final HTableInterface tableHTable = createMock(HTableInterface.class);
+    final HTableInterface flusherHTable = createMock(HTableInterface.class);
+    mHTable.flushCommits();
+    mHTable.close();
+    tableHTable.close();
+    flusherHTable.put(anyObject(List.class));
+    flusherHTable.flushCommits();
+    flusherHTable.close();
+    replay(mHTable, tableHTable, flusherHTable);
+
+    final Iterator<HTableInterface> htables =
+        Lists.newArrayList(tableHTable, flusherHTable).iterator();
+    final KijiTable table = new HBaseKijiTable(getKiji(), "user", new HTableInterfaceFactory() {
+      @Override
+      public HTableInterface create(Configuration conf, String htabeTableName) throws IOException {
+        return htables.next();
+      }
+    });
+    final PutLocalApiWriter writer = new PutLocalApiWriter(new PutLocalApiWriter.Options()
+        .withEntityIdFactory(mEntityIdFactory)
+        .withMaxBufferedWrites(2)
+        .withWriteBehind(true)
+        .withCellEncoder(new KijiCellEncoder(getKiji().getSchemaTable()))
+        .withColumnNameTranslator(mColumnNameTranslator)
+        .withKijiTable(table)
+        .withFamily("info"));
+    writer.write(mEntityIdFactory.fromKijiRowKey("foo"), "name", 0L, "name 0");
+    writer.write(mEntityIdFactory.fromKijiRowKey("foo"), "name", 1L, "name 1");
+    writer.close();
+    table.close();
+    verify(tableHTable, flusherHTable);
+  }
+
+  @Test
+  public void testWriteBehindErrorSurfacesOnNextCall() throws Exception {
+    // Record expectation
+    mHTable.flushCommits();
+    mHTable.put(anyObject(List.class));
+    expectLastCall().andThrow(new IOException("Region server unavailable"));
+    mHTable.close();
+    expectLastCall().times(2);
+    replay(mHTable);
+
+    useWriteBehindWriter();
+    mWriter.write(mEntityIdFactory.fromKijiRowKey("foo"), "name", 0L, "name 0");
+    mWriter.write(mEntityIdFactory.fromKijiRowKey("foo"), "name", 1L, "name 1");
+    try {
+      mWriter.flush();
+      fail("The background flush error should be reported by flush().");
+    } catch (IOException ioe) {
+      assertEquals("Region server unavailable", ioe.getCause().getMessage());
+    }
+  }
+
+  /**
+   * Creates a synchronous writer on the table under test, sharing a memory budget.
+   *
+   * @param budget The memory budget shared by the writer.
+   * @return The new writer.
+   * @throws IOException If the schema table cannot be opened.
+   */
+  private PutLocalApiWriter newBudgetedWriter(WriteBufferBudget budget) throws IOException {
+    return new PutLocalApiWriter(new PutLocalApiWriter.Options()
+        .withEntityIdFactory(mEntityIdFactory)
+        .withMaxBufferedWrites(MAX_BUFFERED_WRITES)
+        .withBufferBudget(budget)
+        .withCellEncoder(new KijiCellEncoder(getKiji().getSchemaTable()))
+        .withColumnNameTranslator(mColumnNameTranslator)
+        .withKijiTable(mKijiTable)
+        .withFamily("info"));
+  }
+
+  @Test
+  public void testIdleWriterDoesNotForceFlushes() throws Exception {
+    // The active writer flushes once, then both writers flush when closed.
+    mHTable.put(anyObject(List.class));
+    expectLastCall().times(2);
+    mHTable.flushCommits();
+    expectLastCall().times(4);
+    mHTable.close();
+    replay(mHTable);
+
+    final WriteBufferBudget budget = new WriteBufferBudget(Long.MAX_VALUE);
+    final PutLocalApiWriter idle = newBudgetedWriter(budget);
+    final PutLocalApiWriter active = newBudgetedWriter(budget);
+    for (long i = 0; i < 3; i++) {
+      idle.write(mEntityIdFactory.fromKijiRowKey("idle"), "name", i, "name " + i);
+    }
+    // The next write exhausts the budget, while the idle writer holds most of it.
+    budget.setCapacity(budget.getUsedBytes() + 1);
+
+    active.write(mEntityIdFactory.fromKijiRowKey("active"), "name", 0L, "name 0");
+    assertTrue(budget.isExhausted());
+    assertEquals("A writer below its share of the budget should keep buffering.",
+        1, active.getNumBufferedElements());
+    active.write(mEntityIdFactory.fromKijiRowKey("active"), "name", 1L, "name 1");
+    assertEquals("A writer holding its share of the budget should flush.",
+        0, active.getNumBufferedElements());
+    assertEquals(3, idle.getNumBufferedElements());
+
+    active.close();
+    idle.close();
+    assertEquals(0L, budget.getUsedBytes());
+  }
+
+  @Test
+  public void testWriteBehindRetainsBudgetUntilWritten() throws Exception {
+    final WriteBufferBudget budget = new WriteBufferBudget(Long.MAX_VALUE);
+    final AtomicLong usedWhileWriting = new AtomicLong(-1L);
+    mHTable.flushCommits();
+    mHTable.put(anyObject(List.class));
+    expectLastCall().andAnswer(new IAnswer<Object>() {
+      @Override
+      public Object answer() {
+        usedWhileWriting.set(budget.getUsedBytes());
+        return null;
+      }
+    });
+    mHTable.flushCommits();
+    mHTable.close();
+    expectLastCall().times(2);
+    replay(mHTable);
+
+    mWriter.close();
+    mWriter = new PutLocalApiWriter(new PutLocalApiWriter.Options()
+        .withEntityIdFactory(mEntityIdFactory)
+        .withMaxBufferedWrites(2)
+        .withWriteBehind(true)
+        .withBufferBudget(budget)
+        .withCellEncoder(new KijiCellEncoder(getKiji().getSchemaTable()))
+        .withColumnNameTranslator(mColumnNameTranslator)
+        .withKijiTable(mKijiTable)
+        .withFamily("info"));
+    mWriter.write(mEntityIdFactory.fromKijiRowKey("foo"), "name", 0L, "name 0");
+    mWriter.write(mEntityIdFactory.fromKijiRowKey("foo"), "name", 1L, "name 1");
+    mWriter.flush();
+
+    assertTrue("Handed over writes should be accounted until they are written.",
+        usedWhileWriting.get() > 0L);
+    assertEquals(0L, budget.getUsedBytes());
+  }
 }
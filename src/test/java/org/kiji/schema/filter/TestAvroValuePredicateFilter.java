@@ -0,0 +1,247 @@
+/**
+ * (c) Copyright 2012 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.kiji.schema.filter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.filter.CompareFilter.CompareOp;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.kiji.schema.KijiCellFormat;
+import org.kiji.schema.KijiSchemaTable;
+import org.kiji.schema.KijiSchemaTable.SchemaEntry;
+import org.kiji.schema.util.ByteStreamArray;
+import org.kiji.schema.util.BytesKey;
+
+public class TestAvroValuePredicateFilter {
+  private static final byte[] FAMILY = Bytes.toBytes("family");
+  private static final byte[] QUALIFIER = Bytes.toBytes("qualifier");
+
+  private static final Schema ADDRESS_SCHEMA = new Schema.Parser().parse(
+      "{\"type\":\"record\",\"name\":\"Address\",\"fields\":["
+      + "{\"name\":\"city\",\"type\":\"string\"},"
+      + "{\"name\":\"zip\",\"type\":\"int\"}]}");
+
+  private static final Schema USER_SCHEMA = new Schema.Parser().parse(
+      "{\"type\":\"record\",\"name\":\"User\",\"fields\":["
+      + "{\"name\":\"name\",\"type\":\"string\"},"
+      + "{\"name\":\"address\",\"type\":[\"null\"," + ADDRESS_SCHEMA + "]}]}");
+
+  private static final Schema LONG_SCHEMA = Schema.create(Schema.Type.LONG);
+  private static final Schema INT_SCHEMA = Schema.create(Schema.Type.INT);
+
+  private List<SchemaEntry> mWriterSchemas;
+
+  @Before
+  public void setup() {
+    mWriterSchemas = Arrays.asList(
+        toEntry(0L, INT_SCHEMA), toEntry(1L, LONG_SCHEMA), toEntry(2L, USER_SCHEMA));
+  }
+
+  private static SchemaEntry toEntry(long id, Schema schema) {
+    return new SchemaEntry(id, new BytesKey(KijiSchemaTable.hashSchema(schema)), schema);
+  }
+
+  /** Encodes a cell value with a schema UID header. */
+  private static byte[] encode(long schemaId, Schema schema, Object value) throws Exception {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    bytes.write(ByteStreamArray.longToVarInt64(schemaId));
+    final BinaryEncoder encoder = EncoderFactory.get().directBinaryEncoder(bytes, null);
+    new GenericDatumWriter<Object>(schema).write(value, encoder);
+    encoder.flush();
+    return bytes.toByteArray();
+  }
+
+  /** Runs a filter over a row made of a single cell of the filtered column. */
+  private static boolean accepts(AvroValuePredicateFilter filter, byte[] value) {
+    filter.reset();
+    filter.filterKeyValue(new KeyValue(Bytes.toBytes("row"), FAMILY, QUALIFIER, 1L, value));
+    return !filter.filterRow();
+  }
+
+  private AvroValuePredicateFilter longFilter(AvroValuePredicateFilter.Predicate predicate) {
+    return new AvroValuePredicateFilter(FAMILY, QUALIFIER, KijiCellFormat.UID,
+        LONG_SCHEMA, mWriterSchemas, "", predicate);
+  }
+
+  private static GenericRecord user(String name, String city, int zip) {
+    final GenericRecord user = new GenericData.Record(USER_SCHEMA);
+    user.put("name", name);
+    if (null != city) {
+      final GenericRecord address = new GenericData.Record(ADDRESS_SCHEMA);
+      address.put("city", city);
+      address.put("zip", zip);
+      user.put("address", address);
+    }
+    return user;
+  }
+
+  @Test
+  public void testCompare() throws Exception {
+    final byte[] ten = encode(1L, LONG_SCHEMA, 10L);
+    assertTrue(accepts(longFilter(
+        AvroValuePredicateFilter.Predicate.compare(CompareOp.EQUAL, 10L)), ten));
+    assertFalse(accepts(longFilter(
+        AvroValuePredicateFilter.Predicate.compare(CompareOp.NOT_EQUAL, 10L)), ten));
+    assertTrue(accepts(longFilter(
+        AvroValuePredicateFilter.Predicate.compare(CompareOp.GREATER, 9L)), ten));
+    assertFalse(accepts(longFilter(
+        AvroValuePredicateFilter.Predicate.compare(CompareOp.LESS, 10L)), ten));
+    assertTrue(accepts(longFilter(
+        AvroValuePredicateFilter.Predicate.compare(CompareOp.LESS_OR_EQUAL, 10L)), ten));
+  }
+
+  @Test
+  public void testSchemaEvolution() throws Exception {
+    // Cells written as ints are promoted to longs by the reader schema:
+    assertTrue(accepts(longFilter(
+        AvroValuePredicateFilter.Predicate.compare(CompareOp.EQUAL, 7L)),
+        encode(0L, INT_SCHEMA, 7)));
+  }
+
+  @Test
+  public void testRange() throws Exception {
+    final AvroValuePredicateFilter filter =
+        longFilter(AvroValuePredicateFilter.Predicate.range(10L, true, 20L, false));
+    assertFalse(accepts(filter, encode(1L, LONG_SCHEMA, 9L)));
+    assertTrue(accepts(filter, encode(1L, LONG_SCHEMA, 10L)));
+    assertTrue(accepts(filter, encode(1L, LONG_SCHEMA, 19L)));
+    assertFalse(accepts(filter, encode(1L, LONG_SCHEMA, 20L)));
+
+    final AvroValuePredicateFilter open =
+        longFilter(AvroValuePredicateFilter.Predicate.range(null, false, 20L, true));
+    assertTrue(accepts(open, encode(1L, LONG_SCHEMA, Long.MIN_VALUE)));
+    assertTrue(accepts(open, encode(1L, LONG_SCHEMA, 20L)));
+  }
+
+  @Test
+  public void testIn() throws Exception {
+    final AvroValuePredicateFilter filter =
+        longFilter(AvroValuePredicateFilter.Predicate.in(Arrays.asList(1L, 3L, 5L)));
+    assertTrue(accepts(filter, encode(1L, LONG_SCHEMA, 3L)));
+    assertFalse(accepts(filter, encode(1L, LONG_SCHEMA, 4L)));
+  }
+
+  @Test
+  public void testFieldPath() throws Exception {
+    final AvroValuePredicateFilter cityFilter = new AvroValuePredicateFilter(
+        FAMILY, QUALIFIER, KijiCellFormat.UID, USER_SCHEMA, mWriterSchemas, "address.city",
+        AvroValuePredicateFilter.Predicate.in(Arrays.asList("Paris", "Tokyo")));
+    assertTrue(accepts(cityFilter, encode(2L, USER_SCHEMA, user("a", "Tokyo", 100))));
+    assertFalse(accepts(cityFilter, encode(2L, USER_SCHEMA, user("b", "Lima", 15001))));
+    // Null records along the path do not match:
+    assertFalse(accepts(cityFilter, encode(2L, USER_SCHEMA, user("c", null, 0))));
+
+    final AvroValuePredicateFilter nameFilter = new AvroValuePredicateFilter(
+        FAMILY, QUALIFIER, KijiCellFormat.UID, USER_SCHEMA, mWriterSchemas, "name",
+        AvroValuePredicateFilter.Predicate.prefix("Al"));
+    assertTrue(accepts(nameFilter, encode(2L, USER_SCHEMA, user("Alice", null, 0))));
+    assertFalse(accepts(nameFilter, encode(2L, USER_SCHEMA, user("Bob", null, 0))));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidFieldPath() throws Exception {
+    new AvroValuePredicateFilter(
+        FAMILY, QUALIFIER, KijiCellFormat.UID, USER_SCHEMA, mWriterSchemas, "address.street",
+        AvroValuePredicateFilter.Predicate.compare(CompareOp.EQUAL, "Main"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testOperandSchemaMismatch() throws Exception {
+    longFilter(AvroValuePredicateFilter.Predicate.compare(CompareOp.EQUAL, "ten"));
+  }
+
+  @Test
+  public void testMissingColumn() throws Exception {
+    final AvroValuePredicateFilter filter =
+        longFilter(AvroValuePredicateFilter.Predicate.compare(CompareOp.NOT_EQUAL, 10L));
+    filter.reset();
+    filter.filterKeyValue(new KeyValue(
+        Bytes.toBytes("row"), FAMILY, Bytes.toBytes("other"), 1L, Bytes.toBytes(10L)));
+    assertTrue(filter.filterRow());
+  }
+
+  @Test
+  public void testLatestVersionOnly() throws Exception {
+    final AvroValuePredicateFilter filter =
+        longFilter(AvroValuePredicateFilter.Predicate.compare(CompareOp.EQUAL, 10L));
+    filter.reset();
+    final byte[] row = Bytes.toBytes("row");
+    filter.filterKeyValue(
+        new KeyValue(row, FAMILY, QUALIFIER, 2L, encode(1L, LONG_SCHEMA, 11L)));
+    filter.filterKeyValue(
+        new KeyValue(row, FAMILY, QUALIFIER, 1L, encode(1L, LONG_SCHEMA, 10L)));
+    assertTrue(filter.filterRow());
+  }
+
+  @Test
+  public void testHeaderlessCells() throws Exception {
+    final AvroValuePredicateFilter filter = new AvroValuePredicateFilter(
+        FAMILY, QUALIFIER, KijiCellFormat.NONE, LONG_SCHEMA, mWriterSchemas, "",
+        AvroValuePredicateFilter.Predicate.compare(CompareOp.EQUAL, 5L));
+    final byte[] encoded = encode(1L, LONG_SCHEMA, 5L);
+    // Strip the 1-byte schema UID header:
+    assertTrue(accepts(filter, Arrays.copyOfRange(encoded, 1, encoded.length)));
+  }
+
+  @Test
+  public void testWritable() throws Exception {
+    final AvroValuePredicateFilter filter = new AvroValuePredicateFilter(
+        FAMILY, QUALIFIER, KijiCellFormat.UID, USER_SCHEMA, mWriterSchemas, "address.zip",
+        AvroValuePredicateFilter.Predicate.range(10000, true, null, false));
+    final DataOutputBuffer out = new DataOutputBuffer();
+    filter.write(out);
+    final DataInputBuffer in = new DataInputBuffer();
+    in.reset(out.getData(), out.getLength());
+    final AvroValuePredicateFilter copy = new AvroValuePredicateFilter();
+    copy.readFields(in);
+    assertEquals(out.getLength(), in.getPosition());
+
+    assertTrue(accepts(copy, encode(2L, USER_SCHEMA, user("a", "Lima", 15001))));
+    assertFalse(accepts(copy, encode(2L, USER_SCHEMA, user("b", "Paris", 7500))));
+  }
+
+  @Test
+  public void testUnknownWriterSchema() throws Exception {
+    // Cells written with a schema missing from the writer schemas never match:
+    final AvroValuePredicateFilter filter =
+        longFilter(AvroValuePredicateFilter.Predicate.compare(CompareOp.NOT_EQUAL, 10L));
+    assertFalse(accepts(filter, encode(7L, LONG_SCHEMA, 11L)));
+    assertTrue(accepts(filter, encode(1L, LONG_SCHEMA, 11L)));
+  }
+}
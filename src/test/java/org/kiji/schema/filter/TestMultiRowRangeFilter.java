@@ -0,0 +1,137 @@
+/**
+ * (c) Copyright 2012 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.kiji.schema.filter;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.filter.Filter.ReturnCode;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.junit.Test;
+
+import org.kiji.schema.filter.MultiRowRangeFilter.RowRange;
+
+public class TestMultiRowRangeFilter {
+  private static RowRange range(String start, String stop) {
+    return new RowRange(
+        (null == start) ? null : Bytes.toBytes(start),
+        (null == stop) ? null : Bytes.toBytes(stop));
+  }
+
+  private static void assertRange(String start, String stop, RowRange actual) {
+    assertEquals(range(start, stop).toString(), actual.toString());
+  }
+
+  /** Feeds a row to the filter, and reports whether the row is included. */
+  private static boolean includes(MultiRowRangeFilter filter, String row) {
+    final byte[] key = Bytes.toBytes(row);
+    filter.reset();
+    if (filter.filterAllRemaining() || filter.filterRowKey(key, 0, key.length)) {
+      return false;
+    }
+    final KeyValue kv = new KeyValue(key, Bytes.toBytes("f"), Bytes.toBytes("q"), 1L, key);
+    return filter.filterKeyValue(kv) == ReturnCode.INCLUDE;
+  }
+
+  @Test
+  public void testSortAndMerge() {
+    final List<RowRange> merged = MultiRowRangeFilter.sortAndMerge(Arrays.asList(
+        range("m", "p"),
+        range("a", "c"),
+        range("b", "d"),
+        range("d", "e"),
+        range("x", "x"),
+        range("g", "h")));
+    assertEquals(3, merged.size());
+    assertRange("a", "e", merged.get(0));
+    assertRange("g", "h", merged.get(1));
+    assertRange("m", "p", merged.get(2));
+  }
+
+  @Test
+  public void testMergeUnbounded() {
+    final List<RowRange> merged = MultiRowRangeFilter.sortAndMerge(Arrays.asList(
+        range("k", null), range(null, "b"), range("m", "z"), range("a", "c")));
+    assertEquals(2, merged.size());
+    assertRange(null, "c", merged.get(0));
+    assertRange("k", null, merged.get(1));
+    assertTrue(merged.get(1).isUnbounded());
+  }
+
+  @Test
+  public void testSplitAt() {
+    final List<RowRange> split = MultiRowRangeFilter.splitAt(
+        Arrays.asList(range("b", "f"), range("k", null)),
+        Arrays.asList(Bytes.toBytes("m"), new byte[0], Bytes.toBytes("a"),
+            Bytes.toBytes("d"), Bytes.toBytes("f"), Bytes.toBytes("k")));
+    assertEquals(4, split.size());
+    assertRange("b", "d", split.get(0));
+    assertRange("d", "f", split.get(1));
+    assertRange("k", "m", split.get(2));
+    assertRange("m", null, split.get(3));
+  }
+
+  @Test
+  public void testSeeksBetweenRanges() {
+    final MultiRowRangeFilter filter = new MultiRowRangeFilter(Arrays.asList(
+        range("b", "d"), range("k", "m")));
+    assertFalse(includes(filter, "a"));
+    assertArrayEquals(Bytes.toBytes("b"), filter.getNextKeyHint(null).getRow());
+    assertTrue(includes(filter, "b"));
+    assertTrue(includes(filter, "c"));
+    assertFalse(includes(filter, "d"));
+    assertArrayEquals(Bytes.toBytes("k"), filter.getNextKeyHint(null).getRow());
+    assertTrue(includes(filter, "l"));
+    assertFalse(filter.filterAllRemaining());
+    assertFalse(includes(filter, "m"));
+    assertTrue(filter.filterAllRemaining());
+  }
+
+  @Test
+  public void testWritable() throws Exception {
+    final MultiRowRangeFilter filter = new MultiRowRangeFilter(Arrays.asList(
+        range("k", null), range("b", "d")));
+    final DataOutputBuffer out = new DataOutputBuffer();
+    filter.write(out);
+    final DataInputBuffer in = new DataInputBuffer();
+    in.reset(out.getData(), out.getLength());
+    final MultiRowRangeFilter copy = new MultiRowRangeFilter();
+    copy.readFields(in);
+
+    assertEquals(filter.getRanges().toString(), copy.getRanges().toString());
+    assertTrue(includes(copy, "c"));
+    assertFalse(includes(copy, "e"));
+    assertTrue(includes(copy, "zzz"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNoRange() {
+    new MultiRowRangeFilter(Arrays.asList(range("b", "a")));
+  }
+}
@@ -0,0 +1,99 @@
+/**
+ * (c) Copyright 2012 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.kiji.schema.impl;
+
+import org.apache.hadoop.hbase.util.Bytes;
+
+import org.kiji.schema.EntityId;
+import org.kiji.schema.EntityIdFactory;
+import org.kiji.schema.avro.HashType;
+import org.kiji.schema.avro.RowKeyEncoding;
+import org.kiji.schema.avro.RowKeyFormat;
+
+/**
+ * Compares the throughput of the hashed entity ID creation for each hash type.
+ *
+ * <p>Not run as part of the unit tests. Usage:
+ * <code>java org.kiji.schema.impl.EntityIdHashBenchmark [num-keys] [key-length]</code></p>
+ */
+public final class EntityIdHashBenchmark {
+  /** Number of passes over the keys run before measuring. */
+  private static final int WARMUP_PASSES = 5;
+
+  /** Number of measured passes over the keys. */
+  private static final int MEASURED_PASSES = 10;
+
+  /** Utility class. */
+  private EntityIdHashBenchmark() {}
+
+  /**
+   * Runs the benchmark.
+   *
+   * @param args Optional number of keys and key length, in bytes.
+   */
+  public static void main(String[] args) {
+    final int numKeys = (args.length > 0) ? Integer.parseInt(args[0]) : 1000000;
+    final int keyLength = (args.length > 1) ? Integer.parseInt(args[1]) : 24;
+
+    final byte[][] keys = new byte[numKeys][];
+    for (int i = 0; i < numKeys; i++) {
+      keys[i] = Bytes.padTail(Bytes.toBytes("user-" + i), Math.max(0, keyLength - 5 - 10));
+    }
+
+    for (RowKeyEncoding encoding
+        : new RowKeyEncoding[] {RowKeyEncoding.HASH, RowKeyEncoding.HASH_PREFIX}) {
+      for (HashType hashType : HashType.values()) {
+        final EntityIdFactory factory = EntityIdFactory.create(RowKeyFormat.newBuilder()
+            .setEncoding(encoding)
+            .setHashType(hashType)
+            .setHashSize(Math.min(4, RowKeyHasher.getHashSize(hashType)))
+            .build());
+        long checksum = 0;
+        for (int pass = 0; pass < WARMUP_PASSES; pass++) {
+          checksum += createAll(factory, keys);
+        }
+        final long start = System.nanoTime();
+        for (int pass = 0; pass < MEASURED_PASSES; pass++) {
+          checksum += createAll(factory, keys);
+        }
+        final double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println(String.format("%-12s %-12s %12.0f entity IDs/s  (checksum %d)",
+            encoding, hashType, numKeys * (double) MEASURED_PASSES / seconds, checksum));
+      }
+    }
+  }
+
+  /**
+   * Creates the entity IDs of all the keys.
+   *
+   * @param factory The entity ID factory.
+   * @param keys The Kiji row keys.
+   * @return A checksum of the HBase row keys, so that the work is not optimized away.
+   */
+  private static long createAll(EntityIdFactory factory, byte[][] keys) {
+    long checksum = 0;
+    for (byte[] key : keys) {
+      final EntityId eid = factory.fromKijiRowKey(key);
+      checksum += eid.getHBaseRowKey()[0];
+    }
+    return checksum;
+  }
+}
@@ -20,6 +20,7 @@
 package org.kiji.schema.impl;
 
 import java.io.IOException;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.NavigableMap;
@@ -29,6 +30,7 @@ import java.util.TreeMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.kiji.schema.KijiTableKeyValueBatchDatabase;
 import org.kiji.schema.KijiTableKeyValueDatabase;
 import org.kiji.schema.KijiTableNotFoundException;
 
@@ -36,7 +38,7 @@ import org.kiji.schema.KijiTableNotFoundException;
  * Manages key-value pairs on a per table basis. Storage of these key-value pairs is provided by
  * an in-memory map.
  */
-public class InMemoryTableKeyValueDatabase implements KijiTableKeyValueDatabase {
+public class InMemoryTableKeyValueDatabase implements KijiTableKeyValueBatchDatabase {
   private static final Logger LOG = LoggerFactory.getLogger(InMemoryTableKeyValueDatabase.class);
 
   /** Map from table names to a Map of versioned Key-Value pairs used for storing metadata. */
@@ -71,6 +73,32 @@ public class InMemoryTableKeyValueDatabase implements KijiTableKeyValueDatabase
     return this;
   }
 
+  /** {@inheritDoc} */
+  @Override
+  public KijiTableKeyValueDatabase putValues(String table, Map<String, byte[]> values)
+      throws IOException {
+    for (Map.Entry<String, byte[]> entry : values.entrySet()) {
+      putValue(table, entry.getKey(), entry.getValue());
+    }
+    return this;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public Map<String, byte[]> getValues(String table, Collection<String> keys)
+      throws IOException {
+    final Map<String, byte[]> values = new HashMap<String, byte[]>();
+    if (mMetaMap.containsKey(table)) {
+      for (String key : keys) {
+        final byte[] value = mMetaMap.get(table).get(key);
+        if (null != value) {
+          values.put(key, value);
+        }
+      }
+    }
+    return values;
+  }
+
   /** {@inheritDoc} */
   @Override
   public byte[] getValue(String table, String key) throws IOException {
@@ -0,0 +1,158 @@
+/**
+ * (c) Copyright 2012 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.kiji.schema.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestBucketMergingResultScanner {
+  /** A result scanner over a fixed list of rows. */
+  private static final class ListResultScanner implements ResultScanner {
+    private final Iterator<Result> mResults;
+    private boolean mClosed = false;
+
+    private ListResultScanner(List<Result> results) {
+      mResults = results.iterator();
+    }
+
+    @Override
+    public Result next() throws IOException {
+      return mResults.hasNext() ? mResults.next() : null;
+    }
+
+    @Override
+    public Result[] next(int nbRows) throws IOException {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public synchronized void close() {
+      mClosed = true;
+    }
+
+    private synchronized boolean isClosed() {
+      return mClosed;
+    }
+
+    @Override
+    public Iterator<Result> iterator() {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  /** A single thread shared by all the buckets, as a bounded shared executor would be. */
+  private ExecutorService mExecutor;
+
+  @Before
+  public void setup() {
+    mExecutor = Executors.newSingleThreadExecutor();
+  }
+
+  @After
+  public void teardown() {
+    mExecutor.shutdownNow();
+  }
+
+  private static Result row(int bucket, long kijiRowKey) {
+    final byte[] row = Bytes.add(new byte[] {(byte) bucket}, Bytes.toBytes(kijiRowKey));
+    return new Result(new KeyValue[] {
+      new KeyValue(row, Bytes.toBytes("family"), Bytes.toBytes("qualifier"), Bytes.toBytes(1)),
+    });
+  }
+
+  @Test
+  public void testMergesInKijiRowKeyOrder() throws Exception {
+    final List<ListResultScanner> buckets = Arrays.asList(
+        new ListResultScanner(Arrays.asList(row(0, 2L), row(0, 5L), row(0, 6L))),
+        new ListResultScanner(new ArrayList<Result>()),
+        new ListResultScanner(Arrays.asList(row(2, 1L), row(2, 3L))),
+        new ListResultScanner(Arrays.asList(row(3, 4L), row(3, 7L))));
+    final BucketMergingResultScanner scanner =
+        new BucketMergingResultScanner(new ArrayList<ResultScanner>(buckets), 1, mExecutor);
+    try {
+      final List<Long> keys = new ArrayList<Long>();
+      for (Result result : scanner) {
+        keys.add(Bytes.toLong(result.getRow(), 1));
+      }
+      assertEquals(Arrays.asList(1L, 2L, 3L, 4L, 5L, 6L, 7L), keys);
+      assertNull(scanner.next());
+    } finally {
+      scanner.close();
+    }
+    for (ListResultScanner bucket : buckets) {
+      assertTrue(bucket.isClosed());
+    }
+  }
+
+  @Test
+  public void testNextBatch() throws Exception {
+    final BucketMergingResultScanner scanner = new BucketMergingResultScanner(
+        Arrays.<ResultScanner>asList(
+            new ListResultScanner(Arrays.asList(row(0, 2L))),
+            new ListResultScanner(Arrays.asList(row(1, 1L), row(1, 3L)))),
+        BucketMergingResultScanner.DEFAULT_PREFETCH_SIZE, mExecutor);
+    try {
+      assertEquals(2, scanner.next(2).length);
+      assertEquals(1, scanner.next(2).length);
+      assertEquals(0, scanner.next(2).length);
+    } finally {
+      scanner.close();
+    }
+  }
+
+  @Test
+  public void testCloseBeforeDrained() throws Exception {
+    final List<Result> rows = new ArrayList<Result>();
+    for (long key = 0; key < 10; key++) {
+      rows.add(row(0, key));
+    }
+    final ListResultScanner bucket = new ListResultScanner(rows);
+    final BucketMergingResultScanner scanner =
+        new BucketMergingResultScanner(Arrays.<ResultScanner>asList(bucket), 2, mExecutor);
+    assertEquals(0L, Bytes.toLong(scanner.next().getRow(), 1));
+    scanner.close();
+
+    // Waits for the pending fetches, after which the bucket scanner must be closed.
+    mExecutor.submit(new Runnable() {
+      @Override
+      public void run() {
+      }
+    }).get();
+    assertTrue(bucket.isClosed());
+  }
+}
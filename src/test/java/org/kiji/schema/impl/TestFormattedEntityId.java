@@ -0,0 +1,147 @@
+/**
+ * (c) Copyright 2012 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.kiji.schema.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Test;
+
+import org.kiji.schema.EntityId;
+import org.kiji.schema.EntityIdFactory;
+import org.kiji.schema.avro.ComponentType;
+import org.kiji.schema.avro.HashType;
+import org.kiji.schema.avro.RowKeyComponent;
+import org.kiji.schema.avro.RowKeyEncoding;
+import org.kiji.schema.avro.RowKeyFormat;
+
+/** Tests for FormattedEntityId. */
+public class TestFormattedEntityId {
+  private static RowKeyFormat format(int hashSize) {
+    return RowKeyFormat.newBuilder()
+        .setEncoding(RowKeyEncoding.FORMATTED)
+        .setHashType(HashType.XXHASH64)
+        .setHashSize(hashSize)
+        .setComponents(Arrays.asList(
+            RowKeyComponent.newBuilder().setName("user").setType(ComponentType.STRING).build(),
+            RowKeyComponent.newBuilder().setName("day").setType(ComponentType.INTEGER).build(),
+            RowKeyComponent.newBuilder().setName("seq").setType(ComponentType.LONG).build()))
+        .build();
+  }
+
+  @Test
+  public void testRoundTrip() {
+    final RowKeyFormat format = format(2);
+    final EntityIdFactory factory = EntityIdFactory.create(format);
+    final EntityId eid = factory.fromComponents("alice", -3, 42L);
+    final List<Object> expected = Arrays.<Object>asList("alice", -3, 42L);
+    assertEquals(expected, ((FormattedEntityId) eid).getComponents());
+    assertEquals(expected,
+        ((FormattedEntityId) factory.fromHBaseRowKey(eid.getHBaseRowKey())).getComponents());
+    assertEquals(expected,
+        ((FormattedEntityId) factory.fromKijiRowKey(eid.getKijiRowKey())).getComponents());
+    assertEquals(eid, factory.fromHBaseRowKey(eid.getHBaseRowKey()));
+  }
+
+  @Test
+  public void testFromText() {
+    final EntityIdFactory factory = EntityIdFactory.create(format(2));
+    assertEquals(factory.fromComponents("alice", -3, 42L), factory.fromKijiRowKey("alice,-3,42"));
+  }
+
+  @Test
+  public void testFromTextLastStringKeepsCommas() {
+    final RowKeyFormat format = RowKeyFormat.newBuilder()
+        .setEncoding(RowKeyEncoding.FORMATTED)
+        .setComponents(Arrays.asList(
+            RowKeyComponent.newBuilder().setName("day").setType(ComponentType.INTEGER).build(),
+            RowKeyComponent.newBuilder().setName("name").setType(ComponentType.STRING).build()))
+        .build();
+    final EntityId eid = EntityIdFactory.create(format).fromKijiRowKey("7,a,b");
+    assertEquals(Arrays.<Object>asList(7, "a,b"), ((FormattedEntityId) eid).getComponents());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testFromTextRejectsInvalidInteger() {
+    EntityIdFactory.create(format(2)).fromKijiRowKey("alice,monday,42");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testFromTextRejectsMissingComponents() {
+    EntityIdFactory.create(format(2)).fromKijiRowKey("alice");
+  }
+
+  @Test
+  public void testOrderPreserved() {
+    final EntityIdFactory factory = EntityIdFactory.create(format(0));
+    final EntityId[] ordered = {
+      factory.fromComponents("a", Integer.MIN_VALUE, 0L),
+      factory.fromComponents("a", -1, Long.MAX_VALUE),
+      factory.fromComponents("a", 0, Long.MIN_VALUE),
+      factory.fromComponents("a", 1, -1L),
+      factory.fromComponents("a", 1, 1L),
+      factory.fromComponents("ab", 0, 0L),
+      factory.fromComponents("b", 0, 0L),
+    };
+    for (int i = 1; i < ordered.length; i++) {
+      assertTrue(Bytes.compareTo(
+          ordered[i - 1].getHBaseRowKey(), ordered[i].getHBaseRowKey()) < 0);
+    }
+  }
+
+  @Test
+  public void testPrefixRange() {
+    final RowKeyFormat format = format(2);
+    final EntityIdFactory factory = EntityIdFactory.create(format);
+    final byte[] start =
+        FormattedEntityId.getHBaseRowKeyPrefix(Arrays.<Object>asList("alice"), format);
+    final byte[] stop = FormattedEntityId.getStopRowKey(start);
+
+    // All the rows of "alice" are in [start, stop), and the rows of "alicia" are not.
+    for (EntityId eid : new EntityId[] {
+        factory.fromComponents("alice", Integer.MIN_VALUE, Long.MIN_VALUE),
+        factory.fromComponents("alice", Integer.MAX_VALUE, Long.MAX_VALUE)}) {
+      assertTrue(Bytes.compareTo(start, eid.getHBaseRowKey()) <= 0);
+      assertTrue(Bytes.compareTo(eid.getHBaseRowKey(), stop) < 0);
+    }
+    final byte[] other = factory.fromComponents("alicia", 0, 0L).getHBaseRowKey();
+    assertTrue(!Bytes.startsWith(other, start));
+  }
+
+  @Test
+  public void testStopRowKey() {
+    assertArrayEquals(new byte[] {1, 3}, FormattedEntityId.getStopRowKey(new byte[] {1, 2}));
+    assertArrayEquals(new byte[] {2},
+        FormattedEntityId.getStopRowKey(new byte[] {1, (byte) 0xFF}));
+    assertNull(FormattedEntityId.getStopRowKey(new byte[] {(byte) 0xFF}));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testHashedPrefixRequiresFirstComponent() {
+    FormattedEntityId.getHBaseRowKeyPrefix(Arrays.<Object>asList(), format(2));
+  }
+}
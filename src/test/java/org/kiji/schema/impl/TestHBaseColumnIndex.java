@@ -0,0 +1,147 @@
+/**
+ * (c) Copyright 2012 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.kiji.schema.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.avro.Schema;
+import org.apache.avro.util.Utf8;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.kiji.schema.HBaseColumnName;
+import org.kiji.schema.KijiCell;
+import org.kiji.schema.KijiCellEncoder;
+import org.kiji.schema.KijiColumnName;
+import org.kiji.schema.KijiSchemaTable;
+import org.kiji.schema.avro.TableLayoutDesc;
+import org.kiji.schema.layout.ColumnNameTranslator;
+import org.kiji.schema.layout.InvalidLayoutException;
+import org.kiji.schema.layout.KijiTableLayout;
+import org.kiji.schema.layout.KijiTableLayouts;
+import org.kiji.schema.util.Hasher;
+
+public class TestHBaseColumnIndex {
+  private static final KijiColumnName COLUMN = new KijiColumnName("family", "column");
+
+  private KijiSchemaTable mSchemaTable;
+  private KijiTableLayout mLayout;
+  private HBaseColumnIndex mIndex;
+
+  @Before
+  public void setup() throws Exception {
+    final TableLayoutDesc desc = KijiTableLayouts.getLayout(KijiTableLayouts.SIMPLE);
+    desc.getLocalityGroups().get(0).getFamilies().get(0).getColumns().get(0).setIndexed(true);
+    mLayout = new KijiTableLayout(desc, null);
+    mSchemaTable = new InMemorySchemaTable();
+    mIndex = new HBaseColumnIndex(mLayout, mSchemaTable);
+  }
+
+  /** Encodes a string cell of the indexed column, as stored in HBase. */
+  private byte[] encodeCell(String value) throws Exception {
+    return new KijiCellEncoder(mSchemaTable).encode(
+        new KijiCell<CharSequence>(Schema.create(Schema.Type.STRING), new Utf8(value)),
+        mLayout.getCellFormat(COLUMN));
+  }
+
+  @Test
+  public void testIndexedColumns() throws Exception {
+    assertEquals(Arrays.asList(COLUMN), HBaseColumnIndex.getIndexedColumns(mLayout));
+    assertTrue(HBaseColumnIndex.hasIndexedColumns(mLayout));
+    assertTrue(mIndex.isIndexed(COLUMN));
+    assertFalse(mIndex.isIndexed(new KijiColumnName("family", "other")));
+    assertFalse(HBaseColumnIndex.hasIndexedColumns(
+        new KijiTableLayout(KijiTableLayouts.getLayout(KijiTableLayouts.SIMPLE), null)));
+    assertEquals("kiji.instance.index.table",
+        HBaseColumnIndex.getIndexTableDescriptor("instance", "table").getNameAsString());
+  }
+
+  @Test
+  public void testEncodedCellMatchesEncodedValue() throws Exception {
+    final byte[] indexed = mIndex.encodeValue(COLUMN, "foo");
+    assertArrayEquals(indexed, mIndex.encodeValue(COLUMN, new Utf8("foo")));
+    assertArrayEquals(indexed, mIndex.encodeCell(COLUMN, encodeCell("foo")));
+    assertFalse(Arrays.equals(indexed, mIndex.encodeCell(COLUMN, encodeCell("bar"))));
+  }
+
+  @Test
+  public void testIndexPuts() throws Exception {
+    final HBaseColumnName hbaseColumn = new ColumnNameTranslator(mLayout).toHBaseColumnName(COLUMN);
+    final byte[] rowKey = Bytes.toBytes("row");
+    final Put put = new Put(rowKey);
+    put.add(hbaseColumn.getFamily(), hbaseColumn.getQualifier(), 3L, encodeCell("foo"));
+    put.add(hbaseColumn.getFamily(), Bytes.toBytes("unindexed"), 3L, encodeCell("foo"));
+
+    final List<Put> indexPuts = mIndex.toIndexPuts(Arrays.asList(put));
+    assertEquals(1, indexPuts.size());
+    final byte[] prefix =
+        mIndex.getIndexRowKeyPrefix(COLUMN, mIndex.encodeValue(COLUMN, "foo"));
+    final byte[] indexRowKey = indexPuts.get(0).getRow();
+    assertTrue(Bytes.startsWith(indexRowKey, prefix));
+    assertArrayEquals(rowKey, HBaseColumnIndex.getEntityRowKey(indexRowKey, prefix.length));
+    assertEquals(3L, indexPuts.get(0)
+        .get(HBaseColumnIndex.INDEX_FAMILY, HBaseColumnIndex.INDEX_QUALIFIER)
+        .get(0).getTimestamp());
+  }
+
+  @Test
+  public void testIndexRowKeyPrefixesDoNotOverlap() throws Exception {
+    // "a" is a prefix of "ab": the length prefix keeps their index entries apart.
+    final byte[] a = mIndex.getIndexRowKeyPrefix(COLUMN, mIndex.encodeValue(COLUMN, "a"));
+    final byte[] ab = mIndex.getIndexRowKeyPrefix(COLUMN, mIndex.encodeValue(COLUMN, "ab"));
+    assertFalse(Bytes.startsWith(ab, a));
+    assertFalse(Bytes.startsWith(a, ab));
+  }
+
+  @Test
+  public void testIndexRowKeyPrefixesAreSalted() throws Exception {
+    final HBaseColumnName hbaseColumn = new ColumnNameTranslator(mLayout).toHBaseColumnName(COLUMN);
+    final byte[] indexed = mIndex.encodeValue(COLUMN, "foo");
+    final byte[] unsalted = Bytes.add(
+        Bytes.add(new byte[] {(byte) hbaseColumn.getFamily().length}, hbaseColumn.getFamily()),
+        Bytes.add(new byte[] {(byte) hbaseColumn.getQualifier().length},
+            hbaseColumn.getQualifier()),
+        Bytes.add(new byte[] {(byte) indexed.length}, indexed));
+    final byte[] prefix = mIndex.getIndexRowKeyPrefix(COLUMN, indexed);
+    assertArrayEquals(Bytes.add(Arrays.copyOf(Hasher.hash(unsalted), 2), unsalted), prefix);
+  }
+
+  @Test
+  public void testCounterMayNotBeIndexed() throws Exception {
+    final TableLayoutDesc desc = KijiTableLayouts.getLayout(KijiTableLayouts.COUNTER_TEST);
+    desc.getLocalityGroups().get(0).getFamilies().get(0).getColumns().get(1).setIndexed(true);
+    try {
+      new KijiTableLayout(desc, null);
+      fail("Indexed counter columns should be rejected.");
+    } catch (InvalidLayoutException ile) {
+      assertTrue(ile.getMessage().contains("may not be indexed"));
+    }
+  }
+}
@@ -0,0 +1,145 @@
+/**
+ * (c) Copyright 2012 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.kiji.schema.impl;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Delete;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.HTableInterface;
+import org.apache.hadoop.hbase.client.Increment;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.easymock.EasyMock;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.kiji.schema.HBaseColumnName;
+import org.kiji.schema.KijiColumnName;
+import org.kiji.schema.KijiCounter;
+import org.kiji.schema.layout.ColumnNameTranslator;
+import org.kiji.schema.layout.KijiTableLayout;
+import org.kiji.schema.layout.KijiTableLayouts;
+
+public class TestHBaseCounterStripes {
+  private static final KijiColumnName HITS = new KijiColumnName("info", "hits");
+  private static final KijiColumnName VISITS = new KijiColumnName("info", "visits");
+  private static final byte[] ROW_KEY = Bytes.toBytes("row");
+
+  private KijiTableLayout mLayout;
+  private HBaseCounterStripes mStripes;
+  private byte[] mHitsQualifier;
+
+  @Before
+  public void setup() throws Exception {
+    mLayout = new KijiTableLayout(KijiTableLayouts.getLayout(KijiTableLayouts.COUNTER_TEST), null);
+    mStripes = new HBaseCounterStripes(mLayout);
+    mHitsQualifier = HBaseCounterStripes.getStripeQualifier(
+        new ColumnNameTranslator(mLayout).toHBaseColumnName(HITS));
+  }
+
+  @Test
+  public void testStripedCounters() throws Exception {
+    assertTrue(HBaseCounterStripes.hasStripedCounters(mLayout));
+    assertFalse(mStripes.isEmpty());
+    assertEquals(4, mStripes.getStripes(HITS));
+    assertEquals(1, mStripes.getStripes(VISITS));
+    assertEquals(1, mStripes.getStripes(new KijiColumnName("experiments", "foo")));
+    assertEquals(1, mStripes.getStripe(HITS, 5));
+    assertEquals(0, mStripes.getStripe(VISITS, 5));
+    assertFalse(HBaseCounterStripes.hasStripedCounters(
+        new KijiTableLayout(KijiTableLayouts.getLayout(KijiTableLayouts.SIMPLE), null)));
+    assertEquals("kiji.instance.counters.table",
+        HBaseCounterStripes.getStripesTableDescriptor("instance", "table").getNameAsString());
+  }
+
+  @Test
+  public void testStripeRowsAreSplitApart() throws Exception {
+    assertArrayEquals(Bytes.add(new byte[] {3}, ROW_KEY),
+        HBaseCounterStripes.getStripeRowKey(3, ROW_KEY));
+    final byte[][] splitKeys = HBaseCounterStripes.getStripesTableSplitKeys(mLayout);
+    assertEquals(2, splitKeys.length);
+    assertArrayEquals(new byte[] {2}, splitKeys[0]);
+    assertArrayEquals(new byte[] {3}, splitKeys[1]);
+  }
+
+  @Test
+  public void testStripeIncrement() throws Exception {
+    final Increment increment = mStripes.toStripeIncrement(2, ROW_KEY, HITS, 7L);
+    assertArrayEquals(HBaseCounterStripes.getStripeRowKey(2, ROW_KEY), increment.getRow());
+    assertEquals(Long.valueOf(7L), increment.getFamilyMap()
+        .get(HBaseCounterStripes.STRIPES_FAMILY).get(mHitsQualifier));
+  }
+
+  @Test
+  public void testStripeDeletes() throws Exception {
+    final List<Delete> deletes =
+        mStripes.toStripeDeletes(ROW_KEY, Arrays.asList(HITS, VISITS), 10L, true);
+    assertEquals(3, deletes.size());
+    for (int stripe = 1; stripe < 4; stripe++) {
+      final Delete delete = deletes.get(stripe - 1);
+      assertArrayEquals(HBaseCounterStripes.getStripeRowKey(stripe, ROW_KEY), delete.getRow());
+      final List<KeyValue> kvs = delete.getFamilyMap().get(HBaseCounterStripes.STRIPES_FAMILY);
+      assertEquals(1, kvs.size());
+      assertArrayEquals(mHitsQualifier, kvs.get(0).getQualifier());
+      assertEquals(10L, kvs.get(0).getTimestamp());
+    }
+    assertTrue(mStripes.toStripeDeletes(ROW_KEY, Arrays.asList(VISITS), 10L, true).isEmpty());
+    assertEquals(3, mStripes.toRowDeletes(ROW_KEY, 10L).size());
+  }
+
+  @Test
+  public void testReadStripesSumsTheLatestValues() throws Exception {
+    final HTableInterface htable = createMock(HTableInterface.class);
+    final HBaseColumnName hbaseColumn = new ColumnNameTranslator(mLayout).toHBaseColumnName(HITS);
+    expect(htable.get(EasyMock.<List<Get>>anyObject())).andReturn(new Result[] {
+      new Result(new KeyValue[] {new KeyValue(HBaseCounterStripes.getStripeRowKey(1, ROW_KEY),
+          HBaseCounterStripes.STRIPES_FAMILY, mHitsQualifier, 3L, Bytes.toBytes(5L))}),
+      new Result(),
+      new Result(new KeyValue[] {new KeyValue(HBaseCounterStripes.getStripeRowKey(3, ROW_KEY),
+          HBaseCounterStripes.STRIPES_FAMILY, mHitsQualifier, 4L, Bytes.toBytes(2L))}),
+    });
+    replay(htable);
+
+    final KijiCounter stripes =
+        HBaseCounterStripes.readStripes(htable, ROW_KEY, hbaseColumn, 4, 0L, Long.MAX_VALUE);
+    assertEquals(7L, stripes.getValue());
+    assertEquals(4L, stripes.getTimestamp());
+    final KijiCounter total =
+        HBaseCounterStripes.sum(new DefaultKijiCounter(2L, 10L), stripes);
+    assertEquals(17L, total.getValue());
+    assertEquals(4L, total.getTimestamp());
+    assertNull(HBaseCounterStripes.sum(null, null));
+    verify(htable);
+  }
+}
@@ -0,0 +1,145 @@
+/**
+ * (c) Copyright 2012 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.kiji.schema.impl;
+
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import com.google.common.collect.ImmutableMap;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Delete;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.HTableInterface;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestHBaseTableKeyValueDatabase {
+  private static final byte[] ROW = Bytes.toBytes("table");
+  private static final byte[] FAMILY = Bytes.toBytes("meta");
+
+  private HTableInterface mHTable;
+
+  @Before
+  public void setup() {
+    mHTable = createMock(HTableInterface.class);
+  }
+
+  @Test
+  public void testCachedGetValue() throws Exception {
+    expect(mHTable.get(anyObject(Get.class))).andReturn(result("key")).once();
+    replay(mHTable);
+
+    final HBaseTableKeyValueDatabase db =
+        new HBaseTableKeyValueDatabase(mHTable, "meta", 60000L);
+    assertArrayEquals(Bytes.toBytes("key-value"), db.getValue("table", "key"));
+    // Served from the cache, without reaching the HTable again:
+    assertArrayEquals(Bytes.toBytes("key-value"), db.getValue("table", "key"));
+    verify(mHTable);
+  }
+
+  @Test
+  public void testPutInvalidatesCache() throws Exception {
+    expect(mHTable.get(anyObject(Get.class))).andReturn(result("key")).times(2);
+    mHTable.put(anyObject(Put.class));
+    replay(mHTable);
+
+    final HBaseTableKeyValueDatabase db =
+        new HBaseTableKeyValueDatabase(mHTable, "meta", 60000L);
+    db.getValue("table", "key");
+    db.putValue("table", "key", Bytes.toBytes("key-value"));
+    db.getValue("table", "key");
+    verify(mHTable);
+  }
+
+  @Test
+  public void testCachedValuesAreCopied() throws Exception {
+    expect(mHTable.get(anyObject(Get.class))).andReturn(result("key")).once();
+    replay(mHTable);
+
+    final HBaseTableKeyValueDatabase db =
+        new HBaseTableKeyValueDatabase(mHTable, "meta", 60000L);
+    db.getValue("table", "key")[0] = 0;
+    final byte[] cached = db.getValue("table", "key");
+    assertArrayEquals(Bytes.toBytes("key-value"), cached);
+    cached[0] = 0;
+    assertArrayEquals(Bytes.toBytes("key-value"), db.getValue("table", "key"));
+    verify(mHTable);
+  }
+
+  @Test
+  public void testDeleteTableInvalidatesCache() throws Exception {
+    expect(mHTable.get(anyObject(Get.class))).andReturn(result("key")).times(2);
+    mHTable.delete(anyObject(Delete.class));
+    replay(mHTable);
+
+    final HBaseTableKeyValueDatabase db =
+        new HBaseTableKeyValueDatabase(mHTable, "meta", 60000L);
+    final HBaseMetaTable metaTable = new HBaseMetaTable(mHTable, null, db);
+    metaTable.getValue("table", "key");
+    metaTable.deleteTable("table");
+    metaTable.getValue("table", "key");
+    verify(mHTable);
+  }
+
+  @Test
+  public void testBatchedValues() throws Exception {
+    // A single get fetches all the keys, and a single put writes them.
+    expect(mHTable.get(anyObject(Get.class))).andReturn(result("a", "b"));
+    mHTable.put(anyObject(Put.class));
+    replay(mHTable);
+
+    final HBaseTableKeyValueDatabase db = new HBaseTableKeyValueDatabase(mHTable, "meta");
+    db.putValues("table", ImmutableMap.of(
+        "a", Bytes.toBytes("a-value"), "b", Bytes.toBytes("b-value")));
+    final Map<String, byte[]> values = db.getValues("table", Arrays.asList("a", "b", "c"));
+    assertEquals(2, values.size());
+    assertArrayEquals(Bytes.toBytes("a-value"), values.get("a"));
+    assertArrayEquals(Bytes.toBytes("b-value"), values.get("b"));
+    assertFalse(values.containsKey("c"));
+    verify(mHTable);
+  }
+
+  /**
+   * Builds the result of a get on the key-value family.
+   *
+   * @param keys The keys found, in order. Each key has the value "key-value".
+   * @return The result.
+   */
+  private static Result result(String... keys) {
+    final KeyValue[] kvs = new KeyValue[keys.length];
+    for (int i = 0; i < keys.length; i++) {
+      kvs[i] = new KeyValue(ROW, FAMILY, Bytes.toBytes(keys[i]), Bytes.toBytes(keys[i] + "-value"));
+    }
+    return new Result(kvs);
+  }
+}
@@ -21,6 +21,8 @@ package org.kiji.schema.impl;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
 import java.util.Collection;
@@ -83,4 +85,67 @@ public class TestKijiDataBuffer {
     buffer.clear();
     assertEquals(0, buffer.size());
   }
+
+  @Test
+  public void testSizeInBytesAndBudget() {
+    final EntityIdFactory eif = EntityIdFactory.create(RowKeyFormat.newBuilder()
+        .setEncoding(RowKeyEncoding.RAW)
+        .build());
+    final WriteBufferBudget budget = new WriteBufferBudget(100L);
+    final KijiDataBuffer<String> buffer1 = new KijiDataBuffer<String>(budget);
+    final KijiDataBuffer<String> buffer2 = new KijiDataBuffer<String>(budget);
+
+    buffer1.add(eif.fromKijiRowKey("foo1"), "bar1", 40L);
+    buffer1.add(eif.fromKijiRowKey("foo2"), "bar2", 20L);
+    assertEquals(60L, buffer1.getSizeInBytes());
+    assertEquals(60L, budget.getUsedBytes());
+    assertFalse(buffer1.isOverBudget());
+
+    // The budget is shared: filling the second buffer exhausts it for both.
+    buffer2.add(eif.fromKijiRowKey("foo3"), "bar3", 50L);
+    assertTrue(buffer1.isOverBudget());
+    assertTrue(buffer2.isOverBudget());
+
+    buffer1.clear();
+    assertEquals(0L, buffer1.getSizeInBytes());
+    assertEquals(50L, budget.getUsedBytes());
+    assertFalse(buffer2.isOverBudget());
+  }
+
+  @Test
+  public void testIdleBufferDoesNotPinBudget() {
+    final EntityIdFactory eif = EntityIdFactory.create(RowKeyFormat.newBuilder()
+        .setEncoding(RowKeyEncoding.RAW)
+        .build());
+    final WriteBufferBudget budget = new WriteBufferBudget(100L);
+    final KijiDataBuffer<String> idle = new KijiDataBuffer<String>(budget);
+    final KijiDataBuffer<String> active = new KijiDataBuffer<String>(budget);
+
+    idle.add(eif.fromKijiRowKey("foo"), "bar", 90L);
+    active.add(eif.fromKijiRowKey("foo"), "bar", 10L);
+    assertEquals(2, budget.getActiveBuffers());
+    assertTrue(budget.isExhausted());
+    // Each buffer's share of the exhausted budget is 50 bytes.
+    assertTrue(idle.isOverBudget());
+    assertFalse(active.isOverBudget());
+    active.add(eif.fromKijiRowKey("foo"), "bar", 40L);
+    assertTrue(active.isOverBudget());
+  }
+
+  @Test
+  public void testClearRetainingBudget() {
+    final EntityIdFactory eif = EntityIdFactory.create(RowKeyFormat.newBuilder()
+        .setEncoding(RowKeyEncoding.RAW)
+        .build());
+    final WriteBufferBudget budget = new WriteBufferBudget(100L);
+    final KijiDataBuffer<String> buffer = new KijiDataBuffer<String>(budget);
+
+    buffer.add(eif.fromKijiRowKey("foo"), "bar", 30L);
+    assertEquals(30L, buffer.clearRetainingBudget());
+    assertEquals(0, buffer.size());
+    assertEquals(0, budget.getActiveBuffers());
+    assertEquals(30L, budget.getUsedBytes());
+    buffer.releaseRetained(30L);
+    assertEquals(0L, budget.getUsedBytes());
+  }
 }
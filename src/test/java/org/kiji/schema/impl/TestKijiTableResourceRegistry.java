@@ -0,0 +1,275 @@
+/**
+ * (c) Copyright 2012 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.schema.impl;
+
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.eq;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.EasyMock.makeThreadSafe;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.google.common.collect.Lists;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.client.HTableInterface;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.ZooKeeper;
+import org.apache.zookeeper.data.Stat;
+import org.easymock.IAnswer;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.kiji.schema.KijiClientTest;
+import org.kiji.schema.avro.TableLayoutDesc;
+import org.kiji.schema.layout.KijiTableLayouts;
+
+public class TestKijiTableResourceRegistry extends KijiClientTest {
+  private static final String LAYOUT_PATH = ZooKeeperLayoutTracker.ROOT_PATH + "/instance/table";
+  private static final String OTHER_LAYOUT_PATH =
+      ZooKeeperLayoutTracker.ROOT_PATH + "/instance/other";
+
+  private HTableInterface mHTable;
+  private HTableInterfaceFactory mHTableFactory;
+  private KijiTableResourceRegistry mRegistry;
+
+  /** Layout reloads scheduled by the registry, run explicitly by the tests. */
+  private final List<Runnable> mReloads = Lists.newArrayList();
+  private final Executor mReloadExecutor = new Executor() {
+    @Override
+    public void execute(Runnable reload) {
+      mReloads.add(reload);
+    }
+  };
+
+  @Before
+  public void setup() throws Exception {
+    getKiji().getMetaTable()
+        .updateTableLayout("table", KijiTableLayouts.getLayout(KijiTableLayouts.SIMPLE));
+    final TableLayoutDesc other = KijiTableLayouts.getLayout(KijiTableLayouts.SIMPLE);
+    other.setName("other");
+    getKiji().getMetaTable().updateTableLayout("other", other);
+
+    mHTable = createMock(HTableInterface.class);
+    mHTableFactory = new HTableInterfaceFactory() {
+      private boolean mCreated = false;
+
+      @Override
+      public HTableInterface create(Configuration conf, String hbaseTableName)
+          throws IOException {
+        // A released HTable must be reused instead of creating a new one.
+        assertFalse(mCreated);
+        mCreated = true;
+        return mHTable;
+      }
+    };
+    mRegistry = new KijiTableResourceRegistry(getKiji(), mHTableFactory, null, mReloadExecutor,
+        KijiTableResourceRegistry.DEFAULT_MAX_IDLE_TABLES);
+  }
+
+  /** Runs the layout reloads scheduled so far. */
+  private void runReloads() {
+    for (Runnable reload : mReloads) {
+      reload.run();
+    }
+    mReloads.clear();
+  }
+
+  @Test
+  public void testShareResources() throws IOException {
+    // The HTable is flushed each time it is released, and closed with the last reference.
+    mHTable.flushCommits();
+    mHTable.flushCommits();
+    mHTable.close();
+    replay(mHTable);
+
+    final AtomicReference<KijiTableResources> first = mRegistry.acquire("table");
+    final HTableInterface firstHTable = mRegistry.acquireHTable("table");
+    final AtomicReference<KijiTableResources> second = mRegistry.acquire("table");
+    assertTrue("Opened tables should share their layout.", first.get() == second.get());
+
+    mRegistry.release("table", firstHTable);
+    final HTableInterface secondHTable = mRegistry.acquireHTable("table");
+    assertTrue("Released HTable should be reused.", firstHTable == secondHTable);
+    mRegistry.release("table", secondHTable);
+
+    verify(mHTable);
+  }
+
+  @Test
+  public void testInvalidate() throws IOException {
+    replay(mHTable);
+
+    final AtomicReference<KijiTableResources> opened = mRegistry.acquire("table");
+    final KijiTableResources first = opened.get();
+    mRegistry.invalidate("table");
+    final KijiTableResources second = mRegistry.acquire("table").get();
+    assertFalse("Invalidated layout should be read again.", first == second);
+    assertTrue("Opened tables should switch to the new layout.", opened.get() == second);
+
+    mRegistry.release("table", null);
+    mRegistry.release("table", null);
+    verify(mHTable);
+  }
+
+  @Test
+  public void testLayoutChanged() throws IOException {
+    replay(mHTable);
+
+    final AtomicReference<KijiTableResources> opened = mRegistry.acquire("table");
+    final KijiTableResources first = opened.get();
+    final String layoutId = first.getLayout().getDesc().getLayoutId();
+
+    mRegistry.layoutChanged("table", layoutId);
+    runReloads();
+    assertTrue("Layout should not be read again when it is up to date.", opened.get() == first);
+
+    mRegistry.layoutChanged("table", layoutId + "-updated");
+    assertTrue("Layout should not be read by the ZooKeeper thread.", opened.get() == first);
+    assertEquals(1, mReloads.size());
+    runReloads();
+    assertFalse("Updated layout should be read again.", opened.get() == first);
+
+    mRegistry.release("table", null);
+    verify(mHTable);
+  }
+
+  @Test
+  public void testKeepWatchedLayout() throws Exception {
+    final ZooKeeper zooKeeper = createMock(ZooKeeper.class);
+    expect(zooKeeper.exists(eq(LAYOUT_PATH), anyObject(Watcher.class))).andReturn(null);
+    replay(mHTable, zooKeeper);
+    final KijiTableResourceRegistry registry = new KijiTableResourceRegistry(getKiji(),
+        mHTableFactory, new ZooKeeperLayoutTracker(zooKeeper, "instance"), mReloadExecutor,
+        KijiTableResourceRegistry.DEFAULT_MAX_IDLE_TABLES);
+
+    final KijiTableResources first = registry.acquire("table").get();
+    registry.release("table", null);
+    final KijiTableResources second = registry.acquire("table").get();
+    assertTrue("Watched layout should be kept after the table is closed.", first == second);
+    registry.release("table", null);
+    verify(mHTable, zooKeeper);
+  }
+
+  @Test
+  public void testForgetUnwatchedLayout() throws Exception {
+    final ZooKeeper zooKeeper = createMock(ZooKeeper.class);
+    expect(zooKeeper.exists(eq(LAYOUT_PATH), anyObject(Watcher.class)))
+        .andThrow(new KeeperException.ConnectionLossException()).times(2);
+    replay(mHTable, zooKeeper);
+    final KijiTableResourceRegistry registry = new KijiTableResourceRegistry(getKiji(),
+        mHTableFactory, new ZooKeeperLayoutTracker(zooKeeper, "instance"), mReloadExecutor,
+        KijiTableResourceRegistry.DEFAULT_MAX_IDLE_TABLES);
+
+    final KijiTableResources first = registry.acquire("table").get();
+    registry.release("table", null);
+    final KijiTableResources second = registry.acquire("table").get();
+    assertFalse("Unwatched layout should be read again.", first == second);
+    registry.release("table", null);
+    verify(mHTable, zooKeeper);
+  }
+
+  @Test
+  public void testEvictIdleLayout() throws Exception {
+    final ZooKeeper zooKeeper = createMock(ZooKeeper.class);
+    expect(zooKeeper.exists(eq(LAYOUT_PATH), anyObject(Watcher.class))).andReturn(null).times(2);
+    expect(zooKeeper.exists(eq(OTHER_LAYOUT_PATH), anyObject(Watcher.class))).andReturn(null);
+    replay(zooKeeper);
+    final KijiTableResourceRegistry registry = new KijiTableResourceRegistry(getKiji(),
+        mHTableFactory, new ZooKeeperLayoutTracker(zooKeeper, "instance"), mReloadExecutor, 1);
+
+    final KijiTableResources table = registry.acquire("table").get();
+    registry.release("table", null);
+    final KijiTableResources other = registry.acquire("other").get();
+    registry.release("other", null);
+
+    assertTrue("Most recently closed layout should be kept.",
+        other == registry.acquire("other").get());
+    registry.release("other", null);
+    assertFalse("Least recently closed layout should be evicted.",
+        table == registry.acquire("table").get());
+    registry.release("table", null);
+    verify(zooKeeper);
+  }
+
+  @Test
+  public void testSlowOpenDoesNotBlockOtherTables() throws Exception {
+    final CountDownLatch watching = new CountDownLatch(1);
+    final CountDownLatch resume = new CountDownLatch(1);
+    final ZooKeeper zooKeeper = createMock(ZooKeeper.class);
+    expect(zooKeeper.exists(eq(LAYOUT_PATH), anyObject(Watcher.class)));
+    expectLastCall().andAnswer(new IAnswer<Stat>() {
+      @Override
+      public Stat answer() throws Throwable {
+        // A slow ZooKeeper round trip, blocking the open of the table until resumed.
+        watching.countDown();
+        assertTrue(resume.await(10, TimeUnit.SECONDS));
+        return null;
+      }
+    });
+    expect(zooKeeper.exists(eq(OTHER_LAYOUT_PATH), anyObject(Watcher.class))).andReturn(null);
+    // Thread-safe mocks serialize their calls, which would block the other table.
+    makeThreadSafe(zooKeeper, false);
+    replay(mHTable, zooKeeper);
+    final KijiTableResourceRegistry registry = new KijiTableResourceRegistry(getKiji(),
+        mHTableFactory, new ZooKeeperLayoutTracker(zooKeeper, "instance"), mReloadExecutor,
+        KijiTableResourceRegistry.DEFAULT_MAX_IDLE_TABLES);
+
+    final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+    final Thread opener = new Thread() {
+      @Override
+      public void run() {
+        try {
+          registry.acquire("table");
+          registry.release("table", null);
+        } catch (Throwable thr) {
+          error.set(thr);
+        }
+      }
+    };
+    opener.start();
+    try {
+      assertTrue(watching.await(10, TimeUnit.SECONDS));
+      // Neither the open nor the release of another table waits for the slow open:
+      assertEquals("other", registry.acquire("other").get().getLayout().getName());
+      registry.release("other", null);
+      registry.invalidate("other");
+    } finally {
+      resume.countDown();
+      opener.join(10000L);
+    }
+    assertFalse(opener.isAlive());
+    assertNull(String.valueOf(error.get()), error.get());
+    verify(mHTable, zooKeeper);
+  }
+}
@@ -0,0 +1,115 @@
+/**
+ * (c) Copyright 2012 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.kiji.schema.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.apache.avro.Schema;
+import org.junit.Test;
+
+import org.kiji.schema.KijiCellFormat;
+import org.kiji.schema.KijiColumnName;
+import org.kiji.schema.KijiSchemaTable;
+import org.kiji.schema.KijiSchemaTable.SchemaEntry;
+import org.kiji.schema.NoSuchColumnException;
+import org.kiji.schema.impl.KijiTableResources.ColumnMetadata;
+import org.kiji.schema.layout.KijiTableLayout;
+import org.kiji.schema.layout.KijiTableLayouts;
+
+public class TestKijiTableResources {
+  private static KijiTableLayout getLayout() throws Exception {
+    return new KijiTableLayout(KijiTableLayouts.getLayout(KijiTableLayouts.COUNTER_TEST), null);
+  }
+
+  @Test
+  public void testSharedByLayout() throws Exception {
+    final KijiTableLayout layout = getLayout();
+    final KijiTableResources resources = KijiTableResources.forLayout(layout);
+    assertTrue(resources == KijiTableResources.forLayout(layout));
+    assertTrue(layout == resources.getLayout());
+    assertFalse(resources == KijiTableResources.forLayout(getLayout()));
+
+    final KijiTableResources rebuilt = KijiTableResources.rebuild(layout);
+    assertFalse(resources == rebuilt);
+    assertTrue(rebuilt == KijiTableResources.forLayout(layout));
+  }
+
+  @Test
+  public void testColumnMetadata() throws Exception {
+    final KijiTableResources resources = KijiTableResources.forLayout(getLayout());
+
+    final ColumnMetadata name = resources.getColumnMetadata(new KijiColumnName("info:name"));
+    assertTrue(name == resources.getColumnMetadata(new KijiColumnName("info:name")));
+    assertEquals(Schema.Type.STRING, name.getSchema().getType());
+    assertEquals(KijiCellFormat.HASH, name.getCellFormat());
+    assertFalse(name.isCounter());
+
+    final ColumnMetadata visits = resources.getColumnMetadata(new KijiColumnName("info:visits"));
+    assertTrue(visits.isCounter());
+    assertNull(visits.getSchema());
+
+    // The columns of a map-type family share the metadata of the family.
+    final ColumnMetadata experiments =
+        resources.getColumnMetadata(new KijiColumnName("experiments"));
+    assertTrue(experiments.isCounter());
+    assertTrue(experiments == resources.getColumnMetadata(new KijiColumnName("experiments:a")));
+    assertTrue(experiments == resources.getColumnMetadata(new KijiColumnName("experiments:b")));
+  }
+
+  @Test(expected = NoSuchColumnException.class)
+  public void testNoSuchColumn() throws Exception {
+    KijiTableResources.forLayout(getLayout()).getColumnMetadata(new KijiColumnName("info:nope"));
+  }
+
+  @Test
+  public void testWriterSchemas() throws Exception {
+    final KijiTableResources resources = KijiTableResources.forLayout(new KijiTableLayout(
+        KijiTableLayouts.getLayout(KijiTableLayouts.PRIMITIVE_TYPES), null));
+    final ColumnMetadata doubles =
+        resources.getColumnMetadata(new KijiColumnName("groupFamily:doubleColumn"));
+    final KijiSchemaTable schemaTable = new InMemorySchemaTable();
+    final Schema doubleSchema = Schema.create(Schema.Type.DOUBLE);
+    final Schema intSchema = Schema.create(Schema.Type.INT);
+    final long doubleId = schemaTable.getOrCreateSchemaId(doubleSchema);
+    final long intId = schemaTable.getOrCreateSchemaId(intSchema);
+    schemaTable.getOrCreateSchemaId(Schema.create(Schema.Type.STRING));
+
+    // Only the registered schemas promoted to doubles are listed, and unused ones are not
+    // registered.
+    final List<SchemaEntry> entries = doubles.getWriterSchemas(schemaTable);
+    assertEquals(2, entries.size());
+    assertEquals(doubleId, entries.get(0).getId());
+    assertEquals(doubleSchema, entries.get(0).getSchema());
+    assertEquals(schemaTable.getSchemaHash(doubleSchema), entries.get(0).getHash());
+    assertEquals(intId, entries.get(1).getId());
+    assertNull(schemaTable.getSchema(schemaTable.getSchemaHash(Schema.create(Schema.Type.LONG))));
+
+    // Entries are looked up once per schema table:
+    assertTrue(entries == doubles.getWriterSchemas(schemaTable));
+    assertTrue(resources.getColumnMetadata(new KijiColumnName("mapFamily"))
+        .getWriterSchemas(new InMemorySchemaTable()).isEmpty());
+  }
+}
@@ -0,0 +1,99 @@
+/**
+ * (c) Copyright 2012 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.kiji.schema.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Test;
+
+import org.kiji.schema.EntityId;
+import org.kiji.schema.EntityIdFactory;
+import org.kiji.schema.avro.HashType;
+import org.kiji.schema.avro.RowKeyEncoding;
+import org.kiji.schema.avro.RowKeyFormat;
+
+public class TestRowKeyHasher {
+  @Test
+  public void testXXHash64() {
+    // Reference values of the xxHash64 specification, with seed 0.
+    assertEquals(0xEF46DB3751D8E999L, RowKeyHasher.xxHash64(new byte[0], 0L));
+    assertEquals(0xD24EC4F1A98C6E5BL, RowKeyHasher.xxHash64(Bytes.toBytes("a"), 0L));
+    assertEquals(0x44BC2CF5AD770999L, RowKeyHasher.xxHash64(Bytes.toBytes("abc"), 0L));
+  }
+
+  @Test
+  public void testXXHash64MidLengths() {
+    // 8 to 31 bytes: 8-byte and 4-byte lanes, then the remaining bytes, with no stripe.
+    assertEquals(0x3AD351775B4634B7L, RowKeyHasher.xxHash64(Bytes.toBytes("abcdefgh"), 0L));
+    assertEquals(0x5C5B90C34E376D0BL,
+        RowKeyHasher.xxHash64(Bytes.toBytes("0123456789abcdef"), 0L));
+    assertEquals(0xC9B4E7B3C328D9E0L,
+        RowKeyHasher.xxHash64(Bytes.toBytes("The quick brown fox"), 0L));
+    assertEquals(0xCCDFAB285048F717L,
+        RowKeyHasher.xxHash64(Bytes.toBytes("The quick brown fox"), 0x9E3779B97F4A7C15L));
+  }
+
+  @Test
+  public void testXXHash64Stripes() {
+    // 32 bytes or more: 32-byte stripes over four accumulators, then the tail.
+    assertEquals(0x642A94958E71E6C5L,
+        RowKeyHasher.xxHash64(Bytes.toBytes("0123456789abcdef0123456789abcdef"), 0L));
+    assertEquals(0x654F6A2B39E4D8C1L,
+        RowKeyHasher.xxHash64(Bytes.toBytes("0123456789abcdef0123456789abcdefXYZ"), 0L));
+    assertEquals(0xFBCEA83C8A378BF1L, RowKeyHasher.xxHash64(
+        Bytes.toBytes("Nobody inspects the spammish repetition"), 0L));
+    assertEquals(0x0B242D361FDA71BCL, RowKeyHasher.xxHash64(
+        Bytes.toBytes("The quick brown fox jumps over the lazy dog"), 0L));
+    assertEquals(0x7CFAC66832F66B74L, RowKeyHasher.xxHash64(
+        Bytes.toBytes("The quick brown fox jumps over the lazy dog"), 0x9E3779B97F4A7C15L));
+  }
+
+  @Test
+  public void testHashSizes() {
+    for (HashType hashType : HashType.values()) {
+      assertEquals(RowKeyHasher.getHashSize(hashType),
+          RowKeyHasher.hash(hashType, Bytes.toBytes("row")).length);
+    }
+  }
+
+  @Test
+  public void testHashPrefixedEntityId() {
+    final RowKeyFormat format = RowKeyFormat.newBuilder()
+        .setEncoding(RowKeyEncoding.HASH_PREFIX)
+        .setHashType(HashType.XXHASH64)
+        .setHashSize(2)
+        .build();
+    final EntityId eid = EntityIdFactory.create(format).fromKijiRowKey("abc");
+    // xxHash64 of "abc" is 0x44BC2CF5AD770999:
+    assertArrayEquals(new byte[] {0x44, (byte) 0xBC, 'a', 'b', 'c'}, eid.getHBaseRowKey());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testHashPrefixLargerThanHash() {
+    EntityIdFactory.create(RowKeyFormat.newBuilder()
+        .setEncoding(RowKeyEncoding.HASH_PREFIX)
+        .setHashType(HashType.XXHASH64)
+        .setHashSize(16)
+        .build());
+  }
+}
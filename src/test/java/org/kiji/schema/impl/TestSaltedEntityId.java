@@ -0,0 +1,106 @@
+/**
+ * (c) Copyright 2012 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.kiji.schema.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Test;
+
+import org.kiji.schema.EntityId;
+import org.kiji.schema.EntityIdFactory;
+import org.kiji.schema.KijiRowKeySplitter;
+import org.kiji.schema.avro.HashType;
+import org.kiji.schema.avro.RowKeyEncoding;
+import org.kiji.schema.avro.RowKeyFormat;
+
+/** Tests for SaltedEntityId. */
+public class TestSaltedEntityId {
+  private static RowKeyFormat format(int numBuckets) {
+    return RowKeyFormat.newBuilder()
+        .setEncoding(RowKeyEncoding.SALTED)
+        .setHashType(HashType.XXHASH64)
+        .setNumBuckets(numBuckets)
+        .build();
+  }
+
+  @Test
+  public void testRoundTrip() {
+    final EntityIdFactory factory = EntityIdFactory.create(format(8));
+    final EntityId eid = factory.fromKijiRowKey(Bytes.toBytes(12345L));
+    final byte[] hbaseRowKey = eid.getHBaseRowKey();
+    assertEquals(9, hbaseRowKey.length);
+    assertEquals(((SaltedEntityId) eid).getBucket(), hbaseRowKey[0]);
+    assertTrue(((SaltedEntityId) eid).getBucket() < 8);
+    assertArrayEquals(Bytes.toBytes(12345L), Bytes.tail(hbaseRowKey, 8));
+    assertEquals(eid, factory.fromHBaseRowKey(hbaseRowKey));
+  }
+
+  @Test
+  public void testFromComponents() {
+    final EntityIdFactory factory = EntityIdFactory.create(format(8));
+    final EntityId eid = factory.fromKijiRowKey("row");
+    assertEquals(eid, factory.fromComponents("row"));
+    assertEquals(eid, factory.fromComponents((Object) Bytes.toBytes("row")));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testFromComponentsRequiresSingleComponent() {
+    EntityIdFactory.create(format(8)).fromComponents("row", 1);
+  }
+
+  @Test
+  public void testSequentialKeysSpreadOverBuckets() {
+    final RowKeyFormat format = format(16);
+    final int[] counts = new int[16];
+    for (long i = 0; i < 1600; i++) {
+      counts[SaltedEntityId.getBucket(Bytes.toBytes(i), format)]++;
+    }
+    for (int count : counts) {
+      assertTrue("Unbalanced bucket: " + count, count > 50);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testTooManyBuckets() {
+    EntityIdFactory.create(format(257));
+  }
+
+  @Test
+  public void testBucketSplitKeys() {
+    final byte[][] splitKeys = KijiRowKeySplitter.getBucketSplitKeys(16, 4);
+    assertEquals(3, splitKeys.length);
+    assertArrayEquals(new byte[] {4}, splitKeys[0]);
+    assertArrayEquals(new byte[] {8}, splitKeys[1]);
+    assertArrayEquals(new byte[] {12}, splitKeys[2]);
+
+    final byte[][] allBuckets = KijiRowKeySplitter.getBucketSplitKeys(256, 256);
+    assertEquals(255, allBuckets.length);
+    assertArrayEquals(new byte[] {(byte) 255}, allBuckets[254]);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testMoreRegionsThanBuckets() {
+    KijiRowKeySplitter.getBucketSplitKeys(4, 5);
+  }
+}
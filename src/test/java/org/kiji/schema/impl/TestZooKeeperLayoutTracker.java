@@ -0,0 +1,169 @@
+/**
+ * (c) Copyright 2012 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.kiji.schema.impl;
+
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.aryEq;
+import static org.easymock.EasyMock.capture;
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.eq;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.Watcher.Event.EventType;
+import org.apache.zookeeper.Watcher.Event.KeeperState;
+import org.apache.zookeeper.ZooDefs.Ids;
+import org.apache.zookeeper.ZooKeeper;
+import org.apache.zookeeper.data.Stat;
+import org.easymock.Capture;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestZooKeeperLayoutTracker {
+  private static final String INSTANCE_PATH = ZooKeeperLayoutTracker.ROOT_PATH + "/instance";
+  private static final String LAYOUT_PATH = INSTANCE_PATH + "/table";
+
+  private ZooKeeper mZooKeeper;
+  private ZooKeeperLayoutTracker.LayoutListener mListener;
+  private ZooKeeperLayoutTracker mTracker;
+
+  @Before
+  public void setup() {
+    mZooKeeper = createMock(ZooKeeper.class);
+    mListener = createMock(ZooKeeperLayoutTracker.LayoutListener.class);
+    mTracker = new ZooKeeperLayoutTracker(mZooKeeper, "instance");
+    mTracker.addListener(mListener);
+  }
+
+  @Test
+  public void testWatch() throws Exception {
+    final Stat stat = new Stat();
+    expect(mZooKeeper.exists(eq(LAYOUT_PATH), anyObject(Watcher.class))).andReturn(stat);
+    expect(mZooKeeper.getData(LAYOUT_PATH, false, stat)).andReturn(Bytes.toBytes("layout-1"));
+    expect(mZooKeeper.exists(eq(INSTANCE_PATH + "/other"), anyObject(Watcher.class)))
+        .andReturn(null);
+    replay(mZooKeeper, mListener);
+
+    assertEquals("layout-1", mTracker.watch("table"));
+    assertNull(mTracker.watch("other"));
+    verify(mZooKeeper, mListener);
+  }
+
+  @Test(expected = IOException.class)
+  public void testWatchError() throws Exception {
+    expect(mZooKeeper.exists(eq(LAYOUT_PATH), anyObject(Watcher.class)))
+        .andThrow(new KeeperException.ConnectionLossException());
+    replay(mZooKeeper, mListener);
+
+    mTracker.watch("table");
+  }
+
+  @Test
+  public void testLayoutChanged() throws Exception {
+    final Capture<Watcher> watcher = new Capture<Watcher>();
+    final Stat stat = new Stat();
+    expect(mZooKeeper.exists(eq(LAYOUT_PATH), capture(watcher))).andReturn(stat).times(2);
+    expect(mZooKeeper.getData(LAYOUT_PATH, false, stat))
+        .andReturn(Bytes.toBytes("layout-1"))
+        .andReturn(Bytes.toBytes("layout-2"));
+    mListener.layoutChanged("table", "layout-2");
+    replay(mZooKeeper, mListener);
+
+    mTracker.watch("table");
+    // The watch fires once: the tracker must watch the node again before reading it.
+    watcher.getValue().process(
+        new WatchedEvent(EventType.NodeDataChanged, KeeperState.SyncConnected, LAYOUT_PATH));
+    verify(mZooKeeper, mListener);
+  }
+
+  @Test
+  public void testLayoutRemoved() throws Exception {
+    final Capture<Watcher> watcher = new Capture<Watcher>();
+    final Stat stat = new Stat();
+    expect(mZooKeeper.exists(eq(LAYOUT_PATH), capture(watcher)))
+        .andReturn(stat)
+        .andReturn(null);
+    expect(mZooKeeper.getData(LAYOUT_PATH, false, stat)).andReturn(Bytes.toBytes("layout-1"));
+    mListener.layoutChanged("table", null);
+    replay(mZooKeeper, mListener);
+
+    mTracker.watch("table");
+    watcher.getValue().process(
+        new WatchedEvent(EventType.NodeDeleted, KeeperState.SyncConnected, LAYOUT_PATH));
+    verify(mZooKeeper, mListener);
+  }
+
+  @Test
+  public void testSessionExpired() throws Exception {
+    final Capture<Watcher> watcher = new Capture<Watcher>();
+    expect(mZooKeeper.exists(eq(LAYOUT_PATH), capture(watcher))).andReturn(null);
+    mListener.trackingLost();
+    replay(mZooKeeper, mListener);
+
+    mTracker.watch("table");
+    final WatchedEvent expired = new WatchedEvent(EventType.None, KeeperState.Expired, null);
+    watcher.getValue().process(expired);
+    assertFalse(mTracker.isTracking());
+    // Listeners are told only once.
+    watcher.getValue().process(expired);
+    verify(mZooKeeper, mListener);
+  }
+
+  @Test
+  public void testNotifyLayoutChangedCreatesNode() throws Exception {
+    final byte[] data = Bytes.toBytes("layout-1");
+    expect(mZooKeeper.setData(eq(LAYOUT_PATH), aryEq(data), eq(-1)))
+        .andThrow(new KeeperException.NoNodeException(LAYOUT_PATH));
+    expect(mZooKeeper.create(eq(ZooKeeperLayoutTracker.ROOT_PATH), aryEq(new byte[0]),
+        eq(Ids.OPEN_ACL_UNSAFE), eq(CreateMode.PERSISTENT)))
+        .andThrow(new KeeperException.NodeExistsException(ZooKeeperLayoutTracker.ROOT_PATH));
+    expect(mZooKeeper.create(eq(INSTANCE_PATH), aryEq(new byte[0]),
+        eq(Ids.OPEN_ACL_UNSAFE), eq(CreateMode.PERSISTENT)))
+        .andReturn(INSTANCE_PATH);
+    expect(mZooKeeper.create(eq(LAYOUT_PATH), aryEq(data),
+        eq(Ids.OPEN_ACL_UNSAFE), eq(CreateMode.PERSISTENT)))
+        .andReturn(LAYOUT_PATH);
+    replay(mZooKeeper, mListener);
+
+    mTracker.notifyLayoutChanged("table", "layout-1");
+    verify(mZooKeeper, mListener);
+  }
+
+  @Test
+  public void testNotifyLayoutRemoved() throws Exception {
+    mZooKeeper.delete(LAYOUT_PATH, -1);
+    replay(mZooKeeper, mListener);
+
+    mTracker.notifyLayoutRemoved("table");
+    verify(mZooKeeper, mListener);
+  }
+}
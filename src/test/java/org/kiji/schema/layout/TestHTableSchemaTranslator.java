@@ -23,11 +23,19 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import org.apache.hadoop.hbase.HColumnDescriptor;
 import org.apache.hadoop.hbase.HConstants;
 import org.apache.hadoop.hbase.HTableDescriptor;
+import org.apache.hadoop.hbase.io.encoding.DataBlockEncoding;
+import org.apache.hadoop.hbase.regionserver.StoreFile;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.junit.Test;
 
+import org.kiji.schema.avro.BlockEncoding;
+import org.kiji.schema.avro.BloomType;
+import org.kiji.schema.avro.LocalityGroupDesc;
+import org.kiji.schema.avro.TableLayoutDesc;
+import org.kiji.schema.impl.HTableDescriptorComparator;
 import org.kiji.schema.layout.impl.HTableSchemaTranslator;
 
 public class TestHTableSchemaTranslator {
@@ -49,5 +57,47 @@ public class TestHTableSchemaTranslator {
 
     assertTrue(tableDescriptor.getFamily(Bytes.toBytes("C")).isInMemory());
     assertEquals(1, tableDescriptor.getFamily(Bytes.toBytes("C")).getMaxVersions());
+
+    // Storage tuning defaults to the HBase defaults:
+    final HColumnDescriptor family = tableDescriptor.getFamily(Bytes.toBytes("B"));
+    assertEquals(StoreFile.BloomType.NONE, family.getBloomFilterType());
+    assertEquals(HColumnDescriptor.DEFAULT_BLOCKSIZE, family.getBlocksize());
+    assertEquals(DataBlockEncoding.NONE, family.getDataBlockEncoding());
+    assertTrue(family.isBlockCacheEnabled());
+  }
+
+  @Test
+  public void testTranslateStorageTuning() throws Exception {
+    final HTableSchemaTranslator translator = new HTableSchemaTranslator();
+
+    final TableLayoutDesc desc = KijiTableLayouts.getLayout(KijiTableLayouts.FULL_FEATURED);
+    final HTableDescriptor defaultDescriptor =
+        translator.toHTableDescriptor("myinstance", new KijiTableLayout(desc, null));
+    for (LocalityGroupDesc lgDesc : desc.getLocalityGroups()) {
+      lgDesc.setBloomType(BloomType.ROW);
+      lgDesc.setBlockSize(16 * 1024);
+      lgDesc.setBlockEncoding(BlockEncoding.FAST_DIFF);
+      lgDesc.setBlockCacheEnabled(false);
+    }
+    final HTableDescriptor tableDescriptor =
+        translator.toHTableDescriptor("myinstance", new KijiTableLayout(desc, null));
+
+    for (HColumnDescriptor family : tableDescriptor.getColumnFamilies()) {
+      assertEquals(StoreFile.BloomType.ROW, family.getBloomFilterType());
+      assertEquals(16 * 1024, family.getBlocksize());
+      assertEquals(DataBlockEncoding.FAST_DIFF, family.getDataBlockEncoding());
+      assertFalse(family.isBlockCacheEnabled());
+    }
+
+    // Changing the storage tuning changes the HBase schema:
+    assertTrue(
+        new HTableDescriptorComparator().compare(defaultDescriptor, tableDescriptor) != 0);
+  }
+
+  @Test(expected = InvalidLayoutException.class)
+  public void testNegativeBlockSize() throws Exception {
+    final TableLayoutDesc desc = KijiTableLayouts.getLayout(KijiTableLayouts.FULL_FEATURED);
+    desc.getLocalityGroups().get(0).setBlockSize(-1);
+    new KijiTableLayout(desc, null);
   }
 }
@@ -714,4 +714,69 @@ public class TestKijiTableLayout {
       assertTrue(ile.getMessage().contains("Invalid max versions for locality group"));
     }
   }
+
+  @Test
+  public void testInvalidStripedNonCounterColumn() throws Exception {
+    final TableLayoutDesc desc = TableLayoutDesc.newBuilder()
+        .setName("table_name")
+        .setKeysFormat(RowKeyFormat.newBuilder().setEncoding(RowKeyEncoding.RAW).build())
+        .setVersion(TABLE_LAYOUT_VERSION)
+        .setLocalityGroups(Lists.newArrayList(LocalityGroupDesc.newBuilder()
+            .setName("default")
+            .setCompressionType(CompressionType.NONE)
+            .setTtlSeconds(1)
+            .setMaxVersions(1)
+            .setInMemory(false)
+            .setFamilies(Lists.newArrayList(
+                FamilyDesc.newBuilder()
+                    .setName("family_name")
+                    .setColumns(Lists.newArrayList(
+                        ColumnDesc.newBuilder()
+                            .setName("column_name")
+                            .setColumnSchema(CellSchema.newBuilder()
+                                 .setType(SchemaType.INLINE)
+                                 .setValue("\"string\"")
+                                 .setCounterStripes(4)
+                                 .build())
+                            .build()))
+                    .build()))
+            .build()))
+        .build();
+    try {
+      new KijiTableLayout(desc, null);
+      fail("Invalid striped column that is not a counter did not throw");
+    } catch (InvalidLayoutException ile) {
+      assertTrue(ile.getMessage().contains("Only counters may be striped"));
+    }
+  }
+
+  @Test
+  public void testInvalidStripedMapFamily() throws Exception {
+    final TableLayoutDesc desc = TableLayoutDesc.newBuilder()
+        .setName("table_name")
+        .setKeysFormat(RowKeyFormat.newBuilder().setEncoding(RowKeyEncoding.RAW).build())
+        .setVersion(TABLE_LAYOUT_VERSION)
+        .setLocalityGroups(Lists.newArrayList(LocalityGroupDesc.newBuilder()
+            .setName("default")
+            .setCompressionType(CompressionType.NONE)
+            .setTtlSeconds(1)
+            .setMaxVersions(1)
+            .setInMemory(false)
+            .setFamilies(Lists.newArrayList(
+                FamilyDesc.newBuilder()
+                    .setName("family_name")
+                    .setMapSchema(CellSchema.newBuilder()
+                        .setType(SchemaType.COUNTER)
+                        .setCounterStripes(4)
+                        .build())
+                    .build()))
+            .build()))
+        .build();
+    try {
+      new KijiTableLayout(desc, null);
+      fail("Invalid striped map-type family did not throw");
+    } catch (InvalidLayoutException ile) {
+      assertTrue(ile.getMessage().contains("counter stripes are only supported in group-type"));
+    }
+  }
 }
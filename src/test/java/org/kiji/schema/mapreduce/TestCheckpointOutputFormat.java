@@ -0,0 +1,104 @@
+/**
+ * (c) Copyright 2012 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.kiji.schema.mapreduce;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.JobID;
+import org.apache.hadoop.mapreduce.JobStatus;
+import org.apache.hadoop.mapreduce.OutputCommitter;
+import org.apache.hadoop.mapreduce.OutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
+import org.apache.hadoop.mapreduce.task.JobContextImpl;
+import org.junit.Test;
+
+import org.kiji.schema.KijiClientTest;
+import org.kiji.schema.KijiMetaTable;
+
+public class TestCheckpointOutputFormat extends KijiClientTest {
+  private static final String CHECKPOINT_KEY = "kiji.input.checkpoint.job";
+
+  @Test
+  public void testWrap() throws Exception {
+    final Job job = new Job();
+    job.setOutputFormatClass(SequenceFileOutputFormat.class);
+    CheckpointOutputFormat.wrap(job);
+    assertEquals(CheckpointOutputFormat.class, job.getOutputFormatClass());
+    assertEquals(SequenceFileOutputFormat.class, job.getConfiguration()
+        .getClass(CheckpointOutputFormat.DELEGATE_CONF_NAME, null, OutputFormat.class));
+
+    // Wrapping twice keeps the original output format.
+    CheckpointOutputFormat.wrap(job);
+    assertEquals(SequenceFileOutputFormat.class, job.getConfiguration()
+        .getClass(CheckpointOutputFormat.DELEGATE_CONF_NAME, null, OutputFormat.class));
+  }
+
+  @Test
+  public void testWrapKijiTableOutputFormat() throws Exception {
+    final Job job = new Job();
+    job.setOutputFormatClass(KijiTableOutputFormat.class);
+    CheckpointOutputFormat.wrap(job);
+    assertEquals(KijiTableOutputFormat.class, job.getOutputFormatClass());
+  }
+
+  private static JobContext createJobContext() {
+    final Configuration conf = new Configuration();
+    conf.set(KijiTableInputFormat.TABLE_CONF_NAME, "table");
+    conf.set(KijiTableInputFormat.CHECKPOINT_CONF_NAME, "job");
+    conf.setLong(KijiTableInputFormat.CHECKPOINT_TIME_CONF_NAME, 2000L);
+    return new JobContextImpl(conf, new JobID("test", 1));
+  }
+
+  @Test
+  public void testCommitAdvancesCheckpoint() throws Exception {
+    final KijiMetaTable metaTable = getKiji().getMetaTable();
+    final JobContext context = createJobContext();
+    final OutputCommitter delegate = createMock(OutputCommitter.class);
+    delegate.commitJob(context);
+    replay(delegate);
+
+    new CheckpointOutputCommitter(delegate, metaTable).commitJob(context);
+    verify(delegate);
+    assertArrayEquals(Bytes.toBytes(2000L), metaTable.getValue("table", CHECKPOINT_KEY));
+  }
+
+  @Test
+  public void testAbortKeepsCheckpoint() throws Exception {
+    final KijiMetaTable metaTable = getKiji().getMetaTable();
+    final JobContext context = createJobContext();
+    final OutputCommitter delegate = createMock(OutputCommitter.class);
+    delegate.abortJob(context, JobStatus.State.FAILED);
+    replay(delegate);
+
+    new CheckpointOutputCommitter(delegate, metaTable).abortJob(context, JobStatus.State.FAILED);
+    verify(delegate);
+    assertNull(metaTable.getValue("table", CHECKPOINT_KEY));
+  }
+}
@@ -0,0 +1,189 @@
+/**
+ * (c) Copyright 2012 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.kiji.schema.mapreduce;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.avro.Schema;
+import org.apache.avro.util.Utf8;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.io.hfile.CacheConfig;
+import org.apache.hadoop.hbase.io.hfile.HFile;
+import org.apache.hadoop.hbase.io.hfile.HFileScanner;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.TaskType;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputCommitter;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import org.kiji.schema.HBaseColumnName;
+import org.kiji.schema.KijiCell;
+import org.kiji.schema.KijiColumnName;
+import org.kiji.schema.KijiSchemaTable;
+import org.kiji.schema.SpecificCellDecoderFactory;
+import org.kiji.schema.impl.HBaseEntityId;
+import org.kiji.schema.impl.InMemorySchemaTable;
+import org.kiji.schema.layout.ColumnNameTranslator;
+import org.kiji.schema.layout.KijiTableLayout;
+import org.kiji.schema.layout.KijiTableLayouts;
+
+public class TestKijiHFileOutputFormat {
+  private static final KijiColumnName COLUMN = new KijiColumnName("family", "column");
+
+  // Disable checkstyle for this variable.  It must be public to work with JUnit @Rule.
+  // CSOFF: VisibilityModifierCheck
+  /** A temporary directory to write HFiles to. */
+  @Rule
+  public TemporaryFolder mTempDir = new TemporaryFolder();
+  // CSON: VisibilityModifierCheck
+
+  private KijiTableLayout mLayout;
+  private KijiSchemaTable mSchemaTable;
+  private Path mOutputPath;
+  private TaskAttemptContext mContext;
+
+  @Before
+  public void setup() throws Exception {
+    mLayout = new KijiTableLayout(KijiTableLayouts.getLayout(KijiTableLayouts.SIMPLE), null);
+    mSchemaTable = new InMemorySchemaTable();
+    mOutputPath = new Path(mTempDir.getRoot().toURI().toString(), "hfiles");
+    final Configuration conf = new Configuration();
+    conf.set("mapred.output.dir", mOutputPath.toString());
+    mContext = new TaskAttemptContextImpl(
+        conf, new TaskAttemptID("test", 1, TaskType.REDUCE, 0, 0));
+  }
+
+  private static KijiOutput put(String row, long timestamp, String value) {
+    return new KijiOutput(new KijiPut(new HBaseEntityId(Bytes.toBytes(row)),
+        COLUMN.getFamily(), COLUMN.getQualifier(), timestamp,
+        new KijiCell<CharSequence>(Schema.create(Schema.Type.STRING), new Utf8(value))));
+  }
+
+  /** Reads the key values of the committed HFiles, as a bulk load would. */
+  private List<KeyValue> readHFiles() throws IOException {
+    final Configuration conf = mContext.getConfiguration();
+    final FileSystem fs = mOutputPath.getFileSystem(conf);
+    final List<KeyValue> keyValues = new ArrayList<KeyValue>();
+    for (FileStatus familyDir : fs.listStatus(mOutputPath)) {
+      if (!familyDir.isDir() || familyDir.getPath().getName().startsWith("_")) {
+        continue;
+      }
+      for (FileStatus hfile : fs.listStatus(familyDir.getPath())) {
+        final HFile.Reader reader =
+            HFile.createReader(fs, hfile.getPath(), new CacheConfig(conf));
+        try {
+          final HFileScanner scanner = reader.getScanner(false, false);
+          if (scanner.seekTo()) {
+            do {
+              keyValues.add(scanner.getKeyValue());
+            } while (scanner.next());
+          }
+        } finally {
+          reader.close();
+        }
+      }
+    }
+    return keyValues;
+  }
+
+  @Test
+  public void testWriteThenLoad() throws Exception {
+    final KijiHFileOutputFormat.KijiHFileRecordWriter<NullWritable> writer =
+        new KijiHFileOutputFormat.KijiHFileRecordWriter<NullWritable>(
+            mContext, mLayout, mSchemaTable);
+    writer.write(NullWritable.get(), put("a", 1L, "a1"));
+    writer.write(NullWritable.get(), put("b", 1L, "b1"));
+    writer.write(NullWritable.get(), put("b", 2L, "b2"));
+    writer.write(NullWritable.get(), put("c", 1L, "c1"));
+    writer.close(mContext);
+    final FileOutputCommitter committer = new FileOutputCommitter(mOutputPath, mContext);
+    committer.commitTask(mContext);
+    committer.commitJob(mContext);
+
+    final List<KeyValue> keyValues = readHFiles();
+    assertEquals(4, keyValues.size());
+    final String[] rows = {"a", "b", "b", "c"};
+    final String[] values = {"a1", "b2", "b1", "c1"};
+    final ColumnNameTranslator translator = new ColumnNameTranslator(mLayout);
+    final SpecificCellDecoderFactory decoderFactory =
+        new SpecificCellDecoderFactory(mSchemaTable);
+    for (int i = 0; i < rows.length; i++) {
+      final KeyValue keyValue = keyValues.get(i);
+      assertArrayEquals(Bytes.toBytes(rows[i]), keyValue.getRow());
+      final KijiColumnName column = translator.toKijiColumnName(
+          new HBaseColumnName(keyValue.getFamily(), keyValue.getQualifier()));
+      assertEquals(COLUMN, column);
+      final KijiCell<CharSequence> cell = decoderFactory
+          .<CharSequence>create(mLayout.getSchema(column), mLayout.getCellFormat(column))
+          .decode(keyValue.getValue());
+      assertEquals(values[i], cell.getData().toString());
+    }
+  }
+
+  @Test
+  public void testOutOfOrderRowsFail() throws Exception {
+    final KijiHFileOutputFormat.KijiHFileRecordWriter<NullWritable> writer =
+        new KijiHFileOutputFormat.KijiHFileRecordWriter<NullWritable>(
+            mContext, mLayout, mSchemaTable);
+    writer.write(NullWritable.get(), put("b", 1L, "b1"));
+    writer.write(NullWritable.get(), put("a", 1L, "a1"));
+    try {
+      writer.write(NullWritable.get(), put("c", 1L, "c1"));
+      fail("Out of order rows should be rejected.");
+    } catch (IOException ioe) {
+      // Expected.
+    }
+  }
+
+  @Test
+  public void testConfigureMapOutput() throws Exception {
+    final Job job = new Job();
+    KijiHFileOutputFormat.configureMapOutput(job);
+    assertEquals(ImmutableBytesWritable.class, job.getMapOutputKeyClass());
+    assertEquals(KijiOutput.class, job.getMapOutputValueClass());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnknownMapOutputValueFails() throws Exception {
+    final Job job = new Job();
+    job.setMapOutputValueClass(Text.class);
+    KijiHFileOutputFormat.configureMapOutput(job);
+  }
+}
@@ -0,0 +1,157 @@
+/**
+ * (c) Copyright 2012 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.kiji.schema.mapreduce;
+
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.EasyMock.getCurrentArguments;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.same;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import com.google.common.collect.Lists;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.NullWritable;
+import org.easymock.IAnswer;
+import org.junit.Test;
+
+import org.kiji.schema.EntityId;
+import org.kiji.schema.impl.RawEntityId;
+import org.kiji.schema.mapreduce.KijiDelete.KijiDeleteScope;
+
+public class TestKijiIncrementCombiner {
+  private final EntityId mEntityId = RawEntityId.fromKijiRowKey(Bytes.toBytes("foo"));
+
+  /** Deserializes a mutation into a KijiOutput, like the framework does with grouped keys. */
+  private static void readInto(KijiOutput output, KijiMutation mutation) {
+    try {
+      final DataOutputBuffer out = new DataOutputBuffer();
+      new KijiOutput(mutation).write(out);
+      final DataInputBuffer in = new DataInputBuffer();
+      in.reset(out.getData(), out.getLength());
+      output.readFields(in);
+    } catch (Exception e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /** Deserializes a copy of a mutation. */
+  private static KijiMutation copy(KijiMutation mutation) {
+    final KijiOutput output = new KijiOutput();
+    readInto(output, mutation);
+    return output.getOperation();
+  }
+
+  /**
+   * Builds the values of a group, updating the grouped key to the next mutation as each value
+   * is iterated, like the framework does.
+   */
+  private static Iterable<NullWritable> group(
+      final KijiOutput key, final KijiMutation... mutations) {
+    return new Iterable<NullWritable>() {
+      @Override
+      public Iterator<NullWritable> iterator() {
+        final Iterator<KijiMutation> it = Arrays.asList(mutations).iterator();
+        return new Iterator<NullWritable>() {
+          @Override
+          public boolean hasNext() {
+            return it.hasNext();
+          }
+
+          @Override
+          public NullWritable next() {
+            readInto(key, it.next());
+            return NullWritable.get();
+          }
+
+          @Override
+          public void remove() {
+            throw new UnsupportedOperationException();
+          }
+        };
+      }
+    };
+  }
+
+  /** Reduces a group, and returns the mutations written by the reducer. */
+  @SuppressWarnings("unchecked")
+  private static List<KijiMutation> reduce(KijiMutation... mutations) throws Exception {
+    final List<KijiMutation> written = Lists.newArrayList();
+    final KijiIncrementReducer.Context context = createMock(KijiIncrementReducer.Context.class);
+    context.write(same(NullWritable.get()), anyObject(KijiOutput.class));
+    expectLastCall().andAnswer(new IAnswer<Object>() {
+      @Override
+      public Object answer() {
+        written.add(((KijiOutput) getCurrentArguments()[1]).getOperation());
+        return null;
+      }
+    }).anyTimes();
+    replay(context);
+
+    final KijiOutput key = new KijiOutput(mutations[0]);
+    new KijiIncrementReducer().reduce(key, group(key, mutations), context);
+    verify(context);
+    return written;
+  }
+
+  @Test
+  public void testSumIncrements() throws Exception {
+    final KijiOutput key = new KijiOutput();
+    final KijiIncrement sum = KijiIncrementCombiner.sumIncrements(key, group(key,
+        new KijiIncrement(mEntityId, "family", "qualifier", 3L),
+        new KijiIncrement(mEntityId, "family", "qualifier", -1L),
+        new KijiIncrement(mEntityId, "family", "qualifier", 5L)));
+
+    assertEquals(new KijiIncrement(mEntityId, "family", "qualifier", 7L), sum);
+  }
+
+  @Test
+  public void testReducerSumsIncrements() throws Exception {
+    final List<KijiMutation> written = reduce(
+        new KijiIncrement(mEntityId, "family", "qualifier", 3L),
+        new KijiIncrement(mEntityId, "family", "qualifier", -1L),
+        new KijiIncrement(mEntityId, "family", "qualifier", 5L));
+
+    assertEquals(1, written.size());
+    assertEquals(new KijiIncrement(mEntityId, "family", "qualifier", 7L), written.get(0));
+  }
+
+  @Test
+  public void testReducerPassesOtherMutations() throws Exception {
+    final KijiDelete first =
+        new KijiDelete(mEntityId, "family", "qualifier", 1L, KijiDeleteScope.SINGLE_VERSION);
+    final KijiDelete second =
+        new KijiDelete(mEntityId, "family", "qualifier", 2L, KijiDeleteScope.SINGLE_VERSION);
+    final List<KijiMutation> written = reduce(first, second);
+
+    assertEquals(2, written.size());
+    assertEquals(copy(first), written.get(0));
+    assertEquals(copy(second), written.get(1));
+  }
+}
@@ -0,0 +1,92 @@
+/**
+ * (c) Copyright 2012 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.schema.mapreduce;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.HRegionInfo;
+import org.apache.hadoop.hbase.ServerName;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.junit.Test;
+
+public class TestKijiMultiTableInputFormat {
+  /**
+   * Builds the region map of a table.
+   *
+   * @param table Name of the table.
+   * @param hosts Host of each region.
+   * @param splitKeys Boundaries between the regions.
+   * @return The region map of the table.
+   */
+  private static NavigableMap<HRegionInfo, ServerName> regions(
+      String table, String[] hosts, String... splitKeys) {
+    final NavigableMap<HRegionInfo, ServerName> regions = new TreeMap<HRegionInfo, ServerName>();
+    byte[] start = HConstants.EMPTY_START_ROW;
+    for (int i = 0; i <= splitKeys.length; i++) {
+      final byte[] end =
+          (i < splitKeys.length) ? Bytes.toBytes(splitKeys[i]) : HConstants.EMPTY_END_ROW;
+      regions.put(new HRegionInfo(Bytes.toBytes(table), start, end),
+          new ServerName(hosts[i], 60020, 0L));
+      start = end;
+    }
+    return regions;
+  }
+
+  @Test
+  public void testAlignedRegions() throws Exception {
+    final List<InputSplit> splits = KijiMultiTableInputFormat.computeSplits(Arrays.asList(
+        regions("users", new String[] {"host1", "host2"}, "m"),
+        regions("events", new String[] {"host3", "host4"}, "m")));
+
+    assertEquals(2, splits.size());
+    final KijiMultiTableSplit first = (KijiMultiTableSplit) splits.get(0);
+    assertArrayEquals(HConstants.EMPTY_START_ROW, first.getStartRow());
+    assertArrayEquals(Bytes.toBytes("m"), first.getEndRow());
+    assertArrayEquals(new String[] {"host1"}, first.getLocations());
+    final KijiMultiTableSplit second = (KijiMultiTableSplit) splits.get(1);
+    assertArrayEquals(Bytes.toBytes("m"), second.getStartRow());
+    assertArrayEquals(HConstants.EMPTY_END_ROW, second.getEndRow());
+    assertArrayEquals(new String[] {"host2"}, second.getLocations());
+  }
+
+  @Test
+  public void testMisalignedRegions() throws Exception {
+    final List<InputSplit> splits = KijiMultiTableInputFormat.computeSplits(Arrays.asList(
+        regions("users", new String[] {"host1", "host2"}, "m"),
+        regions("events", new String[] {"host3", "host4", "host5"}, "f", "t")));
+
+    assertEquals(4, splits.size());
+    final String[] starts = {"", "f", "m", "t"};
+    final String[] hosts = {"host1", "host1", "host2", "host2"};
+    for (int i = 0; i < splits.size(); i++) {
+      final KijiMultiTableSplit split = (KijiMultiTableSplit) splits.get(i);
+      assertArrayEquals(Bytes.toBytes(starts[i]), split.getStartRow());
+      assertArrayEquals(new String[] {hosts[i]}, split.getLocations());
+    }
+  }
+}
@@ -0,0 +1,147 @@
+/**
+ * (c) Copyright 2012 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.schema.mapreduce;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.kiji.schema.util.WritableTestUtil.assertWritable;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.avro.Schema;
+import org.apache.avro.util.Utf8;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.WritableComparator;
+import org.junit.Test;
+
+import org.kiji.schema.EntityId;
+import org.kiji.schema.KijiCell;
+import org.kiji.schema.KijiSchemaTable;
+import org.kiji.schema.impl.HBaseEntityId;
+import org.kiji.schema.impl.InMemorySchemaTable;
+import org.kiji.schema.impl.RawEntityId;
+import org.kiji.schema.mapreduce.KijiDelete.KijiDeleteScope;
+
+public class TestKijiOutput {
+  private final EntityId mFoo = new HBaseEntityId(Bytes.toBytes("foo"));
+  private final EntityId mBar = new HBaseEntityId(Bytes.toBytes("bar"));
+  private final KijiCell<?> mStringCell =
+      new KijiCell<CharSequence>(Schema.create(Schema.Type.STRING), new Utf8("baz"));
+  private final KijiCell<?> mUnionCell = new KijiCell<CharSequence>(
+      Schema.createUnion(Arrays.asList(
+          Schema.create(Schema.Type.NULL), Schema.create(Schema.Type.STRING))),
+      new Utf8("qux"));
+
+  @Test
+  public void testWritableSerialization() throws Exception {
+    assertWritable(new KijiOutput(new KijiPut(mFoo, "family", "qualifier", 1L, mStringCell)),
+        KijiOutput.class);
+    assertWritable(new KijiOutput(new KijiPut(mFoo, "family", "qualifier", mUnionCell)),
+        KijiOutput.class);
+    assertWritable(new KijiOutput(new KijiIncrement(
+        RawEntityId.fromKijiRowKey(Bytes.toBytes("foo")), "family", "qualifier", 3L)),
+        KijiOutput.class);
+    assertWritable(new KijiOutput(
+        new KijiDelete(mFoo, "family", "qualifier", KijiDeleteScope.SINGLE_VERSION)),
+        KijiOutput.class);
+  }
+
+  @Test
+  public void testRawComparatorMatchesCompareTo() throws Exception {
+    final KijiOutput[] outputs = {
+      new KijiOutput(new KijiPut(mFoo, "family", "qualifier", 1L, mStringCell)),
+      new KijiOutput(new KijiIncrement(mFoo, "family", "qualifier", 3L)),
+      new KijiOutput(new KijiIncrement(mFoo, "family", "other", 3L)),
+      new KijiOutput(new KijiDelete(mFoo, "family", KijiDeleteScope.MULTIPLE_VERSIONS)),
+      new KijiOutput(new KijiDelete(mBar)),
+    };
+    final WritableComparator comparator = WritableComparator.get(KijiOutput.class);
+    assertTrue(comparator instanceof KijiOutput.Comparator);
+
+    for (KijiOutput a : outputs) {
+      for (KijiOutput b : outputs) {
+        final byte[] aBytes = toBytes(a);
+        final byte[] bBytes = toBytes(b);
+        assertEquals(Integer.signum(a.compareTo(b)), Integer.signum(
+            comparator.compare(aBytes, 0, aBytes.length, bBytes, 0, bBytes.length)));
+      }
+    }
+
+    // Row keys sort first, then family, qualifier and operation type.
+    assertTrue(outputs[4].compareTo(outputs[0]) < 0);
+    assertTrue(outputs[3].compareTo(outputs[2]) < 0);
+    assertTrue(outputs[2].compareTo(outputs[1]) < 0);
+    assertTrue(outputs[0].compareTo(outputs[1]) < 0);
+  }
+
+  @Test
+  public void testHashCodeGroupsByCell() throws Exception {
+    final KijiOutput put =
+        new KijiOutput(new KijiPut(mFoo, "family", "qualifier", 1L, mUnionCell));
+    final KijiOutput increment =
+        new KijiOutput(new KijiIncrement(mFoo, "family", "qualifier", 3L));
+    assertEquals(put.hashCode(), increment.hashCode());
+  }
+
+  @Test
+  public void testWritesSchemaIds() throws Exception {
+    final KijiSchemaTable schemaTable = new InMemorySchemaTable();
+    final Schema taggedString = Schema.create(Schema.Type.STRING);
+    taggedString.addProp("tag", "value");
+    for (KijiCell<?> cell : Arrays.<KijiCell<?>>asList(
+        mUnionCell, new KijiCell<CharSequence>(taggedString, new Utf8("quux")))) {
+      final KijiOutput output = new KijiOutput(new KijiPut(mFoo, "family", "qualifier", cell));
+      final byte[] withJson = toBytes(output);
+      output.setSchemaTable(schemaTable);
+      final byte[] withId = toBytes(output);
+      assertTrue(withId.length < withJson.length);
+
+      final KijiOutput copy = new KijiOutput();
+      copy.setSchemaTable(schemaTable);
+      copy.readFields(fromBytes(withId));
+      assertEquals(output, copy);
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void testSchemaIdRequiresSchemaTable() throws Exception {
+    final KijiOutput output =
+        new KijiOutput(new KijiPut(mFoo, "family", "qualifier", mUnionCell));
+    output.setSchemaTable(new InMemorySchemaTable());
+    new KijiOutput().readFields(fromBytes(toBytes(output)));
+  }
+
+  private static DataInputBuffer fromBytes(byte[] bytes) {
+    final DataInputBuffer buffer = new DataInputBuffer();
+    buffer.reset(bytes, bytes.length);
+    return buffer;
+  }
+
+  private static byte[] toBytes(KijiOutput output) throws Exception {
+    final DataOutputBuffer buffer = new DataOutputBuffer();
+    output.write(buffer);
+    final byte[] bytes = new byte[buffer.getLength()];
+    System.arraycopy(buffer.getData(), 0, bytes, 0, bytes.length);
+    return bytes;
+  }
+}
@@ -0,0 +1,121 @@
+/**
+ * (c) Copyright 2012 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.schema.mapreduce;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Test;
+
+public class TestKijiSplitRefiner {
+  private static final byte[] TABLE = Bytes.toBytes("table");
+  private static final long MB = 1024L * 1024L;
+
+  private static KijiTableSplit split(String start, String end, String location, long size) {
+    final byte[] startRow = Bytes.toBytes(start);
+    return new KijiTableSplit(TABLE, startRow, Bytes.toBytes(end), location, startRow, size);
+  }
+
+  @Test
+  public void testDivideLargeSplit() throws Exception {
+    final KijiSplitRefiner refiner =
+        new KijiSplitRefiner(100 * MB, 0, KijiSplitRefiner.INTERPOLATE);
+    final List<KijiTableSplit> splits = refiner.refine(Arrays.asList(
+        split("a", "b", "host1", 50 * MB),
+        split("b", "c", "host2", 350 * MB)));
+
+    assertEquals(5, splits.size());
+    assertArrayEquals(Bytes.toBytes("a"), splits.get(0).getStartRow());
+    assertArrayEquals(Bytes.toBytes("b"), splits.get(1).getStartRow());
+    assertArrayEquals(Bytes.toBytes("c"), splits.get(4).getEndRow());
+    for (int i = 1; i < splits.size(); i++) {
+      final KijiTableSplit split = splits.get(i);
+      assertEquals("host2", split.getRegionLocation());
+      assertArrayEquals(Bytes.toBytes("b"), split.getRegionStartKey());
+      assertTrue(Bytes.compareTo(split.getStartRow(), split.getEndRow()) < 0);
+      if (i > 1) {
+        assertArrayEquals(splits.get(i - 1).getEndRow(), split.getStartRow());
+      }
+    }
+  }
+
+  @Test
+  public void testDivideLastRegion() throws Exception {
+    final KijiSplitRefiner refiner =
+        new KijiSplitRefiner(100 * MB, 0, KijiSplitRefiner.INTERPOLATE);
+    final List<KijiTableSplit> splits = refiner.refine(Arrays.asList(
+        new KijiTableSplit(TABLE, HConstants.EMPTY_START_ROW, HConstants.EMPTY_END_ROW,
+            "host1", HConstants.EMPTY_START_ROW, 200 * MB)));
+
+    assertEquals(2, splits.size());
+    assertArrayEquals(HConstants.EMPTY_START_ROW, splits.get(0).getStartRow());
+    assertArrayEquals(splits.get(0).getEndRow(), splits.get(1).getStartRow());
+    assertArrayEquals(HConstants.EMPTY_END_ROW, splits.get(1).getEndRow());
+  }
+
+  @Test
+  public void testMergeSmallAdjacentSplits() throws Exception {
+    final KijiSplitRefiner refiner =
+        new KijiSplitRefiner(0, 100 * MB, KijiSplitRefiner.INTERPOLATE);
+    final List<KijiTableSplit> splits = refiner.refine(Arrays.asList(
+        split("a", "b", "host1", 10 * MB),
+        split("b", "c", "host1", 20 * MB),
+        split("c", "d", "host2", 10 * MB),
+        split("d", "e", "host2", 200 * MB),
+        split("e", "f", "host2", 60 * MB),
+        split("f", "g", "host2", 60 * MB)));
+
+    assertEquals(5, splits.size());
+    assertArrayEquals(Bytes.toBytes("a"), splits.get(0).getStartRow());
+    assertArrayEquals(Bytes.toBytes("c"), splits.get(0).getEndRow());
+    assertEquals(30 * MB, splits.get(0).getLength());
+    assertArrayEquals(Bytes.toBytes("c"), splits.get(1).getStartRow());
+    assertArrayEquals(Bytes.toBytes("d"), splits.get(2).getStartRow());
+    assertArrayEquals(Bytes.toBytes("e"), splits.get(3).getStartRow());
+    assertArrayEquals(Bytes.toBytes("f"), splits.get(4).getStartRow());
+  }
+
+  @Test
+  public void testMergeRegionsUnderOneMegabyte() throws Exception {
+    // Region servers report 0 MB for these regions: they are small, not of unknown size.
+    final long size = KijiTableInputFormat.getRegionSize(0, 0);
+    assertEquals(1L, size);
+    final KijiSplitRefiner refiner =
+        new KijiSplitRefiner(0, 100 * MB, KijiSplitRefiner.INTERPOLATE);
+    final List<KijiTableSplit> splits = refiner.refine(Arrays.asList(
+        split("a", "b", "host1", size),
+        split("b", "c", "host1", size)));
+
+    assertEquals(1, splits.size());
+    assertEquals(2L, splits.get(0).getLength());
+  }
+
+  @Test
+  public void testUnknownLength() throws Exception {
+    assertEquals(0L, split("a", "b", "host1", 0L).getLength());
+    assertTrue(split("a", "b", "host1", KijiTableSplit.UNKNOWN_LENGTH).getLength() > 0L);
+  }
+}
@@ -0,0 +1,88 @@
+/**
+ * (c) Copyright 2012 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.kiji.schema.mapreduce;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.junit.Test;
+
+import org.kiji.schema.KijiClientTest;
+import org.kiji.schema.KijiDataRequest;
+import org.kiji.schema.KijiMetaTable;
+
+public class TestKijiTableInputFormat extends KijiClientTest {
+  @Test
+  public void testCheckpointSafetyMargin() {
+    final Configuration conf = new Configuration();
+    assertEquals(100000L - KijiTableInputFormat.DEFAULT_CHECKPOINT_SAFETY_MARGIN,
+        KijiTableInputFormat.getCheckpointEndTime(conf, 100000L));
+    conf.setLong(KijiTableInputFormat.CHECKPOINT_SAFETY_MARGIN_CONF_NAME, 5000L);
+    assertEquals(95000L, KijiTableInputFormat.getCheckpointEndTime(conf, 100000L));
+  }
+
+  @Test
+  public void testCheckpointAdvancesOnCommit() throws Exception {
+    final KijiMetaTable metaTable = getKiji().getMetaTable();
+    final KijiDataRequest request = new KijiDataRequest().withTimeRange(0L, 5000L);
+
+    // The first run reads everything up to its end time.
+    KijiDataRequest incremental = KijiTableInputFormat.getIncrementalRequest(
+        metaTable, "table", request, "job", 1000L);
+    assertEquals(0L, incremental.getMinTimestamp());
+    assertEquals(1000L, incremental.getMaxTimestamp());
+
+    // Without a commit, the next run reads the same cells again.
+    incremental = KijiTableInputFormat.getIncrementalRequest(
+        metaTable, "table", request, "job", 2000L);
+    assertEquals(0L, incremental.getMinTimestamp());
+
+    final Configuration conf = new Configuration();
+    conf.set(KijiTableInputFormat.TABLE_CONF_NAME, "table");
+    conf.set(KijiTableInputFormat.CHECKPOINT_CONF_NAME, "job");
+    conf.setLong(KijiTableInputFormat.CHECKPOINT_TIME_CONF_NAME, 2000L);
+    KijiTableInputFormat.commitCheckpoint(conf, metaTable);
+
+    incremental = KijiTableInputFormat.getIncrementalRequest(
+        metaTable, "table", request, "job", 3000L);
+    assertEquals(2000L, incremental.getMinTimestamp());
+    assertEquals(3000L, incremental.getMaxTimestamp());
+
+    // Checkpoints are independent of each other.
+    incremental = KijiTableInputFormat.getIncrementalRequest(
+        metaTable, "table", request, "other", 3000L);
+    assertEquals(0L, incremental.getMinTimestamp());
+  }
+
+  @Test(expected = IOException.class)
+  public void testEmptyTimeRange() throws Exception {
+    final Configuration conf = new Configuration();
+    conf.set(KijiTableInputFormat.TABLE_CONF_NAME, "table");
+    conf.set(KijiTableInputFormat.CHECKPOINT_CONF_NAME, "job");
+    conf.setLong(KijiTableInputFormat.CHECKPOINT_TIME_CONF_NAME, 2000L);
+    KijiTableInputFormat.commitCheckpoint(conf, getKiji().getMetaTable());
+
+    KijiTableInputFormat.getIncrementalRequest(
+        getKiji().getMetaTable(), "table", new KijiDataRequest(), "job", 2000L);
+  }
+}
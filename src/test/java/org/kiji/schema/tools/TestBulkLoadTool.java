@@ -0,0 +1,69 @@
+/**
+ * (c) Copyright 2012 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.kiji.schema.tools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import org.apache.hadoop.conf.Configuration;
+import org.junit.Test;
+
+import org.kiji.schema.avro.TableLayoutDesc;
+import org.kiji.schema.layout.KijiTableLayout;
+import org.kiji.schema.layout.KijiTableLayouts;
+
+public class TestBulkLoadTool {
+  /** Runs the tool, and returns what it printed. */
+  private static String runTool(int expectedStatus, String... args) throws Exception {
+    final ByteArrayOutputStream output = new ByteArrayOutputStream();
+    final BulkLoadTool tool = new BulkLoadTool();
+    tool.setConf(new Configuration());
+    tool.setPrintStream(new PrintStream(output, true, "UTF-8"));
+    assertEquals(expectedStatus, tool.run(args));
+    return output.toString("UTF-8");
+  }
+
+  @Test
+  public void testRequiresTable() throws Exception {
+    assertTrue(runTool(3, "--hfile=/tmp/hfiles").contains("table"));
+  }
+
+  @Test
+  public void testRequiresHFile() throws Exception {
+    assertTrue(runTool(3, "--table=table").contains("hfile"));
+  }
+
+  @Test
+  public void testStaleIndexWarning() throws Exception {
+    final TableLayoutDesc desc = KijiTableLayouts.getLayout(KijiTableLayouts.SIMPLE);
+    assertNull(BulkLoadTool.getStaleIndexWarning("table", new KijiTableLayout(desc, null)));
+
+    desc.getLocalityGroups().get(0).getFamilies().get(0).getColumns().get(0).setIndexed(true);
+    final String warning =
+        BulkLoadTool.getStaleIndexWarning("table", new KijiTableLayout(desc, null));
+    assertTrue(warning.contains("family:column"));
+    assertTrue(warning.contains("rebuild-index --table=table"));
+  }
+}
@@ -0,0 +1,87 @@
+/**
+ * (c) Copyright 2012 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.kiji.schema.tools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import org.kiji.schema.avro.CompressionType;
+import org.kiji.schema.avro.LocalityGroupDesc;
+
+public class TestRegionStatsTool {
+  private static LocalityGroupDesc group(boolean inMemory, CompressionType compression) {
+    return LocalityGroupDesc.newBuilder()
+        .setName("default")
+        .setInMemory(inMemory)
+        .setMaxVersions(1)
+        .setTtlSeconds(Integer.MAX_VALUE)
+        .setCompressionType(compression)
+        .build();
+  }
+
+  @Test
+  public void testFindHotRegions() {
+    final double[] rates = {10.0, 10.0, 100.0, 0.0};
+    final double[] sizes = {100.0, 500.0, 100.0, 100.0};
+    assertEquals(Arrays.asList(1, 2), RegionStatsTool.findHotRegions(rates, sizes, 2.0));
+    assertEquals(Arrays.asList(2), RegionStatsTool.findHotRegions(rates, sizes, 3.0));
+    assertTrue(RegionStatsTool.findHotRegions(new double[2], new double[2], 2.0).isEmpty());
+  }
+
+  @Test
+  public void testRequestRate() {
+    assertEquals(5.0, RegionStatsTool.getRequestRate(150L, 100L, 10), 1e-9);
+    // A region opened between the two snapshots has no previous count:
+    assertEquals(15.0, RegionStatsTool.getRequestRate(150L, 0L, 10), 1e-9);
+    // Without an interval, the cumulative count is reported as a total:
+    assertEquals(150.0, RegionStatsTool.getRequestRate(150L, 150L, 0), 1e-9);
+  }
+
+  @Test
+  public void testSkew() {
+    assertEquals(2.5, RegionStatsTool.getSkew(new double[] {10.0, 10.0, 100.0, 40.0}), 1e-9);
+    assertEquals(0.0, RegionStatsTool.getSkew(new double[] {0.0, 0.0}), 1e-9);
+  }
+
+  @Test
+  public void testLocalityGroupTuning() {
+    final List<String> small =
+        RegionStatsTool.suggestLocalityGroupTuning(group(false, CompressionType.GZ),
+            10L, 100.0, 1.0, 256L, 1024L);
+    assertEquals(1, small.size());
+    assertTrue(small.get(0).contains("in_memory to true"));
+
+    final List<String> large =
+        RegionStatsTool.suggestLocalityGroupTuning(group(true, CompressionType.NONE),
+            4096L, 100.0, 1.0, 256L, 1024L);
+    assertEquals(2, large.size());
+    assertTrue(large.get(0).contains("in_memory to false"));
+    assertTrue(large.get(1).contains("compression_type"));
+
+    assertTrue(RegionStatsTool.suggestLocalityGroupTuning(group(false, CompressionType.GZ),
+        10L, 1.0, 100.0, 256L, 1024L).isEmpty());
+  }
+}
@@ -0,0 +1,79 @@
+/**
+ * (c) Copyright 2012 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.schema.util;
+
+import static org.easymock.EasyMock.reportMatcher;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.hadoop.hbase.client.Put;
+import org.easymock.IArgumentMatcher;
+
+/**
+ * Matches a list of Puts against an expected list, regardless of the order of the Puts.
+ */
+public class ListPutEquals implements IArgumentMatcher {
+  private List<Put> mExpected;
+
+  public ListPutEquals(List<Put> expected) {
+    mExpected = expected;
+  }
+
+  @Override
+  public boolean matches(Object actual) {
+    if (!(actual instanceof List<?>)) {
+      return false;
+    }
+    final List<Object> remaining = new ArrayList<Object>((List<?>) actual);
+    if (remaining.size() != mExpected.size()) {
+      return false;
+    }
+    for (Put expected : mExpected) {
+      final PutEquals matcher = new PutEquals(expected);
+      boolean found = false;
+      final Iterator<Object> it = remaining.iterator();
+      while (it.hasNext()) {
+        if (matcher.matches(it.next())) {
+          it.remove();
+          found = true;
+          break;
+        }
+      }
+      if (!found) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public void appendTo(StringBuffer buffer) {
+    buffer.append("eqListPut(")
+        .append(mExpected.toString())
+        .append(")");
+  }
+
+  public static <T extends List<Put>> T eqListPut(T in) {
+    reportMatcher(new ListPutEquals(in));
+    return null;
+  }
+}
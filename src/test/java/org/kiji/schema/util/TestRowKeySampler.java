@@ -0,0 +1,97 @@
+/**
+ * (c) Copyright 2012 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.kiji.schema.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.util.Random;
+
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Test;
+
+import org.kiji.schema.EntityIdFactory;
+import org.kiji.schema.avro.RowKeyEncoding;
+import org.kiji.schema.avro.RowKeyFormat;
+
+public class TestRowKeySampler {
+  @Test
+  public void testBalanceByRowCount() {
+    final RowKeySampler sampler = new RowKeySampler(1000);
+    for (int i = 0; i < 1000; i++) {
+      sampler.add(Bytes.toBytes(i));
+    }
+    final byte[][] splitKeys = sampler.getSplitKeys(4);
+    assertEquals(3, splitKeys.length);
+    assertArrayEquals(Bytes.toBytes(250), splitKeys[0]);
+    assertArrayEquals(Bytes.toBytes(500), splitKeys[1]);
+    assertArrayEquals(Bytes.toBytes(750), splitKeys[2]);
+  }
+
+  @Test
+  public void testBalanceBySize() {
+    final RowKeySampler sampler = new RowKeySampler(1000);
+    // The first 10 rows weigh as much as the 90 others:
+    for (int i = 0; i < 100; i++) {
+      sampler.add(Bytes.toBytes(i), (i < 10) ? 9L : 1L);
+    }
+    final byte[][] splitKeys = sampler.getSplitKeys(2);
+    assertEquals(1, splitKeys.length);
+    assertArrayEquals(Bytes.toBytes(10), splitKeys[0]);
+  }
+
+  @Test
+  public void testNotEnoughDistinctKeys() {
+    final RowKeySampler sampler = new RowKeySampler(1000);
+    for (int i = 0; i < 100; i++) {
+      sampler.add(Bytes.toBytes(i % 2));
+    }
+    final byte[][] splitKeys = sampler.getSplitKeys(8);
+    assertEquals(1, splitKeys.length);
+    assertArrayEquals(Bytes.toBytes(1), splitKeys[0]);
+  }
+
+  @Test
+  public void testReservoirIsBounded() {
+    final RowKeySampler sampler = new RowKeySampler(100, new Random(42L));
+    for (int i = 0; i < 100000; i++) {
+      sampler.add(Bytes.toBytes(i));
+    }
+    assertEquals(100000L, sampler.getNumRowKeys());
+    assertEquals(100, sampler.getNumSamples());
+    // The median of a uniform sample of 100 keys out of [0, 100000) is near 50000:
+    final int median = Bytes.toInt(sampler.getSplitKeys(2)[0]);
+    assertEquals(50000.0, median, 20000.0);
+  }
+
+  @Test
+  public void testRowKeyFile() throws Exception {
+    final EntityIdFactory factory = EntityIdFactory.create(
+        RowKeyFormat.newBuilder().setEncoding(RowKeyEncoding.RAW).build());
+    final RowKeySampler sampler = new RowKeySampler(1000);
+    sampler.addRowKeyFile(
+        new ByteArrayInputStream(Bytes.toBytes("a\nb\n\nc\nd\\x00\n")), factory);
+    assertEquals(4L, sampler.getNumRowKeys());
+    final byte[][] splitKeys = sampler.getSplitKeys(2);
+    assertArrayEquals(Bytes.toBytes("c"), splitKeys[0]);
+  }
+}
@@ -70,6 +70,17 @@ public class TestSplitKeyFile {
         SplitKeyFile.decodeRowKey("this is a \\x0a key"));
   }
 
+  @Test
+  public void testEncodeRowKey() throws Exception {
+    assertEquals("key\\\\1\\x0a\\xff", SplitKeyFile.encodeRowKey(
+        new byte[] {'k', 'e', 'y', '\\', '1', '\n', (byte) 0xFF}));
+    final byte[] allBytes = new byte[256];
+    for (int i = 0; i < allBytes.length; i++) {
+      allBytes[i] = (byte) i;
+    }
+    assertArrayEquals(allBytes, SplitKeyFile.decodeRowKey(SplitKeyFile.encodeRowKey(allBytes)));
+  }
+
   @Test(expected = IOException.class)
   public void testDecodeRowKeyInvalidHexEscape() throws Exception {
     SplitKeyFile.decodeRowKey("this is a \\xZZ key");